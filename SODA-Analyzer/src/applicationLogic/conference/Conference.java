@@ -10,8 +10,10 @@ import applicationLogic.statistics.Author;
 import applicationLogic.statistics.utils.PublicationComparator;
 
 
+import dblp.social.exceptions.PoolException;
 import dblp.social.exceptions.SodaHibernateException;
 import dblp.social.hibernate.ISodaHibernateSession;
+import dblp.social.hibernate.SessionsPool;
 import dblp.social.hibernate.entities.InProceedings;
 import dblp.social.hibernate.entities.Person;
 import dblp.social.hibernate.entities.Proceedings;
@@ -92,6 +94,22 @@ public class Conference {
 		this.groupByYear(procs);
 		 
 	}
+	/**
+	 * Gives the session back to the SessionsPool it has been taken from, it has to be called once the conference
+	 * is no longer used: the object cannot query the db anymore.
+	 */
+	public void close(){
+		if (this.session==null)
+			return;
+		try{
+			SessionsPool.getInstance().sessionBackToPool(this.session);
+		}
+		catch (PoolException e){
+			//the session has not been taken from a pool
+		}
+		this.session = null;
+	}
+	
 	/**
 	 * Returns the conference short name
 	 * @return conference name
@@ -8,8 +8,10 @@ import java.util.List;
 import applicationLogic.statistics.Author;
 import applicationLogic.statistics.utils.PublicationComparator;
 
+import dblp.social.exceptions.PoolException;
 import dblp.social.exceptions.SodaHibernateException;
 import dblp.social.hibernate.ISodaHibernateSession;
+import dblp.social.hibernate.SessionsPool;
 import dblp.social.hibernate.WorkArounds;
 import dblp.social.hibernate.entities.DblpPublication;
 import dblp.social.hibernate.entities.Journal;
@@ -87,6 +89,22 @@ public class Transaction {
 //		this.initializedVolumes = new ArrayList<Integer>();
 	}
 	
+	/**
+	 * Gives the session back to the SessionsPool it has been taken from, it has to be called once the transaction
+	 * is no longer used: the object cannot query the db anymore.
+	 */
+	public void close(){
+		if (this.session==null)
+			return;
+		try{
+			SessionsPool.getInstance().sessionBackToPool(this.session);
+		}
+		catch (PoolException e){
+			//the session has not been taken from a pool
+		}
+		this.session = null;
+	}
+	
 	/**
 	 * 
 	 * @return the transaction short name
@@ -1,14 +1,13 @@
 package presentation;
 
 import java.util.Calendar;
-import java.util.Properties;
 
 import applicationLogic.comunity.Distance;
 
 
 import dblp.social.hibernate.ISodaHibernateSession;
-import dblp.social.hibernate.SodaHibernateSessionFactory;
-import dblp.social.hibernate.SodaModelProvider;
+import dblp.social.hibernate.SessionLease;
+import dblp.social.hibernate.SessionsPool;
 /**
  * A simple Presentation class to request the computation of the distance between 2 authors: AUTHOR1 and AUTHOR2 within LIMIT steps.
  * The result of the computation is printed on the standard output.
@@ -46,46 +45,47 @@ public class AuthorsDistance {
 			return;
 		}
 		try{
-			Properties props = DBConfLoader.loadDbConfigurations();
+			SessionsPool pool = DBConfLoader.getSessionsPool();
 			
-			if (props==null)
+			if (pool==null)
 				return;
 			
-			ISodaHibernateSession session = 
-				SodaHibernateSessionFactory.getSession(
-					props.getProperty("dbUrl"),
-					props.getProperty("dbDialect"),
-					props.getProperty("dbDriverName"), 
-					props.getProperty("dbUser"), 
-					props.getProperty("dbPasswd"), 
-					new SodaModelProvider());
-			
-			Calendar begin = Calendar.getInstance();
-			
-			System.out.println("Calculating distance from "+author1+" to "
-					+author2+" limit: "+limit);
-			Distance dist = new Distance(session); 
-			int d = dist.distanceAI(author1, author2, limit);
-			if(d==-1)
-				System.out.println(author2+" can not be reached from " +
-						author1+" within "+limit+" steps");
-			else if(d==-2)
-				System.out.println("Autor"+author1+" not found");
-			else if(d==-3)
-				System.out.println("Autor"+author2+" not found");
-			else
-				System.out.println("Distance from "+author1+" to " +
-						author2+": "+d);
-			Calendar end = Calendar.getInstance();
-			
-			long time = end.getTimeInMillis()-begin.getTimeInMillis();
-			System.out.println("Time taken: "+time);
+			SessionLease lease = pool.lease();
+			try{
+				distance(lease.getSession(), author1, author2, limit);
+			}
+			finally{
+				lease.release();
+			}
 		}
 		catch(Exception e){
 			e.printStackTrace();
 		}
 	}
 	
+	private static void distance(ISodaHibernateSession session, String author1, String author2, int limit) throws Exception{
+		Calendar begin = Calendar.getInstance();
+		
+		System.out.println("Calculating distance from "+author1+" to "
+				+author2+" limit: "+limit);
+		Distance dist = new Distance(session); 
+		int d = dist.distanceAI(author1, author2, limit);
+		if(d==-1)
+			System.out.println(author2+" can not be reached from " +
+					author1+" within "+limit+" steps");
+		else if(d==-2)
+			System.out.println("Autor"+author1+" not found");
+		else if(d==-3)
+			System.out.println("Autor"+author2+" not found");
+		else
+			System.out.println("Distance from "+author1+" to " +
+					author2+": "+d);
+		Calendar end = Calendar.getInstance();
+		
+		long time = end.getTimeInMillis()-begin.getTimeInMillis();
+		System.out.println("Time taken: "+time);
+	}
+	
 	private static void showHelp(){
 		System.out.println("Arguments: \n" +
 				"author1: \tthe name of the first author\n" +
@@ -7,7 +7,6 @@ import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.Calendar;
 import java.util.List;
-import java.util.Properties;
 
 import applicationLogic.conference.Conference;
 import applicationLogic.conference.trend.TimeTrend;
@@ -19,8 +18,6 @@ import applicationLogic.statistics.PublicationsStatistics;
 
 import dblp.social.exceptions.SodaHibernateException;
 import dblp.social.hibernate.ISodaHibernateSession;
-import dblp.social.hibernate.SodaHibernateSessionFactory;
-import dblp.social.hibernate.SodaModelProvider;
 /**
  * A simple Presentation class used to print the results of the conference analysis.
  * The result of the computation is printed different txt files.
@@ -39,11 +36,12 @@ public class ConferenceProperties {
 	 * @param args
 	 */
 	public static void main(String[] args){
+		Conference conf = null;
 		try {
 			
 			Calendar begin = Calendar.getInstance();
 			
-			Conference conf = initializeConference(CONFERENCE);
+			conf = initializeConference(CONFERENCE);
 			
 			if (conf.isEmpty()){
 				System.out.println("No proceedings found for "+conf.getConferenceName());
@@ -83,6 +81,11 @@ public class ConferenceProperties {
 		catch (Exception e) {
 			System.out.println(e.getMessage());
 		} 
+		finally{
+			//the session goes back to the pool
+			if (conf!=null)
+				conf.close();
+		}
 		
 	}
 	
@@ -90,7 +93,8 @@ public class ConferenceProperties {
 	
 	/**
 	 * Creates a new {@link Conference} object with the given conference short name.
-	 * This method opens an Hiberante session which will be stored in the Conference object for further queries.
+	 * This method opens an Hiberante session which will be stored in the Conference object for further queries,
+	 * the session is given back to the pool by Conference.close.
 	 * 
 	 * @param conference the conference short name
 	 * @return the initialized Conference object.
@@ -98,20 +102,11 @@ public class ConferenceProperties {
 	 * @throws IOException
 	 */
 	public static Conference initializeConference(String conference) throws SodaHibernateException, IOException{
-		//Create a session
-		Properties props = DBConfLoader.loadDbConfigurations();
+		//Takes a session from the pool, it is kept by the returned object
+		ISodaHibernateSession session = DBConfLoader.getSession();
 		
-		if (props==null)
+		if (session==null)
 			return null;
-		
-		ISodaHibernateSession session = 
-			SodaHibernateSessionFactory.getSession(
-				props.getProperty("dbUrl"),
-				props.getProperty("dbDialect"),
-				props.getProperty("dbDriverName"), 
-				props.getProperty("dbUser"), 
-				props.getProperty("dbPasswd"), 
-				new SodaModelProvider());
 			
 		
 		//create a conference object
@@ -144,7 +139,8 @@ public class ConferenceProperties {
 	
 	/**
 	 * Creates a new conference object with the given conference short names.
-	 * This method opens an Hiberante session which will be stored in the Conference object for further queries.
+	 * This method opens an Hiberante session which will be stored in the Conference object for further queries,
+	 * the session is given back to the pool by Conference.close.
 	 * 
 	 * @param conference a list of conference short names
 	 * @return the initialized Conference object.
@@ -152,20 +148,11 @@ public class ConferenceProperties {
 	 * @throws IOException
 	 */
 	public static Conference initializeConference(List<String> conference) throws SodaHibernateException, IOException{
-		//Create a session
-		Properties props = DBConfLoader.loadDbConfigurations();
+		//Takes a session from the pool, it is kept by the returned object
+		ISodaHibernateSession session = DBConfLoader.getSession();
 		
-		if (props==null)
+		if (session==null)
 			return null;
-		
-		ISodaHibernateSession session = 
-			SodaHibernateSessionFactory.getSession(
-				props.getProperty("dbUrl"),
-				props.getProperty("dbDialect"),
-				props.getProperty("dbDriverName"), 
-				props.getProperty("dbUser"), 
-				props.getProperty("dbPasswd"), 
-				new SodaModelProvider());
 			
 		
 		//create a conference object
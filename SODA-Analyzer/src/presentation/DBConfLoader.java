@@ -6,8 +6,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
 
+import dblp.social.exceptions.PoolException;
+import dblp.social.exceptions.SodaHibernateException;
+import dblp.social.hibernate.ISodaHibernateSession;
+import dblp.social.hibernate.SessionsPool;
+
 public class DBConfLoader {
 	private static final String DB_CONFIG_FILE = "./config/db.properties";
+	//each Conference or Transaction object keeps a session until it is closed, SEAnalysis uses three of them
+	private static final int MAX_SESSIONS = 4;
 	
 	/**
 	 * Loads the db connection properties.
@@ -26,4 +33,56 @@ public class DBConfLoader {
 		return props;
 	}
 	
+	/**
+	 * Returns the sessions pool of the analyzer, initialized with the db connection properties by the first call.
+	 * @return the sessions pool, null if the db connection properties could not be loaded
+	 * @throws IOException
+	 * @throws SodaHibernateException
+	 */
+	public static synchronized SessionsPool getSessionsPool() throws IOException, SodaHibernateException{
+		try{
+			return SessionsPool.getInstance();
+		}
+		catch (PoolException e){
+			//not initialized yet
+		}
+		Properties props = loadDbConfigurations();
+		if (props==null)
+			return null;
+		SessionsPool.initialize(props.getProperty("dbUrl"),
+				props.getProperty("dbDialect"),
+				props.getProperty("dbDriverName"), 
+				props.getProperty("dbUser"), 
+				props.getProperty("dbPasswd"), 
+				1, MAX_SESSIONS);
+		try{
+			SessionsPool pool = SessionsPool.getInstance();
+			if (props.getProperty("sessionAcquireTimeoutMillis")!=null)
+				pool.setAcquireTimeout(Long.parseLong(props.getProperty("sessionAcquireTimeoutMillis").trim()));
+			return pool;
+		}
+		catch (PoolException e){
+			throw new SodaHibernateException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Takes a session from the sessions pool of the analyzer, the session has to be given back to the pool
+	 * when it is no longer used.
+	 * @return the session, null if the db connection properties could not be loaded
+	 * @throws IOException
+	 * @throws SodaHibernateException if no session is available
+	 */
+	public static ISodaHibernateSession getSession() throws IOException, SodaHibernateException{
+		SessionsPool pool = getSessionsPool();
+		if (pool==null)
+			return null;
+		try{
+			return pool.getSession();
+		}
+		catch (PoolException e){
+			throw new SodaHibernateException(e.getMessage(), e);
+		}
+	}
+	
 }
@@ -38,6 +38,7 @@ public class SEAnalysis {
 			Conference conf = ConferenceProperties.initializeConference(CONFERENCE);
 			if (conf.isEmpty()){
 				System.out.println("No proceedings found for "+conf.getConferenceName());
+				conf.close();
 				return;
 			}
 			System.out.println("Initialized conference: "+conf.getConferenceName());
@@ -47,6 +48,7 @@ public class SEAnalysis {
 			//ConferenceProperties.graphAnalysis(conf);
 			//ConferenceProperties.conferenceStatistics(conf);
 			//to free memory
+			conf.close();
 			conf = null;
 			
 			
@@ -54,6 +56,7 @@ public class SEAnalysis {
 			Transaction t1 = TransactionProperties.initializeTransaction(TRANSACTIONS[0]);
 			if (t1.isEmpty()){
 				System.out.println("No Journals found for "+t1.getTransactionName());
+				t1.close();
 				return;
 			}
 			System.out.println("Initialized transaction: "+t1.getTransactionName());
@@ -62,12 +65,14 @@ public class SEAnalysis {
 			TransactionProperties.volumeTrendAnalysis(t1);
 			TransactionProperties.graphAnalysis(t1);
 			TransactionProperties.transactionStatistics(t1);
+			t1.close();
 			t1=null;
 			
 			//transaction initialization - TOSEM
 			Transaction t2 = TransactionProperties.initializeTransaction(TRANSACTIONS[1]);
 			if (t2.isEmpty()){
 				System.out.println("No Journals found for "+t2.getTransactionName());
+				t2.close();
 				return;
 			}			
 			System.out.println("Initialized transaction: "+t2.getTransactionName());			
@@ -75,6 +80,7 @@ public class SEAnalysis {
 			TransactionProperties.volumeTrendAnalysis(t2);
 			TransactionProperties.graphAnalysis(t2);
 			TransactionProperties.transactionStatistics(t2);
+			t2.close();
 			t2=null;
 			
 			
@@ -105,18 +111,21 @@ public class SEAnalysis {
 		Conference conf = ConferenceProperties.initializeConference(CONFERENCE);
 		System.out.println("Expanding graph");
 		gm.expandGraph(conf);
+		conf.close();
 		conf=null;
 		
 		System.out.println("Initializing: TSE");
 		Transaction t1 = TransactionProperties.initializeTransaction(TRANSACTIONS[0]);
 		System.out.println("Expanding graph");
 		gm.expandGraph(t1);
+		t1.close();
 		t1=null;
 		
 		System.out.println("Initializing: TOSEM");
 		Transaction t2 = TransactionProperties.initializeTransaction(TRANSACTIONS[1]);
 		System.out.println("Expanding graph");
 		gm.expandGraph(t2);
+		t2.close();
 		t2=null;
 		
 		
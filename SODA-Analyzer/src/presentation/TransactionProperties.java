@@ -7,7 +7,6 @@ import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.Calendar;
 import java.util.List;
-import java.util.Properties;
 
 import applicationLogic.graph.GraphManager;
 import applicationLogic.journal.Transaction;
@@ -19,8 +18,6 @@ import applicationLogic.statistics.PublicationsStatistics;
 
 import dblp.social.exceptions.SodaHibernateException;
 import dblp.social.hibernate.ISodaHibernateSession;
-import dblp.social.hibernate.SodaHibernateSessionFactory;
-import dblp.social.hibernate.SodaModelProvider;
 /**
  * A simple Presentation class used to print the results of the transaction analysis.
  * The result of the computation is printed different txt files.
@@ -38,6 +35,7 @@ public class TransactionProperties {
 	 * @param args
 	 */
 	public static void main(String[] args){
+		Transaction tran = null;
 		try {
 			
 			Calendar begin = Calendar.getInstance();
@@ -45,7 +43,7 @@ public class TransactionProperties {
 			//Transaction tran = initializeTransaction("tse");
 			//Transaction tran = initializeTransaction("tosem");
 			
-			Transaction tran = initializeTransaction(TRANSACTION);
+			tran = initializeTransaction(TRANSACTION);
 			
 			if (tran.isEmpty()){
 				System.out.println("No Journals found for "+tran.getTransactionName());
@@ -86,11 +84,17 @@ public class TransactionProperties {
 		catch (Exception e) {
 			System.out.println(e.getMessage());
 		} 
+		finally{
+			//the session goes back to the pool
+			if (tran!=null)
+				tran.close();
+		}
 		
 	}
 	/**
 	 * Creates a new {@link Transaction} object with the given transaction short name.
-	 * This method opens an Hiberante session which will be stored in the Transaction object for further queries.
+	 * This method opens an Hiberante session which will be stored in the Transaction object for further queries,
+	 * the session is given back to the pool by Transaction.close.
 	 * 
 	 * @param Transaction the transaction short name
 	 * @return the initialized Transaction object.
@@ -98,21 +102,12 @@ public class TransactionProperties {
 	 * @throws IOException
 	 */
 	public static Transaction initializeTransaction(String Transaction) throws SodaHibernateException, IOException{
-		//Create a session
-		Properties props = DBConfLoader.loadDbConfigurations();
+		//Takes a session from the pool, it is kept by the returned object
+		ISodaHibernateSession session = DBConfLoader.getSession();
 		
-		if (props==null)
+		if (session==null)
 			return null;
 		
-		ISodaHibernateSession session = 
-			SodaHibernateSessionFactory.getSession(
-				props.getProperty("dbUrl"),
-				props.getProperty("dbDialect"),
-				props.getProperty("dbDriverName"), 
-				props.getProperty("dbUser"), 
-				props.getProperty("dbPasswd"), 
-				new SodaModelProvider());
-		
 		Transaction tran = new Transaction(session, Transaction);
 		
 		File dir = new File(tran.getTransactionName());
@@ -0,0 +1,133 @@
+package dblp.social.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * This class generates the synthetic dblp data used by the benchmarks:
+ * a mix of proceedings, inproceedings, articles, books and incollections with the same tags of the dblp xml.
+ *
+ * @author Staffiero
+ *
+ */
+public class BenchData {
+	public static final String HEADER = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n" +
+			"<!DOCTYPE dblp SYSTEM \"dblp.dtd\">\n<dblp>\n";
+	public static final String FOOTER = "</dblp>\n";
+
+	/**
+	 * Appends a synthetic record
+	 * @param buffer
+	 * @param i the record number, it selects the record kind
+	 */
+	public static void appendRecord(StringBuffer buffer, int i){
+		int conf = i/50;
+		int year = 1990+(i%20);
+		switch (i%5){
+		case 0:
+			buffer.append("<proceedings mdate=\"2009-01-01\" key=\"conf/c"+conf+"/"+year+"\">\n");
+			buffer.append("<editor>Editor "+(i%97)+"</editor>\n");
+			buffer.append("<title>Proceedings of conference "+conf+"</title>\n");
+			buffer.append("<year>"+year+"</year>\n<isbn>3-540-"+i+"</isbn>\n<publisher>Springer</publisher>\n");
+			buffer.append("<url>db/conf/c"+conf+"/c"+conf+year+".html</url>\n</proceedings>\n");
+			break;
+		case 1:
+			buffer.append("<inproceedings mdate=\"2009-01-01\" key=\"conf/c"+conf+"/Author"+i+"\">\n");
+			buffer.append("<author>Author "+(i%1013)+"</author>\n<author>Author "+((i*7)%1013)+"</author>\n");
+			buffer.append("<title>A paper about topic "+i+".</title>\n<pages>"+(i%300)+"-"+(i%300+12)+"</pages>\n");
+			buffer.append("<year>"+year+"</year>\n<booktitle>C"+conf+"</booktitle>\n");
+			buffer.append("<crossref>conf/c"+conf+"/"+year+"</crossref>\n");
+			buffer.append("<url>db/conf/c"+conf+"/c"+conf+year+".html#Author"+i+"</url>\n</inproceedings>\n");
+			break;
+		case 2:
+			buffer.append("<article mdate=\"2009-01-01\" key=\"journals/j"+conf+"/Author"+i+"\">\n");
+			buffer.append("<author>Author "+(i%1013)+"</author>\n");
+			buffer.append("<title>An article about topic "+i+".</title>\n<pages>"+(i%300)+"-"+(i%300+20)+"</pages>\n");
+			buffer.append("<year>"+year+"</year>\n<volume>"+(i%40)+"</volume>\n<journal>J"+conf+"</journal>\n");
+			buffer.append("<number>"+(i%4+1)+"</number>\n<ee>http://dx.doi.org/10.1000/"+i+"</ee>\n");
+			buffer.append("<url>db/journals/j"+conf+"/j"+conf+(i%40)+".html#Author"+i+"</url>\n</article>\n");
+			break;
+		case 3:
+			buffer.append("<book mdate=\"2009-01-01\" key=\"books/b/"+i+"\">\n");
+			buffer.append("<author>Author "+(i%1013)+"</author>\n<title>A book about topic "+i+".</title>\n");
+			buffer.append("<publisher>Springer</publisher>\n<year>"+year+"</year>\n<isbn>0-387-"+i+"</isbn>\n</book>\n");
+			break;
+		default:
+			buffer.append("<incollection mdate=\"2009-01-01\" key=\"books/b/"+(i-1)+"/Author"+i+"\">\n");
+			buffer.append("<author>Author "+(i%1013)+"</author>\n<title>A chapter about topic "+i+".</title>\n");
+			buffer.append("<pages>"+(i%300)+"-"+(i%300+30)+"</pages>\n<year>"+year+"</year>\n");
+			buffer.append("<booktitle>A book about topic "+(i-1)+".</booktitle>\n<crossref>books/b/"+(i-1)+"</crossref>\n");
+			buffer.append("<url>db/books/collections/b"+(i-1)+".html#Author"+i+"</url>\n</incollection>\n");
+		}
+	}
+
+	/**
+	 * Generates a _part file: the records preceded by checkpoints, without the doctype
+	 * @param records the number of records
+	 * @param step the number of records between two checkpoints
+	 * @return the _part file content
+	 */
+	public static String partFile(int records, int step){
+		StringBuffer buffer = new StringBuffer("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<dblp>\n");
+		for (int i=0; i<records; i++){
+			if (i%step==0)
+				buffer.append("<checkpoint number=\""+(i/step)+"\" />\n");
+			appendRecord(buffer, i);
+		}
+		buffer.append(FOOTER);
+		return buffer.toString();
+	}
+
+	/**
+	 * Writes a dblp xml file, as read by the pre parser
+	 * @param file the file to be written
+	 * @param records the number of records
+	 * @throws IOException
+	 */
+	public static void writeDblpFile(File file, int records) throws IOException{
+		FileWriter output = new FileWriter(file);
+		try{
+			output.write(HEADER);
+			StringBuffer buffer = new StringBuffer();
+			for (int i=0; i<records; i++){
+				appendRecord(buffer, i);
+				if (buffer.length()>1<<16){
+					output.write(buffer.toString());
+					buffer.setLength(0);
+				}
+			}
+			output.write(buffer.toString());
+			output.write(FOOTER);
+		}
+		finally{
+			output.close();
+		}
+	}
+
+	/**
+	 * Creates an empty temporary folder
+	 * @param prefix
+	 * @return the folder
+	 * @throws IOException
+	 */
+	public static File tempDir(String prefix) throws IOException{
+		File dir = File.createTempFile(prefix, "");
+		if (!dir.delete() || !dir.mkdirs())
+			throw new IOException("Could not create the folder "+dir.getAbsolutePath());
+		return dir;
+	}
+
+	/**
+	 * Deletes a folder and its content
+	 * @param file
+	 */
+	public static void delete(File file){
+		File[] children = file.listFiles();
+		if (children!=null){
+			for (File c : children)
+				delete(c);
+		}
+		file.delete();
+	}
+}
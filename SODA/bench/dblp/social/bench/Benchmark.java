@@ -0,0 +1,48 @@
+package dblp.social.bench;
+
+import dblp.social.hibernate.ISodaHibernateSession;
+
+/**
+ * A microbenchmark run by the BenchmarkRunner: setUp is called once, then run is called
+ * repeatedly during the warmup and the measurement iterations, then tearDown is called once.
+ *
+ * @author Staffiero
+ *
+ */
+public interface Benchmark {
+
+	/**
+	 * @return the name of the benchmark, written in the results
+	 */
+	public String getName();
+
+	/**
+	 * @return the unit counted by run (e.g. records), the results are units per second
+	 */
+	public String getUnit();
+
+	/**
+	 * @return true if the benchmark uses the given session, it is run once for each session kind
+	 */
+	public boolean usesSession();
+
+	/**
+	 * Prepares the benchmark
+	 * @param session the session to be used, null if the benchmark does not use a session
+	 * @throws Exception
+	 */
+	public void setUp(ISodaHibernateSession session) throws Exception;
+
+	/**
+	 * Runs one operation of the benchmark
+	 * @return the number of units processed by the operation
+	 * @throws Exception
+	 */
+	public long run() throws Exception;
+
+	/**
+	 * Releases the resources of the benchmark
+	 * @throws Exception
+	 */
+	public void tearDown() throws Exception;
+}
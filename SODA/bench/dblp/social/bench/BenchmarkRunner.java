@@ -0,0 +1,299 @@
+package dblp.social.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import dblp.social.hibernate.ISodaHibernateSession;
+import dblp.social.hibernate.SodaHibernateSessionFactory;
+import dblp.social.hibernate.SodaModelProvider;
+
+/**
+ * This class runs the microbenchmarks of the importer hot paths and writes the results as JSON,
+ * so that the results of two versions can be compared.
+ * Each benchmark is run for some warmup iterations, whose results are discarded, and then for the measured iterations:
+ * an iteration calls the benchmark operation until the iteration time has elapsed. The result of an iteration
+ * is the number of units (e.g. records) processed per second.
+ *
+ * The benchmarks using a session are run with a session which does not access any database (noop)
+ * and with a session connected to a scratch database (db): the records of the samples are written into it.
+ * The db session needs its own properties file, given with -db, as config/db.properties used by the importer;
+ * the importer file itself is refused.
+ *
+ * The benchmarks are compiled with the SODA classes and libraries, e.g. from the SODA folder:
+ * javac -cp bin:lib/* -d bench-bin bench/dblp/social/bench/*.java
+ * java -cp bench-bin:bin:lib/* dblp.social.bench.BenchmarkRunner -session noop,db -db config/bench.properties -out results.json
+ *
+ * Options: -session noop|db|noop,db, -db properties file of the scratch database, -warmup iterations, -iterations iterations, -time ms (of an iteration),
+ * -records records of the samples, -out results file; the following arguments are the names of the
+ * benchmarks to be run (handler, handlerStax, idUtility, preParser, descriptor), all of them by default.
+ *
+ * @author Staffiero
+ *
+ */
+public class BenchmarkRunner {
+	//the properties of the importer db, never used by the benchmarks
+	private static final String DB_CONFIG_FILE = "./config/db.properties";
+	private static final String NOOP = "noop";
+	private static final String DB = "db";
+	private static volatile int sink;
+	private static Logger logger = Logger.getLogger(BenchmarkRunner.class);
+
+	private String[] sessions = {NOOP};
+	private int warmup = 3;
+	private int iterations = 5;
+	private long time = 1000;
+	private int records = 20000;
+	private String out = "bench-results.json";
+	private File dbConfig = null;
+	private ArrayList<String> names = new ArrayList<String>();
+	private StringBuffer json = new StringBuffer();
+
+	/**
+	 * Keeps a result alive, so that the JIT compiler does not remove the code producing it
+	 * @param value
+	 */
+	public static void consume(int value){
+		sink ^= value;
+	}
+
+	public static void main(String[] args){
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.WARN);
+		BenchmarkRunner runner = new BenchmarkRunner();
+		try{
+			runner.parseArgs(args);
+			runner.runAll();
+		}
+		catch (IllegalArgumentException e){
+			System.out.println(e.getMessage());
+			showHelp();
+		}
+		catch (Exception e){
+			e.printStackTrace();
+		}
+	}
+
+	private void parseArgs(String[] args){
+		for (int i=0; i<args.length; i++){
+			String a = args[i];
+			if (a.startsWith("-") && i+1>=args.length)
+				throw new IllegalArgumentException("Missing value of "+a);
+			if (a.equals("-session"))
+				this.sessions = args[++i].split(",");
+			else if (a.equals("-warmup"))
+				this.warmup = Integer.parseInt(args[++i]);
+			else if (a.equals("-iterations"))
+				this.iterations = Integer.parseInt(args[++i]);
+			else if (a.equals("-time"))
+				this.time = Long.parseLong(args[++i]);
+			else if (a.equals("-records"))
+				this.records = Integer.parseInt(args[++i]);
+			else if (a.equals("-out"))
+				this.out = args[++i];
+			else if (a.equals("-db"))
+				this.dbConfig = new File(args[++i]);
+			else if (a.startsWith("-"))
+				throw new IllegalArgumentException("Unknown option "+a);
+			else
+				this.names.add(a);
+		}
+		for (String kind : this.sessions){
+			if (kind.equals(DB))
+				checkDbConfig();
+		}
+	}
+
+	/**
+	 * Checks the properties file of the db session: it has to be given and must not be the importer one,
+	 * as the benchmarks write into the db
+	 * @throws IllegalArgumentException if the file is missing or is the importer properties file
+	 */
+	private void checkDbConfig(){
+		if (this.dbConfig==null)
+			throw new IllegalArgumentException("The db session writes into the db: give the properties file of a scratch db with -db");
+		if (!this.dbConfig.isFile())
+			throw new IllegalArgumentException("The db properties file "+this.dbConfig.getPath()+" does not exist");
+		try{
+			if (this.dbConfig.getCanonicalFile().equals(new File(DB_CONFIG_FILE).getCanonicalFile()))
+				throw new IllegalArgumentException("The db session cannot use the importer db of "+DB_CONFIG_FILE+
+						": give the properties file of a scratch db with -db");
+		}
+		catch (IOException e){
+			throw new IllegalArgumentException("Cannot read the db properties file "+this.dbConfig.getPath());
+		}
+	}
+
+	private List<Benchmark> benchmarks(){
+		ArrayList<Benchmark> all = new ArrayList<Benchmark>();
+		all.add(new HandlerBenchmark(this.records, false));
+		all.add(new HandlerBenchmark(this.records, true));
+		all.add(new IdUtilityBenchmark());
+		all.add(new PreParserBenchmark(this.records*5));
+		all.add(new DescriptorBenchmark(Math.max(1, this.records/100)));
+		if (this.names.isEmpty())
+			return all;
+		ArrayList<Benchmark> selected = new ArrayList<Benchmark>();
+		for (Benchmark b : all){
+			if (this.names.contains(b.getName()))
+				selected.add(b);
+		}
+		return selected;
+	}
+
+	private void runAll() throws Exception{
+		this.json.append("{\n  \"date\": \""+new Date()+"\",\n");
+		this.json.append("  \"java\": \""+System.getProperty("java.version")+"\",\n");
+		this.json.append("  \"warmup\": "+this.warmup+", \"iterations\": "+this.iterations+
+				", \"iterationMillis\": "+this.time+", \"records\": "+this.records+",\n");
+		this.json.append("  \"benchmarks\": [");
+		boolean first = true;
+		for (Benchmark b : benchmarks()){
+			String[] kinds = b.usesSession() ? this.sessions : new String[]{"none"};
+			for (String kind : kinds){
+				ISodaHibernateSession session = b.usesSession() ? createSession(kind) : null;
+				if (b.usesSession() && session==null)
+					continue;
+				double[] results;
+				try{
+					results = run(b, session);
+				}
+				catch (Exception e){
+					//e.g. the db is not reachable
+					System.out.println("Skipping "+b.getName()+" ["+kind+"]: "+e.getMessage());
+					logger.debug("Benchmark "+b.getName()+" failed", e);
+					continue;
+				}
+				finally{
+					if (session!=null && session.isOpen())
+						session.close();
+				}
+				report(b, kind, results, first);
+				first = false;
+			}
+		}
+		this.json.append("\n  ]\n}\n");
+		FileWriter output = new FileWriter(this.out);
+		output.write(this.json.toString());
+		output.close();
+		System.out.println("Results written in "+new File(this.out).getAbsolutePath());
+	}
+
+	/**
+	 * @return the session of the given kind, null if the db session cannot be created
+	 */
+	private ISodaHibernateSession createSession(String kind){
+		if (kind.equals(NOOP))
+			return new NoOpSession();
+		if (!kind.equals(DB))
+			throw new IllegalArgumentException("Unknown session "+kind);
+		try{
+			Properties props = new Properties();
+			FileInputStream input = new FileInputStream(this.dbConfig);
+			props.load(input);
+			input.close();
+			ISodaHibernateSession session = SodaHibernateSessionFactory.getSession(props.getProperty("dbUrl"),
+					props.getProperty("dbDialect"),
+					props.getProperty("dbDriverName"),
+					props.getProperty("dbUser"),
+					props.getProperty("dbPasswd"),
+					new SodaModelProvider());
+			session.updateSchema();
+			return session;
+		}
+		catch (Exception e){
+			System.out.println("Skipping the db session: "+e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Runs the warmup and the measured iterations of a benchmark
+	 * @return the units per second of each measured iteration
+	 */
+	private double[] run(Benchmark b, ISodaHibernateSession session) throws Exception{
+		System.out.println("Running "+b.getName()+(session!=null ? " ("+session.getClass().getSimpleName()+")" : ""));
+		b.setUp(session);
+		double[] results = new double[this.iterations];
+		//the benchmarks may print progress messages
+		PrintStream stdout = System.out;
+		System.setOut(new PrintStream(new OutputStream(){
+			@Override
+			public void write(int c) throws IOException{
+			}
+		}));
+		try{
+			for (int i=0; i<this.warmup; i++)
+				iteration(b);
+			for (int i=0; i<this.iterations; i++)
+				results[i] = iteration(b);
+		}
+		finally{
+			System.setOut(stdout);
+			b.tearDown();
+		}
+		return results;
+	}
+
+	/**
+	 * @return the units per second of the iteration
+	 */
+	private double iteration(Benchmark b) throws Exception{
+		long units = 0;
+		long begin = System.nanoTime();
+		long end = begin+this.time*1000000L;
+		long now;
+		do{
+			units += b.run();
+			now = System.nanoTime();
+		}
+		while (now<end);
+		return units/((now-begin)/1e9);
+	}
+
+	private void report(Benchmark b, String session, double[] results, boolean first){
+		double mean = 0, min = Double.MAX_VALUE, max = 0;
+		for (double r : results){
+			mean += r;
+			min = Math.min(min, r);
+			max = Math.max(max, r);
+		}
+		mean = results.length>0 ? mean/results.length : 0;
+		double variance = 0;
+		for (double r : results)
+			variance += (r-mean)*(r-mean);
+		double stddev = results.length>1 ? Math.sqrt(variance/(results.length-1)) : 0;
+		System.out.println(b.getName()+" ["+session+"]: "+Math.round(mean)+" "+b.getUnit()+"/s (stddev "+
+				Math.round(stddev)+", min "+Math.round(min)+", max "+Math.round(max)+")");
+		this.json.append(first ? "\n" : ",\n");
+		this.json.append("    {\"name\": \""+b.getName()+"\", \"session\": \""+session+"\", \"unit\": \""+b.getUnit()+
+				"/s\", \"mean\": "+mean+", \"stddev\": "+stddev+", \"min\": "+(results.length>0 ? min : 0)+
+				", \"max\": "+max+", \"samples\": [");
+		for (int i=0; i<results.length; i++)
+			this.json.append((i>0 ? ", " : "")+results[i]);
+		this.json.append("]}");
+	}
+
+	private static void showHelp(){
+		System.out.println("Arguments: \n" +
+				"-session: \tnoop, db or noop,db (default noop)\n" +
+				"-db: \t\tthe properties file of the scratch db of the db session (required by db)\n" +
+				"-warmup: \tthe warmup iterations (default 3)\n" +
+				"-iterations: \tthe measured iterations (default 5)\n" +
+				"-time: \t\tthe time of an iteration in ms (default 1000)\n" +
+				"-records: \tthe records of the samples (default 20000)\n" +
+				"-out: \t\tthe results file (default bench-results.json)\n" +
+				"names: \t\tthe benchmarks to be run (handler, handlerStax, idUtility, preParser, descriptor)\n");
+	}
+}
@@ -0,0 +1,55 @@
+package dblp.social.bench;
+
+import java.io.File;
+
+import dblp.social.hibernate.ISodaHibernateSession;
+import dblp.social.loader.DescriptorLoader;
+import dblp.social.preparser.XMLPartsInfo;
+
+/**
+ * Loads a _partsInfo file with the DescriptorLoader (DescriptorHandler), as done when the part files pool is initialized.
+ *
+ * @author Staffiero
+ *
+ */
+public class DescriptorBenchmark implements Benchmark {
+	private int parts;
+	private File dir, descriptor;
+
+	/**
+	 * @param parts the number of part files listed in the descriptor
+	 */
+	public DescriptorBenchmark(int parts){
+		this.parts = parts;
+	}
+
+	public String getName(){
+		return "descriptor";
+	}
+
+	public String getUnit(){
+		return "parts";
+	}
+
+	public boolean usesSession(){
+		return false;
+	}
+
+	public void setUp(ISodaHibernateSession session) throws Exception{
+		this.dir = BenchData.tempDir("descriptor");
+		XMLPartsInfo info = new XMLPartsInfo(new File(this.dir, "bench.xml"), "XMLPartFiles", 100);
+		for (int i=1; i<=this.parts; i++)
+			info.appendPartFile(new File(this.dir, "XMLPartFiles/bench_part"+i+".xml").getAbsolutePath(), 1000+i, 1L<<24);
+		this.descriptor = new File(info.savePartFileInfo());
+	}
+
+	public long run() throws Exception{
+		DescriptorLoader loader = new DescriptorLoader(this.descriptor);
+		loader.parseXmlDescriptor();
+		return loader.getPartFiles().size();
+	}
+
+	public void tearDown(){
+		BenchData.delete(this.dir);
+	}
+}
@@ -0,0 +1,90 @@
+package dblp.social.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import dblp.social.hibernate.ISodaHibernateSession;
+import dblp.social.importer.DblpImporterHandler;
+import dblp.social.importer.DblpPullParser;
+import dblp.social.loader.PartFile;
+import dblp.social.loader.ProgressJournal;
+
+/**
+ * Parses an in-memory _part file with the DblpImporterHandler: measures the tag dispatch,
+ * the character accumulation and the entity building, plus the session calls.
+ * The part file is read by the SAX XMLReader (handler) or by the DblpPullParser (handlerStax).
+ * The progress journal is written at each checkpoint as in a real import, without syncing it.
+ *
+ * @author Staffiero
+ *
+ */
+public class HandlerBenchmark implements Benchmark {
+	private static final int STEP = 100;
+	private int records;
+	private boolean pull;
+	private byte[] sample;
+	private File dir, descriptor, part;
+	private ISodaHibernateSession session;
+	private XMLReader reader;
+
+	/**
+	 * @param records the number of records of the sample
+	 * @param pull true to read the sample with the DblpPullParser
+	 */
+	public HandlerBenchmark(int records, boolean pull){
+		this.records = records;
+		this.pull = pull;
+	}
+
+	public String getName(){
+		return this.pull ? "handlerStax" : "handler";
+	}
+
+	public String getUnit(){
+		return "records";
+	}
+
+	public boolean usesSession(){
+		return true;
+	}
+
+	public void setUp(ISodaHibernateSession session) throws Exception{
+		this.session = session;
+		if (!session.isOpen())
+			session.open();
+		this.sample = BenchData.partFile(this.records, STEP).getBytes("ISO-8859-1");
+		this.dir = BenchData.tempDir("handler");
+		this.part = new File(this.dir, "bench_part1.xml");
+		this.descriptor = new File(this.dir, "bench_partsInfo.xml");
+		FileWriter output = new FileWriter(this.descriptor);
+		output.write("<xml-parts-info/>\n");
+		output.close();
+		ProgressJournal.configure(Integer.MAX_VALUE, 0);
+		this.reader = XMLReaderFactory.createXMLReader();
+	}
+
+	public long run() throws Exception{
+		//each operation parses the sample from the beginning
+		ProgressJournal.delete(this.descriptor.getAbsolutePath());
+		PartFile pf = new PartFile("bench.xml", this.part.getAbsolutePath(), this.records/STEP, STEP);
+		pf.setPartFileDescriptor(this.descriptor.getAbsolutePath());
+		DblpImporterHandler handler = new DblpImporterHandler(this.session, pf);
+		if (this.pull)
+			new DblpPullParser(handler).parse(new ByteArrayInputStream(this.sample));
+		else{
+			this.reader.setContentHandler(handler);
+			this.reader.parse(new InputSource(new ByteArrayInputStream(this.sample)));
+		}
+		pf.closeJournal();
+		return this.records;
+	}
+
+	public void tearDown() throws Exception{
+		BenchData.delete(this.dir);
+	}
+}
@@ -0,0 +1,56 @@
+package dblp.social.bench;
+
+import dblp.social.hibernate.ISodaHibernateSession;
+import dblp.social.importer.DblpIdUtility;
+
+/**
+ * Creates the ids of inproceedings, articles and proceedings with DblpIdUtility,
+ * with and without the url, as done for each record of the import.
+ *
+ * @author Staffiero
+ *
+ */
+public class IdUtilityBenchmark implements Benchmark {
+	private static final int KEYS = 4096;
+	private String[] keys = new String[KEYS];
+	private String[] urls = new String[KEYS];
+	private String[] proceedingsKeys = new String[KEYS];
+	private String[] proceedingsUrls = new String[KEYS];
+
+	public String getName(){
+		return "idUtility";
+	}
+
+	public String getUnit(){
+		return "ids";
+	}
+
+	public boolean usesSession(){
+		return false;
+	}
+
+	public void setUp(ISodaHibernateSession session){
+		for (int i=0; i<KEYS; i++){
+			this.keys[i] = (i%2==0 ? "conf/c" : "journals/j")+(i/50)+"/Author"+i;
+			//a third of the records have no url, a third an empty one
+			this.urls[i] = i%3==0 ? null : (i%3==1 ? "" : "db/conf/c"+(i/50)+"/c"+(i/50)+"99.html#Author"+i);
+			this.proceedingsKeys[i] = "conf/c"+(i/50)+"/"+(1990+i%20);
+			this.proceedingsUrls[i] = i%2==0 ? null : "db/conf/c"+(i/50)+"/c"+(i/50)+(1990+i%20)+".html";
+		}
+	}
+
+	public long run(){
+		int h = 0;
+		for (int i=0; i<KEYS; i++){
+			String id = DblpIdUtility.createInProceedingsId(this.urls[i], this.keys[i], "99",
+					i%2==0 ? "InProceedings" : "Article");
+			h += id==null ? 0 : id.length();
+			h += DblpIdUtility.createProceedingsId(this.proceedingsUrls[i], this.proceedingsKeys[i]).length();
+		}
+		BenchmarkRunner.consume(h);
+		return 2*KEYS;
+	}
+
+	public void tearDown(){
+	}
+}
@@ -0,0 +1,173 @@
+package dblp.social.bench;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Query;
+
+import dblp.social.hibernate.ISodaHibernateSession;
+
+/**
+ * A session which does not access any database: the queries return no results and the saves are discarded,
+ * so the benchmarks measure the parsing code only. The number of calls is counted.
+ *
+ * @author Staffiero
+ *
+ */
+public class NoOpSession implements ISodaHibernateSession {
+	private boolean open = false;
+	private long calls = 0;
+	private Query query = (Query)Proxy.newProxyInstance(Query.class.getClassLoader(),
+			new Class<?>[]{Query.class}, new InvocationHandler(){
+				public Object invoke(Object proxy, Method method, Object[] args){
+					calls++;
+					Class<?> type = method.getReturnType();
+					if (type.isAssignableFrom(Query.class))
+						return proxy;
+					if (type==List.class)
+						return new ArrayList<Object>();
+					if (type==int.class)
+						return 0;
+					if (type==boolean.class)
+						return false;
+					return null;
+				}
+			});
+
+	/**
+	 * @return the number of calls to this session and to its queries
+	 */
+	public long getCalls(){
+		return this.calls;
+	}
+
+	public void open(){
+		this.open = true;
+	}
+
+	public boolean isOpen(){
+		return this.open;
+	}
+
+	public void close(){
+		this.open = false;
+	}
+
+	public void flush(){
+		this.calls++;
+	}
+
+	public void clear(){
+		this.calls++;
+	}
+
+	public void saveObject(Object saveableObject){
+		this.calls++;
+	}
+
+	public void saveOrUpdate(Object object){
+		this.calls++;
+	}
+
+	public void delete(Object object){
+		this.calls++;
+	}
+
+	@Deprecated
+	public List<?> query(String hqlQuery){
+		this.calls++;
+		return new ArrayList<Object>();
+	}
+
+	public <T> List<T> query(String hqlQuery, Class<T> type){
+		this.calls++;
+		return new ArrayList<T>();
+	}
+
+	public <T> T load(Class<T> clazz, Serializable id){
+		this.calls++;
+		try{
+			return clazz.getDeclaredConstructor().newInstance();
+		}
+		catch (NoSuchMethodException e){
+			return null;
+		}
+		catch (InstantiationException e){
+			return null;
+		}
+		catch (IllegalAccessException e){
+			return null;
+		}
+		catch (InvocationTargetException e){
+			return null;
+		}
+	}
+
+	public void startTransaction(){
+		this.calls++;
+	}
+
+	public void endTransaction(){
+		this.calls++;
+	}
+
+	public void rollbackTransaction(){
+		this.calls++;
+	}
+
+	public void createSchema(){
+	}
+
+	public void updateSchema(){
+	}
+
+	public void dropSchema(){
+	}
+
+	@Deprecated
+	public Object uniqueResult(String hqlQuery){
+		this.calls++;
+		return null;
+	}
+
+	public <T> T uniqueResult(String hqlQuery, Class<T> type){
+		this.calls++;
+		return null;
+	}
+
+	public void update(Object object){
+		this.calls++;
+	}
+
+	public Object merge(Object object){
+		this.calls++;
+		return object;
+	}
+
+	public <T> T get(Class<T> clazz, Serializable id){
+		this.calls++;
+		return null;
+	}
+
+	public Query getNamedQuery(String queryName){
+		this.calls++;
+		return this.query;
+	}
+
+	public void refresh(Object object){
+		this.calls++;
+	}
+
+	public void disconnect(){
+	}
+
+	public Query createSQLQuery(String query){
+		this.calls++;
+		return this.query;
+	}
+}
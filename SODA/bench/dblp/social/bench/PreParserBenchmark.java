@@ -0,0 +1,59 @@
+package dblp.social.bench;
+
+import java.io.File;
+
+import dblp.social.hibernate.ISodaHibernateSession;
+import dblp.social.preparser.PreParser;
+
+/**
+ * Splits a synthetic dblp xml file into _part files with the PreParser,
+ * the throughput is measured in bytes of the input file.
+ *
+ * @author Staffiero
+ *
+ */
+public class PreParserBenchmark implements Benchmark {
+	private static final int PARTS = 4;
+	private static final int STEP = 100;
+	private int records;
+	private File dir, input;
+
+	/**
+	 * @param records the number of records of the input file
+	 */
+	public PreParserBenchmark(int records){
+		this.records = records;
+	}
+
+	public String getName(){
+		return "preParser";
+	}
+
+	public String getUnit(){
+		return "bytes";
+	}
+
+	public boolean usesSession(){
+		return false;
+	}
+
+	public void setUp(ISodaHibernateSession session) throws Exception{
+		this.dir = BenchData.tempDir("preparser");
+		this.input = new File(this.dir, "bench.xml");
+		BenchData.writeDblpFile(this.input, this.records);
+	}
+
+	public long run() throws Exception{
+		new PreParser(this.input).preParse(PARTS, STEP);
+		//the part files and the descriptor are written again by the next operation
+		for (File f : this.dir.listFiles()){
+			if (!f.equals(this.input))
+				BenchData.delete(f);
+		}
+		return this.input.length();
+	}
+
+	public void tearDown(){
+		BenchData.delete(this.dir);
+	}
+}
@@ -0,0 +1,415 @@
+package dblp.social.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import dblp.social.importer.DblpDictionaries;
+import dblp.social.updater.DblpRecordScanner;
+import dblp.social.updater.DblpUpdater;
+import dblp.social.updater.RecordIdSet;
+
+/**
+ * This class checks that the parallel updater finds the same entries as the single thread one.
+ * It does not need a database: the record ids and the content hashes are read through a fake jdbc driver.
+ * The checks are:
+ * the split of an empty file, of a file with fewer records than ranges and of a sample file (the records of the ranges
+ * are the records of the whole file, in the same order);
+ * the load and the lookups of the record ids, including the ids with the same collation key;
+ * the update file, the changed keys and the deleted keys written with 1, 2 and 8 threads, with and without content hashes
+ * (the keys are written by the threads as they are found, so their order is not compared).
+ *
+ * The updater writes its files in the working folder, so the check has to be run from an empty folder, e.g.:
+ * javac -cp bin:lib/* -d bench-bin bench/dblp/social/bench/*.java
+ * mkdir check; cd check; java -cp ../bench-bin:../bin:../lib/* dblp.social.bench.UpdaterEquivalenceCheck
+ *
+ * @author Staffiero
+ *
+ */
+public class UpdaterEquivalenceCheck {
+	private static final String DB_URL = "fake:check";
+	private static final int[] THREADS = {1, 2, 8};
+	private static final int RECORDS = 500;
+	private static Logger logger = Logger.getLogger(UpdaterEquivalenceCheck.class);
+
+	private File dir;
+	private int checks = 0;
+	private ArrayList<String> failures = new ArrayList<String>();
+
+	public static void main(String[] args){
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.WARN);
+		if (new File(DblpUpdater.XML_UPDATER_FILE).exists() || new File(DblpUpdater.FINGERPRINTS_FOLDER).exists()){
+			System.out.println("The working folder holds the files of an updater, run the check from an empty folder");
+			System.exit(2);
+		}
+		UpdaterEquivalenceCheck check = new UpdaterEquivalenceCheck();
+		try{
+			check.dir = BenchData.tempDir("updater-check");
+			check.checkSplit();
+			check.checkRecordIds();
+			check.checkUpdater();
+		}
+		catch (Exception e){
+			logger.error("Exception while running the checks: "+e.getMessage());
+			e.printStackTrace();
+			check.failures.add(e.toString());
+		}
+		finally{
+			if (check.dir!=null)
+				BenchData.delete(check.dir);
+			new File(DblpUpdater.XML_UPDATER_FILE).delete();
+			BenchData.delete(new File(DblpUpdater.FINGERPRINTS_FOLDER));
+		}
+		for (String f : check.failures)
+			System.out.println("FAILED: "+f);
+		System.out.println(check.checks+" checks, "+check.failures.size()+" failed");
+		System.exit(check.failures.isEmpty() ? 0 : 1);
+	}
+
+	private void check(boolean condition, String description){
+		this.checks++;
+		if (!condition)
+			this.failures.add(description);
+	}
+
+	/**
+	 * The ranges of the split start at 0, are not empty and only the last one ends at the end of the file
+	 */
+	private void checkSplit() throws IOException{
+		File empty = new File(this.dir, "empty.xml");
+		new FileWriter(empty).close();
+		long[] offsets = DblpRecordScanner.split(empty, 4);
+		check(Arrays.equals(offsets, new long[]{0, 0}), "split of an empty file: "+Arrays.toString(offsets));
+
+		File noRecords = sample("norecords.xml", 0);
+		checkRanges(noRecords, 8);
+		check(DblpRecordScanner.split(noRecords, 8).length==2, "split of a file without records");
+
+		File two = sample("two.xml", 2);
+		offsets = DblpRecordScanner.split(two, 8);
+		//a range for each record, the first one may hold the header only
+		check(offsets.length<=4, "split of a file with fewer records than ranges: "+Arrays.toString(offsets));
+		checkRanges(two, 8);
+
+		File records = sample("records.xml", RECORDS);
+		for (int t : THREADS)
+			checkRanges(records, t);
+	}
+
+	private void checkRanges(File input, int ranges) throws IOException{
+		long[] offsets = DblpRecordScanner.split(input, ranges);
+		String name = input.getName()+" split into "+ranges+" ranges";
+		check(offsets[0]==0 && offsets[offsets.length-1]==input.length(), name+": bounds "+Arrays.toString(offsets));
+		for (int i=1; i<offsets.length-1; i++)
+			check(offsets[i]>offsets[i-1], name+": empty range "+i);
+		List<String> keys = new ArrayList<String>();
+		for (int i=0; i<offsets.length-1; i++)
+			keys.addAll(keys(input, offsets[i], offsets[i+1]));
+		check(keys.equals(keys(input, 0, input.length())), name+": records differ from the whole file");
+	}
+
+	/**
+	 * @return the keys of the records starting in the given range, in the file order
+	 */
+	private static List<String> keys(File input, long from, long to) throws IOException{
+		ArrayList<String> keys = new ArrayList<String>();
+		if (input.length()==0)
+			return keys;
+		DblpRecordScanner scanner = new DblpRecordScanner(input, from, to);
+		try{
+			if (from==0)
+				scanner.readHeader();
+			while (scanner.next())
+				keys.add(scanner.getKey());
+		}
+		finally{
+			scanner.close();
+		}
+		return keys;
+	}
+
+	/**
+	 * The ids are found by their collation key, two stored ids with the same collation key are looked up in the db
+	 */
+	private void checkRecordIds() throws SQLException{
+		FakeDriver.reset();
+		FakeDriver.ids.addAll(Arrays.asList("conf/a/1", "journals/b/2", "Conf/C/3", "conf/c/3 "));
+		RecordIdSet ids = new RecordIdSet();
+		ids.load("jdbc:"+DB_URL, "user", "password");
+		//each table query returns all the ids
+		check(ids.size()==6*FakeDriver.ids.size(), "record ids loaded: "+ids.size());
+		check(ids.count(RecordIdSet.ARTICLE, "conf/a/1")==1, "stored id found");
+		check(ids.count(RecordIdSet.BOOK, "CONF/A/1  ")==1, "stored id found by its collation key");
+		check(ids.count(RecordIdSet.ARTICLE, "conf/a/9")==0, "new id not found");
+		check(ids.count(RecordIdSet.ARTICLE, "conf/c/3")==-1, "ids with the same collation key are ambiguous");
+
+		Connection con = DriverManager.getConnection("jdbc:"+DB_URL, "user", "password");
+		try{
+			PreparedStatement statement = con.prepareStatement("SELECT COUNT(*) FROM Article WHERE publicationId=?");
+			int queries = FakeDriver.countQueries;
+			check(ids.count(RecordIdSet.ARTICLE, "conf/c/3", statement)==2 && FakeDriver.countQueries==queries+1,
+					"ambiguous id looked up in the db");
+			check(ids.count(RecordIdSet.ARTICLE, "conf/a/1", statement)==1 && FakeDriver.countQueries==queries+1,
+					"stored id not looked up in the db");
+		}
+		finally{
+			con.close();
+		}
+	}
+
+	/**
+	 * The update file and the changed and deleted keys do not depend on the number of threads
+	 */
+	private void checkUpdater() throws IOException{
+		String[] samples = {"norecords.xml", "two.xml", "records.xml"};
+		for (String s : samples){
+			File input = new File(this.dir, s);
+			List<String> keys = keys(input, 0, input.length());
+
+			//without content hashes only the records whose id is not stored are new
+			FakeDriver.reset();
+			for (int i=0; i<keys.size(); i+=3)
+				FakeDriver.ids.add(keys.get(i));
+			compareThreads(input, "ids");
+
+			//with content hashes the changed and the deleted records are found too
+			FakeDriver.reset();
+			ArrayList<Long> hashes = contentHashes(input);
+			for (int i=0; i<keys.size(); i++){
+				if (i%3==0)
+					continue;
+				FakeDriver.fingerprintKeys.add(keys.get(i));
+				FakeDriver.fingerprintHashes.add(i%2==0 ? hashes.get(i) : Long.valueOf(hashes.get(i)+1));
+			}
+			FakeDriver.fingerprintKeys.add("conf/deleted/1");
+			FakeDriver.fingerprintHashes.add(Long.valueOf(1));
+			compareThreads(input, "content hashes");
+		}
+	}
+
+	private void compareThreads(File input, String mode) throws IOException{
+		String[] expected = null;
+		for (int t : THREADS){
+			DblpUpdater updater = new DblpUpdater(DB_URL, "", FakeDriver.class.getName(), "user", "password");
+			String path = updater.writeUpdateFile(input.getAbsolutePath(), t);
+			String[] output = {read(new File(path)), sortedLines(read(new File(DblpUpdater.CHANGED_KEYS_FILE))),
+					sortedLines(read(new File(DblpUpdater.DELETED_KEYS_FILE)))};
+			String name = input.getName()+" ("+mode+") with "+t+" threads";
+			check(output[0].startsWith("<?xml") && output[0].trim().endsWith("</dblp>"), name+": incomplete update file");
+			check(FakeDriver.fingerprintKeys.isEmpty() || output[2].equals("conf/deleted/1\n"), name+": deleted keys "+output[2]);
+			if (expected==null)
+				expected = output;
+			else{
+				check(expected[0].equals(output[0]), name+": update file differs from 1 thread");
+				check(expected[1].equals(output[1]), name+": changed keys differ from 1 thread");
+				check(expected[2].equals(output[2]), name+": deleted keys differ from 1 thread");
+			}
+			new File(DblpUpdater.DELETED_KEYS_FILE).delete();
+		}
+	}
+
+	private static ArrayList<Long> contentHashes(File input) throws IOException{
+		ArrayList<Long> hashes = new ArrayList<Long>();
+		DblpRecordScanner scanner = new DblpRecordScanner(input);
+		try{
+			scanner.readHeader();
+			while (scanner.next())
+				hashes.add(Long.valueOf(scanner.getContentHash()));
+		}
+		finally{
+			scanner.close();
+		}
+		return hashes;
+	}
+
+	private File sample(String name, int records) throws IOException{
+		File file = new File(this.dir, name);
+		BenchData.writeDblpFile(file, records);
+		return file;
+	}
+
+	private static String sortedLines(String text){
+		ArrayList<String> lines = new ArrayList<String>(Arrays.asList(text.split("\n")));
+		Collections.sort(lines);
+		StringBuffer buffer = new StringBuffer();
+		for (String l : lines){
+			if (l.length()>0)
+				buffer.append(l+"\n");
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * @return the file content, empty if the file does not exist
+	 */
+	private static String read(File file) throws IOException{
+		StringBuffer buffer = new StringBuffer();
+		if (!file.exists())
+			return "";
+		BufferedReader input = new BufferedReader(new FileReader(file));
+		try{
+			String text;
+			while ((text = input.readLine()) != null)
+				buffer.append(text+"\n");
+		}
+		finally{
+			input.close();
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * A jdbc driver reading the tables from memory (urls starting with jdbc:fake:).
+	 * The queries of the RecordFingerprint table return the fingerprint keys and hashes, the other queries
+	 * return the ids; the prepared statements count the ids with the collation key of their parameter.
+	 */
+	public static class FakeDriver implements Driver {
+		private static final String PREFIX = "jdbc:fake:";
+		private static List<String> ids = new ArrayList<String>();
+		private static List<String> fingerprintKeys = new ArrayList<String>();
+		private static List<Long> fingerprintHashes = new ArrayList<Long>();
+		private static volatile int countQueries = 0;
+
+		static{
+			try{
+				DriverManager.registerDriver(new FakeDriver());
+			}
+			catch (SQLException e){
+				throw new RuntimeException(e);
+			}
+		}
+
+		private static synchronized void reset(){
+			ids = new ArrayList<String>();
+			fingerprintKeys = new ArrayList<String>();
+			fingerprintHashes = new ArrayList<Long>();
+		}
+
+		public Connection connect(String url, Properties info){
+			if (!acceptsURL(url))
+				return null;
+			return proxy(Connection.class, new InvocationHandler(){
+				public Object invoke(Object proxy, Method method, Object[] args){
+					if (method.getName().equals("createStatement"))
+						return statement();
+					if (method.getName().equals("prepareStatement"))
+						return preparedStatement();
+					return defaultValue(method);
+				}
+			});
+		}
+
+		private static Statement statement(){
+			return proxy(Statement.class, new InvocationHandler(){
+				public Object invoke(Object proxy, Method method, Object[] args){
+					if (method.getName().equals("executeQuery")){
+						if (args[0].toString().contains("RecordFingerprint"))
+							return resultSet(fingerprintKeys, fingerprintHashes);
+						return resultSet(ids, null);
+					}
+					return defaultValue(method);
+				}
+			});
+		}
+
+		private static PreparedStatement preparedStatement(){
+			final String[] parameter = new String[1];
+			return proxy(PreparedStatement.class, new InvocationHandler(){
+				public Object invoke(Object proxy, Method method, Object[] args){
+					if (method.getName().equals("setString"))
+						parameter[0] = args[1].toString();
+					else if (method.getName().equals("executeQuery")){
+						countQueries++;
+						int count = 0;
+						String key = DblpDictionaries.collationKey(parameter[0]);
+						for (String id : ids){
+							if (DblpDictionaries.collationKey(id).equals(key))
+								count++;
+						}
+						return resultSet(Arrays.asList(String.valueOf(count)), null);
+					}
+					return defaultValue(method);
+				}
+			});
+		}
+
+		private static ResultSet resultSet(final List<String> strings, final List<Long> longs){
+			final int[] row = {-1};
+			return proxy(ResultSet.class, new InvocationHandler(){
+				public Object invoke(Object proxy, Method method, Object[] args){
+					if (method.getName().equals("next"))
+						return ++row[0]<strings.size();
+					if (method.getName().equals("getString"))
+						return strings.get(row[0]);
+					if (method.getName().equals("getInt"))
+						return Integer.parseInt(strings.get(row[0]));
+					if (method.getName().equals("getLong"))
+						return longs.get(row[0]);
+					return defaultValue(method);
+				}
+			});
+		}
+
+		private static <T> T proxy(Class<T> type, InvocationHandler handler){
+			return type.cast(Proxy.newProxyInstance(FakeDriver.class.getClassLoader(), new Class<?>[]{type}, handler));
+		}
+
+		private static Object defaultValue(Method method){
+			Class<?> type = method.getReturnType();
+			if (type==boolean.class)
+				return false;
+			if (type==int.class)
+				return 0;
+			if (type==long.class)
+				return 0L;
+			return null;
+		}
+
+		public boolean acceptsURL(String url){
+			return url.startsWith(PREFIX);
+		}
+
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info){
+			return new DriverPropertyInfo[0];
+		}
+
+		public int getMajorVersion(){
+			return 1;
+		}
+
+		public int getMinorVersion(){
+			return 0;
+		}
+
+		public boolean jdbcCompliant(){
+			return false;
+		}
+
+		public java.util.logging.Logger getParentLogger(){
+			return java.util.logging.Logger.getLogger(FakeDriver.class.getName());
+		}
+	}
+}
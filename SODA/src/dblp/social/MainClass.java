@@ -36,6 +36,7 @@ public class MainClass {
 				}
 				//runs a method which clears all info stored in the db
 				Runner.runCleaner();
+				Runner.shutdown();
 				return;
 			}
 			else{
@@ -57,6 +58,8 @@ public class MainClass {
 		boolean multithread=true;
 		boolean clearAll=false;
 		boolean update=false;
+		boolean bulk=false;
+		boolean twoPass=false;
 		if(args.length>=2){
 			for (int i=2; i<args.length;i++){
 				if (args[i].equalsIgnoreCase("-m")){
@@ -71,6 +74,30 @@ public class MainClass {
 				else if(args[i].equalsIgnoreCase("--update")){
 					update=true;
 				}
+				else if(args[i].equalsIgnoreCase("--mapped")){
+					//splits the source using the memory-mapped parallel pre parser
+					Runner.setMappedPreParser(true);
+				}
+				else if(args[i].equalsIgnoreCase("--virtual")){
+					//imports directly from byte ranges of the source file
+					Runner.setVirtualParts(true);
+				}
+				else if(args[i].equalsIgnoreCase("--bulk")){
+					//writes staging files and loads them with LOAD DATA
+					bulk=true;
+				}
+				else if(args[i].equalsIgnoreCase("--two-pass")){
+					//resolves persons and venues before importing the publications
+					twoPass=true;
+				}
+				else if(args[i].equalsIgnoreCase("--stax")){
+					//reads each record as a whole with the pull parser
+					Runner.setPullParser(true);
+				}
+				else if(args[i].equalsIgnoreCase("--pipeline")){
+					//parses the _part files while the pre parser is still writing them
+					Runner.setPipelined(true);
+				}
 				else{
 					showHelp();
 					return;
@@ -83,12 +110,26 @@ public class MainClass {
 						"To run the updater use:\t"+JAR_NAME+" -f filename --update [-m/-s]\n");
 				return;
 			}
+			if (bulk && update){
+				System.out.println("The bulk importer cannot be used to update the database.\n" +
+						"To run the updater use:\t"+JAR_NAME+" -f filename --update [-m/-s]\n");
+				return;
+			}
+			if (twoPass && (update || bulk)){
+				System.out.println("The two-pass import can only be used by the importer (-m/-s).\n");
+				return;
+			}
+			Runner.setTwoPass(twoPass);
 			if (clearAll){
 				//runs a method which clears all info stored in the db
 				Runner.runCleaner();
 			}
 			if (!update){
-				if (multithread){
+				if (bulk){
+					//runs the bulk importer, the db has to be empty
+					Runner.runImporterBulk(fileXML);
+				}
+				else if (multithread){
 					//runs the importer in multi-thread mode
 					Runner.runImporterMultiThread(fileXML);
 				}
@@ -111,6 +152,8 @@ public class MainClass {
 			//runs the importer in single-thread mode (default)
 			Runner.runImporterMultiThread(fileXML);
 		}
+		//closes the db connections kept by the session factories
+		Runner.shutdown();
 		
 		
 		
@@ -131,7 +174,14 @@ public class MainClass {
 			"\t-c/-C\t\tclear all the stored info before running the importer, " +
 			"\n\t\t\tnote that everything stored in the database will be lost.\n" +
 			"\t--update\tUpdates the database with the given file (to use if the " +
-			"XML file contains entries already inserted in the database)" +
+			"XML file contains entries already inserted in the database)\n" +
+			"\t--mapped\tsplit the source file using a memory-mapped parallel pre parser.\n" +
+			"\t--pipeline\tin multi-thread mode import the _part files while the source is still being split.\n" +
+			"\t--virtual\timport directly from byte ranges of the source file, no _part file is written.\n" +
+			"\t--bulk\t\timport into an empty database through staging files loaded with LOAD DATA.\n" +
+			"\t--two-pass\tload the persons and the venues first, then import the publications " +
+			"\n\t\t\twithout looking them up (disables --pipeline).\n" +
+			"\t--stax\t\timport the _part files with the StAX pull parser instead of the SAX parser." +
 			"\n"+
 			"\nIt is also possible to call "+JAR_NAME+" [-c|-h|--help]\n" +
 					"\t-c: will delete all stored informations\n" +
@@ -109,7 +109,7 @@ public interface ISodaHibernateSession {
 	 * @return the object.
 	 * @throws SodaHibernateException if session is not open.
 	 */
-	public <T>T load(Class<T> clazz, Long id) throws SodaHibernateException;
+	public <T>T load(Class<T> clazz, Serializable id) throws SodaHibernateException;
 	
 	/**
 	 * Starts a transaction. Only one transaction per session can be active at any
@@ -0,0 +1,134 @@
+package dblp.social.hibernate;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import org.apache.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AnnotationConfiguration;
+
+/**
+ * This class keeps one Hibernate configuration and one SessionFactory for each set of connection settings,
+ * shared by all the SodaHibernateSessions of the process.
+ * Building a SessionFactory reads the mapping of every annotated class, so it is done once:
+ * opening a session only takes a connection from the factory connection pool.
+ *
+ * The factory uses the connection pool built in Hibernate: it keeps up to pool size idle connections (see setPoolSize)
+ * but does not bound the open ones, a new connection is opened whenever none is idle.
+ * The open connections are bounded by the sessions, i.e. by the max sessions of the SessionsPool.
+ * The MySQL driver caches the prepared statements of each connection.
+ *
+ * @author Staffiero
+ *
+ */
+public class SessionFactoryCache {
+	private static final int DEFAULT_POOL_SIZE = 10;
+	private static Logger logger = Logger.getLogger(SessionFactoryCache.class);
+
+	private static int poolSize = DEFAULT_POOL_SIZE;
+	private static HashMap<String, AnnotationConfiguration> configurations = new HashMap<String, AnnotationConfiguration>();
+	private static IdentityHashMap<AnnotationConfiguration, SessionFactory> factories =
+		new IdentityHashMap<AnnotationConfiguration, SessionFactory>();
+
+	/**
+	 * Sets the max number of idle connections kept by each SessionFactory,
+	 * it affects the factories built after the call.
+	 * @param size the max number of pooled connections
+	 */
+	public static synchronized void setPoolSize(int size){
+		poolSize = Math.max(1, size);
+	}
+
+	/**
+	 * Raises the max number of idle connections kept by each SessionFactory to the given size,
+	 * it affects the factories built after the call.
+	 * @param size the min number of pooled connections
+	 */
+	public static synchronized void ensurePoolSize(int size){
+		poolSize = Math.max(poolSize, size);
+	}
+
+	/**
+	 * Returns the shared configuration for the given connection settings and annotated classes,
+	 * it is created by the first call.
+	 *
+	 * @param dbUrl database host (e.g. mysql://localhost:3306/evolizer_test)
+	 * @param dbDialect database dialect (e.g. org.hibernate.dialect.MySQLDialect)
+	 * @param dbDriverName jdbc-compliant database driver (e.g. com.mysql.jdbc.Driver)
+	 * @param dbUser database username
+	 * @param dbPasswd database password for dbUser
+	 * @param annotatedClasses the mapped classes
+	 * @return the configuration
+	 */
+	public static synchronized AnnotationConfiguration getConfiguration(String dbUrl, String dbDialect,
+			String dbDriverName, String dbUser, String dbPasswd, Class<?>[] annotatedClasses){
+		StringBuffer key = new StringBuffer();
+		key.append(dbUrl).append('|').append(dbDialect).append('|').append(dbDriverName)
+			.append('|').append(dbUser).append('|').append(dbPasswd);
+		for (Class<?> c : annotatedClasses)
+			key.append('|').append(c.getName());
+		AnnotationConfiguration config = configurations.get(key.toString());
+		if (config!=null)
+			return config;
+
+		config = new AnnotationConfiguration();
+		config.setProperty("hibernate.connection.url", "jdbc:" + dbUrl);
+		config.setProperty("hibernate.connection.username", dbUser);
+		config.setProperty("hibernate.connection.password", dbPasswd);
+		config.setProperty("hibernate.dialect", dbDialect);
+		config.setProperty("hibernate.connection.driver_class", dbDriverName);
+		//passed to the driver: each connection caches its prepared statements
+		config.setProperty("hibernate.connection.cachePrepStmts", "true");
+		config.setProperty("hibernate.connection.prepStmtCacheSize", "250");
+		config.setProperty("hibernate.connection.prepStmtCacheSqlLimit", "2048");
+
+		config.setProperty("hibernate.jdbc.batch_size", "25");
+		//groups the statements by entity, so the batched inserts of a multi-record transaction fill the jdbc batches
+		config.setProperty("hibernate.order_inserts", "true");
+		config.setProperty("hibernate.order_updates", "true");
+		config.setProperty("hibernate.cache.use_second_level_cache", "false");
+
+//		config.setProperty("hibernate.show_sql", "true");
+
+		//Here I add the specific annotated classes
+		for (Class<?> annotatedClass : annotatedClasses) {
+			config.addAnnotatedClass(annotatedClass);
+		}
+		configurations.put(key.toString(), config);
+		return config;
+	}
+
+	/**
+	 * Returns the SessionFactory of a configuration returned by getConfiguration, it is built by the first call.
+	 * @param config the configuration
+	 * @return the shared SessionFactory
+	 */
+	public static synchronized SessionFactory getSessionFactory(AnnotationConfiguration config){
+		SessionFactory factory = factories.get(config);
+		if (factory==null){
+			long begin = System.currentTimeMillis();
+			//the idle connections are kept by the factory
+			config.setProperty("hibernate.connection.pool_size", String.valueOf(poolSize));
+			factory = config.buildSessionFactory();
+			factories.put(config, factory);
+			logger.debug("SessionFactory built in "+(System.currentTimeMillis()-begin)+" ms");
+		}
+		return factory;
+	}
+
+	/**
+	 * Closes every SessionFactory and its pooled connections.
+	 * The sessions opened after this call build new factories.
+	 */
+	public static synchronized void close(){
+		for (SessionFactory factory : factories.values()){
+			try{
+				factory.close();
+			}
+			catch (Exception e){
+				logger.error("Error while closing a SessionFactory: "+e.getMessage());
+			}
+		}
+		factories.clear();
+	}
+}
@@ -0,0 +1,48 @@
+package dblp.social.hibernate;
+
+/**
+ * This class defines a session taken from a SessionsPool: the session is given back to the pool
+ * by release, which has to be called in a finally block. Releasing a lease more than once has no effect.
+ *
+ * @author Staffiero
+ *
+ */
+public class SessionLease {
+	private SessionsPool pool;
+	private ISodaHibernateSession session;
+
+	/**
+	 * Constructor called by the pool
+	 * @param pool the pool the session has been taken from
+	 * @param session the leased session
+	 */
+	SessionLease(SessionsPool pool, ISodaHibernateSession session){
+		this.pool = pool;
+		this.session = session;
+	}
+
+	/**
+	 * Getter
+	 * @return the leased session, null if the lease has been released
+	 */
+	public synchronized ISodaHibernateSession getSession(){
+		return this.session;
+	}
+
+	/**
+	 * @return true if the session has not been given back yet
+	 */
+	public synchronized boolean isHeld(){
+		return this.session!=null;
+	}
+
+	/**
+	 * Gives the session back to the pool
+	 */
+	public synchronized void release(){
+		if (this.session==null)
+			return;
+		this.pool.sessionBackToPool(this.session);
+		this.session = null;
+	}
+}
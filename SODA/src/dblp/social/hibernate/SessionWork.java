@@ -0,0 +1,22 @@
+package dblp.social.hibernate;
+
+import dblp.social.exceptions.SodaHibernateException;
+
+/**
+ * A unit of work run by SessionsPool.execute with a session of the pool,
+ * the session is given back to the pool when the work ends.
+ *
+ * @author Staffiero
+ *
+ * @param <T> the result of the work
+ */
+public interface SessionWork<T> {
+
+	/**
+	 * Runs the work
+	 * @param session the session taken from the pool
+	 * @return the result of the work
+	 * @throws SodaHibernateException
+	 */
+	public T run(ISodaHibernateSession session) throws SodaHibernateException;
+}
@@ -1,64 +1,94 @@
 package dblp.social.hibernate;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
 
 import dblp.social.exceptions.PoolException;
 import dblp.social.exceptions.SodaHibernateException;
 /**
  * This class implements a pool of SodaHibernateSessions.
- * If more than one session is needed it is useful to have a pool containing a fixed number of sessions.
- * This because each session stores all the mapping informations, therefore, in order to avoid memory leaks, it is necessary to control the sessions proliferation.
- * 
+ * If more than one session is needed it is useful to have a pool containing a bounded number of sessions.
+ * This because each session holds a db connection, therefore it is necessary to control the sessions proliferation.
+ *
+ * The pool starts with minSessions sessions and grows up to maxSessions when every session is in use.
+ * A session is acquired with getSession (or with a SessionLease, or running a SessionWork with execute):
+ * when no session is available the caller waits until a session is given back or the acquire timeout expires.
+ * An idle open session is validated with a trivial query before being handed out, a broken session is replaced.
+ * The pool counts the acquisitions, the waits and the sessions in use (see getStats).
+ *
  * @author Staffiero
  *
  */
 
 public class SessionsPool {
+	//default max time (ms) a caller waits for a session, 0 to wait until a session is given back
+	public static final long DEFAULT_ACQUIRE_TIMEOUT = 0;
+	//sessions idle for longer than this (ms) are validated before being handed out
+	public static final long DEFAULT_VALIDATION_INTERVAL = 30000;
+	private static final String VALIDATION_QUERY = "SELECT 1";
+	private static Logger logger = Logger.getLogger(SessionsPool.class);
 	private static SessionsPool pool=null;
-	private ArrayList<ISodaHibernateSession> sessions;
-	private int availableSessions, sessionNumber;
+
+	private ArrayList<ISodaHibernateSession> idle = new ArrayList<ISodaHibernateSession>();
+	//session -> time (ms) it has been given back
+	private HashMap<ISodaHibernateSession, Long> idleSince = new HashMap<ISodaHibernateSession, Long>();
+	private ArrayList<ISodaHibernateSession> inUse = new ArrayList<ISodaHibernateSession>();
+	private int minSessions, maxSessions;
 	private String dbUrl, dbDialect, dbDriverName, dbUser, dbPasswd;
-	private boolean accessAllowed;
-	
+	private long acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
+	private long validationInterval = DEFAULT_VALIDATION_INTERVAL;
+	private boolean closed = false;
+
+	//statistics
+	private long acquisitions = 0, waits = 0, timeouts = 0, replaced = 0;
+	private long waitNanos = 0, maxWaitNanos = 0;
+	private int peakInUse = 0;
+	private long createdAt, lastChange;
+	//sum of (sessions in use * ms)
+	private double inUseMillis = 0;
+
 	/**
-	 * A private constructor. 
-	 * Other classes should not access this constructor, use the static method initialize instead. 
-	 * 
+	 * A private constructor.
+	 * Other classes should not access this constructor, use the static method initialize instead.
+	 *
 	 * @param dbUrl
 	 * @param dbDialect
 	 * @param dbDriverName
 	 * @param dbUser
 	 * @param dbPasswd
-	 * @param sessionNumber
+	 * @param minSessions
+	 * @param maxSessions
 	 * @throws SodaHibernateException
 	 */
-	private SessionsPool(String dbUrl, String dbDialect, String dbDriverName, 
-			String dbUser, String dbPasswd, int sessionNumber) 
+	private SessionsPool(String dbUrl, String dbDialect, String dbDriverName,
+			String dbUser, String dbPasswd, int minSessions, int maxSessions)
 				throws SodaHibernateException{
 		this.dbUrl = dbUrl;
 		this.dbDialect = dbDialect;
 		this.dbDriverName = dbDriverName;
 		this.dbUser = dbUser;
 		this.dbPasswd = dbPasswd;
-		this.sessionNumber = sessionNumber;
-		this.sessions = new ArrayList<ISodaHibernateSession>();
-		this.accessAllowed = true;
-
-		for(int i=0; i<this.sessionNumber;i++){
-			ISodaHibernateSession session = 
-				SodaHibernateSessionFactory.getSession(this.dbUrl, this.dbDialect,
-						this.dbDriverName, this.dbUser, this.dbPasswd, 
-						new SodaModelProvider());
-			sessions.add(session);
+		this.maxSessions = Math.max(1, maxSessions);
+		this.minSessions = Math.max(0, Math.min(minSessions, this.maxSessions));
+		//each session of the pool may hold a connection
+		SessionFactoryCache.ensurePoolSize(this.maxSessions);
+
+		for(int i=0; i<this.minSessions;i++){
+			ISodaHibernateSession session = createSession();
+			this.idle.add(session);
+			this.idleSince.put(session, System.currentTimeMillis());
 		}
-		this.availableSessions = this.sessionNumber;
+		this.createdAt = System.currentTimeMillis();
+		this.lastChange = this.createdAt;
 	}
-	
+
 	/**
-	 * Static method to initialize the sessions pool.
+	 * Static method to initialize a sessions pool of a fixed size.
 	 * Only one session pool is allowed: if this method has already been called a second call will not affect the sessions pool.
 	 * To create a new pool first you have close the current one with the closePool method.
-	 * 
+	 *
 	 * @param dbUrl the database url
 	 * @param dbDialect the database dialect
 	 * @param dbDriverName the driver name
@@ -67,86 +97,292 @@ public class SessionsPool {
 	 * @param sessionNumber the number of SodaHibernateSessions contained in the pool
 	 * @throws SodaHibernateException
 	 */
-	public static void initialize(String dbUrl, String dbDialect, String dbDriverName, 
-			String dbUser, String dbPasswd, int sessionNumber) 
+	public static void initialize(String dbUrl, String dbDialect, String dbDriverName,
+			String dbUser, String dbPasswd, int sessionNumber)
+				throws SodaHibernateException{
+		initialize(dbUrl, dbDialect, dbDriverName, dbUser, dbPasswd, sessionNumber, sessionNumber);
+	}
+
+	/**
+	 * Static method to initialize a sessions pool which grows under load.
+	 * Only one session pool is allowed: if this method has already been called a second call will not affect the sessions pool.
+	 *
+	 * @param dbUrl the database url
+	 * @param dbDialect the database dialect
+	 * @param dbDriverName the driver name
+	 * @param dbUser the database username
+	 * @param dbPasswd the password for the given username
+	 * @param minSessions the number of sessions created by the initialization
+	 * @param maxSessions the max number of sessions
+	 * @throws SodaHibernateException
+	 */
+	public static synchronized void initialize(String dbUrl, String dbDialect, String dbDriverName,
+			String dbUser, String dbPasswd, int minSessions, int maxSessions)
 				throws SodaHibernateException{
 		if (pool==null)
-			pool = new SessionsPool(dbUrl, dbDialect, dbDriverName, dbUser, 
-					dbPasswd, sessionNumber); 
+			pool = new SessionsPool(dbUrl, dbDialect, dbDriverName, dbUser,
+					dbPasswd, minSessions, maxSessions);
 	}
-	
+
 	/**
 	 * Static method to get the existing sessions pool.
-	 * 
+	 *
 	 * @return the current session pool.
 	 * @throws PoolException if the pool has not been initialized yet.
 	 */
-	public static SessionsPool getInstance() throws PoolException{
+	public static synchronized SessionsPool getInstance() throws PoolException{
 		if (pool!=null)
 			return pool;
-		else 
+		else
 			throw new PoolException("Pool not initialized");
 	}
-	
+
+	private ISodaHibernateSession createSession() throws SodaHibernateException{
+		return SodaHibernateSessionFactory.getSession(this.dbUrl, this.dbDialect,
+				this.dbDriverName, this.dbUser, this.dbPasswd,
+				new SodaModelProvider());
+	}
+
 	/**
-	 * Returns a session contained in the pool.
+	 * Returns a session contained in the pool, waiting at most the acquire timeout (see setAcquireTimeout).
 	 * After this call the session is removed from the pool.
 	 * The class which uses this session has to give it back to the pool when finished.
-	 * 
+	 *
 	 * @return a valid ISodaHibernateSession
+	 * @throws PoolException if the timeout expires or the pool has been closed
 	 */
-	public synchronized ISodaHibernateSession getSession(){
-		while (!this.accessAllowed){
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+	public ISodaHibernateSession getSession() throws PoolException{
+		return getSession(this.acquireTimeout);
+	}
+
+	/**
+	 * Returns a session contained in the pool, creating a new one if every session is in use and the pool
+	 * has less than maxSessions sessions, waiting for a session to be given back otherwise.
+	 * The class which uses this session has to give it back to the pool when finished.
+	 *
+	 * @param timeoutMillis the max time to wait, 0 to wait until a session is given back
+	 * @return a valid ISodaHibernateSession
+	 * @throws PoolException if the timeout expires, the thread is interrupted or the pool has been closed
+	 */
+	public synchronized ISodaHibernateSession getSession(long timeoutMillis) throws PoolException{
+		long begin = System.nanoTime();
+		long deadline = System.currentTimeMillis()+timeoutMillis;
+		boolean waited = false;
+		while (true){
+			if (this.closed)
+				throw new PoolException("Pool closed");
+			ISodaHibernateSession session = null;
+			if (!this.idle.isEmpty()){
+				session = this.idle.remove(this.idle.size()-1);
+				session = validate(session, this.idleSince.remove(session));
+			}
+			else if (this.inUse.size() < this.maxSessions){
+				try{
+					session = createSession();
+				}
+				catch (SodaHibernateException e){
+					throw new PoolException("Could not create a session: "+e.getMessage());
+				}
+				logger.debug("Sessions pool grown to "+(this.inUse.size()+1)+" sessions");
+			}
+			if (session!=null){
+				updateUtilization();
+				this.inUse.add(session);
+				this.peakInUse = Math.max(this.peakInUse, this.inUse.size());
+				this.acquisitions++;
+				if (waited){
+					long nanos = System.nanoTime()-begin;
+					this.waits++;
+					this.waitNanos += nanos;
+					this.maxWaitNanos = Math.max(this.maxWaitNanos, nanos);
+				}
+				return session;
+			}
+			long left = deadline-System.currentTimeMillis();
+			if (timeoutMillis>0 && left<=0){
+				this.timeouts++;
+				throw new PoolException("Timeout waiting for a session: "+this.inUse.size()+" sessions in use");
+			}
+			waited = true;
+			try{
+				wait(timeoutMillis>0 ? left : 0);
+			}
+			catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new PoolException("Interrupted while waiting for a session");
 			}
 		}
-		this.accessAllowed=false;
-		if (availableSessions>0){
-			ISodaHibernateSession session = sessions.get(0);
-			sessions.remove(session);
-			this.availableSessions=this.sessions.size();
-			this.accessAllowed=true;
+	}
+
+	/**
+	 * Validates an idle session which is open and has not been used for longer than the validation interval.
+	 * @return the session, or a new session if the given one is broken
+	 */
+	private ISodaHibernateSession validate(ISodaHibernateSession session, Long since) throws PoolException{
+		if (!session.isOpen() || since==null || System.currentTimeMillis()-since < this.validationInterval)
+			return session;
+		try{
+			session.createSQLQuery(VALIDATION_QUERY).uniqueResult();
 			return session;
 		}
-		else{
-			this.accessAllowed=true;
-			return null;
+		catch (Exception e){
+			logger.warn("Replacing a broken session: "+e.getMessage());
+			this.replaced++;
+			try{
+				session.close();
+			}
+			catch (Exception ce){
+				logger.debug("Error while closing a broken session: "+ce.getMessage());
+			}
+			try{
+				return createSession();
+			}
+			catch (SodaHibernateException se){
+				throw new PoolException("Could not create a session: "+se.getMessage());
+			}
 		}
 	}
-	
+
 	/**
-	 * Sends back a session to the pool.
-	 * @param session a SodaHibernateSession previously taken from the pool. 
+	 * Sends back a session to the pool and wakes a waiting caller.
+	 * @param session a SodaHibernateSession previously taken from the pool.
 	 */
 	public synchronized void sessionBackToPool(ISodaHibernateSession session){
-		while (!this.accessAllowed){
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+		if (session==null || !this.inUse.remove(session)){
+			logger.warn("A session not taken from the pool has been given back");
+			return;
+		}
+		updateUtilization();
+		if (this.closed){
+			closeSession(session);
+			return;
 		}
-		this.accessAllowed=false;
-		this.sessions.add(session);
-		this.availableSessions=this.sessions.size();
-		this.accessAllowed=true;
+		this.idle.add(session);
+		this.idleSince.put(session, System.currentTimeMillis());
+		notifyAll();
 	}
-	
+
+	/**
+	 * Acquires a session wrapped in a lease, waiting at most the acquire timeout.
+	 * @return the lease, to be released when finished
+	 * @throws PoolException if the timeout expires or the pool has been closed
+	 */
+	public SessionLease lease() throws PoolException{
+		return new SessionLease(this, getSession());
+	}
+
+	/**
+	 * Acquires a session wrapped in a lease
+	 * @param timeoutMillis the max time to wait, 0 to wait until a session is given back
+	 * @return the lease, to be released when finished
+	 * @throws PoolException if the timeout expires or the pool has been closed
+	 */
+	public SessionLease lease(long timeoutMillis) throws PoolException{
+		return new SessionLease(this, getSession(timeoutMillis));
+	}
+
+	/**
+	 * Runs a unit of work with a session of the pool, the session is given back when the work ends, even if it fails.
+	 * @param work the work to be done
+	 * @return the result of the work
+	 * @throws PoolException if no session is available within the acquire timeout
+	 * @throws SodaHibernateException thrown by the work
+	 */
+	public <T> T execute(SessionWork<T> work) throws PoolException, SodaHibernateException{
+		SessionLease lease = lease();
+		try{
+			return work.run(lease.getSession());
+		}
+		finally{
+			lease.release();
+		}
+	}
+
+	private void updateUtilization(){
+		long now = System.currentTimeMillis();
+		this.inUseMillis += this.inUse.size()*(double)(now-this.lastChange);
+		this.lastChange = now;
+	}
+
+	private void closeSession(ISodaHibernateSession session){
+		try{
+			if (session.isOpen())
+				session.close();
+		}
+		catch (SodaHibernateException e){
+			logger.error("Error while closing a session: "+e.getMessage());
+		}
+	}
+
 	/**
-	 * Closes each session in the pool and then dereferences each session object.
+	 * Closes each idle session and then dereferences the pool,
+	 * the sessions in use are closed when they are given back.
 	 * Note that closing a pool does not guarantees the sessions mapping to be removed.
-	 * 
+	 *
 	 * @throws SodaHibernateException
 	 */
 	public void closePool() throws SodaHibernateException{
-		for (ISodaHibernateSession session: this.sessions){
-			if (session.isOpen())
-				session.close();
-			this.sessions.remove(session);
+		synchronized (this){
+			for (ISodaHibernateSession session: this.idle)
+				closeSession(session);
+			this.idle.clear();
+			this.idleSince.clear();
+			this.closed = true;
+			notifyAll();
+		}
+		synchronized (SessionsPool.class){
+			if (pool==this)
+				pool=null;
 		}
-		pool=null;
+	}
+
+	/**
+	 * Setter
+	 * @param millis the max time a caller of getSession() waits for a session, 0 to wait until a session is given back
+	 */
+	public synchronized void setAcquireTimeout(long millis){
+		this.acquireTimeout = millis;
+	}
+
+	/**
+	 * Setter
+	 * @param millis the time after which an idle open session is validated before being handed out
+	 */
+	public synchronized void setValidationInterval(long millis){
+		this.validationInterval = millis;
+	}
+
+	/**
+	 * @return the number of sessions in use
+	 */
+	public synchronized int sessionsInUse(){
+		return this.inUse.size();
+	}
+
+	/**
+	 * @return the number of sessions created by the pool and not yet closed
+	 */
+	public synchronized int size(){
+		return this.inUse.size()+this.idle.size();
+	}
+
+	/**
+	 * @return the acquisitions, the waits and their mean and max time, the timeouts,
+	 * the peak and mean number of sessions in use
+	 */
+	public synchronized String getStats(){
+		updateUtilization();
+		long elapsed = Math.max(1, this.lastChange-this.createdAt);
+		double meanInUse = this.inUseMillis/elapsed;
+		return "Sessions pool: "+size()+" sessions (max "+this.maxSessions+"), "+
+			this.acquisitions+" acquisitions, "+this.waits+" waited (mean "+
+			(this.waits>0 ? this.waitNanos/this.waits/1000000 : 0)+" ms, max "+this.maxWaitNanos/1000000+" ms), "+
+			this.timeouts+" timed out, "+this.replaced+" replaced, peak "+this.peakInUse+" in use, utilization "+
+			Math.round(100*meanInUse/this.maxSessions)+"%";
+	}
+
+	@Override
+	public String toString(){
+		return getStats();
 	}
 }
@@ -129,9 +129,9 @@ public class SodaHibernateSessionImpl implements ISodaHibernateSession {
 	}
 
 	/**
-		 * Creates and stores the configuration for the Hibernate-session based
-		 * on the passed parameters. Furthermore, it queries all <code>org.evolizer.hibernate.modelProvider</code>
-		 * extensions for annotated classes.
+		 * Gets the configuration for the Hibernate-session based
+		 * on the passed parameters and the annotated classes of the model provider. 
+		 * The configuration and its SessionFactory are shared by the sessions with the same parameters, see SessionFactoryCache.
 		 * 
 		 * @param dbUrl database host (e.g. mysql://localhost:3306/evolizer_test)
 		 * @param dbDialect database dialect (e.g. org.hibernate.dialect.MySQLDialect)
@@ -144,26 +144,8 @@ public class SodaHibernateSessionImpl implements ISodaHibernateSession {
 												 String dbDriverName,
 												 String dbUser,
 												 String dbPasswd) {
-
-			
-			fHibernateAnnotationConfig = new AnnotationConfiguration();
-	
-			fHibernateAnnotationConfig.setProperty("hibernate.connection.url", "jdbc:" + dbUrl);
-			fHibernateAnnotationConfig.setProperty("hibernate.connection.username", dbUser);
-			fHibernateAnnotationConfig.setProperty("hibernate.connection.password", dbPasswd);
-			fHibernateAnnotationConfig.setProperty("hibernate.dialect", dbDialect);
-			fHibernateAnnotationConfig.setProperty("hibernate.connection.driver_class", dbDriverName);
-	
-			fHibernateAnnotationConfig.setProperty("hibernate.jdbc.batch_size", "25");
-			fHibernateAnnotationConfig.setProperty("hibernate.cache.use_second_level_cache", "false");
-			
-	//		fHibernateAnnotationConfig.setProperty("hibernate.show_sql", "true");
-			
-			//Here I add the specific annotated classes
-			for (Class annotatedClass : annotatedClasses) {
-				fHibernateAnnotationConfig.addAnnotatedClass(annotatedClass);
-			}
-
+			fHibernateAnnotationConfig = SessionFactoryCache.getConfiguration(dbUrl, dbDialect, dbDriverName, 
+					dbUser, dbPasswd, annotatedClasses);
 		}
 	
 	
@@ -270,7 +252,7 @@ public class SodaHibernateSessionImpl implements ISodaHibernateSession {
 		return fIsOpen;
 	}
 	
-	public <T>T load(Class<T> clazz, Long id) throws SodaHibernateException{
+	public <T>T load(Class<T> clazz, Serializable id) throws SodaHibernateException{
 		assertSessionIsOpen();
 		
 		return (T)fHibernateSession.load(clazz, id);
@@ -291,11 +273,10 @@ public class SodaHibernateSessionImpl implements ISodaHibernateSession {
 		
 		assertSessionIsClosed();
 		
-		SessionFactory sessionFactory = fHibernateAnnotationConfig.buildSessionFactory();
+		//the factory is built by the first session only
+		SessionFactory sessionFactory = SessionFactoryCache.getSessionFactory(fHibernateAnnotationConfig);
 		fHibernateSession = sessionFactory.openSession();
 		fIsOpen = true;
-		sessionFactory.close();
-		sessionFactory=null;
 //		this.fHibernateSession.setFlushMode(FlushMode.ALWAYS);
 		logger.debug("Session is now open.");
 	}
@@ -8,8 +8,10 @@ import dblp.social.hibernate.entities.InCollection;
 import dblp.social.hibernate.entities.InProceedings;
 import dblp.social.hibernate.entities.Journal;
 import dblp.social.hibernate.entities.Nation;
+import dblp.social.hibernate.entities.PendingVenueLink;
 import dblp.social.hibernate.entities.Person;
 import dblp.social.hibernate.entities.Proceedings;
+import dblp.social.hibernate.entities.RecordFingerprint;
 
 
 public class SodaModelProvider{
@@ -26,7 +28,9 @@ public class SodaModelProvider{
 				Person.class,
 				Proceedings.class,
 				Affiliation.class,
-				Nation.class};
+				Nation.class,
+				PendingVenueLink.class,
+				RecordFingerprint.class};
 		
 		return annotatedClasses;
 	}
@@ -0,0 +1,88 @@
+package dblp.social.hibernate.entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+
+/**
+ * A link between a publication and its venue (proceedings, journal or book) not yet written into the join table
+ * of the venue collection. The importer saves the pending links when the deferred linking is enabled,
+ * the VenueLinker moves them into Proceedings_InProceedings, Journal_Articles and Book_Chapters.
+ *
+ * @author Staffiero
+ *
+ */
+@Entity
+public class PendingVenueLink {
+	/**
+	 * An inproceedings, linked to a proceedings or to a journal with the same id
+	 */
+	public static final String INPROCEEDINGS = "P";
+	/**
+	 * An article, linked to a journal
+	 */
+	public static final String ARTICLE = "J";
+	/**
+	 * An incollection, linked to a book
+	 */
+	public static final String INCOLLECTION = "B";
+
+	private Long id;
+	private String kind;
+	private String venueId;
+	private String publicationId;
+
+	public PendingVenueLink() { super(); }
+
+	/**
+	 * @param kind the kind of the publication (INPROCEEDINGS, ARTICLE or INCOLLECTION)
+	 * @param venueId the id of the proceedings, journal or book
+	 * @param publicationId the id of the publication
+	 */
+	public PendingVenueLink(String kind, String venueId, String publicationId) {
+		this();
+		this.kind = kind;
+		this.venueId = venueId;
+		this.publicationId = publicationId;
+	}
+
+	@Id
+	@Column(name = "linkId")
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	@Column(length = 1, nullable = false)
+	public String getKind() {
+		return kind;
+	}
+
+	public void setKind(String kind) {
+		this.kind = kind;
+	}
+
+	@Column(nullable = false)
+	public String getVenueId() {
+		return venueId;
+	}
+
+	public void setVenueId(String venueId) {
+		this.venueId = venueId;
+	}
+
+	@Column(nullable = false)
+	public String getPublicationId() {
+		return publicationId;
+	}
+
+	public void setPublicationId(String publicationId) {
+		this.publicationId = publicationId;
+	}
+}
@@ -0,0 +1,48 @@
+package dblp.social.hibernate.entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * The content hash of an imported dblp record, written after each import and compared by the updater
+ * with the records of a new dblp XML file to find the changed and the deleted ones (see DblpUpdater).
+ *
+ * @author Staffiero
+ *
+ */
+@Entity
+public class RecordFingerprint {
+	private String dblpKey;
+	private long contentHash;
+
+	public RecordFingerprint() { super(); }
+
+	/**
+	 * @param dblpKey the key of the record
+	 * @param contentHash the hash of the record bytes, see DblpRecordScanner
+	 */
+	public RecordFingerprint(String dblpKey, long contentHash) {
+		this();
+		this.dblpKey = dblpKey;
+		this.contentHash = contentHash;
+	}
+
+	@Id
+	public String getDblpKey() {
+		return dblpKey;
+	}
+
+	public void setDblpKey(String dblpKey) {
+		this.dblpKey = dblpKey;
+	}
+
+	@Column(nullable = false)
+	public long getContentHash() {
+		return contentHash;
+	}
+
+	public void setContentHash(long contentHash) {
+		this.contentHash = contentHash;
+	}
+}
@@ -0,0 +1,184 @@
+package dblp.social.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class loads the staging files written by the DblpBulkHandler into the db tables.
+ * Each file is loaded by a LOAD DATA LOCAL INFILE statement, if the statement is not available
+ * (e.g. local infile disabled on the server) the rows are inserted by batched multi-row INSERT statements.
+ * The tables have to be created before the load, using the Hibernate session updateSchema method,
+ * so the schema is the same created by the importer.
+ *
+ * @author Staffiero
+ *
+ */
+public class BulkLoader {
+	//rows inserted by each INSERT statement when LOAD DATA is not available
+	private static final int INSERT_ROWS = 500;
+	private static Logger logger = Logger.getLogger(BulkLoader.class);
+
+	private Connection con;
+	private boolean mysql;
+	private boolean loadDataAllowed;
+
+	/**
+	 * The constructor to be used, opens a jdbc connection to the db
+	 * @param dbUrl the db url (e.g. mysql://127.0.0.1:3306/dblp)
+	 * @param dbDriverName jdbc-compliant database driver (e.g. com.mysql.jdbc.Driver)
+	 * @param dbUser the db user
+	 * @param dbPasswd the db user password
+	 * @throws SQLException if the connection cannot be opened
+	 */
+	public BulkLoader(String dbUrl, String dbDriverName, String dbUser, String dbPasswd) throws SQLException{
+		String databaseUrl = "jdbc:"+dbUrl;
+		if (dbUrl.startsWith("mysql:"))
+			databaseUrl += (dbUrl.contains("?") ? "&" : "?")+"allowLoadLocalInfile=true";
+		try{
+			Class.forName(dbDriverName);
+		}
+		catch (ClassNotFoundException e){
+			throw new SQLException("Driver "+dbDriverName+" not found");
+		}
+		this.con = DriverManager.getConnection(databaseUrl, dbUser, dbPasswd);
+		this.con.setAutoCommit(false);
+		this.mysql = dbUrl.startsWith("mysql:");
+		this.loadDataAllowed = this.mysql;
+		if (this.mysql){
+			//the tables are loaded in any order, so the foreign keys are not checked: the unique keys still are
+			Statement st = this.con.createStatement();
+			try{
+				st.execute("SET foreign_key_checks=0");
+			}
+			finally{
+				st.close();
+			}
+		}
+	}
+
+	/**
+	 * Loads a staging file into its table, the transaction is committed when the whole file is loaded.
+	 * @param file the closed staging file
+	 * @return the number of loaded rows
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public long load(BulkStagingFile file) throws SQLException, IOException{
+		if (file.getRows()==0)
+			return 0;
+		long rows;
+		if (this.loadDataAllowed){
+			try{
+				rows = loadData(file);
+				this.con.commit();
+				return rows;
+			}
+			catch (SQLException e){
+				this.con.rollback();
+				logger.warn("LOAD DATA not available, using INSERT statements: "+e.getMessage());
+				this.loadDataAllowed = false;
+			}
+		}
+		rows = insertRows(file);
+		this.con.commit();
+		return rows;
+	}
+
+	private long loadData(BulkStagingFile file) throws SQLException{
+		String path = file.getFile().getAbsolutePath().replace("\\", "\\\\").replace("'", "\\'");
+		String sql = "LOAD DATA LOCAL INFILE '"+path+"' IGNORE INTO TABLE "+file.getTable()+
+			" CHARACTER SET utf8 FIELDS TERMINATED BY ',' ENCLOSED BY '\"' ESCAPED BY '\\\\'"+
+			" LINES TERMINATED BY '\\n' ("+columnList(file)+")";
+		Statement st = this.con.createStatement();
+		try{
+			return st.executeUpdate(sql);
+		}
+		finally{
+			st.close();
+		}
+	}
+
+	private long insertRows(BulkStagingFile file) throws SQLException, IOException{
+		String[] columns = file.getColumns();
+		PreparedStatement full = this.con.prepareStatement(insertStatement(file, INSERT_ROWS));
+		BufferedReader reader = file.openReader();
+		long rows = 0;
+		try{
+			String[][] chunk = new String[INSERT_ROWS][];
+			int n = 0;
+			String line;
+			while ((line = reader.readLine())!=null){
+				chunk[n++] = BulkStagingFile.parseRow(line);
+				if (n==INSERT_ROWS){
+					rows += insertChunk(full, chunk, n, columns.length);
+					n = 0;
+				}
+			}
+			if (n>0){
+				PreparedStatement last = this.con.prepareStatement(insertStatement(file, n));
+				try{
+					rows += insertChunk(last, chunk, n, columns.length);
+				}
+				finally{
+					last.close();
+				}
+			}
+		}
+		finally{
+			reader.close();
+			full.close();
+		}
+		return rows;
+	}
+
+	private static int insertChunk(PreparedStatement ps, String[][] chunk, int n, int columns) throws SQLException{
+		int p = 1;
+		for (int i=0; i<n; i++){
+			for (int c=0; c<columns; c++)
+				ps.setString(p++, c<chunk[i].length ? chunk[i][c] : "");
+		}
+		return ps.executeUpdate();
+	}
+
+	private String insertStatement(BulkStagingFile file, int rows){
+		StringBuffer row = new StringBuffer("(");
+		for (int c=0; c<file.getColumns().length; c++)
+			row.append(c==0 ? "?" : ",?");
+		row.append(')');
+		StringBuffer sql = new StringBuffer((this.mysql ? "INSERT IGNORE INTO " : "INSERT INTO ")+file.getTable()+" ("+columnList(file)+") VALUES ");
+		for (int i=0; i<rows; i++){
+			if (i>0)
+				sql.append(',');
+			sql.append(row);
+		}
+		return sql.toString();
+	}
+
+	private static String columnList(BulkStagingFile file){
+		StringBuffer cols = new StringBuffer();
+		for (String c : file.getColumns()){
+			if (cols.length()>0)
+				cols.append(',');
+			cols.append(c);
+		}
+		return cols.toString();
+	}
+
+	/**
+	 * Closes the jdbc connection
+	 */
+	public void close(){
+		try {
+			this.con.close();
+		} catch (SQLException e) {
+			logger.error("Cannot close connection: "+e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package dblp.social.importer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+
+/**
+ * This class defines a staging file written by the bulk importer: a CSV file holding the rows of a single db table.
+ * Each field is enclosed by '"', the characters '"' and '\' and the line terminators are escaped by '\',
+ * so each row is written on a single line and the file can be loaded by the MySQL LOAD DATA statement:
+ *
+ * 		LOAD DATA LOCAL INFILE 'file' INTO TABLE table CHARACTER SET utf8
+ * 		FIELDS TERMINATED BY ',' ENCLOSED BY '"' ESCAPED BY '\\' LINES TERMINATED BY '\n' (columns)
+ *
+ * @author Staffiero
+ *
+ */
+public class BulkStagingFile {
+	public static final String EXTENSION = ".csv";
+	public static final String ENCODING = "UTF-8";
+
+	private String table;
+	private String[] columns;
+	private File file;
+	private BufferedWriter writer;
+	private long rows = 0;
+	private StringBuffer line = new StringBuffer();
+
+	/**
+	 * The constructor to be used, creates the staging file (an existing file is overwritten)
+	 * @param folder: the folder of the staging files
+	 * @param table: the db table name
+	 * @param columns: the table columns, in the order used to write each row
+	 * @throws IOException
+	 */
+	public BulkStagingFile(File folder, String table, String[] columns) throws IOException{
+		this.table = table;
+		this.columns = columns;
+		this.file = new File(folder, table+EXTENSION);
+		this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file), ENCODING));
+	}
+
+	/**
+	 * Writes a row, the values have to follow the columns order
+	 * @param values: the row values, a null value is written as an empty string
+	 * @throws IOException
+	 */
+	public void writeRow(Object... values) throws IOException{
+		if (values.length!=this.columns.length)
+			throw new IOException("Table "+this.table+" has "+this.columns.length+
+					" columns, found a row with "+values.length+" values");
+		this.line.setLength(0);
+		for (int i=0; i<values.length; i++){
+			if (i>0)
+				this.line.append(',');
+			this.line.append('"');
+			if (values[i]!=null)
+				escape(values[i].toString(), this.line);
+			this.line.append('"');
+		}
+		this.line.append('\n');
+		this.writer.write(this.line.toString());
+		this.rows++;
+	}
+
+	private static void escape(String value, StringBuffer out){
+		for (int i=0; i<value.length(); i++){
+			char c = value.charAt(i);
+			switch (c){
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			default:
+				out.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Closes the staging file, no more rows can be written
+	 * @throws IOException
+	 */
+	public void close() throws IOException{
+		if (this.writer!=null){
+			this.writer.close();
+			this.writer = null;
+		}
+	}
+
+	/**
+	 * Opens a reader over the rows of the closed staging file, used when the file cannot be loaded by LOAD DATA
+	 * @return the reader, each line is a row which can be split by the parseRow method
+	 * @throws IOException
+	 */
+	public BufferedReader openReader() throws IOException{
+		return new BufferedReader(new InputStreamReader(new FileInputStream(this.file), ENCODING));
+	}
+
+	/**
+	 * Splits a row read from a staging file into its values
+	 * @param row: a line of a staging file
+	 * @return the unescaped values
+	 */
+	public static String[] parseRow(String row){
+		ArrayList<String> values = new ArrayList<String>();
+		StringBuffer value = new StringBuffer();
+		boolean enclosed = false;
+		for (int i=0; i<row.length(); i++){
+			char c = row.charAt(i);
+			if (c=='\\' && i+1<row.length()){
+				char e = row.charAt(++i);
+				value.append(e=='n' ? '\n' : e=='r' ? '\r' : e);
+			}
+			else if (c=='"')
+				enclosed = !enclosed;
+			else if (c==',' && !enclosed){
+				values.add(value.toString());
+				value.setLength(0);
+			}
+			else
+				value.append(c);
+		}
+		values.add(value.toString());
+		return values.toArray(new String[values.size()]);
+	}
+
+	/**
+	 * Getter
+	 * @return the db table name
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * Getter
+	 * @return the table columns
+	 */
+	public String[] getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Getter
+	 * @return the staging file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Getter
+	 * @return the number of written rows
+	 */
+	public long getRows() {
+		return rows;
+	}
+}
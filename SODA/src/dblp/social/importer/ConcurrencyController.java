@@ -0,0 +1,292 @@
+package dblp.social.importer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class sets the number of parser threads of a ThreadMonitor looking for the highest import throughput.
+ * The parser threads report each commit (records and time spent by the db, see commitDone), the ParserWorkerPool
+ * calls adjust periodically: the number of threads is moved by one in the current direction
+ * while the records committed per second grow, the direction is reversed when they drop (hill climbing).
+ * If the throughput does not change but the commits take longer the db is saturated and a thread is removed.
+ *
+ * The heap usage is a hard ceiling, read from the usage threshold notifications of the heap memory pools:
+ * when a pool exceeds the pressure threshold the number of threads is halved once, not below PRESSURE_FLOOR,
+ * and the threads removed are restored as soon as the heap is back below the threshold;
+ * when the heap is still above the critical threshold after a collection a single thread is left
+ * or, if a single thread is already running, every thread is stopped as the parser would run out of memory.
+ *
+ * @author Staffiero
+ *
+ */
+public class ConcurrencyController implements NotificationListener{
+	//default fractions of the max pool size
+	public static final double DEFAULT_PRESSURE_THRESHOLD = 0.75;
+	public static final double DEFAULT_CRITICAL_THRESHOLD = 0.95;
+	public static final long DEFAULT_INTERVAL_MILLIS = 5000;
+	//relative throughput change considered noise
+	private static final double TOLERANCE = 0.05;
+	//the threads left by the heap pressure, only the critical threshold goes below
+	private static final int PRESSURE_FLOOR = 2;
+	private static Logger logger = Logger.getLogger(ConcurrencyController.class);
+
+	private ThreadMonitor monitor;
+	private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+	private ArrayList<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+	private volatile boolean heapPressure = false;
+	private volatile boolean heapCritical = false;
+	private boolean listening = false;
+
+	private AtomicLong records = new AtomicLong();
+	private AtomicLong commits = new AtomicLong();
+	private AtomicLong dbNanos = new AtomicLong();
+	//thread name -> records, commits and db time of the thread
+	private ConcurrentHashMap<String, AtomicLong[]> workers = new ConcurrentHashMap<String, AtomicLong[]>();
+
+	//state of the last adjust call
+	private int direction = 1;
+	//the threads number before the heap pressure, 0 if the heap is not under pressure
+	private int beforePressure = 0;
+	private long lastTime, lastRecords, lastCommits, lastNanos;
+	private double lastRate = -1, lastLatency = -1;
+	private double peakRate = 0;
+	private int peakThreads = 0;
+	private int changes = 0;
+
+	/**
+	 * The constructor to be used
+	 * @param monitor the monitor whose threads number is set
+	 */
+	public ConcurrencyController(ThreadMonitor monitor){
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Sets the heap thresholds and starts listening to the memory notifications.
+	 * The parser starts with half of the max threads, the first adjust adds one thread.
+	 * @param pressureThreshold the fraction of a heap pool above which the threads are halved
+	 * @param criticalThreshold the fraction of a heap pool which, still used after a collection, stops the threads
+	 */
+	public synchronized void start(double pressureThreshold, double criticalThreshold){
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			long max = pool.getUsage().getMax();
+			if (pool.getType()!=MemoryType.HEAP || max<=0)
+				continue;
+			if (pool.isUsageThresholdSupported()){
+				pool.setUsageThreshold((long)(max*pressureThreshold));
+				this.heapPools.add(pool);
+			}
+			if (pool.isCollectionUsageThresholdSupported())
+				pool.setCollectionUsageThreshold((long)(max*criticalThreshold));
+		}
+		((NotificationEmitter)ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+		this.listening = true;
+		this.monitor.setThreadsNumber(Math.max(1, (this.monitor.getMaxThreads()+1)/2));
+		this.lastTime = System.nanoTime();
+	}
+
+	/**
+	 * Stops listening to the memory notifications and resets the thresholds
+	 */
+	public synchronized void stop(){
+		if (!this.listening)
+			return;
+		try{
+			((NotificationEmitter)ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+		}
+		catch (ListenerNotFoundException e){
+			logger.debug("Memory listener already removed");
+		}
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if (pool.getType()!=MemoryType.HEAP)
+				continue;
+			if (pool.isUsageThresholdSupported())
+				pool.setUsageThreshold(0);
+			if (pool.isCollectionUsageThresholdSupported())
+				pool.setCollectionUsageThreshold(0);
+		}
+		this.listening = false;
+	}
+
+	/**
+	 * Handles the heap usage threshold notifications, called by the JVM
+	 */
+	public void handleNotification(Notification notification, Object handback){
+		if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(notification.getType())){
+			this.heapPressure = true;
+			logger.debug("Heap usage threshold exceeded");
+		}
+		else if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())){
+			this.heapCritical = true;
+			logger.debug("Heap usage after collection threshold exceeded");
+			if (this.monitor.getThreadsNumber()>1)
+				//the other threads retire at their next checkpoint
+				this.monitor.setThreadsNumber(1);
+			else{
+				logger.error("Heap exhausted: stopping every parser thread");
+				this.monitor.setCloseThreads(true);
+				this.monitor.setTerminateProcess(true);
+			}
+		}
+	}
+
+	/**
+	 * Called by a parser thread after each commit
+	 * @param records the number of records committed
+	 * @param nanos the time spent committing, in nanoseconds
+	 */
+	public void commitDone(int records, long nanos){
+		this.records.addAndGet(records);
+		this.commits.incrementAndGet();
+		this.dbNanos.addAndGet(nanos);
+		String name = Thread.currentThread().getName();
+		AtomicLong[] w = this.workers.get(name);
+		if (w==null){
+			w = new AtomicLong[]{new AtomicLong(), new AtomicLong(), new AtomicLong()};
+			AtomicLong[] prev = this.workers.putIfAbsent(name, w);
+			if (prev!=null)
+				w = prev;
+		}
+		w[0].addAndGet(records);
+		w[1].incrementAndGet();
+		w[2].addAndGet(nanos);
+	}
+
+	/**
+	 * Sets the threads number for the next interval using the throughput and the db latency
+	 * measured since the previous call.
+	 */
+	public synchronized void adjust(){
+		long now = System.nanoTime();
+		long rec = this.records.get();
+		long com = this.commits.get();
+		long nanos = this.dbNanos.get();
+		double seconds = (now-this.lastTime)/1e9;
+		if (seconds<=0)
+			return;
+		long intervalCommits = com-this.lastCommits;
+		double rate = (rec-this.lastRecords)/seconds;
+		double latency = intervalCommits>0 ? (nanos-this.lastNanos)/1e6/intervalCommits : 0;
+		this.lastTime = now;
+		this.lastRecords = rec;
+		this.lastCommits = com;
+		this.lastNanos = nanos;
+
+		int current = this.monitor.getThreadsNumber();
+		int target = current;
+		if (this.heapCritical){
+			//multiplicative decrease, then a new baseline is measured
+			target = current/2;
+			this.direction = 1;
+			this.lastRate = -1;
+			this.heapPressure = stillAboveThreshold();
+			this.heapCritical = false;
+			//after a critical heap the threads are added back one at a time
+			this.beforePressure = 0;
+		}
+		else if (this.heapPressure){
+			//halved once while the pressure lasts, a pool above the threshold until its next collection 
+			//would halve the threads at every call
+			if (this.beforePressure==0)
+				this.beforePressure = current;
+			target = Math.min(current, Math.max(PRESSURE_FLOOR, this.beforePressure/2));
+			this.direction = 1;
+			this.lastRate = -1;
+			this.heapPressure = stillAboveThreshold();
+		}
+		else if (this.beforePressure>0){
+			//the heap has recovered: the threads removed by the pressure are restored
+			target = Math.max(current, this.beforePressure);
+			this.beforePressure = 0;
+			this.lastRate = -1;
+		}
+		else if (intervalCommits==0){
+			//nothing committed in this interval (e.g. only part files already imported)
+			return;
+		}
+		else{
+			if (rate>this.peakRate){
+				this.peakRate = rate;
+				this.peakThreads = current;
+			}
+			if (this.lastRate<0)
+				//first measure with the current threads: additive probe
+				target = current+this.direction;
+			else if (rate>this.lastRate*(1+TOLERANCE))
+				//the last move paid off
+				target = current+this.direction;
+			else if (rate<this.lastRate*(1-TOLERANCE)){
+				this.direction = -this.direction;
+				target = current+this.direction;
+			}
+			else if (this.lastLatency>0 && latency>this.lastLatency*(1+TOLERANCE)){
+				//same throughput, slower commits: the db is saturated
+				this.direction = -1;
+				target = current-1;
+			}
+			this.lastRate = rate;
+			this.lastLatency = latency;
+		}
+		target = Math.max(1, Math.min(this.monitor.getMaxThreads(), target));
+		if (target!=current){
+			this.changes++;
+			logger.debug("Parser threads: "+current+" -> "+target+" ("+Math.round(rate)+" records/s, "+
+					Math.round(latency)+" ms/commit)");
+			this.monitor.setThreadsNumber(target);
+		}
+	}
+
+	/**
+	 * @return true if a heap pool is still above the pressure threshold
+	 */
+	private boolean stillAboveThreshold(){
+		for (MemoryPoolMXBean pool : this.heapPools){
+			if (pool.isUsageThresholdExceeded())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Getter
+	 * @return the time (ms) between two adjust calls
+	 */
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	/**
+	 * Setter
+	 * @param intervalMillis the time (ms) between two adjust calls
+	 */
+	public void setIntervalMillis(long intervalMillis) {
+		this.intervalMillis = intervalMillis;
+	}
+
+	@Override
+	public String toString(){
+		StringBuffer sb = new StringBuffer();
+		sb.append("Concurrency: "+this.records.get()+" records in "+this.commits.get()+" commits, peak "+
+				Math.round(this.peakRate)+" records/s with "+this.peakThreads+" threads, "+
+				this.changes+" threads number changes");
+		for (String name : this.workers.keySet()){
+			AtomicLong[] w = this.workers.get(name);
+			long c = Math.max(1, w[1].get());
+			sb.append("\n\t"+name+": "+w[0].get()+" records, "+w[1].get()+" commits, "+
+					(w[2].get()/1000000/c)+" ms/commit");
+		}
+		return sb.toString();
+	}
+}
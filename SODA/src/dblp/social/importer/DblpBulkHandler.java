@@ -0,0 +1,165 @@
+package dblp.social.importer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.xml.sax.SAXException;
+
+/**
+ * This class defines the handler used by the bulk importer: instead of saving each dblp record through Hibernate
+ * the records are written into per-table staging files (see BulkStagingFile) which are then loaded with LOAD DATA.
+ * The same handler parses every part file, the rows are built following the rules of the DblpImporterHandler:
+ * ids are created by DblpIdUtility, the venues (proceedings, journals, books) referenced by the publications are created
+ * or completed in the same way and each author or editor name becomes a Person.
+ *
+ * Publications and their authors are written while parsing, persons and venues are collected by a DblpDictionaries
+ * and written by the finish method, as the venues can be completed by the following records.
+ * A venue id used both by a journal and by a proceedings is a journal: its inproceedings are linked to the journal,
+ * as the DblpImporterHandler does when the journal is found.
+ *
+ * The bulk importer has to be used on an empty database only.
+ *
+ * @author Staffiero
+ *
+ */
+public class DblpBulkHandler extends DblpRecordHandler{
+
+	static Logger logger = Logger.getLogger(DblpBulkHandler.class.getName());
+
+	private static final String[] PUBLICATION_COLUMNS =
+		{"publicationId", "dblpKey", "title", "year", "url", "ee", "pageRange"};
+	private static final String[] BOOKTITLE_PUBLICATION_COLUMNS =
+		{"publicationId", "dblpKey", "title", "year", "url", "ee", "pageRange", "booktitle"};
+
+	//persons and venues
+	private DblpDictionaries dictionaries = new DblpDictionaries();
+	//publication id -> venue id, also used to skip the publications already written
+	private HashMap<String, String> inProceedingsVenues = new HashMap<String, String>();
+	private HashMap<String, String> articleVenues = new HashMap<String, String>();
+	private HashMap<String, String> chapterVenues = new HashMap<String, String>();
+
+	//the staging files
+	private BulkStagingFile inProceedingsFile;
+	private BulkStagingFile articleFile;
+	private BulkStagingFile inCollectionFile;
+	private BulkStagingFile authorsFile;
+	private ArrayList<BulkStagingFile> stagingFiles = new ArrayList<BulkStagingFile>();
+	private File folder;
+	private long skipped = 0;
+
+	/**
+	 * The constructor to be used, creates the staging files written while parsing
+	 * @param folder the folder in which the staging files are written, it is created if it does not exist
+	 * @throws IOException
+	 */
+	public DblpBulkHandler(File folder) throws IOException{
+		this.folder = folder;
+		if (!folder.exists() && !folder.mkdirs())
+			throw new IOException("Cannot create the staging folder "+folder.getAbsolutePath());
+		this.inProceedingsFile = createStagingFile("InProceedings", BOOKTITLE_PUBLICATION_COLUMNS);
+		this.articleFile = createStagingFile("Article", PUBLICATION_COLUMNS);
+		this.inCollectionFile = createStagingFile("InCollection", BOOKTITLE_PUBLICATION_COLUMNS);
+		this.authorsFile = createStagingFile("DblpPublication_Authors", new String[]{"publicationId", "personId"});
+	}
+
+	private BulkStagingFile createStagingFile(String table, String[] columns) throws IOException{
+		BulkStagingFile file = new BulkStagingFile(this.folder, table, columns);
+		this.stagingFiles.add(file);
+		return file;
+	}
+
+	@Override
+	protected void endRecord(DblpRecord r) throws SAXException, IOException{
+		try{
+			this.dictionaries.addRecord(r);
+			if (!r.isPublication())
+				return;
+			String id = r.publicationId();
+			if (r.type.equals(DblpRecord.INCOLLECTION))
+				writePublication(r, DblpDictionaries.chapterId(id, r.key), DblpRecord.venueOf(id), this.chapterVenues, this.inCollectionFile);
+			else if (r.type.equals(DblpRecord.INPROCEEDINGS))
+				writePublication(r, id, DblpRecord.venueOf(id), this.inProceedingsVenues, this.inProceedingsFile);
+			else
+				writePublication(r, id, DblpRecord.venueOf(id), this.articleVenues, this.articleFile);
+		}
+		catch (RuntimeException e){
+			throw new SAXException("Could not create a valid id for the "+r.type+" element "+r.key, e);
+		}
+	}
+
+	private void writePublication(DblpRecord r, String id, String venueId, Map<String, String> venues, BulkStagingFile file) 
+		throws IOException{
+		if (venues.containsKey(id)){
+			logger.debug("Publication "+id+" already imported, record "+r.key+" skipped");
+			this.skipped++;
+			return;
+		}
+		venues.put(id, venueId);
+		if (file==this.articleFile)
+			file.writeRow(id, r.key, r.title, r.year, r.url, r.ee, r.pages);
+		else
+			file.writeRow(id, r.key, r.title, r.year, r.url, r.ee, r.pages, r.booktitle);
+		ArrayList<Long> authors = new ArrayList<Long>();
+		for (String name : r.authors){
+			Long personId = this.dictionaries.getPersonId(name);
+			if (!authors.contains(personId)){
+				authors.add(personId);
+				this.authorsFile.writeRow(id, personId);
+			}
+		}
+	}
+
+	/**
+	 * Writes the persons, the venues and the venue links, then closes every staging file.
+	 * To be called once every part file has been parsed.
+	 * @return the staging files, in the order they have to be loaded
+	 * @throws IOException
+	 */
+	public ArrayList<BulkStagingFile> finish() throws IOException{
+		this.dictionaries.resolve();
+		ArrayList<BulkStagingFile> files = this.dictionaries.writeStagingFiles(this.folder);
+
+		BulkStagingFile procLinks = createStagingFile("Proceedings_InProceedings",
+				new String[]{"proceedingsId", "inproceedingsId"});
+		BulkStagingFile journalLinks = createStagingFile("Journal_Articles",
+				new String[]{"journalId", "articleId"});
+		for (Map.Entry<String, String> e : this.inProceedingsVenues.entrySet()){
+			//an inproceedings whose venue is a journal is an article of that journal
+			if (this.dictionaries.isJournal(e.getValue()))
+				journalLinks.writeRow(e.getValue(), e.getKey());
+			else
+				procLinks.writeRow(e.getValue(), e.getKey());
+		}
+		for (Map.Entry<String, String> e : this.articleVenues.entrySet())
+			journalLinks.writeRow(e.getValue(), e.getKey());
+		BulkStagingFile file = createStagingFile("Book_Chapters", new String[]{"bookId", "chapterId"});
+		for (Map.Entry<String, String> e : this.chapterVenues.entrySet())
+			file.writeRow(e.getValue(), e.getKey());
+
+		for (BulkStagingFile f : this.stagingFiles)
+			f.close();
+		files.addAll(this.stagingFiles);
+		logger.debug("Staging files written, "+this.skipped+" duplicated publications skipped");
+		return files;
+	}
+
+	/**
+	 * Getter
+	 * @return the number of persons found so far
+	 */
+	public long getPersonsNumber(){
+		return this.dictionaries.getPersonsNumber();
+	}
+
+	/**
+	 * Getter
+	 * @return the number of publications found so far
+	 */
+	public long getPublicationsNumber(){
+		return this.inProceedingsVenues.size()+this.articleVenues.size()+this.chapterVenues.size();
+	}
+}
@@ -0,0 +1,487 @@
+package dblp.social.importer;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Query;
+
+import dblp.social.exceptions.SodaHibernateException;
+import dblp.social.hibernate.ISodaHibernateSession;
+
+/**
+ * This class holds the dictionaries of a two-pass import: the distinct person names, each with its surrogate key (the personId),
+ * and the venues (proceedings, journals and books), identified by the ids created by DblpIdUtility.
+ * The dictionaries are built by the first pass (see DblpDictionaryThread), which reads every record and merges the venue fields
+ * following the rules of the DblpImporterHandler:
+ * a proceedings or book record defines its venue, the publications referencing a venue fill the fields the definition leaves empty.
+ * Unlike the DblpImporterHandler the result does not depend on the order of the records, so the part files can be read in parallel:
+ * a venue id used both by a journal and by a proceedings is a journal (the proceedings is a fake proceedings).
+ *
+ * Once resolved, the dictionaries are written to the db with the BulkLoader and used read-only by the second pass:
+ * the importer handlers link publications to persons and venues by id, without looking them up or locking them.
+ * The dictionaries can also be loaded from the db, to resume a second pass.
+ *
+ * Only one instance is shared by the parser threads: use the static method initialize to create it and getInstance to get it.
+ *
+ * @author Staffiero
+ *
+ */
+public class DblpDictionaries {
+	//rows read by each query loading the dictionaries from the db
+	private static final int LOAD_PAGE = 10000;
+	private static DblpDictionaries dictionaries=null;
+	private static Logger logger = Logger.getLogger(DblpDictionaries.class);
+
+	//the person ids, keyed by the collation key of the names (see collationKey)
+	private HashMap<String, Long> persons = new HashMap<String, Long>();
+	//the names of the persons added since the dictionaries have been created or loaded, in id order
+	private ArrayList<String> personNames = new ArrayList<String>();
+	private long lastPersonId = 0;
+	private LinkedHashMap<String, Venue> proceedings = new LinkedHashMap<String, Venue>();
+	private LinkedHashMap<String, Venue> journals = new LinkedHashMap<String, Venue>();
+	private LinkedHashMap<String, Venue> books = new LinkedHashMap<String, Venue>();
+	//hashes of the publication ids, used to find the ids shared by more than one record
+	private long[] publications = new long[1024];
+	private int publicationsNumber = 0;
+	private HashSet<Long> sharedPublications = null;
+	private boolean resolved = false;
+
+	/**
+	 * The fields of a venue
+	 */
+	private static class Venue{
+		String id;
+		String dblpKey = "";
+		String title = "";
+		String booktitle = "";
+		String year = "";
+		String isbn = "";
+		String publisher = "";
+		String volume = "";
+		String number = "";
+		ArrayList<Long> authors = new ArrayList<Long>();
+		ArrayList<Long> editors = new ArrayList<Long>();
+		//the fields read from the publications of the venue
+		Venue children = null;
+
+		Venue(String id){
+			this.id = id;
+		}
+
+		Venue children(){
+			if (this.children==null)
+				this.children = new Venue(this.id);
+			return this.children;
+		}
+
+		/**
+		 * Fills the empty fields with the fields of the given venue
+		 */
+		void fill(String title, String booktitle, String year, String isbn, String publisher, String volume, String number){
+			if (this.title.equals(""))
+				this.title = title;
+			if (this.booktitle.equals(""))
+				this.booktitle = booktitle;
+			if (this.year.equals(""))
+				this.year = year;
+			if (this.isbn.equals(""))
+				this.isbn = isbn;
+			if (this.publisher.equals(""))
+				this.publisher = publisher;
+			if (this.volume.equals(""))
+				this.volume = volume;
+			if (this.number.equals(""))
+				this.number = number;
+		}
+
+		void resolve(){
+			if (this.children!=null)
+				fill(this.children.title, this.children.booktitle, this.children.year, this.children.isbn,
+						this.children.publisher, this.children.volume, this.children.number);
+			this.children = null;
+		}
+	}
+
+	/**
+	 * A package constructor, used by the bulk importer which needs its own dictionaries.
+	 * Other classes should not access this constructor, use the static method initialize instead.
+	 */
+	DblpDictionaries(){}
+
+	/**
+	 * Static method to initialize the dictionaries.
+	 * Only one instance is allowed: if this method has already been called a second call will not affect the dictionaries.
+	 */
+	public static synchronized void initialize(){
+		if (dictionaries==null)
+			dictionaries = new DblpDictionaries();
+	}
+
+	/**
+	 * Static method to get the existing dictionaries.
+	 * @return the dictionaries, null if they have not been initialized
+	 */
+	public static synchronized DblpDictionaries getInstance(){
+		return dictionaries;
+	}
+
+	/**
+	 * Closes the current dictionaries
+	 */
+	public static synchronized void close(){
+		dictionaries=null;
+	}
+
+	/**
+	 * Adds a person name, a new surrogate key is assigned if the name has not been found before.
+	 * The names equal for the db collation share the same id, the first spelling found is the one saved.
+	 * @param name the person name
+	 * @return the person id
+	 */
+	public synchronized Long addPerson(String name){
+		String key = collationKey(name);
+		Long id = this.persons.get(key);
+		if (id==null){
+			id = Long.valueOf(++this.lastPersonId);
+			this.persons.put(key, id);
+			this.personNames.add(name);
+		}
+		return id;
+	}
+
+	/**
+	 * Creates the key under which a person name is looked up. The name column of the Person table uses the default
+	 * case and accent insensitive collation of MySQL, which ignores the trailing spaces: two names differing only
+	 * in case, accents or trailing spaces are the same person for the db and must get the same id.
+	 * The key is also used for the record ids, compared by the db with the same collation.
+	 * @param name a person name
+	 * @return the collation key of the name
+	 */
+	public static String collationKey(String name){
+		int end = name.length();
+		while (end>0 && name.charAt(end-1)==' ')
+			end--;
+		boolean ascii = true;
+		for (int i=0; i<end && ascii; i++)
+			ascii = name.charAt(i)<0x80;
+		if (ascii)
+			return name.substring(0, end).toUpperCase(Locale.ENGLISH);
+		String key = Normalizer.normalize(name.substring(0, end), Normalizer.Form.NFD);
+		StringBuilder sb = new StringBuilder(key.length());
+		for (int i=0; i<key.length(); i++){
+			char c = key.charAt(i);
+			if (Character.getType(c)!=Character.NON_SPACING_MARK)
+				sb.append(Character.toUpperCase(c));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Adds the persons and the venue fields of a record.
+	 * Each author or editor is a person, even if the record is not imported.
+	 * @param r the record
+	 * @throws IllegalArgumentException if a valid id cannot be created for the record
+	 */
+	public synchronized void addRecord(DblpRecord r){
+		ArrayList<Long> authors = new ArrayList<Long>();
+		for (String name : r.authors){
+			Long id = addPerson(name);
+			if (!authors.contains(id))
+				authors.add(id);
+		}
+		ArrayList<Long> editors = new ArrayList<Long>();
+		for (String name : r.editors){
+			Long id = addPerson(name);
+			if (!editors.contains(id))
+				editors.add(id);
+		}
+		if (r.type.equals(DblpRecord.PROCEEDINGS)){
+			Venue v = venue(this.proceedings, validId(r.venueId(), r));
+			v.dblpKey = r.key;
+			v.isbn = r.isbn;
+			v.publisher = r.publisher;
+			v.title = r.title;
+			v.year = r.year;
+		}
+		else if (r.type.equals(DblpRecord.BOOK)){
+			Venue v = venue(this.books, validId(r.venueId(), r));
+			v.dblpKey = r.key;
+			v.isbn = r.isbn;
+			v.publisher = r.publisher;
+			v.title = r.title;
+			v.year = r.year;
+			v.booktitle = r.booktitle;
+			//as in the DblpImporterHandler only the book editors are linked
+			v.authors = authors;
+			v.editors = editors;
+		}
+		else if (r.isPublication()){
+			String publicationId = validId(r.publicationId(), r);
+			String venueId = DblpRecord.venueOf(publicationId);
+			if (r.type.equals(DblpRecord.INCOLLECTION)){
+				venue(this.books, venueId).children().fill("", r.booktitle, r.year, r.isbn, r.publisher, "", "");
+				publicationId = chapterId(publicationId, r.key);
+			}
+			else if (r.type.equals(DblpRecord.INPROCEEDINGS))
+				venue(this.proceedings, venueId).children().fill(r.booktitle, "", r.year, r.isbn, r.publisher, "", "");
+			else
+				venue(this.journals, venueId).children().fill(r.journal, "", r.year, "", "", r.volume, r.number);
+			addPublication(publicationId);
+		}
+	}
+
+	private static String validId(String id, DblpRecord r){
+		if (id==null)
+			throw new IllegalArgumentException("Could not create a valid id for the "+r.type+" element "+r.key);
+		return id;
+	}
+
+	private static Venue venue(Map<String, Venue> venues, String id){
+		Venue v = venues.get(id);
+		if (v==null){
+			v = new Venue(id);
+			venues.put(id, v);
+		}
+		return v;
+	}
+
+	/**
+	 * Creates the id of a chapter. The book of a chapter always exists in the dictionaries,
+	 * so a chapter whose id is the book id is renamed by appending the last part of its dblp key.
+	 * @param publicationId the incollection id
+	 * @param key the incollection dblp key
+	 * @return the chapter id
+	 */
+	public static String chapterId(String publicationId, String key){
+		//WORKAROUND caused by books/mit/PF91/Piatetsky91 entry
+		if (publicationId.equals(DblpRecord.venueOf(publicationId)))
+			return publicationId+"#"+key.substring(key.lastIndexOf("/")+1);
+		return publicationId;
+	}
+
+	private void addPublication(String publicationId){
+		if (this.publicationsNumber==this.publications.length)
+			this.publications = Arrays.copyOf(this.publications, this.publications.length*2);
+		this.publications[this.publicationsNumber++] = hash(publicationId);
+	}
+
+	/**
+	 * A 64 bit FNV-1a hash of a publication id
+	 */
+	private static long hash(String s){
+		long h = 0xcbf29ce484222325L;
+		for (int i=0; i<s.length(); i++){
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * Resolves the dictionaries once every record has been added: the fake proceedings are removed and
+	 * the venue fields are merged. After this call the dictionaries are read-only.
+	 */
+	public synchronized void resolve(){
+		for (String journalId : this.journals.keySet()){
+			if (this.proceedings.remove(journalId)!=null)
+				logger.debug("Fake proceedings "+journalId+" replaced by a journal");
+		}
+		for (Venue v : this.proceedings.values())
+			v.resolve();
+		for (Venue v : this.journals.values())
+			v.resolve();
+		for (Venue v : this.books.values())
+			v.resolve();
+		long[] sorted = Arrays.copyOf(this.publications, this.publicationsNumber);
+		this.publications = null;
+		Arrays.sort(sorted);
+		this.sharedPublications = new HashSet<Long>();
+		for (int i=1; i<sorted.length; i++){
+			if (sorted[i]==sorted[i-1])
+				this.sharedPublications.add(sorted[i]);
+		}
+		this.resolved = true;
+		logger.debug("Dictionaries resolved: "+this.persons.size()+" persons, "+
+				this.proceedings.size()+" proceedings, "+this.journals.size()+" journals, "+
+				this.books.size()+" books, "+this.sharedPublications.size()+" shared publication ids");
+	}
+
+	/**
+	 * Writes the resolved dictionaries into staging files: persons, venues and book authors and editors.
+	 * @param folder the staging files folder
+	 * @return the closed staging files
+	 * @throws IOException
+	 */
+	public ArrayList<BulkStagingFile> writeStagingFiles(File folder) throws IOException{
+		if (!folder.exists() && !folder.mkdirs())
+			throw new IOException("Cannot create the staging folder "+folder.getAbsolutePath());
+		ArrayList<BulkStagingFile> files = new ArrayList<BulkStagingFile>();
+		BulkStagingFile file = new BulkStagingFile(folder, "Person", new String[]{"personId", "name"});
+		long personId = this.lastPersonId-this.personNames.size();
+		for (String name : this.personNames)
+			file.writeRow(Long.valueOf(++personId), name);
+		files.add(file);
+		file = new BulkStagingFile(folder, "Proceedings",
+				new String[]{"proceedingsId", "dblpKey", "title", "year", "isbn", "publisher"});
+		for (Venue v : this.proceedings.values())
+			file.writeRow(v.id, v.dblpKey, v.title, v.year, v.isbn, v.publisher);
+		files.add(file);
+		file = new BulkStagingFile(folder, "Journal",
+				new String[]{"journalId", "dblpKey", "title", "year", "volume", "number", "isbn", "publisher"});
+		for (Venue v : this.journals.values())
+			file.writeRow(v.id, v.dblpKey, v.title, v.year, v.volume, v.number, v.isbn, v.publisher);
+		files.add(file);
+		file = new BulkStagingFile(folder, "Book",
+				new String[]{"bookId", "dblpKey", "title", "booktitle", "year", "isbn", "publisher"});
+		for (Venue v : this.books.values())
+			file.writeRow(v.id, v.dblpKey, v.title, v.booktitle, v.year, v.isbn, v.publisher);
+		files.add(file);
+		BulkStagingFile authors = new BulkStagingFile(folder, "Book_Authors", new String[]{"bookId", "personId"});
+		BulkStagingFile editors = new BulkStagingFile(folder, "Book_Editors", new String[]{"bookId", "personId"});
+		for (Venue v : this.books.values()){
+			for (Long id : v.authors)
+				authors.writeRow(v.id, id);
+			for (Long id : v.editors)
+				editors.writeRow(v.id, id);
+		}
+		files.add(authors);
+		files.add(editors);
+		for (BulkStagingFile f : files)
+			f.close();
+		return files;
+	}
+
+	/**
+	 * Loads the dictionaries from the db, used to resume the second pass of an import.
+	 * The publication ids are not known, so each publication may be shared (see isSharedPublication).
+	 * @param session an open ISodaHibernateSession
+	 * @throws SodaHibernateException if the session is not open
+	 */
+	public synchronized void load(ISodaHibernateSession session) throws SodaHibernateException{
+		if (!session.isOpen())
+			throw new SodaHibernateException("The Hibernate session is closed");
+		for (Object[] row : loadRows(session, "SELECT name, personId FROM Person ORDER BY personId")){
+			long id = toLong(row[1]);
+			this.persons.put(collationKey(row[0].toString()), id);
+			this.lastPersonId = Math.max(this.lastPersonId, id);
+		}
+		for (Object[] row : loadRows(session, "SELECT proceedingsId, 0 FROM Proceedings"))
+			venue(this.proceedings, row[0].toString());
+		for (Object[] row : loadRows(session, "SELECT journalId, 0 FROM Journal"))
+			venue(this.journals, row[0].toString());
+		for (Object[] row : loadRows(session, "SELECT bookId, 0 FROM Book"))
+			venue(this.books, row[0].toString());
+		this.personNames.clear();
+		this.publications = null;
+		this.sharedPublications = null;
+		this.resolved = true;
+		logger.debug("Dictionaries loaded: "+this.persons.size()+" persons, "+
+				this.proceedings.size()+" proceedings, "+this.journals.size()+" journals, "+this.books.size()+" books");
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ArrayList<Object[]> loadRows(ISodaHibernateSession session, String sql){
+		ArrayList<Object[]> result = new ArrayList<Object[]>();
+		int first = 0;
+		while (true){
+			Query query = session.createSQLQuery(sql);
+			query.setFirstResult(first);
+			query.setMaxResults(LOAD_PAGE);
+			List<Object[]> rows = query.list();
+			if (rows.isEmpty())
+				break;
+			for (Object[] row : rows){
+				if (row[0]!=null)
+					result.add(row);
+			}
+			first += rows.size();
+		}
+		return result;
+	}
+
+	private static long toLong(Object value){
+		if (value instanceof BigInteger)
+			return ((BigInteger)value).longValue();
+		if (value instanceof Number)
+			return ((Number)value).longValue();
+		return Long.parseLong(value.toString());
+	}
+
+	/**
+	 * @param name a person name
+	 * @return the person id, null if the name is not in the dictionary
+	 */
+	public Long getPersonId(String name){
+		return this.persons.get(collationKey(name));
+	}
+
+	/**
+	 * @param id a venue id
+	 * @return true if the id is a proceedings (not a fake one)
+	 */
+	public boolean isProceedings(String id){
+		return this.proceedings.containsKey(id);
+	}
+
+	/**
+	 * @param id a venue id
+	 * @return true if the id is a journal
+	 */
+	public boolean isJournal(String id){
+		return this.journals.containsKey(id);
+	}
+
+	/**
+	 * @param id a venue id
+	 * @return true if the id is a book
+	 */
+	public boolean isBook(String id){
+		return this.books.containsKey(id);
+	}
+
+	/**
+	 * Tells whether a publication id may be used by more than one record:
+	 * such a publication has to be saved or updated, the other ones can be simply inserted.
+	 * @param publicationId the publication id
+	 * @return false only if the id is known to be used by a single record
+	 */
+	public boolean isSharedPublication(String publicationId){
+		if (this.sharedPublications==null)
+			return true;
+		return this.sharedPublications.contains(hash(publicationId));
+	}
+
+	/**
+	 * @return true once the dictionaries are resolved or loaded from the db
+	 */
+	public boolean isResolved(){
+		return this.resolved;
+	}
+
+	/**
+	 * Getter
+	 * @return the number of persons
+	 */
+	public synchronized int getPersonsNumber(){
+		return this.persons.size();
+	}
+
+	/**
+	 * Getter
+	 * @return the number of venues
+	 */
+	public synchronized int getVenuesNumber(){
+		return this.proceedings.size()+this.journals.size()+this.books.size();
+	}
+}
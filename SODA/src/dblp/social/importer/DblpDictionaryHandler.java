@@ -0,0 +1,44 @@
+package dblp.social.importer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class defines the handler used by the first pass of a two-pass import: 
+ * each record is added to the shared DblpDictionaries, nothing is saved.
+ * 
+ * @author Staffiero
+ *
+ */
+public class DblpDictionaryHandler extends DblpRecordHandler{
+	private static Logger logger = Logger.getLogger(DblpDictionaryHandler.class);
+	private DblpDictionaries dictionaries;
+	private int skipped = 0;
+	
+	/**
+	 * The constructor to be used
+	 * @param dictionaries the dictionaries shared by the first pass threads
+	 */
+	public DblpDictionaryHandler(DblpDictionaries dictionaries){
+		this.dictionaries = dictionaries;
+	}
+	
+	@Override
+	protected void endRecord(DblpRecord record){
+		try{
+			this.dictionaries.addRecord(record);
+		}
+		catch (RuntimeException e){
+			//the record is left to the second pass, which handles it as the importer does
+			logger.error("Record "+record.getKey()+" not added to the dictionaries: "+e.getMessage());
+			this.skipped++;
+		}
+	}
+	
+	/**
+	 * Getter
+	 * @return the number of records which could not be added to the dictionaries
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+}
@@ -0,0 +1,64 @@
+package dblp.social.importer;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import dblp.social.loader.PartFile;
+
+/**
+ * This class defines a thread of the first pass of a two-pass import.
+ * The threads share the list of the part files to be read: each thread takes the next part file 
+ * and adds its records to the shared DblpDictionaries, until the list is empty.
+ * 
+ * @author Staffiero
+ *
+ */
+public class DblpDictionaryThread extends Thread {
+	private List<PartFile> partFiles;
+	private DblpDictionaries dictionaries;
+	private Exception error = null;
+	private static Logger logger = Logger.getLogger(DblpDictionaryThread.class);
+	
+	/**
+	 * The constructor to be used
+	 * 
+	 * @param partFiles: the part files to be read, shared by the first pass threads
+	 * @param dictionaries: the dictionaries to be filled
+	 * @param threadName: the name of the thread
+	 */
+	public DblpDictionaryThread(List<PartFile> partFiles, DblpDictionaries dictionaries, String threadName){
+		super(threadName);
+		this.partFiles = partFiles;
+		this.dictionaries = dictionaries;
+	}
+	
+	@Override
+	public void run() {
+		DblpParser parser = new DblpParser();
+		PartFile pf;
+		try{
+			while (true){
+				synchronized (this.partFiles) {
+					if (this.partFiles.isEmpty())
+						break;
+					pf = this.partFiles.remove(0);
+				}
+				logger.debug("Reading the dictionaries of "+pf.getFile().getName());
+				parser.parseRecords(pf, new DblpDictionaryHandler(this.dictionaries));
+			}
+		}
+		catch (Exception e){
+			logger.error("Exception in thread "+getName()+" while reading the dictionaries: "+e.getMessage());
+			this.error = e;
+		}
+	}
+	
+	/**
+	 * Getter
+	 * @return the exception which stopped the thread, null if the thread read its part files
+	 */
+	public Exception getError() {
+		return error;
+	}
+}
@@ -1,5 +1,6 @@
 package dblp.social.importer;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -8,6 +9,7 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import dblp.social.exceptions.SodaHibernateException;
 import dblp.social.exceptions.ThreadException;
 import dblp.social.hibernate.ISodaHibernateSession;
 import dblp.social.hibernate.entities.Article;
@@ -16,6 +18,7 @@ import dblp.social.hibernate.entities.DblpPublication;
 import dblp.social.hibernate.entities.InCollection;
 import dblp.social.hibernate.entities.InProceedings;
 import dblp.social.hibernate.entities.Journal;
+import dblp.social.hibernate.entities.PendingVenueLink;
 import dblp.social.hibernate.entities.Person;
 import dblp.social.hibernate.entities.Proceedings;
 import dblp.social.loader.PartFile;
@@ -30,44 +33,33 @@ import dblp.social.loader.PartFile;
 public class DblpImporterHandler extends DefaultHandler{
 
 	static Logger logger = Logger.getLogger(DblpImporterHandler.class.getName());
-	private static final String INCOLLECTION = "incollection";
-	private static final String INPROCEEDINGS = "inproceedings";
-	private static final String PROCEEDINGS = "proceedings";
-	private static final String ARTICLE = "article";
-	private static final String JOURNAL = "journal";
-	private static final String BOOK = "book";
-	private static final String TITLE = "title";
-	private static final String BOOKTITLE = "booktitle";
-	private static final String YEAR = "year";
-	private static final String ISBN = "isbn";
-	private static final String PUBLISHER = "publisher";
-	private static final String AUTHOR = "author";
-	private static final String PAGES = "pages";
-	private static final String EDITOR = "editor";
-	private static final String URL = "url";
-	private static final String NUMBER = "number";
-	private static final String VOLUME = "volume";
-	private static final String EE = "ee";
-	private static final String PHDTHESIS = "phdthesis";
-	private static final String MASTERTHESIS= "mastersthesis";
-	private static final String WWW = "www";
-	private static final String CHECKPOINT = "checkpoint";
-	
-	
-	private String currDblpElement = "";
+
+	private DblpTag currDblpElement = DblpTag.OTHER;
 	private ISodaHibernateSession session;
 	private Object currEntity = null;
 	private Journal tempJournal = new Journal();
 	private ArrayList<String> fakeProceedings = new ArrayList<String>();
 	private ArrayList<Person> currAuthors = new ArrayList<Person>();
 	private ArrayList<Person> currEditors = new ArrayList<Person>();
-	private ArrayList<String> currElementFragments = new ArrayList<String>();
+	//the text of the current element, reused by every element
+	private StringBuilder currText = new StringBuilder(256);
 	private int startingCheckpoint=0;
 	private int currCheckpoint=0;
 	private int startingOffset=0;
 	private int currOffset=0;
 	private PartFile partFile;
 	private ThreadMonitor monitor=null;
+	//the multi-record transaction, null if each record is committed
+	private ImportBatch batch=null;
+	//the resolved dictionaries of a two-pass import, null if the venues have to be looked up
+	private DblpDictionaries dictionaries=null;
+	//the import metrics and the metrics of the current thread, null if the metrics are disabled
+	private ImportMetrics metrics=null;
+	private WorkerMetrics worker=null;
+	//read once, the debug messages of each element are built only when enabled
+	private boolean debug = logger.isDebugEnabled();
+	//true if the publications are linked to their venues by the VenueLinker after the import
+	private boolean deferredLinks = VenueLinker.isEnabled();
 	/**
 	 * The constructor to be used when parsing each part file sequentially.
 	 * @param session the ISodaHibernateSession through which the dblp data extracted will be made persistent
@@ -79,6 +71,10 @@ public class DblpImporterHandler extends DefaultHandler{
 		this.startingOffset = partFile.getLastOffset()+1;	
 		this.partFile=partFile;
 		this.session = session;
+		if (ImportBatch.isEnabled())
+			this.batch = new ImportBatch(partFile.getLastCheckpoint(), partFile.getLastOffset());
+		initDictionaries();
+		initMetrics();
 	}
 	
 	/**
@@ -94,21 +90,42 @@ public class DblpImporterHandler extends DefaultHandler{
 		this.partFile=partFile;
 		this.session = session;
 		this.monitor = monitor;
+		if (ImportBatch.isEnabled())
+			this.batch = new ImportBatch(partFile.getLastCheckpoint(), partFile.getLastOffset());
+		initDictionaries();
+		initMetrics();
+	}
+
+	/**
+	 * Uses the dictionaries of a two-pass import, if they have been resolved
+	 */
+	private void initDictionaries(){
+		DblpDictionaries d = DblpDictionaries.getInstance();
+		if (d!=null && d.isResolved())
+			this.dictionaries = d;
+	}
+
+	/**
+	 * Uses the import metrics, if they have been initialized
+	 */
+	private void initMetrics(){
+		this.metrics = ImportMetrics.getInstance();
+		if (this.metrics!=null)
+			this.worker = this.metrics.worker();
 	}
 
 	/**
 	 * Method called every time the parser enters a new XML element.
 	 */
 	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException{
+		DblpTag tag = DblpTag.of(localName);
+		//Code added to handle checkpoints
+		if (tag==DblpTag.CHECKPOINT){
+			checkpoint(Integer.parseInt(attributes.getValue("number")));
+			return;
+		}
 		//Increment offset counter (always when entering a main dblp tag)
-		if(localName.equalsIgnoreCase(BOOK)|| 
-				localName.equalsIgnoreCase(PROCEEDINGS) ||
-				localName.equalsIgnoreCase(INCOLLECTION) ||
-				localName.equalsIgnoreCase(INPROCEEDINGS) ||
-				localName.equalsIgnoreCase(ARTICLE) ||
-				localName.equalsIgnoreCase(PHDTHESIS) ||
-				localName.equalsIgnoreCase(MASTERTHESIS) ||
-				localName.equalsIgnoreCase(WWW)){
+		if(tag.isRecord()){
 			this.currOffset++;
 		}
 		
@@ -122,158 +139,160 @@ public class DblpImporterHandler extends DefaultHandler{
 		 * 
 		 */
 		
-		if((this.currCheckpoint>this.startingCheckpoint) || 
-				(this.currCheckpoint==this.startingCheckpoint && 
-						this.currOffset>=this.startingOffset)){
+		if(isProceeding()){
 			//Here I check what node I'm entering
 			//First I check if it's what I call a "Dblp element" (article, inProceedings, book chapter, book, etc.)
-			if(localName.equalsIgnoreCase(BOOK)){
-				logger.debug("Entering a dblp book element " + attributes.getValue("key"));
-				logger.debug("Creating a Book instance");			
-				this.currEntity = new Book();
-				((Book)this.currEntity).setDblpKey(attributes.getValue("key"));
-				((Book)this.currEntity).setId(attributes.getValue("key"));
-				this.currDblpElement = localName;
-				
-			}
-			else if(localName.equalsIgnoreCase(PROCEEDINGS)){
-				logger.debug("Entering a dblp proceedings element " + attributes.getValue("key"));
-				logger.debug("Creating a Proceedings instance");
-				this.currEntity = new Proceedings();
-				((Proceedings)this.currEntity).setDblpKey(attributes.getValue("key"));
-				((Proceedings)this.currEntity).setId(attributes.getValue("key"));
-				this.currDblpElement = localName;
-			}	
-			else if(localName.equalsIgnoreCase(INCOLLECTION)){
-				logger.debug("Entering a dblp incollection element " + attributes.getValue("key"));
-				logger.debug("Creating an InCollection instance");
-				this.currEntity = new InCollection();
-				((InCollection)this.currEntity).setDblpKey(attributes.getValue("key"));
-				((InCollection)this.currEntity).setId(attributes.getValue("key"));
-				this.currDblpElement = localName;
-			}	
-			else if(localName.equalsIgnoreCase(INPROCEEDINGS)){
-				logger.debug("Entering a dblp inproceedings element " + attributes.getValue("key"));
-				logger.debug("Creating an InProceedings instance");
-				this.currEntity = new InProceedings();
-				((InProceedings)this.currEntity).setDblpKey(attributes.getValue("key"));
-				((InProceedings)this.currEntity).setId(attributes.getValue("key"));
-				this.currDblpElement = localName;
-			}	
-			else if(localName.equalsIgnoreCase(ARTICLE)){
-				logger.debug("Entering a dblp article element " + attributes.getValue("key"));
-				logger.debug("Creating an Article instance");
-				this.currEntity = new Article();
-				((Article)this.currEntity).setDblpKey(attributes.getValue("key"));
-				((Article)this.currEntity).setId(attributes.getValue("key"));
-				this.currDblpElement = localName;
-			}
-			//Code added to handle checkpoints
-			else if (localName.equalsIgnoreCase(CHECKPOINT)){
+			if(tag.isRecord())
+				createEntity(tag, attributes.getValue("key"));
+			//If it's not any of those elements, It must be what I call a "Dblp attribute", which specifies a specific attribute (title, year, author, isbn, etc.) of a "Dblp element"
+			else if (this.debug)
+				logger.debug("Found" + localName + "for a " + this.currDblpElement + " element");
+		}
+		else
+			this.partFile.setLastOffset(this.currOffset);
+	}
+
+	/**
+	 * @return true if the current position (checkpoint, offset) is not lower than the starting position,
+	 * the elements before the starting position have already been imported
+	 */
+	private boolean isProceeding(){
+		return (this.currCheckpoint>this.startingCheckpoint) || 
+			(this.currCheckpoint==this.startingCheckpoint && 
+					this.currOffset>=this.startingOffset);
+	}
+
+	/**
+	 * Handles a checkpoint element: the progress is saved and, in multi-thread mode, the thread may be closed.
+	 * Before the starting checkpoint only the counters are updated.
+	 * @param chptNumber the checkpoint number
+	 * @throws SAXException
+	 */
+	void checkpoint(int chptNumber) throws SAXException{
+		if (isProceeding()){
+			if (this.debug)
 				logger.debug("Entering a checkpoint element");
-				int chptNumber = Integer.parseInt(attributes.getValue("number"));
-				this.partFile.setLastCheckpoint(chptNumber);
-				this.partFile.setLastOffset(0);
-				this.currCheckpoint = chptNumber;
-				this.currOffset=0;
-				if (chptNumber>this.startingCheckpoint){
-					try{
-						//Saves the current progress
-						this.partFile.setLastCheckpoint(this.currCheckpoint);
-						this.partFile.setLastOffset(this.currOffset);
-						//if (this.monitor!=null)
-						//	monitor.getLockOnDescriptor();
-						//this.partFile.updateDescriptor();
-						//if (this.monitor!=null)
-						//	monitor.releaseLockOnDescriptor();
-						
-						//if the application is running in multi-thread mode
-						//checks if the current thread has to be closed
-						if (this.monitor!=null){
-							if(this.monitor.closeThreads()){
-								this.monitor.getLockOnDescriptor();
-								this.partFile.updateDescriptor();
-								this.monitor.releaseLockOnDescriptor();
-								this.session.close();
-								throw new ThreadException("Forcing thread termination");
-							}
-								
-						}
-						//Checks the available memory. 
-						Runtime r = Runtime.getRuntime();
-						long totalMemory =r.totalMemory();
-						long maxMemory = r.maxMemory();
-						long freeMemory =r.freeMemory();
-						//if the application is running in multi-thread mode
-						if (this.monitor!=null){
-							//dynamically calibrates the number of running threads
-							try{
-								//when calibrateThreads is called from within
-								//a thread (with the "true" argument)
-								//the method will throw a ThreadException if the
-								//current thread has to be closed
-								monitor.calibrateThreads(true);
-							}
-							catch (ThreadException te){
-								//before exiting the parser we need to save the current state
-								this.monitor.getLockOnDescriptor();
-								this.partFile.updateDescriptor();
-								this.monitor.releaseLockOnDescriptor();
-								
-								//forwards the exception
-								throw te;
-							}
-							//When an OutOfMemoryError is thrown we have no guarantee that we will
-							//be able to save the current state. If the current state is not saved the
-							//application will fail to restart.
-							//To prevent memory leaks:
-							//if the amount of free memory is too low <=500kB forces each 
-							//thread to terminate setting monitor.terminateProcess=true
-							if (totalMemory==maxMemory&&freeMemory<(500*1024)){
-								if (this.monitor!=null){
-									this.monitor.setCloseThreads(true);
-									this.monitor.setTerminateProcess(true);
-									//before exiting the parser we need to save the current state
-									this.monitor.getLockOnDescriptor();
-									this.partFile.updateDescriptor();
-									this.monitor.releaseLockOnDescriptor();
-								}
-								r.gc();
-								throw new Exception("Forcing thread termination " +
-										"to prevent OutOfMemoryError");
-							}
+			this.partFile.setLastCheckpoint(chptNumber);
+			this.partFile.setLastOffset(0);
+			this.currCheckpoint = chptNumber;
+			this.currOffset=0;
+			if (chptNumber>this.startingCheckpoint){
+				try{
+					//Saves the current progress
+					this.partFile.setLastCheckpoint(this.currCheckpoint);
+					this.partFile.setLastOffset(this.currOffset);
+					//when batching the records are committed at checkpoints
+					if (this.batch!=null){
+						this.batch.checkpointReached(this.currCheckpoint);
+						if (!this.batch.isOpen() || this.batch.isDue())
+							commitBatch();
+					}
+					//the committed progress is journaled at each checkpoint
+					if (this.batch==null || !this.batch.isOpen())
+						this.partFile.updateDescriptor();
+					if (this.worker!=null)
+						this.worker.checkpointReached();
+					
+					//if the application is running in multi-thread mode
+					//checks if the current thread has to be closed
+					if (this.monitor!=null){
+						if(this.monitor.closeThreads()){
+							commitBatch();
+							saveProgress();
+							this.session.close();
+							throw new ThreadException("Forcing thread termination");
 						}
+							
 					}
-					catch (Exception e){
-						//Wraps each exception into a SAXExceprion
-						throw new SAXException(e);
+					//the concurrency controller may have lowered the threads number,
+					//the heap usage is handled by the controller which closes the threads
+					if (this.monitor!=null && this.monitor.claimRetirement(Thread.currentThread().getName())){
+						//before exiting the parser we need to save the current state
+						commitBatch();
+						saveProgress();
+						throw new ThreadException("Forcing thread termination: threads number lowered");
 					}
 				}
+				catch (Exception e){
+					//Wraps each exception into a SAXExceprion
+					throw new SAXException(e);
+				}
 			}
-			//If it's not any of those elements, It must be what I call a "Dblp attribute", which specifies a specific attribute (title, year, author, isbn, etc.) of a "Dblp element"
-			else 
-				logger.debug("Found" + localName + "for a " + this.currDblpElement + " element");
-			
 		}
 		else{
 			//currCheckpoint< startingCheckpoint
 			//we only care to reach the next checkpoint
-			if (localName.equalsIgnoreCase(CHECKPOINT)){
-				int chptNumber = Integer.parseInt(attributes.getValue("number"));
-				this.currCheckpoint = chptNumber;
-				this.currOffset=0;
-				this.partFile.setLastCheckpoint(this.currCheckpoint);
+			this.currCheckpoint = chptNumber;
+			this.currOffset=0;
+			this.partFile.setLastCheckpoint(this.currCheckpoint);
+		}
+	}
+
+	/**
+	 * Creates the entity of a dblp record (book, proceedings, incollection, inproceedings or article),
+	 * the other records are not imported.
+	 * @param tag the record element
+	 * @param key the dblp key of the record
+	 */
+	private void createEntity(DblpTag tag, String key){
+		if(tag==DblpTag.BOOK){
+			if (this.debug){
+				logger.debug("Entering a dblp book element " + key);
+				logger.debug("Creating a Book instance");
 			}
-			else 
-				this.partFile.setLastOffset(this.currOffset);
+			this.currEntity = new Book();
+			((Book)this.currEntity).setDblpKey(key);
+			((Book)this.currEntity).setId(key);
+			this.currDblpElement = tag;
+			
+		}
+		else if(tag==DblpTag.PROCEEDINGS){
+			if (this.debug){
+				logger.debug("Entering a dblp proceedings element " + key);
+				logger.debug("Creating a Proceedings instance");
+			}
+			this.currEntity = new Proceedings();
+			((Proceedings)this.currEntity).setDblpKey(key);
+			((Proceedings)this.currEntity).setId(key);
+			this.currDblpElement = tag;
+		}	
+		else if(tag==DblpTag.INCOLLECTION){
+			if (this.debug){
+				logger.debug("Entering a dblp incollection element " + key);
+				logger.debug("Creating an InCollection instance");
+			}
+			this.currEntity = new InCollection();
+			((InCollection)this.currEntity).setDblpKey(key);
+			((InCollection)this.currEntity).setId(key);
+			this.currDblpElement = tag;
+		}	
+		else if(tag==DblpTag.INPROCEEDINGS){
+			if (this.debug){
+				logger.debug("Entering a dblp inproceedings element " + key);
+				logger.debug("Creating an InProceedings instance");
+			}
+			this.currEntity = new InProceedings();
+			((InProceedings)this.currEntity).setDblpKey(key);
+			((InProceedings)this.currEntity).setId(key);
+			this.currDblpElement = tag;
+		}	
+		else if(tag==DblpTag.ARTICLE){
+			if (this.debug){
+				logger.debug("Entering a dblp article element " + key);
+				logger.debug("Creating an Article instance");
+			}
+			this.currEntity = new Article();
+			((Article)this.currEntity).setDblpKey(key);
+			((Article)this.currEntity).setId(key);
+			this.currDblpElement = tag;
 		}
 	}
 
 	/**
 	 * Method called every time the parser exits an element.
 	 */
-	@SuppressWarnings("unchecked")
 	public void endElement(String uri, String localName, String qName) throws SAXException{
+		DblpTag tag = DblpTag.of(localName);
 		/*
 		 * If the current checkpoint is higher than the starting checkpoint 
 		 * or if the current checkpoint is the starting checkpoint and the current 
@@ -282,415 +301,425 @@ public class DblpImporterHandler extends DefaultHandler{
 		 * otherwise the parser does nothing on endElement
 		 * 
 		 */
-		if((this.currCheckpoint>this.startingCheckpoint) || 
-				(this.currCheckpoint==this.startingCheckpoint && 
-						this.currOffset>=this.startingOffset)){
-			if(localName.equalsIgnoreCase(PROCEEDINGS)){
+		if(isProceeding()){
+			if(tag.isRecord())
+				saveEntity(tag);
+			else if(tag!=DblpTag.OTHER)
+				setField(tag, this.currText.toString());
+			this.currText.setLength(0);
+		}//end if
+	}
+
+	/**
+	 * Saves the entity of a dblp record, with its authors, editors and venue
+	 * @param tag the record element
+	 * @throws SAXException
+	 */
+	private void saveEntity(DblpTag tag) throws SAXException{
+		if(tag==DblpTag.PROCEEDINGS){
+			if (this.debug)
 				logger.debug("Exiting the proceedings dblp element " + ((Proceedings)this.currEntity).getDblpKey() + ", proceeding to save its hibernate entity");
+			try{
+				//Set the Proceedings id
+				String id = DblpIdUtility.createProceedingsId(((Proceedings)this.currEntity).getId(),
+						((Proceedings)this.currEntity).getDblpKey());
+				if (id==null)
+					throw new SAXException("Could not create a valid id for the inproceedings element"+((Proceedings)this.currEntity).getDblpKey());
+				((Proceedings)this.currEntity).setId(id);		
+			}
+			catch (Exception e){
 				try{
-					//Set the Proceedings id
-					String id = DblpIdUtility.createProceedingsId(((Proceedings)this.currEntity).getId(),
-							((Proceedings)this.currEntity).getDblpKey());
-					if (id==null)
-						throw new SAXException("Could not create a valid id for the inproceedings element"+((Proceedings)this.currEntity).getDblpKey());
-					((Proceedings)this.currEntity).setId(id);		
+					//Before exiting the parser updates the xml parts descriptor in order to persist 
+					//the current state 
+					saveProgress();
+					this.session.clear();
+					this.session.close();
+					logger.error("Error setting id for a Proceedings element:\n" + e.getMessage());
 				}
-				catch (Exception e){
-					try{
-						//Before exiting the parser updates the xml parts descriptor in order to persist 
-						//the current state 
-						if (monitor!=null)
-							monitor.getLockOnDescriptor();
-						this.partFile.updateDescriptor();
-						if (monitor!=null)
-							monitor.releaseLockOnDescriptor();
-						//when a thread is closed after an exception forces the 
-						//termination of each other thread
-						if (monitor!=null)
-							this.monitor.setCloseThreads(true);
-						this.session.clear();
-						this.session.close();
-						logger.error("Error setting id for a Proceedings element:\n" + e.getMessage());
-					}
-					catch(Exception ne){
-						throw new SAXException(ne);
-					}
-					throw new SAXException(e);
+				catch(Exception ne){
+					throw new SAXException(ne);
 				}
-				writeProceedings();
+				throw new SAXException(e);
+			}
+			writeProceedings();
+			if (this.debug)
 				logger.debug("Hibernate entity for proceedings element " + ((Proceedings)this.currEntity).getDblpKey() + " saved on the DB");
-				
-			}	
-			else if(localName.equalsIgnoreCase(BOOK)){
+			
+		}	
+		else if(tag==DblpTag.BOOK){
+			if (this.debug)
 				logger.debug("Exiting the book dblp element " + ((Book)this.currEntity).getDblpKey() + ", proceeding to save its hibernate entity");
-				writeBook();
+			writeBook();
+			if (this.debug)
 				logger.debug("Hibernate entity for book element " + ((Book)this.currEntity).getDblpKey() + " saved on the DB");
-			}
-			else if(localName.equalsIgnoreCase(INCOLLECTION)){
+		}
+		else if(tag==DblpTag.INCOLLECTION){
+			if (this.debug)
 				logger.debug("Exiting the incollection element " + ((DblpPublication)this.currEntity).getDblpKey() + ", proceeding to save its hibernate entity");
-				writeInCollection();
+			writeInCollection();
+			if (this.debug)
 				logger.debug("Hibernate entity for incollection element " + ((InCollection)this.currEntity).getDblpKey() + " saved on the DB");
-			}
-			else if(localName.equalsIgnoreCase(INPROCEEDINGS)){
+		}
+		else if(tag==DblpTag.INPROCEEDINGS){
+			if (this.debug)
 				logger.debug("Exiting the inproceedings element " + ((DblpPublication)this.currEntity).getDblpKey() + ", proceeding to save its hibernate entity");
-				
+			
+			try{
+				//Set the InProceedings id
+				String id = DblpIdUtility.createInProceedingsId(((InProceedings)this.currEntity).getUrl(), 
+					((DblpPublication)this.currEntity).getDblpKey(),
+					(((InProceedings)this.currEntity).getYear()).substring(2),
+					DblpTag.INPROCEEDINGS.getName());
+				if (id==null)
+					throw new SAXException("Could not create a valid id for the inproceedings element"+((DblpPublication)this.currEntity).getDblpKey());
+				((InProceedings)this.currEntity).setId(id);
+			}
+			catch (Exception e){
 				try{
-					//Set the InProceedings id
-					String id = DblpIdUtility.createInProceedingsId(((InProceedings)this.currEntity).getUrl(), 
-						((DblpPublication)this.currEntity).getDblpKey(),
-						(((InProceedings)this.currEntity).getYear()).substring(2),
-						INPROCEEDINGS);
-					if (id==null)
-						throw new SAXException("Could not create a valid id for the inproceedings element"+((DblpPublication)this.currEntity).getDblpKey());
-					((InProceedings)this.currEntity).setId(id);
+					//Before exiting the parser updates the xml parts descriptor in order to persist 
+					//the current state 
+					saveProgress();
+					this.session.clear();
+					this.session.close();
+					logger.error("Error setting id for an InProceedings element:\n" + e.getMessage());
 				}
-				catch (Exception e){
-					try{
-						//Before exiting the parser updates the xml parts descriptor in order to persist 
-						//the current state 
-						if (monitor!=null)
-							monitor.getLockOnDescriptor();
-						this.partFile.updateDescriptor();
-						if (monitor!=null)
-							monitor.releaseLockOnDescriptor();
-						//when a thread is closed after an exception forces the 
-						//termination of each other thread
-						if (monitor!=null)
-							this.monitor.setCloseThreads(true);
-						this.session.clear();
-						this.session.close();
-						logger.error("Error setting id for an InProceedings element:\n" + e.getMessage());
-					}
-					catch(Exception ne){
-						throw new SAXException(ne);
-					}
-					throw new SAXException(e);
+				catch(Exception ne){
+					throw new SAXException(ne);
 				}
-				writeInProceedings();
-				logger.debug("Hibernate entity for inproceedings element " + ((InProceedings)this.currEntity).getDblpKey() + " saved on the DB");
+				throw new SAXException(e);
 			}
-			else if(localName.equalsIgnoreCase(ARTICLE)){
+			writeInProceedings();
+			if (this.debug)
+				logger.debug("Hibernate entity for inproceedings element " + ((InProceedings)this.currEntity).getDblpKey() + " saved on the DB");
+		}
+		else if(tag==DblpTag.ARTICLE){
+			if (this.debug)
 				logger.debug("Exiting the article element " + ((DblpPublication)this.currEntity).getDblpKey() + ", proceeding to save its hibernate entity");
+			try{
+				//Set the Article id
+				String id = DblpIdUtility.createInProceedingsId(((Article)this.currEntity).getUrl(),
+						((DblpPublication)this.currEntity).getDblpKey(),
+						this.tempJournal.getVolume(),
+						DblpTag.ARTICLE.getName());
+				if (id==null)
+					throw new SAXException("Could not create a valid id for the article element"+((DblpPublication)this.currEntity).getDblpKey());
+				((Article)this.currEntity).setId(id);
+			}
+			catch (Exception e){
 				try{
-					//Set the Article id
-					String id = DblpIdUtility.createInProceedingsId(((Article)this.currEntity).getUrl(),
-							((DblpPublication)this.currEntity).getDblpKey(),
-							this.tempJournal.getVolume(),
-							ARTICLE);
-					if (id==null)
-						throw new SAXException("Could not create a valid id for the article element"+((DblpPublication)this.currEntity).getDblpKey());
-					((Article)this.currEntity).setId(id);
+					//Before exiting the parser updates the xml parts descriptor in order to persist 
+					//the current state 
+					saveProgress();
+					this.session.clear();
+					this.session.close();
+					logger.error("Error setting id for an Article element:\n" + e.getMessage());
 				}
-				catch (Exception e){
-					try{
-						//Before exiting the parser updates the xml parts descriptor in order to persist 
-						//the current state 
-						if (monitor!=null)
-							monitor.getLockOnDescriptor();
-						this.partFile.updateDescriptor();
-						if (monitor!=null)
-							monitor.releaseLockOnDescriptor();
-						//when a thread is closed after an exception forces the 
-						//termination of each other thread
-						if (monitor!=null)
-							this.monitor.setCloseThreads(true);
-						this.session.clear();
-						this.session.close();
-						logger.error("Error setting id for an Article element:\n" + e.getMessage());
-					}
-					catch(Exception ne){
-						throw new SAXException(ne);
-					}
-					throw new SAXException(e);
+				catch(Exception ne){
+					throw new SAXException(ne);
 				}
-				writeArticle();
-				logger.debug("Hibernate entity for article element " + ((Article)this.currEntity).getDblpKey() + " saved on the DB");
+				throw new SAXException(e);
 			}
-			else if(localName.equalsIgnoreCase(AUTHOR)){
-				String authorName = "";
-				for(String frag : this.currElementFragments)
-					authorName = authorName + frag;
-				try{
-					Person author = null;
-					List authors = 
-						session.getNamedQuery("findPersonByName")
-						.setString("personName", authorName)
-						.list();
-					if(authors!=null && !authors.isEmpty()){
-						author = (Person)authors.get(0);
-					}
-					else{
-						author = new Person(authorName);
-						this.currAuthors.add(author);
-					}
-					if(this.currDblpElement.equalsIgnoreCase(INCOLLECTION)||
-							this.currDblpElement.equals(INPROCEEDINGS)||
-							this.currDblpElement.equals(ARTICLE)){
-						if (!((DblpPublication)this.currEntity).getAuthors().contains(author)){
-							//if the current entity does not already contain the given author the author
-							//object is added to the authors list
-							((DblpPublication)this.currEntity).addAuthor(author);
+			writeArticle();
+			if (this.debug)
+				logger.debug("Hibernate entity for article element " + ((Article)this.currEntity).getDblpKey() + " saved on the DB");
+		}
+	}
+
+	/**
+	 * Sets a field of the current entity, e.g. a title or an author
+	 * @param tag the field element
+	 * @param text the field text
+	 * @throws SAXException
+	 */
+	@SuppressWarnings("unchecked")
+	private void setField(DblpTag tag, String text) throws SAXException{
+		if(tag==DblpTag.AUTHOR){
+			String authorName = text;
+			try{
+				Person author = findPerson(authorName);
+				if(author==null){
+					author = new Person(authorName);
+					this.currAuthors.add(author);
+				}
+				if(this.currDblpElement==DblpTag.INCOLLECTION||
+						this.currDblpElement==DblpTag.INPROCEEDINGS||
+						this.currDblpElement==DblpTag.ARTICLE){
+					if (!((DblpPublication)this.currEntity).getAuthors().contains(author)){
+						//if the current entity does not already contain the given author the author
+						//object is added to the authors list
+						((DblpPublication)this.currEntity).addAuthor(author);
+						if (this.debug)
 							logger.debug("Added author: " + authorName + " to " + this.currEntity.getClass().getSimpleName() + " " + ((DblpPublication)this.currEntity).getId());
-						}
 					}
-					else if(this.currDblpElement.equals(BOOK)){
-						if (!((Book)this.currEntity).getAuthors().contains(author)){
-							//if the current entity does not already contain the given author the author
-							//object is added to the authors list
-							((Book)this.currEntity).addAuthor(author);
+				}
+				else if(this.currDblpElement==DblpTag.BOOK){
+					if (!((Book)this.currEntity).getAuthors().contains(author)){
+						//if the current entity does not already contain the given author the author
+						//object is added to the authors list
+						((Book)this.currEntity).addAuthor(author);
+						if (this.debug)
 							logger.debug("Added author: " + authorName + " to a book");
-						}
 					}
-				}   //Handles each exception in the same way
-				catch (Exception e){
-					try{
-						//Rollbacks the current transaction
-						this.session.rollbackTransaction();
-						//Before exiting the parser updates the xml parts descriptor in order to persist 
-						//the current state 
-						if (monitor!=null)
-							monitor.getLockOnDescriptor();
-						this.partFile.updateDescriptor();
-						if (monitor!=null)
-							monitor.releaseLockOnDescriptor();
-						//when a thread is closed after an exception forces the 
-						//termination of each other thread
-						if (monitor!=null)
-							this.monitor.setCloseThreads(true);
-						this.session.clear();
-						this.session.close();
-						logger.error("Error processing an author element:\n" + e.getMessage());
-					}
-					catch(Exception ne){
-						throw new SAXException(ne);
-					}
-					throw new SAXException(e);
 				}
+			}   //Handles each exception in the same way
+			catch (Exception e){
+				try{
+					//Rollbacks the current transaction
+					rollbackRecord();
+					//Before exiting the parser updates the xml parts descriptor in order to persist 
+					//the current state 
+					saveProgress();
+					this.session.clear();
+					this.session.close();
+					logger.error("Error processing an author element:\n" + e.getMessage());
+				}
+				catch(Exception ne){
+					throw new SAXException(ne);
+				}
+				throw new SAXException(e);
 			}
-			else if(localName.equalsIgnoreCase(TITLE)){
-				String title = "";
-				for(String frag : this.currElementFragments)
-					title = title + frag;
-				title = cleanStringFormat(title);
-				//Now I check to which Dblp element does this title belong to
-				if(this.currDblpElement.equalsIgnoreCase(BOOK)){
-					((Book)this.currEntity).setTitle(title);
+		}
+		else if(tag==DblpTag.TITLE){
+			String title = text;
+			title = cleanStringFormat(title);
+			//Now I check to which Dblp element does this title belong to
+			if(this.currDblpElement==DblpTag.BOOK){
+				((Book)this.currEntity).setTitle(title);
+				if (this.debug)
 					logger.debug("Added title: " + title + " to Book " + ((Book)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equalsIgnoreCase(PROCEEDINGS)){
-					((Proceedings)this.currEntity).setTitle(title);
+			}
+			else if(this.currDblpElement==DblpTag.PROCEEDINGS){
+				((Proceedings)this.currEntity).setTitle(title);
+				if (this.debug)
 					logger.debug("Added title: " + title + " to Proceedings " + ((Proceedings)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equalsIgnoreCase(INCOLLECTION) ||
-						this.currDblpElement.equalsIgnoreCase(INPROCEEDINGS) ||
-						this.currDblpElement.equalsIgnoreCase(ARTICLE)){
-					((DblpPublication)this.currEntity).setTitle(title);
+			}
+			else if(this.currDblpElement==DblpTag.INCOLLECTION ||
+					this.currDblpElement==DblpTag.INPROCEEDINGS ||
+					this.currDblpElement==DblpTag.ARTICLE){
+				((DblpPublication)this.currEntity).setTitle(title);
+				if (this.debug)
 					logger.debug("Added title: " + title + " to " + this.currEntity.getClass().getSimpleName() + " " + ((DblpPublication)this.currEntity).getDblpKey());
-				}
 			}
-			else if(localName.equalsIgnoreCase(BOOKTITLE)){
-				String bookTitle = "";
-				for(String frag : this.currElementFragments)
-					bookTitle = bookTitle + frag;
-				//Now I check to which Dblp element does this booktitle belong to
-				if(this.currDblpElement.equalsIgnoreCase(BOOK)){
-					((Book)this.currEntity).setBooktitle(bookTitle);
+		}
+		else if(tag==DblpTag.BOOKTITLE){
+			String bookTitle = text;
+			//Now I check to which Dblp element does this booktitle belong to
+			if(this.currDblpElement==DblpTag.BOOK){
+				((Book)this.currEntity).setBooktitle(bookTitle);
+				if (this.debug)
 					logger.debug("Added booktitle: " + bookTitle + " to Book " + ((Book)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equalsIgnoreCase(INPROCEEDINGS)){
-					((InProceedings)this.currEntity).setBooktitle(bookTitle);
+			}
+			else if(this.currDblpElement==DblpTag.INPROCEEDINGS){
+				((InProceedings)this.currEntity).setBooktitle(bookTitle);
+				if (this.debug)
 					logger.debug("Added booktitle: " + bookTitle + " to InProceedings " + ((DblpPublication)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equalsIgnoreCase(INCOLLECTION)){
-					((InCollection)this.currEntity).setBooktitle(bookTitle);
+			}
+			else if(this.currDblpElement==DblpTag.INCOLLECTION){
+				((InCollection)this.currEntity).setBooktitle(bookTitle);
+				if (this.debug)
 					logger.debug("Added booktitle: " + bookTitle + " to InCollection " + ((DblpPublication)this.currEntity).getDblpKey());
-				}
 			}
-			else if(localName.equalsIgnoreCase(YEAR)){
-				String year = "";
-				for(String frag : this.currElementFragments)
-					year = year + frag;
-				//Now I check to which Dblp element does this year belong to
-				if(this.currDblpElement.equalsIgnoreCase(BOOK)){
-					((Book)this.currEntity).setYear(year);
+		}
+		else if(tag==DblpTag.YEAR){
+			String year = text;
+			//Now I check to which Dblp element does this year belong to
+			if(this.currDblpElement==DblpTag.BOOK){
+				((Book)this.currEntity).setYear(year);
+				if (this.debug)
 					logger.debug("Added year: " + year + " to Book " + ((Book)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equalsIgnoreCase(PROCEEDINGS)){
-					((Proceedings)this.currEntity).setYear(year);
+			}
+			else if(this.currDblpElement==DblpTag.PROCEEDINGS){
+				((Proceedings)this.currEntity).setYear(year);
+				if (this.debug)
 					logger.debug("Added year: " + year + " to Proceedings " + ((Proceedings)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equalsIgnoreCase(INCOLLECTION) ||
-						this.currDblpElement.equalsIgnoreCase(INPROCEEDINGS) ||
-						this.currDblpElement.equalsIgnoreCase(ARTICLE)){
-					((DblpPublication)this.currEntity).setYear(year);
+			}
+			else if(this.currDblpElement==DblpTag.INCOLLECTION ||
+					this.currDblpElement==DblpTag.INPROCEEDINGS ||
+					this.currDblpElement==DblpTag.ARTICLE){
+				((DblpPublication)this.currEntity).setYear(year);
+				if (this.debug)
 					logger.debug("Added year: " + year + " to " + this.currEntity.getClass().getSimpleName() + " " + ((DblpPublication)this.currEntity).getDblpKey());
-				}
-			}//TODO 
-			else if(localName.equalsIgnoreCase(URL)){
-				String url = "";
-				for(String frag : this.currElementFragments)
-					url = url + frag;
-				
-				if(this.currDblpElement.equalsIgnoreCase(INPROCEEDINGS) ||
-						this.currDblpElement.equalsIgnoreCase(ARTICLE)){
-					((DblpPublication)this.currEntity).setUrl(url);
-				}else if(this.currDblpElement.equalsIgnoreCase(INCOLLECTION)){
-					((DblpPublication)this.currEntity).setUrl(url);
-					((DblpPublication)this.currEntity).setId(url);
+			}
+		}//TODO 
+		else if(tag==DblpTag.URL){
+			String url = text;
+			
+			if(this.currDblpElement==DblpTag.INPROCEEDINGS ||
+					this.currDblpElement==DblpTag.ARTICLE){
+				((DblpPublication)this.currEntity).setUrl(url);
+			}else if(this.currDblpElement==DblpTag.INCOLLECTION){
+				((DblpPublication)this.currEntity).setUrl(url);
+				((DblpPublication)this.currEntity).setId(url);
+				if (this.debug)
 					logger.debug("Added internal url and id: " + url + " to " + this.currEntity.getClass().getSimpleName() + " " + ((DblpPublication)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equalsIgnoreCase(BOOK)){				
-					((Book)this.currEntity).setId(url);
+			}
+			else if(this.currDblpElement==DblpTag.BOOK){				
+				((Book)this.currEntity).setId(url);
+				if (this.debug)
 					logger.debug("Added id: " + url + " to " + this.currEntity.getClass().getSimpleName() + " " + ((Book)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equalsIgnoreCase(PROCEEDINGS)){
-					((Proceedings)this.currEntity).setId(url);
+			}
+			else if(this.currDblpElement==DblpTag.PROCEEDINGS){
+				((Proceedings)this.currEntity).setId(url);
+				if (this.debug)
 					logger.debug("Added id: " + url + " to " + this.currEntity.getClass().getSimpleName() + " " + ((Proceedings)this.currEntity).getDblpKey());
-				}
 			}
-			else if(localName.equalsIgnoreCase(EDITOR)){
-				String editorName = "";
-				for(String frag : this.currElementFragments)
-					editorName = editorName + frag;
-				//Now I check to which Dblp element does this publisher belong to
-				try {
-					//First I check whether that Author already exists
-					//If not, I create a new one, otherwise I fetch the existing one.
-					Person editor = null;
-					List persons = 
-						session.getNamedQuery("findPersonByName")
-						.setString("personName", editorName)
-						.list();
-					
-					if(persons!=null && !persons.isEmpty())
-						editor = (Person)persons.get(0);
+		}
+		else if(tag==DblpTag.EDITOR){
+			String editorName = text;
+			//Now I check to which Dblp element does this publisher belong to
+			try {
+				//First I check whether that Author already exists
+				//If not, I create a new one, otherwise I fetch the existing one.
+				Person editor = findPerson(editorName);
+				if(editor==null){
+					editor = new Person(editorName);
+					if (this.batch!=null){
+						//when batching the editor is committed with the batch
+						beginRecord();
+						save(editor);
+						this.batch.addNewPerson(editor);
+					}
 					else{
-						editor = new Person(editorName);
 						this.session.startTransaction();
-						this.session.saveObject(editor);
+						save(editor);
 						this.session.endTransaction();
 						this.session.flush();
+						cachePerson(editor);
 					}
-					if(this.currDblpElement.equalsIgnoreCase(BOOK)){
-						((Book)this.currEntity).addEditor(editor);
+				}
+				if(this.currDblpElement==DblpTag.BOOK){
+					((Book)this.currEntity).addEditor(editor);
+					if (this.debug)
 						logger.debug("Added editor: " + editorName + " to a book");
-					}
-				} catch (Exception e) {
-					try{
-						if (monitor!=null)
-							monitor.getLockOnDescriptor();
-						this.partFile.updateDescriptor();
-						if (monitor!=null)
-							monitor.releaseLockOnDescriptor();
-						//when a thread is closed forces the termination of each other thread
-						if (monitor!=null)
-							this.monitor.setCloseThreads(true);
-						logger.error("SodaHibernateException encountered while fetching a user named " + editorName + " from the db.\n" + e.getMessage());
-						this.session.rollbackTransaction();
-					}
-					catch(Exception ne){
-						throw new SAXException(ne);
-					}
-					throw new SAXException(e);
 				}
-			}
-			else if(localName.equalsIgnoreCase(PAGES)){
-				String pages = "";
-				for(String frag : this.currElementFragments)
-					pages = pages + frag;
-				if(this.currDblpElement.equalsIgnoreCase(INCOLLECTION) || 
-						this.currDblpElement.equalsIgnoreCase(INPROCEEDINGS) ||
-						this.currDblpElement.equalsIgnoreCase(ARTICLE)){
-					((DblpPublication)this.currEntity).setPageRange(pages);
-					logger.debug("Added pages: " + pages + " to " + this.currEntity.getClass().getSimpleName() + " " + ((DblpPublication)this.currEntity).getDblpKey());
+			} catch (Exception e) {
+				try{
+					saveProgress();
+					logger.error("SodaHibernateException encountered while fetching a user named " + editorName + " from the db.\n" + e.getMessage());
+					rollbackRecord();
 				}
-				else
-					logger.error("The parser ended up in a <pages> element without coming from an InCollection, InProceedings or Article!");
-			}	
-			else if(localName.equalsIgnoreCase(EE)){
-				String ee = "";
-				for(String frag : this.currElementFragments)
-					ee = ee + frag;
-				if(this.currDblpElement.equalsIgnoreCase(INCOLLECTION) || 
-						this.currDblpElement.equalsIgnoreCase(INPROCEEDINGS) ||
-						this.currDblpElement.equalsIgnoreCase(ARTICLE)){
-					((DblpPublication)this.currEntity).setEe(ee);
-					logger.debug("Added ee: " + ee + " to " + this.currEntity.getClass().getSimpleName() + " " + ((DblpPublication)this.currEntity).getDblpKey());
+				catch(Exception ne){
+					throw new SAXException(ne);
 				}
+				throw new SAXException(e);
 			}
-			else if(localName.equalsIgnoreCase(JOURNAL)){
-				String journalTitle = "";
-				for(String frag : this.currElementFragments)
-					journalTitle = journalTitle + frag;
-				if(this.currDblpElement.equalsIgnoreCase(ARTICLE)){
-					this.tempJournal.setTitle(journalTitle);
-				}
+		}
+		else if(tag==DblpTag.PAGES){
+			String pages = text;
+			if(this.currDblpElement==DblpTag.INCOLLECTION || 
+					this.currDblpElement==DblpTag.INPROCEEDINGS ||
+					this.currDblpElement==DblpTag.ARTICLE){
+				((DblpPublication)this.currEntity).setPageRange(pages);
+				if (this.debug)
+					logger.debug("Added pages: " + pages + " to " + this.currEntity.getClass().getSimpleName() + " " + ((DblpPublication)this.currEntity).getDblpKey());
 			}
-			else if(localName.equalsIgnoreCase(NUMBER)){
-				String number = "";
-				for(String frag : this.currElementFragments)
-					number = number + frag;
-				if(this.currDblpElement.equalsIgnoreCase(ARTICLE)){
-					this.tempJournal.setNumber(number);
-				}
+			else
+				logger.error("The parser ended up in a <pages> element without coming from an InCollection, InProceedings or Article!");
+		}	
+		else if(tag==DblpTag.EE){
+			String ee = text;
+			if(this.currDblpElement==DblpTag.INCOLLECTION || 
+					this.currDblpElement==DblpTag.INPROCEEDINGS ||
+					this.currDblpElement==DblpTag.ARTICLE){
+				((DblpPublication)this.currEntity).setEe(ee);
+				if (this.debug)
+					logger.debug("Added ee: " + ee + " to " + this.currEntity.getClass().getSimpleName() + " " + ((DblpPublication)this.currEntity).getDblpKey());
 			}
-			else if(localName.equalsIgnoreCase(VOLUME)){
-				String volume = "";
-				for(String frag : this.currElementFragments)
-					volume = volume + frag;
-				if(this.currDblpElement.equalsIgnoreCase(ARTICLE)){
-					this.tempJournal.setVolume(volume);
-				}	
+		}
+		else if(tag==DblpTag.JOURNAL){
+			String journalTitle = text;
+			if(this.currDblpElement==DblpTag.ARTICLE){
+				this.tempJournal.setTitle(journalTitle);
+			}
+		}
+		else if(tag==DblpTag.NUMBER){
+			String number = text;
+			if(this.currDblpElement==DblpTag.ARTICLE){
+				this.tempJournal.setNumber(number);
 			}
-			else if(localName.equalsIgnoreCase(PUBLISHER)){
-				String publisher = "";
-				for(String frag : this.currElementFragments)
-					publisher = publisher + frag;
-				//Now I check to which Dblp element does this publisher belong to
-				if(this.currDblpElement.equalsIgnoreCase(INCOLLECTION) || 
-						this.currDblpElement.equalsIgnoreCase(INPROCEEDINGS) ||
-						this.currDblpElement.equalsIgnoreCase(ARTICLE)){
-					((DblpPublication)this.currEntity).setPublisher(publisher);
+		}
+		else if(tag==DblpTag.VOLUME){
+			String volume = text;
+			if(this.currDblpElement==DblpTag.ARTICLE){
+				this.tempJournal.setVolume(volume);
+			}	
+		}
+		else if(tag==DblpTag.PUBLISHER){
+			String publisher = text;
+			//Now I check to which Dblp element does this publisher belong to
+			if(this.currDblpElement==DblpTag.INCOLLECTION || 
+					this.currDblpElement==DblpTag.INPROCEEDINGS ||
+					this.currDblpElement==DblpTag.ARTICLE){
+				((DblpPublication)this.currEntity).setPublisher(publisher);
+				if (this.debug)
 					logger.debug("Added publisher: " + publisher + " to " + this.currEntity.getClass().getSimpleName() + " " + ((DblpPublication)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equalsIgnoreCase(BOOK)){
-					((Book)this.currEntity).setPublisher(publisher);
+			}
+			else if(this.currDblpElement==DblpTag.BOOK){
+				((Book)this.currEntity).setPublisher(publisher);
+				if (this.debug)
 					logger.debug("Added publisher: " + publisher + " to Book " + ((Book)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equals(JOURNAL)){
-					((Journal)this.currEntity).setPublisher(publisher);
+			}
+			else if(this.currDblpElement==DblpTag.JOURNAL){
+				((Journal)this.currEntity).setPublisher(publisher);
+				if (this.debug)
 					logger.debug("Added publisher: " + publisher + " to a journal " + ((Journal)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equals(PROCEEDINGS)){
-					((Proceedings)this.currEntity).setPublisher(publisher);
+			}
+			else if(this.currDblpElement==DblpTag.PROCEEDINGS){
+				((Proceedings)this.currEntity).setPublisher(publisher);
+				if (this.debug)
 					logger.debug("Added publisher: " + publisher + " to a proceedings " + ((Proceedings)this.currEntity).getDblpKey());
-				}
 			}
-			else if(localName.equalsIgnoreCase(ISBN)){
-				String isbn = "";
-				for(String frag : this.currElementFragments)
-					isbn = isbn + frag;
-				if(this.currDblpElement.equalsIgnoreCase(INCOLLECTION) || 
-						this.currDblpElement.equalsIgnoreCase(INPROCEEDINGS) ||
-						this.currDblpElement.equalsIgnoreCase(ARTICLE)){
-					((DblpPublication)this.currEntity).setIsbn(isbn);
+		}
+		else if(tag==DblpTag.ISBN){
+			String isbn = text;
+			if(this.currDblpElement==DblpTag.INCOLLECTION || 
+					this.currDblpElement==DblpTag.INPROCEEDINGS ||
+					this.currDblpElement==DblpTag.ARTICLE){
+				((DblpPublication)this.currEntity).setIsbn(isbn);
+				if (this.debug)
 					logger.debug("Added isbn: " + isbn + " to " + this.currEntity.getClass().getSimpleName() + " " + ((DblpPublication)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equals(BOOK)){
-					((Book)this.currEntity).setIsbn(isbn);
+			}
+			else if(this.currDblpElement==DblpTag.BOOK){
+				((Book)this.currEntity).setIsbn(isbn);
+				if (this.debug)
 					logger.debug("Added isbn: " + isbn + " to a book " + ((Book)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equals(JOURNAL)){
-					((Journal)this.currEntity).setIsbn(isbn);
+			}
+			else if(this.currDblpElement==DblpTag.JOURNAL){
+				((Journal)this.currEntity).setIsbn(isbn);
+				if (this.debug)
 					logger.debug("Added isbn: " + isbn + " to a journal " + ((Journal)this.currEntity).getDblpKey());
-				}
-				else if(this.currDblpElement.equals(PROCEEDINGS)){
-					((Proceedings)this.currEntity).setIsbn(isbn);
+			}
+			else if(this.currDblpElement==DblpTag.PROCEEDINGS){
+				((Proceedings)this.currEntity).setIsbn(isbn);
+				if (this.debug)
 					logger.debug("Added isbn: " + isbn + " to a proceedings" + ((Proceedings)this.currEntity).getDblpKey());
-				}
 			}
-			this.currElementFragments = new ArrayList<String>();
-		}//end if
+		}
+	}
+
+	/**
+	 * Called by a pull parser (see DblpPullParser) instead of startElement when it enters a record element.
+	 * @return true if the record has to be imported, false if it precedes the starting position
+	 */
+	boolean recordStarted(){
+		this.currOffset++;
+		if (isProceeding())
+			return true;
+		this.partFile.setLastOffset(this.currOffset);
+		return false;
+	}
+
+	/**
+	 * Imports a record read by a pull parser, after recordStarted returned true:
+	 * the entity is created, filled and saved as the callbacks of the record elements would do.
+	 * @param record the record and its fields, in document order
+	 * @throws SAXException
+	 */
+	void importRecord(DblpRecordBuffer record) throws SAXException{
+		createEntity(record.getTag(), record.getKey());
+		for (int i=0; i<record.size(); i++)
+			setField(record.getFieldTag(i), record.getFieldText(i));
+		saveEntity(record.getTag());
 	}
 	/**
 	 * Method called when the parser begins to read new XML document.
@@ -704,20 +733,28 @@ public class DblpImporterHandler extends DefaultHandler{
 	 *  Method called when the parser reaches the end of document.
 	 */
 	public void endDocument(){		
+		try{
+			//the part file is complete only if the last batch is committed
+			commitBatch();
+		}
+		catch(Exception e) {
+			logger.error("Error in thread parsing "+this.partFile.getFile().getName()+
+					" while committing the last batch:\n"+e.getMessage());
+			try{
+				saveProgress();
+			}
+			catch(Exception ne) {
+				ne.printStackTrace();
+			}
+			return;
+		}
 		try{
 			this.partFile.setLastCheckpoint(this.currCheckpoint);
 			this.partFile.setLastOffset(this.currOffset);
 			this.partFile.setComplete(true);
-			if (monitor!=null)
-				monitor.getLockOnDescriptor();
-			this.partFile.updateDescriptor();
-			if (monitor!=null)
-				monitor.releaseLockOnDescriptor();
+			saveProgress();
 			logger.debug("Parsing of "+this.partFile.getFile().getName()+
 					" file done");
-			if (monitor!=null){
-				monitor.setCloseThreads(true);
-			}
 		}
 		catch(Exception e) {
 			e.printStackTrace();
@@ -734,15 +771,12 @@ public class DblpImporterHandler extends DefaultHandler{
 		//I will only fetch data if the current element is one of those.
 		
 		//Moreover it is useless to store strings that will be skipped, therefore
-		//we will store strings in this.currElementFragments only if the 
+		//we will append the text to this.currText only if the 
 		//current state(checkpoint, offset) is higher than the starting state
 		//(startingCheckpoint, startingOffset)
 		
-		if((this.currCheckpoint>this.startingCheckpoint) || 
-				(this.currCheckpoint==this.startingCheckpoint && 
-						this.currOffset>=this.startingOffset)){
-			String nodeValue = new String(ch,start,length);
-			this.currElementFragments.add(nodeValue);
+		if(isProceeding()){
+			this.currText.append(ch, start, length);
 		}
 	}
 	
@@ -753,21 +787,438 @@ public class DblpImporterHandler extends DefaultHandler{
 		return out;
 	}
 	
+	/**
+	 * Looks for a person by name. The dictionaries of a two-pass import and the shared PersonNameCache are checked first, 
+	 * the findPersonByName query is executed only if the name is not cached.
+	 * @param name the person name
+	 * @return the person, null if there is no person with the given name in the db
+	 * @throws SodaHibernateException
+	 */
+	@SuppressWarnings("unchecked")
+	private Person findPerson(String name) throws SodaHibernateException{
+		//the persons found by the first pass of a two-pass import are already in the db
+		if (this.dictionaries!=null){
+			Long id = this.dictionaries.getPersonId(name);
+			if (id!=null)
+				return this.session.load(Person.class, id);
+		}
+		PersonNameCache cache = PersonNameCache.getInstance();
+		if (cache!=null){
+			Long id = cache.get(name);
+			//the person is loaded without querying the db
+			if (id!=null)
+				return this.session.load(Person.class, id);
+		}
+		List<Person> persons = lookup("findPersonByName", "personName", name);
+		if (persons==null || persons.isEmpty())
+			return null;
+		Person person = persons.get(0);
+		//when batching the person may have been saved by the open batch and be rolled back with it:
+		//it is cached once the batch has been committed
+		if (this.batch!=null && this.batch.isOpen())
+			this.batch.addNewPerson(person);
+		else if (cache!=null)
+			cache.put(name, person.getId());
+		return person;
+	}
+	
+	/**
+	 * Runs a named query with a single string parameter, its latency is recorded by the import metrics
+	 * @param queryName the name of the query
+	 * @param parameter the name of the parameter
+	 * @param value the value of the parameter
+	 * @return the query results
+	 * @throws SodaHibernateException
+	 */
+	@SuppressWarnings("unchecked")
+	private List lookup(String queryName, String parameter, String value) throws SodaHibernateException{
+		if (this.metrics==null)
+			return this.session.getNamedQuery(queryName).setString(parameter, value).list();
+		long start = System.nanoTime();
+		List result = this.session.getNamedQuery(queryName).setString(parameter, value).list();
+		this.metrics.getLookups().record(System.nanoTime()-start);
+		return result;
+	}
+	
+	/**
+	 * Saves a new entity, the latency is recorded by the import metrics
+	 * @param entity
+	 * @throws SodaHibernateException
+	 */
+	private void save(Object entity) throws SodaHibernateException{
+		long start = System.nanoTime();
+		this.session.saveObject(entity);
+		saveDone(start);
+	}
+	
+	/**
+	 * Saves or updates an entity, the latency is recorded by the import metrics
+	 * @param entity
+	 * @throws SodaHibernateException
+	 */
+	private void saveOrUpdate(Object entity) throws SodaHibernateException{
+		long start = System.nanoTime();
+		this.session.saveOrUpdate(entity);
+		saveDone(start);
+	}
+	
+	/**
+	 * Updates an existing entity, the latency is recorded by the import metrics
+	 * @param entity
+	 * @throws SodaHibernateException
+	 */
+	private void update(Object entity) throws SodaHibernateException{
+		long start = System.nanoTime();
+		this.session.update(entity);
+		saveDone(start);
+	}
+	
+	/**
+	 * Saves the current publication and a pending link to its venue, written by the VenueLinker after the import
+	 * @param kind the kind of the publication, see PendingVenueLink
+	 * @param venueId the id of the proceedings, journal or book
+	 * @throws SodaHibernateException
+	 */
+	private void linkLater(String kind, String venueId) throws SodaHibernateException{
+		DblpPublication publication = (DblpPublication)this.currEntity;
+		saveOrUpdate(publication);
+		save(new PendingVenueLink(kind, venueId, publication.getId()));
+	}
+	
+	private void saveDone(long start){
+		if (this.metrics!=null)
+			this.metrics.getSaves().record(System.nanoTime()-start);
+	}
+	
+	/**
+	 * Counts a parsed record in the import metrics
+	 */
+	private void recordParsed(){
+		if (this.metrics!=null)
+			this.metrics.recordParsed(this.worker);
+	}
+	
+	/**
+	 * Reports a commit to the thread monitor and to the import metrics
+	 * @param records the number of committed records
+	 * @param nanos the time spent committing
+	 */
+	private void commitDone(int records, long nanos){
+		if (this.monitor!=null)
+			this.monitor.commitDone(records, nanos);
+		if (this.metrics!=null)
+			this.metrics.commitDone(records, nanos);
+	}
+	
+	/**
+	 * Adds a committed person to the shared PersonNameCache
+	 * @param person
+	 */
+	private void cachePerson(Person person){
+		PersonNameCache cache = PersonNameCache.getInstance();
+		if (cache!=null)
+			cache.put(person.getName(), person.getId());
+	}
+	
+	/**
+	 * Adds the persons created for the current element to the shared PersonNameCache,
+	 * to be called after the transaction saving them has been committed
+	 */
+	private void cacheNewPersons(){
+		for (Person p : this.currAuthors)
+			cachePerson(p);
+		for (Person p : this.currEditors)
+			cachePerson(p);
+	}
+	
+	/**
+	 * Starts the transaction saving the current record. 
+	 * When batching the transaction is started by the first record of the batch only.
+	 * @throws SodaHibernateException
+	 */
+	private void beginRecord() throws SodaHibernateException{
+		if (this.batch!=null && this.batch.isOpen())
+			return;
+		this.session.startTransaction();
+		if (this.batch!=null)
+			this.batch.open();
+	}
+	
+	/**
+	 * Ends the transaction saving the current record. 
+	 * When batching the transaction is left open, it is committed at a checkpoint by commitBatch.
+	 * @throws SodaHibernateException
+	 */
+	private void endRecord() throws SodaHibernateException{
+		recordParsed();
+		if (this.batch!=null){
+			ArrayList<Person> persons = new ArrayList<Person>(this.currAuthors);
+			persons.addAll(this.currEditors);
+			this.batch.recordDone(this.currCheckpoint, this.currOffset, persons);
+			return;
+		}
+		long start = System.nanoTime();
+		this.session.endTransaction();
+		//the new persons are committed, they can be cached
+		cacheNewPersons();
+		this.session.flush();
+		commitDone(1, System.nanoTime()-start);
+	}
+	
+	/**
+	 * Rolls back the transaction saving the current record. 
+	 * When batching the whole batch is rolled back and its locks are released.
+	 * @throws SodaHibernateException
+	 */
+	private void rollbackRecord() throws SodaHibernateException{
+		if (this.session.isOpen())
+			this.session.rollbackTransaction();
+		if (this.batch!=null){
+			this.batch.rolledBack();
+			releaseBatchLocks();
+		}
+	}
+	
+	/**
+	 * Commits the open batch: the new persons are cached and the locks taken by the batch are released.
+	 * Does nothing if each record is committed.
+	 * @throws SodaHibernateException
+	 */
+	private void commitBatch() throws SodaHibernateException{
+		if (this.batch==null)
+			return;
+		if (this.batch.isOpen()){
+			int records = this.batch.getRecords();
+			long start = System.nanoTime();
+			try{
+				this.session.endTransaction();
+			}
+			catch (SodaHibernateException e){
+				//the transaction has been rolled back
+				this.batch.rolledBack();
+				releaseBatchLocks();
+				throw e;
+			}
+			this.session.flush();
+			commitDone(records, System.nanoTime()-start);
+		}
+		for (Person p : this.batch.committed())
+			cachePerson(p);
+		releaseBatchLocks();
+	}
+	
+	/**
+	 * Rolls back the records of the open batch, called when the parse is stopped by an error 
+	 * which has not been handled by this handler. The part file progress goes back to the last commit.
+	 */
+	public void abortBatch(){
+		if (this.batch==null || !this.batch.isOpen())
+			return;
+		try{
+			rollbackRecord();
+		}
+		catch (SodaHibernateException e){
+			logger.error("Error while rolling back the batch: "+e.getMessage());
+		}
+		this.partFile.setLastCheckpoint(this.batch.getCommittedCheckpoint());
+		this.partFile.setLastOffset(this.batch.getCommittedOffset());
+	}
+	
+	/**
+	 * Saves the part file progress in its progress journal. 
+	 * When batching the records not yet committed are rolled back and the saved progress is the one of the last commit,
+	 * so the rolled back records will be parsed again.
+	 * @throws IOException
+	 * @throws SodaHibernateException
+	 */
+	private void saveProgress() throws IOException, SodaHibernateException{
+		if (this.batch!=null){
+			if (this.batch.isOpen())
+				rollbackRecord();
+			this.partFile.setLastCheckpoint(this.batch.getCommittedCheckpoint());
+			this.partFile.setLastOffset(this.batch.getCommittedOffset());
+		}
+		//each part file has its own progress journal, no lock is needed
+		this.partFile.updateDescriptor();
+	}
+	
+	/**
+	 * Gets the lock on a book element. 
+	 * When batching the lock is held until the batch is committed: a thread never waits for a lock 
+	 * while it holds other locks, if the lock is not available the batch is committed before waiting.
+	 * @param bookId
+	 * @throws SodaHibernateException
+	 * @throws ThreadException if the lock timeout expires
+	 */
+	private void lockBook(String bookId) throws SodaHibernateException, ThreadException{
+		if (this.monitor==null)
+			return;
+		if (this.batch==null){
+			this.monitor.getLockOnBook(bookId);
+			return;
+		}
+		if (this.batch.getLockedBooks().contains(bookId))
+			return;
+		if (!this.monitor.tryLockOnBook(bookId)){
+			commitBatch();
+			this.monitor.getLockOnBook(bookId);
+		}
+		this.batch.getLockedBooks().add(bookId);
+	}
+	
+	/**
+	 * Releases the lock on a book element, when batching the lock is released by commitBatch
+	 * @param bookId
+	 */
+	private void unlockBook(String bookId){
+		if (this.monitor!=null && this.batch==null)
+			this.monitor.releaseLockOnBook(bookId);
+	}
+	
+	/**
+	 * Gets the lock on a proceedings (or journal) element, see lockBook
+	 * @param proceedingsId
+	 * @throws SodaHibernateException
+	 * @throws ThreadException if the lock timeout expires
+	 */
+	private void lockProceedings(String proceedingsId) throws SodaHibernateException, ThreadException{
+		if (this.monitor==null)
+			return;
+		if (this.batch==null){
+			this.monitor.getLockOnProceedings(proceedingsId);
+			return;
+		}
+		if (this.batch.getLockedProceedings().contains(proceedingsId))
+			return;
+		if (!this.monitor.tryLockOnProceedings(proceedingsId)){
+			commitBatch();
+			this.monitor.getLockOnProceedings(proceedingsId);
+		}
+		this.batch.getLockedProceedings().add(proceedingsId);
+	}
+	
+	/**
+	 * Releases the lock on a proceedings (or journal) element, when batching the lock is released by commitBatch
+	 * @param proceedingsId
+	 */
+	private void unlockProceedings(String proceedingsId){
+		if (this.monitor!=null && this.batch==null)
+			this.monitor.releaseLockOnProceedings(proceedingsId);
+	}
+	
+	/**
+	 * Releases the locks taken by the batch
+	 */
+	private void releaseBatchLocks(){
+		if (this.monitor!=null){
+			for (String id : this.batch.getLockedBooks())
+				this.monitor.releaseLockOnBook(id);
+			for (String id : this.batch.getLockedProceedings())
+				this.monitor.releaseLockOnProceedings(id);
+		}
+		this.batch.getLockedBooks().clear();
+		this.batch.getLockedProceedings().clear();
+	}
+	
+	/**
+	 * Handles a venue record written by the first pass of a two-pass import: 
+	 * nothing is saved, only the part file progress is updated
+	 */
+	private void skipRecord(){
+		recordParsed();
+		if (this.batch!=null)
+			this.batch.recordDone(this.currCheckpoint, this.currOffset, new ArrayList<Person>());
+		this.partFile.setLastOffset(this.currOffset);
+		this.currDblpElement = DblpTag.OTHER;
+	}
+	
+	/**
+	 * Saves the current publication when the dictionaries of a two-pass import are resolved.
+	 * The venue and the persons are already in the db: the publication is linked to them by id, 
+	 * without looking them up or locking them. 
+	 * @param venueId the id of the publication venue (book, proceedings or journal) 
+	 * @throws SAXException
+	 */
+	private void writeResolvedPublication(String venueId) throws SAXException{
+		DblpPublication publication = (DblpPublication)this.currEntity;
+		try{
+			beginRecord();
+			boolean journalLink = false;
+			if (publication instanceof InCollection){
+				publication.setId(DblpDictionaries.chapterId(publication.getId(), publication.getDblpKey()));
+				((InCollection)publication).setBook(this.session.load(Book.class, venueId));
+			}
+			else if (publication instanceof Article)
+				((Article)publication).setJournal(this.session.load(Journal.class, venueId));
+			else if (this.dictionaries.isProceedings(venueId))
+				((InProceedings)publication).setProceedings(this.session.load(Proceedings.class, venueId));
+			else
+				//the proceedings is a fake one, the inproceedings is an article of the journal
+				journalLink = true;
+			//only the ids shared by more than one record need the existing row to be looked up
+			boolean shared = this.dictionaries.isSharedPublication(publication.getId());
+			if (shared)
+				saveOrUpdate(publication);
+			else
+				save(publication);
+			if (journalLink){
+				this.session.flush();
+				if (shared)
+					this.session.createSQLQuery("DELETE FROM Journal_Articles WHERE articleId=?")
+					.setString(0, publication.getId())
+					.executeUpdate();
+				this.session.createSQLQuery("INSERT INTO Journal_Articles (journalId, articleId) VALUES (?,?)")
+				.setString(0, venueId)
+				.setString(1, publication.getId())
+				.executeUpdate();
+			}
+			endRecord();
+			//updates the partFile state (offset)
+			this.partFile.setLastOffset(this.currOffset);
+			this.currDblpElement = DblpTag.OTHER;
+			this.tempJournal = new Journal();
+			this.currAuthors = new ArrayList<Person>();
+		}
+		catch (Exception e){
+			try{
+				//the record is rolled back, no lock has to be released
+				rollbackRecord();
+				logger.error("Error in thread parsing "+this.partFile.getFile().getName()+
+						" while saving the "+this.currDblpElement+" "+publication.getId()+":\n" + e.getMessage());
+				this.partFile.setLastCheckpoint(this.currCheckpoint);
+				this.partFile.setLastOffset(this.currOffset-1);
+				saveProgress();
+				this.session.clear();
+				this.session.close();
+			}
+			catch(Exception ne){
+				logger.error("Error in thread parsing "+this.partFile.getFile().getName()+
+						" while handling exception. Error message: "+ne.getMessage());
+				//forwards the exception to terminate the thread
+				throw new SAXException(ne);
+			}
+			//forwards the exception to terminate the thread
+			throw new SAXException(e);
+		}
+	}
+	
 	@SuppressWarnings("unchecked")
 	private void writeProceedings() throws SAXException{
-		String proceedingsId="";
+		String proceedingsId=((Proceedings)this.currEntity).getId();
+		//the proceedings has been written by the first pass of a two-pass import (a fake one has been replaced by its journal)
+		if (this.dictionaries!=null && 
+				(this.dictionaries.isProceedings(proceedingsId) || this.dictionaries.isJournal(proceedingsId))){
+			skipRecord();
+			return;
+		}
 		try {
-			proceedingsId = ((Proceedings)this.currEntity).getId();
 			//if the parser is running in multi-thread mode first of all 
 			//gets the lock on the proceedings element
-			if (this.monitor!=null)
-				this.monitor.getLockOnProceedings(proceedingsId);
+			lockProceedings(proceedingsId);
 			//checks if the current book element already exists in the db
 			List existingProceedings = 
-				session.getNamedQuery("findProceedingsById")
-				.setString("proceedingsId", proceedingsId)
-				.list();
-			this.session.startTransaction();
+				lookup("findProceedingsById", "proceedingsId", proceedingsId);
+			beginRecord();
 			if(existingProceedings.size()==1){
 				//if the proceedings already exists updates the existing object
 				Proceedings tempProc = (Proceedings)existingProceedings.get(0);
@@ -780,42 +1231,32 @@ public class DblpImporterHandler extends DefaultHandler{
 				tempProc.setTitle(((Proceedings)this.currEntity).getTitle());
 				tempProc.setYear(((Proceedings)this.currEntity).getYear());
 				tempProc.setEditors(((Proceedings)this.currEntity).getEditors());
-				this.session.update(tempProc);
+				update(tempProc);
 			}	
 			else if(existingProceedings.size()==0){
-				this.session.saveObject(this.currEntity);
+				save(this.currEntity);
 			}	
 			else if(existingProceedings.size()>1)
 				logger.error("Found more than one book with the same id " + proceedingsId);
 			//Clean up some temp info I stored
-			this.session.endTransaction();
-			this.session.flush();
+			endRecord();
 			//if the parser is running in multi-thread mode releases the lock on 
 			//the book element
-			if (this.monitor!=null)
-				this.monitor.releaseLockOnProceedings(proceedingsId);
+			unlockProceedings(proceedingsId);
 			//updates the current partFile state (offset)
 			this.partFile.setLastOffset(this.currOffset);
-			this.currDblpElement = "";
+			this.currDblpElement = DblpTag.OTHER;
 		} 
 		//Handles each exception and Errors in the same way
 		catch (Exception e){
 			try{
 				//Rollbacks the current transaction
-				this.session.rollbackTransaction();
+				rollbackRecord();
 				//if an exception occurred, before exiting the parser, updates the 
 				//xml parts descriptor in order to persist 
 				//the current state. If the parser is running in multi-thread mode
 				//gets and releases the lock on the partsInfo file.
-				if (monitor!=null)
-					monitor.getLockOnDescriptor();
-				this.partFile.updateDescriptor();
-				if (monitor!=null)
-					monitor.releaseLockOnDescriptor();
-				//when a thread is closed after an error forces the termination of 
-				//each other thread
-				if (monitor!=null)
-					this.monitor.setCloseThreads(true);
+				saveProgress();
 				this.session.clear();
 				this.session.close();
 				logger.error("Error in thread parsing "+this.partFile.getFile().getName()+
@@ -826,8 +1267,7 @@ public class DblpImporterHandler extends DefaultHandler{
 						" while handling exception. Error message\n"+ne.getMessage());
 				//if the parser is running in multi-thread mode releases the lock on 
 				//the proceedings element
-				if (this.monitor!=null)
-					this.monitor.releaseLockOnProceedings(proceedingsId);
+				unlockProceedings(proceedingsId);
 				//forwards the exception to terminate the thread
 				throw new SAXException(ne);
 			}
@@ -839,23 +1279,25 @@ public class DblpImporterHandler extends DefaultHandler{
 	
 	@SuppressWarnings("unchecked")
 	private void writeBook() throws SAXException{
-		String bookId="";
+		String bookId=((Book)this.currEntity).getId();
+		//the book, its authors and its editors have been written by the first pass of a two-pass import
+		if (this.dictionaries!=null && this.dictionaries.isBook(
+				bookId==null || bookId.equalsIgnoreCase("") ? ((Book)this.currEntity).getDblpKey() : bookId)){
+			skipRecord();
+			return;
+		}
 		try {
-			bookId = ((Book)this.currEntity).getId();			
 			//if the parser is running in multi-thread mode first of all 
 			//gets the lock on the book element
-			if (this.monitor!=null)
-				this.monitor.getLockOnBook(bookId);
+			lockBook(bookId);
 			//checks if the current book element already exists in the db
 			List existingBooks = 
-				session.getNamedQuery("findBookById")
-				.setString("bookId", bookId)
-				.list();
-			this.session.startTransaction();
+				lookup("findBookById", "bookId", bookId);
+			beginRecord();
 			for(Person p : this.currAuthors)
-				this.session.saveObject(p);
+				save(p);
 			for(Person p : this.currEditors)
-				this.session.saveObject(p);
+				save(p);
 			if(existingBooks.size()==1){
 				//if the book already exists updates the existing object
 				Book tempBook = (Book)existingBooks.get(0);
@@ -871,45 +1313,35 @@ public class DblpImporterHandler extends DefaultHandler{
 				tempBook.setEditors(((Book)this.currEntity).getEditors());
 				tempBook.setAuthors(((Book)this.currEntity).getAuthors());
 				//re-attach the book element to the session
-				this.session.update(tempBook);
+				update(tempBook);
 			}	
 			else if(existingBooks.size()==0){
 				//Need to check the id, as for "classic" books, the url doesn't exists
 				//In this case the id will be the dblpkey
 				if(((Book)this.currEntity).getId()==null||((Book)this.currEntity).getId().equalsIgnoreCase(""))
 					((Book)this.currEntity).setId(((Book)this.currEntity).getDblpKey());
-				this.session.saveObject(this.currEntity);
+				save(this.currEntity);
 			}
 			else if(existingBooks.size()>1)
 				logger.error("Found more than one book with the same id " + bookId);
 			//Clean up some temp info I stored
-			this.session.endTransaction();
-			this.session.flush();
+			endRecord();
 			//if the parser is running in multi-thread mode releases the lock on 
 			//the book element
-			if (this.monitor!=null)
-				this.monitor.releaseLockOnBook(bookId);
+			unlockBook(bookId);
 			//updates the current partFile state (offset)
 			this.partFile.setLastOffset(this.currOffset);
-			this.currDblpElement = "";
+			this.currDblpElement = DblpTag.OTHER;
 		} //Handles each exception in the same way
 		catch (Exception e){
 			try{
 				//Rolls back the current transaction
-				this.session.rollbackTransaction();
+				rollbackRecord();
 				//if an exception occurred, before exiting the parser, updates the 
 				//xml parts descriptor in order to persist 
 				//the current state. If the parser is running in multi-thread mode
 				//gets and releases the lock on the partsInfo file.
-				if (monitor!=null)
-					monitor.getLockOnDescriptor();
-				this.partFile.updateDescriptor();
-				if (monitor!=null)
-					monitor.releaseLockOnDescriptor();
-				//when a thread is closed after an error forces the termination of 
-				//each other thread
-				if (monitor!=null)
-					this.monitor.setCloseThreads(true);
+				saveProgress();
 				logger.error("Error in thread parsing "+this.partFile.getFile().getName()+
 						" while saving a book object:\n" + e.getMessage());
 				this.session.clear();
@@ -920,8 +1352,7 @@ public class DblpImporterHandler extends DefaultHandler{
 						" while handling exception. Error message\n"+ne.getMessage());
 				//if the parser is running in multi-thread mode releases the lock on 
 				//the book element
-				if (this.monitor!=null)
-					this.monitor.releaseLockOnBook(bookId);
+				unlockBook(bookId);
 				//forwards the exception to terminate the thread
 				throw new SAXException(ne);
 			}
@@ -932,7 +1363,11 @@ public class DblpImporterHandler extends DefaultHandler{
 	
 	@SuppressWarnings("unchecked")
 	private void writeInCollection() throws SAXException{
-		String bookId = "";
+		String bookId = DblpRecord.venueOf(((InCollection)this.currEntity).getId());
+		if (this.dictionaries!=null && this.dictionaries.isBook(bookId)){
+			writeResolvedPublication(bookId);
+			return;
+		}
 		try {						
 			if(((InCollection)this.currEntity).getId().contains(".html#"))
 				bookId = ((InCollection)this.currEntity).getId().substring(0,((InCollection)this.currEntity).getId().lastIndexOf("#"));
@@ -940,16 +1375,13 @@ public class DblpImporterHandler extends DefaultHandler{
 				bookId = ((InCollection)this.currEntity).getId();
 			//if the parser is running in multi-thread mode first of all 
 			//gets the lock on the book element
-			if (this.monitor!=null)
-				this.monitor.getLockOnBook(bookId);
+			lockBook(bookId);
 			//checks if the book to be updated already exists in the db
 			List<Book> existingBooks = 
-				session.getNamedQuery("findBookById")
-				.setString("bookId", bookId)
-				.list();
-			this.session.startTransaction();
+				lookup("findBookById", "bookId", bookId);
+			beginRecord();
 			for(Person p : this.currAuthors)
-				this.session.saveObject(p);
+				save(p);
 			if(existingBooks.size()==0){
 				//if the book does not exists creates a new book element
 				Book book = new Book();
@@ -957,15 +1389,22 @@ public class DblpImporterHandler extends DefaultHandler{
 				book.setBooktitle(((InCollection)this.currEntity).getBooktitle());
 				book.setYear(((InCollection)this.currEntity).getYear());
 				book.setPublisher(((InCollection)this.currEntity).getPublisher());
-				book.addChapter((InCollection)this.currEntity);
 				book.setIsbn(((InCollection)this.currEntity).getIsbn());
-				this.session.saveObject(book);
+				if (this.deferredLinks){
+					save(book);
+					linkLater(PendingVenueLink.INCOLLECTION, bookId);
+				}
+				else{
+					book.addChapter((InCollection)this.currEntity);
+					save(book);
+				}
 			}	
 			else if(existingBooks.size()==1){
 				//if the book already exists updates the existing object
 				Book book = existingBooks.get(0);
-				//refreshes the book element read from the db
-				session.refresh(book);
+				//refreshes the book element read from the db, with its chapters
+				if (!this.deferredLinks)
+					session.refresh(book);
 				//WORKAROUND caused by books/mit/PF91/Piatetsky91 entry
 				if(((InCollection)this.currEntity).getId().compareTo(book.getId())==0)
 					((InCollection)this.currEntity).setId(((InCollection)this.currEntity).getId() + "#" + ((InCollection)this.currEntity).getDblpKey().substring(((InCollection)this.currEntity).getDblpKey().lastIndexOf("/") + 1));
@@ -978,21 +1417,26 @@ public class DblpImporterHandler extends DefaultHandler{
 				if(!((InCollection)this.currEntity).getIsbn().equalsIgnoreCase("") && book.getIsbn().equalsIgnoreCase(""))
 					book.setIsbn(((InCollection)this.currEntity).getIsbn());
 				//updates the book element
-				book.addChapter((InCollection)this.currEntity);
-				logger.debug("Added chapter " + ((InCollection)this.currEntity).getId() + " to " + book.getId());
-				this.session.update(book);
+				if (this.deferredLinks){
+					update(book);
+					linkLater(PendingVenueLink.INCOLLECTION, bookId);
+				}
+				else{
+					book.addChapter((InCollection)this.currEntity);
+					update(book);
+				}
+				if (this.debug)
+					logger.debug("Added chapter " + ((InCollection)this.currEntity).getId() + " to " + book.getId());
 			}
 			else
 				logger.error("Found two books with the same id: " + bookId);
-			this.session.endTransaction();
-			this.session.flush();
+			endRecord();
 			//if the parser is running in multi-thread mode releases the lock on 
 			//the book element
-			if (this.monitor!=null)
-				this.monitor.releaseLockOnBook(bookId);
+			unlockBook(bookId);
 			//updates the partFile state (offset)
 			this.partFile.setLastOffset(this.currOffset);
-			this.currDblpElement = "";
+			this.currDblpElement = DblpTag.OTHER;
 			this.currAuthors = new ArrayList<Person>();
 		}
 		catch (Exception e){
@@ -1009,7 +1453,7 @@ public class DblpImporterHandler extends DefaultHandler{
 				 * do not delete the incollection the application will fail to restart.
 				 * However a rollback is executed to free the transaction
 				 */  
-				this.session.rollbackTransaction();
+				rollbackRecord();
 				logger.error("Error in thread parsing "+this.partFile.getFile().getName()+
 						" while saving an incollection object:\n"+e.getMessage());
 				//Before exiting the parser updates the xml parts descriptor in order to persist 
@@ -1017,18 +1461,9 @@ public class DblpImporterHandler extends DefaultHandler{
 				//gets and releases the lock on the partsInfo file. 
 				this.partFile.setLastCheckpoint(this.currCheckpoint);
 				this.partFile.setLastOffset(this.currOffset-1);
-				if (monitor!=null)
-					monitor.getLockOnDescriptor();
-				this.partFile.updateDescriptor();
-				if (monitor!=null)
-					monitor.releaseLockOnDescriptor();
-				//when a thread is closed after an exception it forces the termination of each other thread
-				if (monitor!=null)
-					this.monitor.setCloseThreads(true);
+				saveProgress();
 				//checks if the current InCollection has been saved in the db
-				List existingInCollection = session.getNamedQuery("findInCollectionById")
-				.setString("inCollectionId", ((InCollection)this.currEntity).getId())
-				.list();
+				List existingInCollection = lookup("findInCollectionById", "inCollectionId", ((InCollection)this.currEntity).getId());
 				if (existingInCollection.size()==1){
 					//if if the current InCollection has been saved in the db deletes it
 					this.session.clear();
@@ -1039,8 +1474,7 @@ public class DblpImporterHandler extends DefaultHandler{
 				this.session.close();
 				//if the parser is running in multi-thread mode releases the lock on 
 				//the book element
-				if (this.monitor!=null)
-					this.monitor.releaseLockOnBook(bookId);
+				unlockBook(bookId);
 				
 			}
 			catch(Exception ne){
@@ -1048,8 +1482,7 @@ public class DblpImporterHandler extends DefaultHandler{
 						" while handling exception. Error message\n"+ne.getMessage());
 				//if the parser is running in multi-thread mode releases the lock on 
 				//the book element
-				if (this.monitor!=null)
-					this.monitor.releaseLockOnBook(bookId);
+				unlockBook(bookId);
 				//forwards the exception to terminate the thread
 				throw new SAXException(ne);
 			}
@@ -1097,6 +1530,12 @@ public class DblpImporterHandler extends DefaultHandler{
 //			}
 				
 			
+		proceedingsId = DblpRecord.venueOf(((InProceedings)this.currEntity).getId());
+		if (this.dictionaries!=null && 
+				(this.dictionaries.isProceedings(proceedingsId) || this.dictionaries.isJournal(proceedingsId))){
+			writeResolvedPublication(proceedingsId);
+			return;
+		}
 		try {	
 			if(((InProceedings)this.currEntity).getId().contains(".html#"))
 				proceedingsId = ((InProceedings)this.currEntity).getId().substring(0, ((InProceedings)this.currEntity).getId().lastIndexOf("#"));
@@ -1107,21 +1546,19 @@ public class DblpImporterHandler extends DefaultHandler{
 			
 			//if the parser is running in multi-thread mode first of all 
 			//gets the lock on the Proceedings element
-			if (this.monitor!=null)
-				this.monitor.getLockOnProceedings(proceedingsId);
+			lockProceedings(proceedingsId);
 			//checks if the proceedings to be updated already exists in the db
 			List existingProceedings = 
-				session.getNamedQuery("findProceedingsById")
-				.setString("proceedingsId", proceedingsId)
-				.list();
-			this.session.startTransaction();
+				lookup("findProceedingsById", "proceedingsId", proceedingsId);
+			beginRecord();
 			for(Person p : this.currAuthors)
-				this.session.saveObject(p);
+				save(p);
 			if(existingProceedings.size()==1){
 				//if the proceedings element already exists updates the existing object
 				Proceedings proceedings = (Proceedings)existingProceedings.get(0);
-				//refreshes the proceedings element read from the db
-				this.session.refresh(proceedings);
+				//refreshes the proceedings element read from the db, with its inproceedings
+				if (!this.deferredLinks)
+					this.session.refresh(proceedings);
 				//updates the proceedings element
 				if(!((InProceedings)this.currEntity).getYear().equalsIgnoreCase("") && proceedings.getYear().equalsIgnoreCase(""))
 					proceedings.setYear(((InProceedings)this.currEntity).getYear());
@@ -1131,15 +1568,16 @@ public class DblpImporterHandler extends DefaultHandler{
 					proceedings.setIsbn(((InProceedings)this.currEntity).getIsbn());
 				if(!((InProceedings)this.currEntity).getPublisher().equalsIgnoreCase("") && proceedings.getPublisher().equalsIgnoreCase(""))
 					proceedings.setPublisher(((InProceedings)this.currEntity).getPublisher());
-				proceedings.addInProceedings((InProceedings)this.currEntity);
-				this.session.update(proceedings);
+				if (this.deferredLinks)
+					linkLater(PendingVenueLink.INPROCEEDINGS, proceedingsId);
+				else
+					proceedings.addInProceedings((InProceedings)this.currEntity);
+				update(proceedings);
 			}
 			else if (existingProceedings.size()==0){
 				//checks if a journal with the given id exists
 				List existingJournals = 
-					session.getNamedQuery("findJournalById")
-					.setString("journalId", proceedingsId)
-					.list();
+					lookup("findJournalById", "journalId", proceedingsId);
 				if(existingJournals.size()==0){
 					//if nor a journal nor a proceedings with the given id exists
 					//creates a new proceedings
@@ -1149,17 +1587,25 @@ public class DblpImporterHandler extends DefaultHandler{
 					proceedings.setTitle(((InProceedings)this.currEntity).getBooktitle());
 					proceedings.setIsbn(((InProceedings)this.currEntity).getIsbn());
 					proceedings.setPublisher(((InProceedings)this.currEntity).getPublisher());
-					proceedings.addInProceedings((InProceedings)this.currEntity);
-					this.session.saveObject(proceedings);
+					if (this.deferredLinks)
+						linkLater(PendingVenueLink.INPROCEEDINGS, proceedingsId);
+					else
+						proceedings.addInProceedings((InProceedings)this.currEntity);
+					save(proceedings);
 				}
 				else if (existingJournals.size()==1){
 					//if a journal with the given id exists updates the existing object
-					Journal journal = (Journal)existingJournals.get(0);
-					//refreshes the journal element read from the db
-					this.session.refresh(journal);
-					//updates the journal element
-					journal.addArticle((DblpPublication)this.currEntity);
-					this.session.update(journal);
+					//the journal row is not changed
+					if (this.deferredLinks)
+						linkLater(PendingVenueLink.INPROCEEDINGS, proceedingsId);
+					else{
+						Journal journal = (Journal)existingJournals.get(0);
+						//refreshes the journal element read from the db
+						this.session.refresh(journal);
+						//updates the journal element
+						journal.addArticle((DblpPublication)this.currEntity);
+						update(journal);
+					}
 				}
 				else
 					logger.error("Two Journals with the same id: " + proceedingsId);
@@ -1167,16 +1613,14 @@ public class DblpImporterHandler extends DefaultHandler{
 			else
 				logger.error("Two Proceedings with the same id: " + proceedingsId);	
 			//saves the current inProceedings
-			this.session.saveOrUpdate(this.currEntity);
-			this.session.endTransaction();
-			this.session.flush();
+			saveOrUpdate(this.currEntity);
+			endRecord();
 			//if the parser is running in multi-thread mode releases the lock on 
 			//the proceedings element
-			if (this.monitor!=null)
-				this.monitor.releaseLockOnProceedings(proceedingsId);
+			unlockProceedings(proceedingsId);
 			//updates the partFile state (offset)
 			this.partFile.setLastOffset(this.currOffset);
-			this.currDblpElement = "";
+			this.currDblpElement = DblpTag.OTHER;
 			this.currAuthors = new ArrayList<Person>();
 		}  
 		catch (Exception e){
@@ -1193,7 +1637,7 @@ public class DblpImporterHandler extends DefaultHandler{
 				 * do not delete the inproceedings the application will fail to restart.
 				 * However a rollback is executed to free the transaction
 				 */  
-				this.session.rollbackTransaction();
+				rollbackRecord();
 				logger.error("Error in thread parsing "+this.partFile.getFile().getName()+
 						" while saving an inproceedings object:\n" + e.getMessage());
 				
@@ -1202,18 +1646,9 @@ public class DblpImporterHandler extends DefaultHandler{
 				//gets and releases the lock on the partsInfo file. 
 				this.partFile.setLastCheckpoint(this.currCheckpoint);
 				this.partFile.setLastOffset(this.currOffset-1);
-				if (monitor!=null)
-					monitor.getLockOnDescriptor();
-				this.partFile.updateDescriptor();
-				if (monitor!=null)
-					monitor.releaseLockOnDescriptor();
-				//when a thread is closed after an exception it forces the termination of each other thread
-				if (monitor!=null)
-					this.monitor.setCloseThreads(true);
+				saveProgress();
 				//checks if the current inProceedings has been saved in the db
-				List existingInProceedings = session.getNamedQuery("findInProceedingsById")
-				.setString("inProceedingsId", ((InProceedings)this.currEntity).getId())
-				.list();
+				List existingInProceedings = lookup("findInProceedingsById", "inProceedingsId", ((InProceedings)this.currEntity).getId());
 				if (existingInProceedings.size()==1){
 					//if if the current InCollection has been saved in the db deletes it
 					this.session.clear();
@@ -1224,16 +1659,14 @@ public class DblpImporterHandler extends DefaultHandler{
 				this.session.close();
 				//if the parser is running in multi-thread mode releases the lock on 
 				//the proceedings element
-				if (this.monitor!=null)
-					this.monitor.releaseLockOnProceedings(proceedingsId);
+				unlockProceedings(proceedingsId);
 			}
 			catch(Exception ne){
 				logger.error("Error in thread parsing "+this.partFile.getFile().getName()+
 						" while handling exception. Error message: "+ne.getMessage());
 				//if the parser is running in multi-thread mode releases the lock on 
 				//the book element
-				if (this.monitor!=null)
-					this.monitor.releaseLockOnProceedings(proceedingsId);
+				unlockProceedings(proceedingsId);
 				//forwards the exception to terminate the thread
 				throw new SAXException(ne);
 			}
@@ -1278,6 +1711,11 @@ public class DblpImporterHandler extends DefaultHandler{
 //				((Article)this.currEntity).setId(newUrl);
 //				((Article)this.currEntity).setUrl(newUrl);
 //			}
+		journalId = DblpRecord.venueOf(((Article)this.currEntity).getId());
+		if (this.dictionaries!=null && this.dictionaries.isJournal(journalId)){
+			writeResolvedPublication(journalId);
+			return;
+		}
 		try {	
 			if(((Article)this.currEntity).getId().contains(".html#"))
 				journalId = ((Article)this.currEntity).getId().substring(0, ((Article)this.currEntity).getId().lastIndexOf("#"));
@@ -1287,32 +1725,31 @@ public class DblpImporterHandler extends DefaultHandler{
 			
 			//if the parser is running in multi-thread mode first of all 
 			//gets the lock on the journal element (same lock for proceedings element)
-			if (this.monitor!=null)
-				this.monitor.getLockOnProceedings(journalId);
+			lockProceedings(journalId);
 			//checks if the journal to be updated already exists in the db
 			List existingJournals = 
-				session.getNamedQuery("findJournalById")
-				.setString("journalId", journalId)
-				.list();
-			this.session.startTransaction();
+				lookup("findJournalById", "journalId", journalId);
+			beginRecord();
 			for(Person p : this.currAuthors)
-				this.session.saveObject(p);
+				save(p);
 			if(existingJournals.size()==0){
 				//if the journal does not exists tries to create a new journal element
 				this.tempJournal.setId(journalId);
 				this.tempJournal.setYear(((Article)this.currEntity).getYear());
-				this.session.saveObject(this.tempJournal);
-				this.tempJournal.addArticle((Article)this.currEntity);
-				logger.debug("A new journal " + this.tempJournal.getTitle() + " with id " + journalId + " has been found. Searching for a fake Proceedings...");
+				save(this.tempJournal);
+				if (this.deferredLinks)
+					linkLater(PendingVenueLink.ARTICLE, journalId);
+				else
+					this.tempJournal.addArticle((Article)this.currEntity);
+				if (this.debug)
+					logger.debug("A new journal " + this.tempJournal.getTitle() + " with id " + journalId + " has been found. Searching for a fake Proceedings...");
 				if(this.fakeProceedings.contains(journalId)){
 					logger.debug("No fake proceedings found");
 				}
 				else{
 					//checks if the journal already exists in the db as a proceedings
 					List existingFakeProceedings = 
-						session.getNamedQuery("findProceedingsById")
-						.setString("proceedingsId", journalId)
-						.list();
+						lookup("findProceedingsById", "proceedingsId", journalId);
 					this.fakeProceedings.add(journalId);
 					//if no fake proceedings are found, do nothing
 					if(existingFakeProceedings.size()==0)
@@ -1326,36 +1763,40 @@ public class DblpImporterHandler extends DefaultHandler{
 						//moves the inproceedings frome the fake inProceedings to the journal
 						for(InProceedings i : toBeModified){
 							this.tempJournal.addArticle(i);
-							logger.debug("InProceedings " + i.getId() + " detached from its fake Proceedings and attached to journal " + journalId);
+							if (this.debug)
+								logger.debug("InProceedings " + i.getId() + " detached from its fake Proceedings and attached to journal " + journalId);
 						}
 						//saves the journal and deletes the fake proceedings
-						this.session.saveOrUpdate(this.tempJournal);
+						saveOrUpdate(this.tempJournal);
 						this.session.delete(existingFakeProceedings.get(0));
 					}
 				}
 			}
 			else if(existingJournals.size()==1){
 				//if a journal with the given id exists updates the existing object
-				Journal journal = (Journal)existingJournals.get(0);
-				//refreshes the journal element read from the db
-				this.session.refresh(journal);
-				//updates the journal element
-				journal.addArticle((Article)this.currEntity);
-				this.session.update(journal);
+				//the journal row is not changed
+				if (this.deferredLinks)
+					linkLater(PendingVenueLink.ARTICLE, journalId);
+				else{
+					Journal journal = (Journal)existingJournals.get(0);
+					//refreshes the journal element read from the db
+					this.session.refresh(journal);
+					//updates the journal element
+					journal.addArticle((Article)this.currEntity);
+					update(journal);
+				}
 			}
 			else
 				logger.error("Found two proceedings with the same id: " + journalId);
 			//saves the current article
-			this.session.saveOrUpdate(this.currEntity);
-			this.session.endTransaction();
-			this.session.flush();
+			saveOrUpdate(this.currEntity);
+			endRecord();
 			//if the parser is running in multi-thread mode releases the lock on 
 			//the proceedings element
-			if (this.monitor!=null)
-				this.monitor.releaseLockOnProceedings(journalId);
+			unlockProceedings(journalId);
 			//updates the partFile state (offset)
 			this.partFile.setLastOffset(this.currOffset);
-			this.currDblpElement = "";
+			this.currDblpElement = DblpTag.OTHER;
 			this.tempJournal = new Journal();
 			this.currAuthors = new ArrayList<Person>();
 		}  
@@ -1373,7 +1814,7 @@ public class DblpImporterHandler extends DefaultHandler{
 				 * do not delete the inproceedings the application will fail to restart.
 				 * However a rollback is executed to free the transaction.
 				 */  
-				this.session.rollbackTransaction();
+				rollbackRecord();
 				logger.error("Error in thread parsing "+this.partFile.getFile().getName()+
 						" while saving an article object:\n" + e.getMessage());
 				//Before exiting the parser updates the xml parts descriptor in order to persist 
@@ -1381,18 +1822,9 @@ public class DblpImporterHandler extends DefaultHandler{
 				//gets and releases the lock on the partsInfo file. 
 				this.partFile.setLastCheckpoint(this.currCheckpoint);
 				this.partFile.setLastOffset(this.currOffset-1);
-				if (monitor!=null)
-					monitor.getLockOnDescriptor();
-				this.partFile.updateDescriptor();
-				if (monitor!=null)
-					monitor.releaseLockOnDescriptor();
-				//when a thread is closed after an exception it forces the termination of each other thread
-				if (monitor!=null)
-					this.monitor.setCloseThreads(true);
+				saveProgress();
 				//checks if the current article has been saved in the db
-				List existingInArticle = session.getNamedQuery("findArticleById")
-				.setString("articleId", ((Article)this.currEntity).getId())
-				.list();
+				List existingInArticle = lookup("findArticleById", "articleId", ((Article)this.currEntity).getId());
 				if (existingInArticle.size()==1){
 					//if if the current article has been saved in the db deletes it
 					this.session.clear();
@@ -1403,16 +1835,14 @@ public class DblpImporterHandler extends DefaultHandler{
 				this.session.close();
 				//if the parser is running in multi-thread mode releases the lock on 
 				//the journal element
-				if (this.monitor!=null)
-					this.monitor.releaseLockOnProceedings(journalId);
+				unlockProceedings(journalId);
 			}
 			catch(Exception ne){
 				logger.error("Error in thread parsing "+this.partFile.getFile().getName()+
 						" while handling exception. Error message: "+ne.getMessage());
 				//if the parser is running in multi-thread mode releases the lock on 
 				//the journal element
-				if (this.monitor!=null)
-					this.monitor.releaseLockOnProceedings(journalId);
+				unlockProceedings(journalId);
 				//forwards the exception to terminate the thread
 				throw new SAXException(ne);
 			}
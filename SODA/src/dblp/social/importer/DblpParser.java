@@ -1,14 +1,12 @@
 package dblp.social.importer;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.log4j.Logger;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 import dblp.social.exceptions.SodaHibernateException;
@@ -29,6 +27,8 @@ import dblp.social.loader.PartFile;
 public class DblpParser {
 
 	private XMLReader xmlReader;
+	//true if the part files are imported with the DblpPullParser
+	private static boolean pullParser = false;
 	
 	private static Logger logger = Logger.getLogger(DblpParser.class);
 	
@@ -37,6 +37,37 @@ public class DblpParser {
 	 */
 	public DblpParser(){}
 
+	/**
+	 * Chooses the parser used by parseDbpl: the StAX DblpPullParser or the SAX XMLReader (default).
+	 * The records read by parseRecords are always parsed by the SAX XMLReader.
+	 * @param pull true to use the DblpPullParser
+	 */
+	public static void setPullParser(boolean pull){
+		pullParser = pull;
+	}
+
+	/**
+	 * @return true if the part files are imported with the DblpPullParser
+	 */
+	public static boolean isPullParser(){
+		return pullParser;
+	}
+
+	/**
+	 * Parses a part file with the parser chosen by setPullParser
+	 * @param handl the handler saving the records
+	 * @param fis the part file content
+	 */
+	private void parse(DblpImporterHandler handl, InputStream fis) throws SAXException, IOException{
+		if (pullParser){
+			new DblpPullParser(handl).parse(fis);
+			return;
+		}
+		this.xmlReader = XMLReaderFactory.createXMLReader();
+		this.xmlReader.setContentHandler(handl);
+		this.xmlReader.parse(new InputSource(fis));
+	}
+
 
 	/**
 	 * Parses a single dblp part file using the DblpImporterHandler. 
@@ -56,28 +87,28 @@ public class DblpParser {
 		if (!session.isOpen())
 			session.open();
 
-		this.xmlReader = XMLReaderFactory.createXMLReader();
-		FileInputStream fis;
+		InputStream fis;
 		
 		//if the part file is not marked as complete parses that file
 		if (!pf.isComplete()){
-			DefaultHandler handl = new DblpImporterHandler(session, pf);
-			this.xmlReader.setContentHandler(handl);
-			String filePath = pf.getFile().getAbsolutePath();
-			fis = new FileInputStream(new File(filePath));
+			DblpImporterHandler handl = new DblpImporterHandler(session, pf);
+			//virtual parts are read from the source file
+			fis = pf.openInputStream();
 			
 			try{
-				logger.debug("Starting the sax-xml parser");		
-				this.xmlReader.parse(new InputSource(fis));
-				logger.debug("Sax-xml parser returned");
+				logger.debug("Starting the xml parser");		
+				parse(handl, fis);
+				logger.debug("Xml parser returned");
 				
 			}
 			catch (SAXException se){
 				logger.debug("Exception while parsing part file "+pf.getFile().getName()+": "+se.getMessage());
+				handl.abortBatch();
 			}
 			catch(Exception e){
 				logger.error("Exception while parsing part file "+pf.getFile().getName()+": "+e.getMessage());
 				//e.printStackTrace();
+				handl.abortBatch();
 			}
 			
 			fis.close();
@@ -103,23 +134,21 @@ public class DblpParser {
 	public void parseDbpl(PartFile pf, ThreadMonitor monitor, ISodaHibernateSession session) 
 		throws SAXException, IOException, SodaHibernateException{
 		
-		this.xmlReader = XMLReaderFactory.createXMLReader();
-		FileInputStream fis;
+		InputStream fis;
 		
 		//if the part file is complete do nothing
 		if (!pf.isComplete()){
 			if (!session.isOpen())
 				session.open();
 			//creates the appropriate handler
-			DefaultHandler handl = new DblpImporterHandler(session, pf, monitor);
-			this.xmlReader.setContentHandler(handl);
-			String filePath = pf.getFile().getAbsolutePath();
-			fis = new FileInputStream(new File(filePath));
+			DblpImporterHandler handl = new DblpImporterHandler(session, pf, monitor);
+			//virtual parts are read from the source file
+			fis = pf.openInputStream();
 			try{
 				
-				logger.debug("Starting the sax-xml parser");
-				this.xmlReader.parse(new InputSource(fis));
-				logger.debug("Sax-xml parser returned");
+				logger.debug("Starting the xml parser");
+				parse(handl, fis);
+				logger.debug("Xml parser returned");
 
 				if (session.isOpen())
 					session.close();	
@@ -128,6 +157,8 @@ public class DblpParser {
 			catch (SAXException se){
 				
 				fis.close();
+				//the records of an uncommitted batch are rolled back
+				handl.abortBatch();
 				if (session.isOpen())
 					session.clear();
 				//forwards the exception
@@ -137,6 +168,7 @@ public class DblpParser {
 			catch (Exception e){
 				logger.error("Exception while parsing part file "+pf.getFile().getName()+": "+e.getMessage());
 				e.printStackTrace();
+				handl.abortBatch();
 				if (session.isOpen())
 					session.clear();
 				//forwards the exception
@@ -146,4 +178,28 @@ public class DblpParser {
 			
 		}		
 	}
+	
+	/**
+	 * Parses a whole part file using the given DblpRecordHandler, the checkpoints stored in the descriptor are ignored
+	 * and left unchanged. The handler may be shared by several part files, e.g. by all the part files of a bulk import.
+	 * 
+	 * @param pf: the PartFile object which represents the part file to be parsed
+	 * @param handl: the record handler (see DblpBulkHandler and DblpDictionaryHandler)
+	 * @throws SAXException
+	 * @throws IOException
+	 */
+	public void parseRecords(PartFile pf, DblpRecordHandler handl) throws SAXException, IOException{
+		this.xmlReader = XMLReaderFactory.createXMLReader();
+		this.xmlReader.setContentHandler(handl);
+		//the part file is read from its beginning
+		InputStream fis = pf.openInputStream(0);
+		try{
+			logger.debug("Starting the sax-xml parser (records)");
+			this.xmlReader.parse(new InputSource(fis));
+			logger.debug("Sax-xml parser returned");
+		}
+		finally{
+			fis.close();
+		}
+	}
 }
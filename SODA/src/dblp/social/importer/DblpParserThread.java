@@ -6,115 +6,90 @@ import dblp.social.exceptions.PoolException;
 import dblp.social.hibernate.ISodaHibernateSession;
 import dblp.social.hibernate.SessionsPool;
 import dblp.social.loader.PartFile;
-import dblp.social.loader.PartFilesPool;
 
 /**
- * This class defines a thread which will parse a single part file produced by the pre-parser.
+ * This class defines a worker of a ParserWorkerPool: it parses the part files produced by the pre-parser
+ * one after the other, taking the next one from the worker pool as soon as the previous one is done.
+ * The worker keeps the same Hibernate session until it ends.
  * @author Staffiero
  *
  */
 public class DblpParserThread extends Thread {
-	
-	private PartFile partFile;
-	private PartFilesPool pool;
+
+	private ParserWorkerPool workers;
 	private ThreadMonitor monitor;
-	private String name;
 	private ISodaHibernateSession session;
 	private static Logger logger = Logger.getLogger(DblpParserThread.class);
-	
+
 	/**
 	 * The constructor to be used
-	 * 
-	 * @param pf: the PartFile object which represents the part file to be parsed
+	 *
 	 * @param threadName: the name of the thread
+	 * @param workers: the worker pool giving the part files to be parsed
 	 * @param monitor: the thread monitor
 	 * @throws PoolException
 	 */
-	public DblpParserThread(PartFile pf, String threadName, 
+	public DblpParserThread(String threadName, ParserWorkerPool workers,
 			ThreadMonitor monitor) throws PoolException{
 		super(threadName);
-		this.name=threadName;
 		this.session=SessionsPool.getInstance().getSession();
-		this.partFile = pf;
-		this.pool = PartFilesPool.getInstance();
+		this.workers = workers;
 		this.monitor = monitor;
 	}
 
 	@Override
-	public void run() {		
+	public void run() {
+		PartFile partFile = null;
 		try{
-			if (!this.session.isOpen())
-				this.session.open();
-			//creates a new parser and starts it
-			DblpParser parser = new DblpParser();
-			parser.parseDbpl(this.partFile, this.monitor, this.session);
-			//if the parser terminates without throwing exceptions sends back the 
-			//PartFile to the pool
-			pool.parseFinished(this.partFile);
-			//removes the thread from the list of running threads
-			monitor.removeThread(this.name);
-			//tries to close the session
-			if (this.session.isOpen())
-				this.session.close();
-			//sends back the session to the sessions pool
-			SessionsPool.getInstance().sessionBackToPool(this.session);
-			this.session=null;
-		}
-		catch (Exception e){
-			try{
-				//TODO Debug code
-				logger.error("Exception in thread parsing "+this.partFile.getFile().getName() + "." +
-				"\nException message: "+ e.getMessage()+".\nStopping thread");
-//				e.printStackTrace();
-				
-				//a generic exception may not be an error. 
-				logger.debug("Exception occurred in thread parsing "+this.partFile.getFile().getName() + "." +
-						"\nException message: "+ e.getMessage()+".\nStopping thread");
-				//the parse method stopped before completely parse the file, therfore
-				//the part file is sent back to the part files pool
-				pool.giveBack(this.partFile);
-				//sends back the session to the session pool
-				SessionsPool.getInstance().sessionBackToPool(this.session);
-				this.session=null;
-				//removes the thread from the list of running threads
-				monitor.removeThread(this.name);
-				this.finalize();
-			}
-			catch(Throwable ex){
-				logger.error("Exception while closing the thread: "+ex.getMessage() );
-				ex.printStackTrace();
+			while ((partFile = this.workers.nextPartFile(this))!=null){
+				//creates a new parser for each part file
+				DblpParser parser = new DblpParser();
+				try{
+					parser.parseDbpl(partFile, this.monitor, this.session);
+					//the parser may return before the end of the part file if the threads are closed
+					this.workers.partFinished(partFile);
+				}
+				catch (Exception e){
+					logger.debug("Exception in "+getName()+" parsing "+partFile.getFile().getName() + "." +
+							"\nException message: "+ e.getMessage());
+					//the progress has been saved by the handler, the part file is parsed again later
+					this.workers.partFailed(partFile, e);
+				}
+				partFile = null;
 			}
 		}
 		catch (OutOfMemoryError oom){
-			//Catches out of memory error. If catches an out of memory error 
+			//Catches out of memory error. If catches an out of memory error
 			// the descriptor hasn't been updated
 			try{
 				Runtime r = Runtime.getRuntime();
 				logger.error("Out of memory Error, handled in DblpParser thread\n" +
 						"Free memory: "+r.freeMemory()+"\n");
-				
-				//gives back the part file to the pool
-				pool.giveBack(this.partFile);
-				//sends back the session to the session pool
-				SessionsPool.getInstance().sessionBackToPool(this.session);
-				this.session=null;
-				//prevents the main loop from cycling again
+				//prevents the worker pool from starting new workers
 				monitor.setTerminateProcess(true);
 				//block each other thread
 				monitor.setCloseThreads(true);
-				//removes the current thread from the active threads list
-				monitor.removeThread(this.name);
-				//Calls a separate process to update the descriptor
-//				Runtime.getRuntime().exec("java -cp ./bin dblp.social.utility.DescriptorUpdater " +
-//						this.partFile.getFile() +" "+
-//						this.partFile.getPartFileDescriptor()+" "+
-//						this.partFile.getLastCheckpoint() +" "+
-//						this.partFile.getLastOffset());
+				//gives back the part file to the pool
+				if (partFile!=null)
+					this.workers.partFailed(partFile, null);
 			}
 			catch(Throwable tr){
 				logger.error("exception while handling an OutOfMemoryError: "+tr.getMessage());
 				tr.printStackTrace();
 			}
 		}
+		finally{
+			try{
+				if (this.session.isOpen())
+					this.session.close();
+				//sends back the session to the sessions pool
+				SessionsPool.getInstance().sessionBackToPool(this.session);
+				this.session=null;
+			}
+			catch(Throwable ex){
+				logger.error("Exception while closing the thread: "+ex.getMessage() );
+			}
+			this.workers.workerEnded(this);
+		}
 	}
 }
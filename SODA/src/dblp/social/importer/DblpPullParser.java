@@ -0,0 +1,161 @@
+package dblp.social.importer;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+import org.xml.sax.SAXException;
+
+/**
+ * This class parses a part file with a StAX pull parser (XMLStreamReader) instead of the SAX XMLReader,
+ * the records are saved by the same DblpImporterHandler (see DblpParser.setPullParser).
+ * Each record is read as a whole into a DblpRecordBuffer and handed to the handler, so the handler is called
+ * once per record instead of three times per element. The records which are not imported (www, phdthesis, mastersthesis)
+ * and the records preceding the starting position are skipped without reading their text.
+ *
+ * As with the SAX handler, the text of a field drops its inline elements (e.g. sub, i in a title) and the text
+ * preceding them: the end of any element clears the text read so far.
+ * Unlike the SAX handler the authors of the skipped records are not saved as persons.
+ *
+ * @author Staffiero
+ *
+ */
+public class DblpPullParser {
+	private static Logger logger = Logger.getLogger(DblpPullParser.class);
+	private static XMLInputFactory factory = null;
+
+	private DblpImporterHandler handler;
+	private DblpRecordBuffer record = new DblpRecordBuffer();
+	private StringBuilder text = new StringBuilder(256);
+
+	/**
+	 * The constructor to be used
+	 * @param handler the handler saving the records of a part file
+	 */
+	public DblpPullParser(DblpImporterHandler handler){
+		this.handler = handler;
+	}
+
+	/**
+	 * @return the shared factory, created by the first call
+	 */
+	private static synchronized XMLInputFactory factory(){
+		if (factory==null){
+			factory = XMLInputFactory.newInstance();
+			//the entities declared by dblp.dtd are replaced as the SAX reader does
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.TRUE);
+			factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+		}
+		return factory;
+	}
+
+	/**
+	 * Parses a part file
+	 * @param input the part file content, it is not closed
+	 * @throws SAXException if the content is not well-formed or the handler fails
+	 */
+	public void parse(InputStream input) throws SAXException{
+		XMLStreamReader reader = null;
+		try{
+			XMLInputFactory f = factory();
+			synchronized (f){
+				reader = f.createXMLStreamReader(input);
+			}
+			this.handler.startDocument();
+			while (reader.hasNext()){
+				if (reader.next()!=XMLStreamConstants.START_ELEMENT)
+					continue;
+				DblpTag tag = DblpTag.of(reader.getLocalName());
+				if (tag==DblpTag.CHECKPOINT)
+					this.handler.checkpoint(Integer.parseInt(reader.getAttributeValue(null, "number")));
+				else if (tag.isRecord())
+					readRecord(reader, tag);
+			}
+			this.handler.endDocument();
+		}
+		catch (XMLStreamException e){
+			throw new SAXException(e);
+		}
+		finally{
+			if (reader!=null){
+				try{
+					reader.close();
+				}
+				catch (XMLStreamException e){
+					logger.debug("Error while closing the pull parser: "+e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a record, the reader is on its start element and is left on its end element
+	 */
+	private void readRecord(XMLStreamReader reader, DblpTag tag) throws XMLStreamException, SAXException{
+		if (!this.handler.recordStarted() || !isImported(tag)){
+			skipElement(reader);
+			return;
+		}
+		this.record.reset(tag, reader.getAttributeValue(null, "key"));
+		int event;
+		while ((event = reader.next())!=XMLStreamConstants.END_ELEMENT){
+			if (event!=XMLStreamConstants.START_ELEMENT)
+				continue;
+			DblpTag field = DblpTag.of(reader.getLocalName());
+			if (field==DblpTag.OTHER)
+				skipElement(reader);
+			else
+				this.record.add(field, readText(reader));
+		}
+		this.handler.importRecord(this.record);
+	}
+
+	/**
+	 * @return true if the records of the given element are imported
+	 */
+	private static boolean isImported(DblpTag tag){
+		return tag!=DblpTag.WWW && tag!=DblpTag.PHDTHESIS && tag!=DblpTag.MASTERSTHESIS;
+	}
+
+	/**
+	 * Reads the text of a field as the SAX handler does: the text is cleared at the end of each inline element,
+	 * so only the text following the last inline element is kept.
+	 * The reader is on the field start element and is left on its end element.
+	 */
+	private String readText(XMLStreamReader reader) throws XMLStreamException{
+		this.text.setLength(0);
+		int depth = 1;
+		while (depth>0){
+			int event = reader.next();
+			if (event==XMLStreamConstants.CHARACTERS || event==XMLStreamConstants.CDATA)
+				this.text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+			else if (event==XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event==XMLStreamConstants.END_ELEMENT){
+				depth--;
+				if (depth>0)
+					this.text.setLength(0);
+			}
+		}
+		return this.text.toString();
+	}
+
+	/**
+	 * Skips an element and its children.
+	 * The reader is on the start element and is left on the end element.
+	 */
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException{
+		int depth = 1;
+		while (depth>0){
+			int event = reader.next();
+			if (event==XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event==XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+}
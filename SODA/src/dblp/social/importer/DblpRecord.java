@@ -0,0 +1,113 @@
+package dblp.social.importer;
+
+import java.util.ArrayList;
+
+/**
+ * This class holds the fields of a dblp record read by a DblpRecordHandler.
+ * The ids are created following the rules of the DblpImporterHandler, see DblpIdUtility.
+ *
+ * @author Staffiero
+ *
+ */
+public class DblpRecord {
+	public static final String INCOLLECTION = "incollection";
+	public static final String INPROCEEDINGS = "inproceedings";
+	public static final String PROCEEDINGS = "proceedings";
+	public static final String ARTICLE = "article";
+	public static final String BOOK = "book";
+
+	//the record element name, lower case
+	String type;
+	String key;
+	//the key, replaced by the url for books, proceedings and incollections
+	String id;
+	String title = "";
+	String booktitle = "";
+	String year = "";
+	String isbn = "";
+	String publisher = "";
+	String pages = "";
+	String url = null;
+	String ee = "";
+	String journal = "";
+	String number = "";
+	String volume = "";
+	ArrayList<String> authors = new ArrayList<String>();
+	ArrayList<String> editors = new ArrayList<String>();
+
+	/**
+	 * @param type the record element name
+	 * @param key the dblp key attribute
+	 */
+	DblpRecord(String type, String key){
+		this.type = type.toLowerCase();
+		this.key = key;
+		this.id = key;
+	}
+
+	/**
+	 * @return true if the record is an inproceedings, an article or an incollection
+	 */
+	public boolean isPublication(){
+		return this.type.equals(INPROCEEDINGS) || this.type.equals(ARTICLE) || this.type.equals(INCOLLECTION);
+	}
+
+	/**
+	 * @return true if the record is a proceedings or a book
+	 */
+	public boolean isVenue(){
+		return this.type.equals(PROCEEDINGS) || this.type.equals(BOOK);
+	}
+
+	/**
+	 * Creates the id of a publication record, the same created by the DblpImporterHandler
+	 * @return the publication id, null if a valid id cannot be created
+	 * @throws RuntimeException if the record fields do not allow to create the id (e.g. a year shorter than two digits)
+	 */
+	public String publicationId(){
+		if (this.type.equals(INPROCEEDINGS))
+			return DblpIdUtility.createInProceedingsId(this.url, this.key, this.year.substring(2), INPROCEEDINGS);
+		if (this.type.equals(ARTICLE))
+			return DblpIdUtility.createInProceedingsId(this.url, this.key, this.volume, ARTICLE);
+		return this.id;
+	}
+
+	/**
+	 * Creates the id of a proceedings or book record
+	 * @return the venue id, null if a valid id cannot be created
+	 */
+	public String venueId(){
+		if (this.type.equals(PROCEEDINGS))
+			return DblpIdUtility.createProceedingsId(this.id, this.key);
+		//"classic" books have no url, the id is the dblp key
+		if (this.id==null || this.id.equalsIgnoreCase(""))
+			return this.key;
+		return this.id;
+	}
+
+	/**
+	 * @param publicationId an inproceedings, article or incollection id
+	 * @return the id of the venue (proceedings, journal or book) of the publication
+	 */
+	public static String venueOf(String publicationId){
+		if (publicationId.contains(".html#"))
+			return publicationId.substring(0, publicationId.lastIndexOf("#"));
+		return publicationId;
+	}
+
+	/**
+	 * Getter
+	 * @return the dblp key
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Getter
+	 * @return the record element name
+	 */
+	public String getType() {
+		return type;
+	}
+}
@@ -0,0 +1,72 @@
+package dblp.social.importer;
+
+/**
+ * This class holds a dblp record read by the DblpPullParser: the record element, its key and its fields in document order.
+ * A single buffer is reused for every record of a part file.
+ *
+ * @author Staffiero
+ *
+ */
+public class DblpRecordBuffer {
+	private DblpTag tag = DblpTag.OTHER;
+	private String key = null;
+	private DblpTag[] fieldTags = new DblpTag[16];
+	private String[] fieldTexts = new String[16];
+	private int size = 0;
+
+	/**
+	 * Empties the buffer for a new record
+	 * @param tag the record element
+	 * @param key the dblp key of the record
+	 */
+	void reset(DblpTag tag, String key){
+		this.tag = tag;
+		this.key = key;
+		//the texts of the previous record are released
+		for (int i=0; i<this.size; i++)
+			this.fieldTexts[i] = null;
+		this.size = 0;
+	}
+
+	/**
+	 * Appends a field
+	 * @param fieldTag the field element
+	 * @param text the field text
+	 */
+	void add(DblpTag fieldTag, String text){
+		if (this.size==this.fieldTags.length){
+			DblpTag[] tags = new DblpTag[this.size*2];
+			String[] texts = new String[this.size*2];
+			System.arraycopy(this.fieldTags, 0, tags, 0, this.size);
+			System.arraycopy(this.fieldTexts, 0, texts, 0, this.size);
+			this.fieldTags = tags;
+			this.fieldTexts = texts;
+		}
+		this.fieldTags[this.size] = fieldTag;
+		this.fieldTexts[this.size] = text;
+		this.size++;
+	}
+
+	public DblpTag getTag(){
+		return this.tag;
+	}
+
+	public String getKey(){
+		return this.key;
+	}
+
+	/**
+	 * @return the number of fields
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	public DblpTag getFieldTag(int i){
+		return this.fieldTags[i];
+	}
+
+	public String getFieldText(int i){
+		return this.fieldTexts[i];
+	}
+}
@@ -0,0 +1,99 @@
+package dblp.social.importer;
+
+import java.io.IOException;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This class defines a handler which reads each dblp record into a DblpRecord, without saving anything.
+ * Subclasses handle the complete records, see DblpBulkHandler and DblpDictionaryHandler.
+ * The text of each field is read as the DblpImporterHandler does.
+ *
+ * @author Staffiero
+ *
+ */
+public abstract class DblpRecordHandler extends DefaultHandler{
+	private DblpRecord currRecord = null;
+	private StringBuffer currText = new StringBuffer();
+
+	/**
+	 * Called for each complete record, including the records which are not imported (e.g. www):
+	 * their authors are persons.
+	 * @param record the record
+	 * @throws SAXException
+	 * @throws IOException
+	 */
+	protected abstract void endRecord(DblpRecord record) throws SAXException, IOException;
+
+	/**
+	 * Method called every time the parser enters a new XML element.
+	 */
+	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException{
+		DblpTag tag = DblpTag.of(localName);
+		if(tag.isRecord()){
+			this.currRecord = new DblpRecord(tag.getName(), attributes.getValue("key"));
+		}
+		this.currText.setLength(0);
+	}
+
+	/**
+	 * Method called every time the parser exits an element.
+	 */
+	public void endElement(String uri, String localName, String qName) throws SAXException{
+		String text = this.currText.toString();
+		this.currText.setLength(0);
+		DblpRecord r = this.currRecord;
+		if (r==null)
+			return;
+		DblpTag tag = DblpTag.of(localName);
+		if(tag.isRecord() && tag.getName().equals(r.type)){
+			this.currRecord = null;
+			try{
+				endRecord(r);
+			}
+			catch (IOException e){
+				throw new SAXException(e);
+			}
+		}
+		else if(tag==DblpTag.AUTHOR)
+			r.authors.add(text);
+		else if(tag==DblpTag.EDITOR)
+			r.editors.add(text);
+		else if(tag==DblpTag.TITLE)
+			r.title = text;
+		else if(tag==DblpTag.BOOKTITLE)
+			r.booktitle = text;
+		else if(tag==DblpTag.YEAR)
+			r.year = text;
+		else if(tag==DblpTag.URL){
+			r.url = text;
+			//books, proceedings and incollections are identified by their url
+			if (r.type.equals(DblpRecord.BOOK) || r.type.equals(DblpRecord.PROCEEDINGS) ||
+					r.type.equals(DblpRecord.INCOLLECTION))
+				r.id = text;
+		}
+		else if(tag==DblpTag.PAGES)
+			r.pages = text;
+		else if(tag==DblpTag.EE)
+			r.ee = text;
+		else if(tag==DblpTag.JOURNAL)
+			r.journal = text;
+		else if(tag==DblpTag.NUMBER)
+			r.number = text;
+		else if(tag==DblpTag.VOLUME)
+			r.volume = text;
+		else if(tag==DblpTag.PUBLISHER)
+			r.publisher = text;
+		else if(tag==DblpTag.ISBN)
+			r.isbn = text;
+	}
+
+	/**
+	 * Method called for the text of each element
+	 */
+	public void characters (char ch[], int start, int length){
+		this.currText.append(ch, start, length);
+	}
+}
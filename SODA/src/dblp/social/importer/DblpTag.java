@@ -0,0 +1,90 @@
+package dblp.social.importer;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+/**
+ * This enum defines the dblp elements handled by the parser handlers, so that an element name
+ * is resolved once in startElement and endElement instead of being compared with every tag name.
+ * The SAX parser passes interned element names: the known names are found by reference,
+ * the other names are compared ignoring the case.
+ *
+ * @author Staffiero
+ *
+ */
+public enum DblpTag {
+	BOOK("book", true),
+	PROCEEDINGS("proceedings", true),
+	INCOLLECTION("incollection", true),
+	INPROCEEDINGS("inproceedings", true),
+	ARTICLE("article", true),
+	PHDTHESIS("phdthesis", true),
+	MASTERSTHESIS("mastersthesis", true),
+	WWW("www", true),
+	AUTHOR("author", false),
+	EDITOR("editor", false),
+	TITLE("title", false),
+	BOOKTITLE("booktitle", false),
+	YEAR("year", false),
+	URL("url", false),
+	PAGES("pages", false),
+	EE("ee", false),
+	JOURNAL("journal", false),
+	NUMBER("number", false),
+	VOLUME("volume", false),
+	PUBLISHER("publisher", false),
+	ISBN("isbn", false),
+	CHECKPOINT("checkpoint", false),
+	//any other element (e.g. cite, note, sup)
+	OTHER("", false);
+
+	private static final IdentityHashMap<String, DblpTag> INTERNED = new IdentityHashMap<String, DblpTag>();
+	private static final HashMap<String, DblpTag> NAMES = new HashMap<String, DblpTag>();
+	static{
+		for (DblpTag t : values()){
+			INTERNED.put(t.name, t);
+			NAMES.put(t.name, t);
+		}
+	}
+
+	private final String name;
+	private final boolean record;
+
+	private DblpTag(String name, boolean record){
+		this.name = name;
+		this.record = record;
+	}
+
+	/**
+	 * @param localName the element name
+	 * @return the tag of the element, OTHER if it is not a handled dblp element
+	 */
+	public static DblpTag of(String localName){
+		DblpTag tag = INTERNED.get(localName);
+		if (tag!=null)
+			return tag;
+		//toLowerCase does not copy a name which is already lower case
+		tag = NAMES.get(localName.toLowerCase(Locale.ENGLISH));
+		return tag!=null ? tag : OTHER;
+	}
+
+	/**
+	 * @return the element name, lower case
+	 */
+	public String getName(){
+		return this.name;
+	}
+
+	/**
+	 * @return true if the element is a dblp record (book, article, www, etc.), whose start increments the offset
+	 */
+	public boolean isRecord(){
+		return this.record;
+	}
+
+	@Override
+	public String toString(){
+		return this.name;
+	}
+}
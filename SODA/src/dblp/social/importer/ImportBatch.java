@@ -0,0 +1,187 @@
+package dblp.social.importer;
+
+import java.util.ArrayList;
+
+import dblp.social.hibernate.entities.Person;
+
+/**
+ * This class keeps track of a multi-record transaction of a DblpImporterHandler.
+ * When batching is enabled the handler does not commit each dblp record: records are saved within a single transaction
+ * which is committed at a checkpoint, once the batch contains enough records or has been open for enough time.
+ * The progress of the part file (last checkpoint, last offset) is saved only up to the last committed record,
+ * so a restarted parser parses again exactly the records which have been rolled back.
+ * The book and proceedings locks taken within a batch are held until the batch is committed or rolled back,
+ * the new persons are added to the PersonNameCache only after the commit.
+ *
+ * Batching is configured by the static method configure, by default each record is committed.
+ *
+ * @author Staffiero
+ *
+ */
+public class ImportBatch {
+	private static int maxRecords = 1;
+	private static long maxMillis = 0;
+
+	private boolean open = false;
+	private int records = 0;
+	private long openedAt = 0;
+	private int committedCheckpoint, committedOffset;
+	private int doneCheckpoint, doneOffset;
+	private ArrayList<String> lockedBooks = new ArrayList<String>();
+	private ArrayList<String> lockedProceedings = new ArrayList<String>();
+	private ArrayList<Person> newPersons = new ArrayList<Person>();
+
+	/**
+	 * Configures the batching of all the importer handlers created after this call
+	 * @param records the number of records committed together, 1 or less to commit each record
+	 * @param millis the max time a batch is left open, 0 or less for no time limit
+	 */
+	public static void configure(int records, long millis){
+		maxRecords = records < 1 ? 1 : records;
+		maxMillis = millis < 0 ? 0 : millis;
+	}
+
+	/**
+	 * @return true if the records are committed in batches
+	 */
+	public static boolean isEnabled(){
+		return maxRecords > 1 || maxMillis > 0;
+	}
+
+	/**
+	 * The constructor to be used
+	 * @param checkpoint the last checkpoint stored in the descriptor
+	 * @param offset the last offset stored in the descriptor
+	 */
+	public ImportBatch(int checkpoint, int offset){
+		this.committedCheckpoint = checkpoint;
+		this.committedOffset = offset;
+		this.doneCheckpoint = checkpoint;
+		this.doneOffset = offset;
+	}
+
+	/**
+	 * Called when the batch transaction has been started
+	 */
+	public void open(){
+		this.open = true;
+		this.records = 0;
+		this.openedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return true if the batch transaction has been started and not yet committed or rolled back
+	 */
+	public boolean isOpen(){
+		return this.open;
+	}
+
+	/**
+	 * Called when a record has been saved within the batch transaction
+	 * @param checkpoint the current checkpoint
+	 * @param offset the offset of the saved record
+	 * @param persons the new persons saved with the record
+	 */
+	public void recordDone(int checkpoint, int offset, ArrayList<Person> persons){
+		this.records++;
+		this.doneCheckpoint = checkpoint;
+		this.doneOffset = offset;
+		for (Person p : persons){
+			if (!this.newPersons.contains(p))
+				this.newPersons.add(p);
+		}
+	}
+
+	/**
+	 * Adds a person saved within the batch transaction, it is cached after the commit
+	 * @param person
+	 */
+	public void addNewPerson(Person person){
+		if (!this.newPersons.contains(person))
+			this.newPersons.add(person);
+	}
+
+	/**
+	 * Called when a checkpoint is reached: all the records preceding it have been handled
+	 * @param checkpoint the checkpoint number
+	 */
+	public void checkpointReached(int checkpoint){
+		this.doneCheckpoint = checkpoint;
+		this.doneOffset = 0;
+	}
+
+	/**
+	 * @return true if the batch has to be committed at the current checkpoint
+	 */
+	public boolean isDue(){
+		if (!this.open)
+			return false;
+		if (this.records >= maxRecords)
+			return true;
+		return maxMillis > 0 && System.currentTimeMillis()-this.openedAt >= maxMillis;
+	}
+
+	/**
+	 * Called when the batch transaction has been committed: the progress advances to the last handled record.
+	 * @return the new persons saved by the batch, to be cached
+	 */
+	public ArrayList<Person> committed(){
+		this.committedCheckpoint = this.doneCheckpoint;
+		this.committedOffset = this.doneOffset;
+		return close();
+	}
+
+	/**
+	 * Called when the batch transaction has been rolled back: the progress goes back to the last commit.
+	 */
+	public void rolledBack(){
+		this.doneCheckpoint = this.committedCheckpoint;
+		this.doneOffset = this.committedOffset;
+		close();
+	}
+
+	private ArrayList<Person> close(){
+		ArrayList<Person> persons = this.newPersons;
+		this.newPersons = new ArrayList<Person>();
+		this.open = false;
+		this.records = 0;
+		return persons;
+	}
+
+	/**
+	 * @return the number of records saved within the open batch transaction
+	 */
+	public int getRecords(){
+		return this.records;
+	}
+
+	/**
+	 * @return the checkpoint of the last committed record
+	 */
+	public int getCommittedCheckpoint(){
+		return this.committedCheckpoint;
+	}
+
+	/**
+	 * @return the offset of the last committed record
+	 */
+	public int getCommittedOffset(){
+		return this.committedOffset;
+	}
+
+	/**
+	 * Getter
+	 * @return the books locked by the batch, they have to be released after the commit
+	 */
+	public ArrayList<String> getLockedBooks(){
+		return this.lockedBooks;
+	}
+
+	/**
+	 * Getter
+	 * @return the proceedings locked by the batch, they have to be released after the commit
+	 */
+	public ArrayList<String> getLockedProceedings(){
+		return this.lockedProceedings;
+	}
+}
@@ -0,0 +1,429 @@
+package dblp.social.importer;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import dblp.social.loader.PartFile;
+
+/**
+ * This class collects the metrics of a multi-thread import and publishes them as MBeans
+ * (dblp.social:type=ImportMetrics and one dblp.social:type=ImportWorker for each parser thread)
+ * and as a log line printed every logMillis milliseconds.
+ *
+ * The parser threads only increment counters and record latencies in lock-free histograms (see LatencyHistogram),
+ * the rates, the progress and the ETA are computed when the metrics are read.
+ * The progress is the number of checkpoints parsed over the checkpoints of the tracked part files,
+ * i.e. the total-checkpoints of the _partsInfo file.
+ * Only one instance is allowed: use the static method initialize to create it and getInstance to get it.
+ *
+ * @author Staffiero
+ *
+ */
+public class ImportMetrics implements ImportMetricsMBean {
+	public static final long DEFAULT_LOG_MILLIS = 30000;
+	private static final String DOMAIN = "dblp.social";
+	//weight of the last interval in the checkpoints rate used by the ETA
+	private static final double RATE_WEIGHT = 0.3;
+	private static Logger logger = Logger.getLogger(ImportMetrics.class);
+	private static ImportMetrics metrics = null;
+
+	private ThreadMonitor monitor;
+	private long startTime = System.nanoTime();
+	private Timer timer = null;
+	private LinkedHashSet<PartFile> parts = new LinkedHashSet<PartFile>();
+	//thread name -> metrics of the thread
+	private ConcurrentHashMap<String, WorkerMetrics> workers = new ConcurrentHashMap<String, WorkerMetrics>();
+	private ArrayList<ObjectName> registered = new ArrayList<ObjectName>();
+
+	private AtomicLong parsed = new AtomicLong();
+	private AtomicLong committed = new AtomicLong();
+	private LatencyHistogram lookups = new LatencyHistogram("lookup");
+	private LatencyHistogram saves = new LatencyHistogram("save");
+	private LatencyHistogram commits = new LatencyHistogram("commit");
+	private AtomicInteger workersStarted = new AtomicInteger();
+	private AtomicInteger partRestarts = new AtomicInteger();
+
+	//state of the last tick
+	private long lastTime = this.startTime;
+	private long lastParsed = 0, lastCommitted = 0, lastCheckpoints = -1;
+	private double parsedRate = -1, committedRate = -1, checkpointsRate = -1;
+
+	/**
+	 * A private constructor.
+	 * Other classes should not access this constructor, use the static method initialize instead.
+	 */
+	private ImportMetrics(ThreadMonitor monitor){
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Static method to initialize the metrics: the MBean is registered and the log line is scheduled.
+	 * Only one instance is allowed: if this method has already been called a second call will not affect the metrics.
+	 * @param monitor the thread monitor of the parser threads, for the lock statistics
+	 * @param logMillis the time (ms) between two log lines, 0 to disable the log line
+	 */
+	public static synchronized void initialize(ThreadMonitor monitor, long logMillis){
+		if (metrics!=null)
+			return;
+		metrics = new ImportMetrics(monitor);
+		metrics.register("ImportMetrics", null, metrics);
+		if (logMillis>0){
+			metrics.timer = new Timer("import metrics", true);
+			metrics.timer.scheduleAtFixedRate(new TimerTask(){
+				@Override
+				public void run(){
+					ImportMetrics m = getInstance();
+					if (m!=null)
+						m.log();
+				}
+			}, logMillis, logMillis);
+		}
+	}
+
+	/**
+	 * Static method to get the metrics
+	 * @return the metrics, null if the metrics have not been initialized
+	 */
+	public static synchronized ImportMetrics getInstance(){
+		return metrics;
+	}
+
+	/**
+	 * Stops the log line, unregisters the MBeans and dereferences the metrics
+	 */
+	public static synchronized void close(){
+		if (metrics==null)
+			return;
+		if (metrics.timer!=null)
+			metrics.timer.cancel();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		synchronized (metrics.registered){
+			for (ObjectName name : metrics.registered){
+				try{
+					server.unregisterMBean(name);
+				}
+				catch (Exception e){
+					logger.debug("Could not unregister "+name+": "+e.getMessage());
+				}
+			}
+			metrics.registered.clear();
+		}
+		metrics = null;
+	}
+
+	/**
+	 * Registers an MBean of the importer in the platform MBean server
+	 * @param type the type of the MBean
+	 * @param name the name of the MBean, null if there is a single MBean of the given type
+	 * @param bean
+	 */
+	private void register(String type, String name, Object bean){
+		try{
+			ObjectName objectName = new ObjectName(DOMAIN+":type="+type+(name!=null ? ",name="+ObjectName.quote(name) : ""));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+			server.registerMBean(bean, objectName);
+			synchronized (this.registered){
+				this.registered.add(objectName);
+			}
+		}
+		catch (Exception e){
+			logger.warn("Could not register the import metrics MBean: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Adds part files to the progress, a part file already tracked is ignored
+	 * @param partFiles the part files to be parsed, including the ones already parsed
+	 */
+	public void trackParts(List<PartFile> partFiles){
+		synchronized (this.parts){
+			this.parts.addAll(partFiles);
+		}
+	}
+
+	/**
+	 * Adds a part file to the progress, called when the pre parser adds a part file to the pool
+	 * @param partFile
+	 */
+	public void trackPart(PartFile partFile){
+		synchronized (this.parts){
+			this.parts.add(partFile);
+		}
+	}
+
+	/**
+	 * Returns the metrics of the calling thread, created and registered by the first call.
+	 * The caller should keep the returned object instead of calling this method for each record.
+	 * @return the metrics of the current thread
+	 */
+	public WorkerMetrics worker(){
+		Thread current = Thread.currentThread();
+		WorkerMetrics w = this.workers.get(current.getName());
+		if (w==null){
+			w = new WorkerMetrics(current);
+			WorkerMetrics prev = this.workers.putIfAbsent(current.getName(), w);
+			if (prev!=null)
+				return prev;
+			register("ImportWorker", current.getName(), w);
+		}
+		return w;
+	}
+
+	/**
+	 * Called by a parser thread when a record has been parsed
+	 * @param worker the metrics of the thread
+	 */
+	public void recordParsed(WorkerMetrics worker){
+		this.parsed.incrementAndGet();
+		worker.recordParsed();
+	}
+
+	/**
+	 * Called by a parser thread after each commit
+	 * @param records the number of records committed
+	 * @param nanos the time spent committing, in nanoseconds
+	 */
+	public void commitDone(int records, long nanos){
+		this.committed.addAndGet(records);
+		this.commits.record(nanos);
+		WorkerMetrics w = this.workers.get(Thread.currentThread().getName());
+		if (w!=null)
+			w.recordsCommitted(records);
+	}
+
+	/**
+	 * Called when a worker is started
+	 */
+	public void workerStarted(){
+		this.workersStarted.incrementAndGet();
+	}
+
+	/**
+	 * Called when a part file is given back to the pool because of an error
+	 */
+	public void partRestarted(){
+		this.partRestarts.incrementAndGet();
+	}
+
+	/**
+	 * Getter
+	 * @return the latencies of the queries looking for an existing person, book, proceedings, journal or publication
+	 */
+	public LatencyHistogram getLookups() {
+		return lookups;
+	}
+
+	/**
+	 * Getter
+	 * @return the latencies of the save and update calls
+	 */
+	public LatencyHistogram getSaves() {
+		return saves;
+	}
+
+	/**
+	 * Getter
+	 * @return the latencies of the commits
+	 */
+	public LatencyHistogram getCommits() {
+		return commits;
+	}
+
+	/**
+	 * Computes the rates of the last interval and prints the log line
+	 */
+	private synchronized void log(){
+		long now = System.nanoTime();
+		double seconds = (now-this.lastTime)/1e9;
+		if (seconds<=0)
+			return;
+		long p = this.parsed.get();
+		long c = this.committed.get();
+		long chpts = getCheckpointsDone();
+		this.parsedRate = (p-this.lastParsed)/seconds;
+		this.committedRate = (c-this.lastCommitted)/seconds;
+		if (this.lastCheckpoints>=0){
+			double rate = (chpts-this.lastCheckpoints)/seconds;
+			this.checkpointsRate = this.checkpointsRate<0 ? rate : RATE_WEIGHT*rate+(1-RATE_WEIGHT)*this.checkpointsRate;
+		}
+		this.lastTime = now;
+		this.lastParsed = p;
+		this.lastCommitted = c;
+		this.lastCheckpoints = chpts;
+		logger.info(toString());
+	}
+
+	public long getRecordsParsed(){
+		return this.parsed.get();
+	}
+
+	public long getRecordsCommitted(){
+		return this.committed.get();
+	}
+
+	/**
+	 * @return the records parsed per second in the last log interval, since the beginning if no line has been logged
+	 */
+	public synchronized double getParsedPerSecond(){
+		return this.parsedRate>=0 ? this.parsedRate : this.parsed.get()/elapsedSeconds();
+	}
+
+	/**
+	 * @return the records committed per second in the last log interval, since the beginning if no line has been logged
+	 */
+	public synchronized double getCommittedPerSecond(){
+		return this.committedRate>=0 ? this.committedRate : this.committed.get()/elapsedSeconds();
+	}
+
+	private double elapsedSeconds(){
+		return Math.max(1e-3, (System.nanoTime()-this.startTime)/1e9);
+	}
+
+	public String getLookupLatency(){
+		return this.lookups.toString();
+	}
+
+	public double getLookupP99Millis(){
+		return this.lookups.getPercentileMillis(0.99);
+	}
+
+	public String getSaveLatency(){
+		return this.saves.toString();
+	}
+
+	public double getSaveP99Millis(){
+		return this.saves.getPercentileMillis(0.99);
+	}
+
+	public String getCommitLatency(){
+		return this.commits.toString();
+	}
+
+	public double getCommitP99Millis(){
+		return this.commits.getPercentileMillis(0.99);
+	}
+
+	public long getLockWaitMillis(){
+		return this.monitor!=null ? this.monitor.getLockWaitNanos()/1000000 : 0;
+	}
+
+	public long getLockContentions(){
+		return this.monitor!=null ? this.monitor.getLockContentions() : 0;
+	}
+
+	/**
+	 * @return the checkpoints parsed in the tracked part files
+	 */
+	public long getCheckpointsDone(){
+		long done = 0;
+		synchronized (this.parts){
+			for (PartFile p : this.parts)
+				done += p.isComplete() ? p.getCheckpoints() : Math.min(p.getLastCheckpoint(), p.getCheckpoints());
+		}
+		return done;
+	}
+
+	/**
+	 * @return the checkpoints of the tracked part files
+	 */
+	public long getTotalCheckpoints(){
+		long total = 0;
+		synchronized (this.parts){
+			for (PartFile p : this.parts)
+				total += p.getCheckpoints();
+		}
+		return total;
+	}
+
+	public double getProgressPercent(){
+		long total = getTotalCheckpoints();
+		return total==0 ? 0 : 100.0*getCheckpointsDone()/total;
+	}
+
+	/**
+	 * @return the seconds to parse the remaining checkpoints at the recent checkpoints rate, -1 if not known yet
+	 */
+	public synchronized long getEtaSeconds(){
+		if (this.checkpointsRate<=0)
+			return -1;
+		return Math.round((getTotalCheckpoints()-getCheckpointsDone())/this.checkpointsRate);
+	}
+
+	/**
+	 * @return the progress of each part file begun but not complete
+	 */
+	public String[] getPartsProgress(){
+		ArrayList<String> progress = new ArrayList<String>();
+		synchronized (this.parts){
+			for (PartFile p : this.parts){
+				if (!p.isComplete() && p.getLastCheckpoint()>0)
+					progress.add(p.getFile().getName()+": "+p.getLastCheckpoint()+"/"+p.getCheckpoints()+" checkpoints");
+			}
+		}
+		return progress.toArray(new String[progress.size()]);
+	}
+
+	/**
+	 * @return the bytes allocated by the parser threads, -1 if the JVM does not measure them
+	 */
+	public long getAllocatedBytes(){
+		long total = 0;
+		for (WorkerMetrics w : this.workers.values()){
+			long b = w.getAllocatedBytes();
+			if (b<0)
+				return -1;
+			total += b;
+		}
+		return total;
+	}
+
+	public int getWorkersStarted(){
+		return this.workersStarted.get();
+	}
+
+	public int getPartRestarts(){
+		return this.partRestarts.get();
+	}
+
+	public String[] getWorkers(){
+		ArrayList<String> lines = new ArrayList<String>();
+		for (WorkerMetrics w : this.workers.values())
+			lines.add(w.toString());
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * @param seconds
+	 * @return the time as h:mm:ss
+	 */
+	private static String formatTime(long seconds){
+		if (seconds<0)
+			return "unknown";
+		long m = (seconds/60)%60;
+		long s = seconds%60;
+		return (seconds/3600)+":"+(m<10 ? "0" : "")+m+":"+(s<10 ? "0" : "")+s;
+	}
+
+	@Override
+	public String toString(){
+		return "Import: "+Math.round(getParsedPerSecond())+" parsed/s, "+Math.round(getCommittedPerSecond())+
+			" committed/s, "+Math.round(getProgressPercent()*10)/10.0+"% ("+getCheckpointsDone()+"/"+getTotalCheckpoints()+
+			" checkpoints), ETA "+formatTime(getEtaSeconds())+", "+this.lookups+", "+this.saves+", "+this.commits+
+			", lock wait "+getLockWaitMillis()+" ms, "+getWorkersStarted()+" workers started, "+
+			getPartRestarts()+" part restarts";
+	}
+}
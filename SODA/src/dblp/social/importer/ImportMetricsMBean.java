@@ -0,0 +1,51 @@
+package dblp.social.importer;
+
+/**
+ * The JMX interface of the importer metrics, see ImportMetrics
+ * @author Staffiero
+ *
+ */
+public interface ImportMetricsMBean {
+
+	public long getRecordsParsed();
+
+	public long getRecordsCommitted();
+
+	public double getParsedPerSecond();
+
+	public double getCommittedPerSecond();
+
+	public String getLookupLatency();
+
+	public double getLookupP99Millis();
+
+	public String getSaveLatency();
+
+	public double getSaveP99Millis();
+
+	public String getCommitLatency();
+
+	public double getCommitP99Millis();
+
+	public long getLockWaitMillis();
+
+	public long getLockContentions();
+
+	public long getCheckpointsDone();
+
+	public long getTotalCheckpoints();
+
+	public double getProgressPercent();
+
+	public long getEtaSeconds();
+
+	public String[] getPartsProgress();
+
+	public long getAllocatedBytes();
+
+	public int getWorkersStarted();
+
+	public int getPartRestarts();
+
+	public String[] getWorkers();
+}
@@ -0,0 +1,232 @@
+package dblp.social.importer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class defines a table of exclusive locks identified by a key (e.g. a book id), used by the ThreadMonitor.
+ * The keys are spread over a fixed number of stripes, each one with its own lock and condition:
+ * threads working on keys of different stripes never wait for each other, and releasing a key
+ * wakes only the threads waiting on its stripe. The owner of each locked key is kept in a concurrent map
+ * shared by the stripes.
+ *
+ * Each table counts its acquisitions, the contended ones (the key was held by another thread) and the timeouts.
+ *
+ * @author Staffiero
+ *
+ */
+public class KeyLockTable {
+	private static final int DEFAULT_STRIPES = 64;
+	private static Logger logger = Logger.getLogger(KeyLockTable.class);
+
+	private String family;
+	private ReentrantLock[] stripes;
+	private Condition[] released;
+	//locked key -> owner thread
+	private ConcurrentHashMap<String, Thread> owners = new ConcurrentHashMap<String, Thread>();
+	private AtomicLong acquisitions = new AtomicLong();
+	private AtomicLong contentions = new AtomicLong();
+	private AtomicLong timeouts = new AtomicLong();
+	private AtomicLong waitNanos = new AtomicLong();
+
+	/**
+	 * Creates a table with the default number of stripes
+	 * @param family the name of the locked objects (e.g. book), used by the statistics
+	 */
+	public KeyLockTable(String family){
+		this(family, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * The constructor to be used
+	 * @param family the name of the locked objects (e.g. book), used by the statistics
+	 * @param stripes the number of stripes
+	 */
+	public KeyLockTable(String family, int stripes){
+		this.family = family;
+		this.stripes = new ReentrantLock[Math.max(1, stripes)];
+		this.released = new Condition[this.stripes.length];
+		for (int i=0; i<this.stripes.length; i++){
+			this.stripes[i] = new ReentrantLock();
+			this.released[i] = this.stripes[i].newCondition();
+		}
+	}
+
+	private int stripe(String key){
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return (h & 0x7fffffff) % this.stripes.length;
+	}
+
+	/**
+	 * Gets the lock on a key, waiting until the owner releases it.
+	 * A thread which already owns the key gets it again without waiting.
+	 * @param key the key to be locked
+	 * @param timeoutMillis the max time to wait, 0 to wait until the key is released
+	 * @return true if the lock has been acquired, false if the timeout expired
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public boolean lock(String key, long timeoutMillis) throws InterruptedException{
+		Thread current = Thread.currentThread();
+		int s = stripe(key);
+		this.stripes[s].lock();
+		try{
+			Thread owner = this.owners.get(key);
+			if (owner!=null && owner!=current){
+				this.contentions.incrementAndGet();
+				long begin = System.nanoTime();
+				try{
+					long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+					while ((owner = this.owners.get(key))!=null && owner!=current){
+						if (timeoutMillis<=0)
+							this.released[s].await();
+						else if (nanos<=0){
+							this.timeouts.incrementAndGet();
+							logger.debug("Timeout waiting for the "+this.family+" lock on "+key+" held by "+owner.getName());
+							return false;
+						}
+						else
+							nanos = this.released[s].awaitNanos(nanos);
+					}
+				}
+				finally{
+					this.waitNanos.addAndGet(System.nanoTime()-begin);
+				}
+			}
+			this.owners.put(key, current);
+			this.acquisitions.incrementAndGet();
+			return true;
+		}
+		finally{
+			this.stripes[s].unlock();
+		}
+	}
+
+	/**
+	 * Gets the lock on a key only if no other thread owns it, it never blocks.
+	 * @param key the key to be locked
+	 * @return true if the lock has been acquired
+	 */
+	public boolean tryLock(String key){
+		Thread current = Thread.currentThread();
+		int s = stripe(key);
+		this.stripes[s].lock();
+		try{
+			Thread owner = this.owners.get(key);
+			if (owner!=null && owner!=current){
+				this.contentions.incrementAndGet();
+				return false;
+			}
+			this.owners.put(key, current);
+			this.acquisitions.incrementAndGet();
+			return true;
+		}
+		finally{
+			this.stripes[s].unlock();
+		}
+	}
+
+	/**
+	 * Releases the lock on a key and wakes the threads waiting on its stripe.
+	 * A key owned by another thread is not released.
+	 * @param key the key to be released
+	 */
+	public void unlock(String key){
+		int s = stripe(key);
+		this.stripes[s].lock();
+		try{
+			Thread owner = this.owners.get(key);
+			if (owner==null)
+				return;
+			if (owner!=Thread.currentThread()){
+				logger.warn("The "+this.family+" lock on "+key+" is owned by "+owner.getName()+
+						", it cannot be released by "+Thread.currentThread().getName());
+				return;
+			}
+			this.owners.remove(key);
+			this.released[s].signalAll();
+		}
+		finally{
+			this.stripes[s].unlock();
+		}
+	}
+
+	/**
+	 * Releases every lock, whatever its owner, and wakes all the waiting threads
+	 */
+	public void unlockAll(){
+		for (int s=0; s<this.stripes.length; s++){
+			this.stripes[s].lock();
+			try{
+				for (String key : this.owners.keySet()){
+					if (stripe(key)==s)
+						this.owners.remove(key);
+				}
+				this.released[s].signalAll();
+			}
+			finally{
+				this.stripes[s].unlock();
+			}
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return true if the key is locked by a thread
+	 */
+	public boolean isLocked(String key){
+		return this.owners.containsKey(key);
+	}
+
+	/**
+	 * Getter
+	 * @return the name of the locked objects
+	 */
+	public String getFamily() {
+		return family;
+	}
+
+	/**
+	 * Getter
+	 * @return the number of acquired locks
+	 */
+	public long getAcquisitions() {
+		return acquisitions.get();
+	}
+
+	/**
+	 * Getter
+	 * @return the number of lock requests which found the key owned by another thread
+	 */
+	public long getContentions() {
+		return contentions.get();
+	}
+
+	/**
+	 * Getter
+	 * @return the number of lock requests which expired before the key was released
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	/**
+	 * Getter
+	 * @return the time (ns) spent by the threads waiting for a key owned by another thread
+	 */
+	public long getWaitNanos() {
+		return waitNanos.get();
+	}
+
+	@Override
+	public String toString(){
+		return "Locks on "+this.family+": "+getAcquisitions()+" acquired, "+
+			getContentions()+" contended, "+getTimeouts()+" timed out, "+
+			getWaitNanos()/1000000+" ms waited";
+	}
+}
@@ -0,0 +1,116 @@
+package dblp.social.importer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class defines a lock-free latency histogram shared by the parser threads.
+ * Bucket i counts the latencies between 2^(i-1) and 2^i microseconds, so recording a latency
+ * is an increment of two atomic counters and the percentiles are accurate within a factor of 2.
+ *
+ * @author Staffiero
+ *
+ */
+public class LatencyHistogram {
+	//the last bucket counts the latencies longer than about 35 minutes
+	private static final int BUCKETS = 32;
+
+	private String name;
+	private AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private AtomicLong count = new AtomicLong();
+	private AtomicLong totalNanos = new AtomicLong();
+	private volatile long maxNanos = 0;
+
+	/**
+	 * The constructor to be used
+	 * @param name the name of the measured operation (e.g. lookup)
+	 */
+	public LatencyHistogram(String name){
+		this.name = name;
+	}
+
+	/**
+	 * Records a latency
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void record(long nanos){
+		long micros = nanos/1000;
+		int bucket = micros<=0 ? 0 : Math.min(BUCKETS-1, 64-Long.numberOfLeadingZeros(micros));
+		this.buckets.incrementAndGet(bucket);
+		this.count.incrementAndGet();
+		this.totalNanos.addAndGet(nanos);
+		//a lost update only makes the max slightly stale
+		if (nanos>this.maxNanos)
+			this.maxNanos = nanos;
+	}
+
+	/**
+	 * Getter
+	 * @return the name of the measured operation
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of recorded latencies
+	 */
+	public long getCount(){
+		return this.count.get();
+	}
+
+	/**
+	 * @return the mean latency in milliseconds
+	 */
+	public double getMeanMillis(){
+		long c = this.count.get();
+		return c==0 ? 0 : this.totalNanos.get()/1e6/c;
+	}
+
+	/**
+	 * @return the max latency in milliseconds
+	 */
+	public double getMaxMillis(){
+		return this.maxNanos/1e6;
+	}
+
+	/**
+	 * @param p the percentile, between 0 and 1
+	 * @return the upper bound (ms) of the bucket containing the percentile
+	 */
+	public double getPercentileMillis(double p){
+		long c = 0;
+		for (int i=0; i<BUCKETS; i++)
+			c += this.buckets.get(i);
+		if (c==0)
+			return 0;
+		long rank = (long)Math.ceil(p*c);
+		long seen = 0;
+		for (int i=0; i<BUCKETS; i++){
+			seen += this.buckets.get(i);
+			if (seen>=rank)
+				return Math.min((1L<<i)/1000.0, getMaxMillis());
+		}
+		return getMaxMillis();
+	}
+
+	/**
+	 * @return the number of latencies of each bucket, bucket i ends at 2^i microseconds
+	 */
+	public long[] getBuckets(){
+		long[] b = new long[BUCKETS];
+		for (int i=0; i<BUCKETS; i++)
+			b[i] = this.buckets.get(i);
+		return b;
+	}
+
+	@Override
+	public String toString(){
+		return this.name+" p50 "+format(getPercentileMillis(0.5))+" p99 "+format(getPercentileMillis(0.99))+
+			" max "+format(getMaxMillis())+" ms ("+getCount()+")";
+	}
+
+	private static String format(double millis){
+		return String.valueOf(Math.round(millis*10)/10.0);
+	}
+}
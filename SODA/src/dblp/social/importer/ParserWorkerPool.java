@@ -0,0 +1,205 @@
+package dblp.social.importer;
+
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+import org.xml.sax.SAXException;
+
+import dblp.social.exceptions.PoolException;
+import dblp.social.exceptions.ThreadException;
+import dblp.social.loader.PartFile;
+import dblp.social.loader.PartFilesPool;
+
+/**
+ * This class runs the multi-thread parser with a pool of persistent workers (see DblpParserThread).
+ * Each worker takes the next part file from the PartFilesPool as soon as it finishes the previous one,
+ * so no worker waits for the slowest part file of a round.
+ *
+ * The number of workers follows the ThreadMonitor threads number, which is set by a ConcurrencyController:
+ * new workers are started when it grows, the workers exceeding it retire at their next checkpoint
+ * or before their next part file (see ThreadMonitor.claimRetirement).
+ * A part file whose parse fails is given back to the pool and retried by any worker,
+ * it is abandoned after MAX_ATTEMPTS failures without any progress.
+ *
+ * @author Staffiero
+ *
+ */
+public class ParserWorkerPool {
+	//failures without progress after which a part file is abandoned
+	private static final int MAX_ATTEMPTS = 3;
+	private static Logger logger = Logger.getLogger(ParserWorkerPool.class);
+
+	private PartFilesPool pool;
+	private ThreadMonitor monitor;
+	private int running = 0;
+	private int started = 0;
+	private HashMap<PartFile, Integer> failures = new HashMap<PartFile, Integer>();
+	private int abandoned = 0;
+
+	/**
+	 * The constructor to be used
+	 * @param pool the initialized part files pool
+	 * @param monitor the thread monitor, its threads number is the number of workers. 
+	 * If the monitor has no ConcurrencyController the number of workers is fixed.
+	 */
+	public ParserWorkerPool(PartFilesPool pool, ThreadMonitor monitor){
+		this.pool = pool;
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Runs the workers until every part file has been parsed (or abandoned),
+	 * the pool feed is closed and every worker has ended.
+	 * Stops starting workers as soon as the monitor asks to close the threads.
+	 * @throws PoolException if the sessions pool is not initialized
+	 */
+	public synchronized void run() throws PoolException{
+		ConcurrencyController controller = this.monitor.getController();
+		long interval = controller!=null ? controller.getIntervalMillis() : ConcurrencyController.DEFAULT_INTERVAL_MILLIS;
+		while (!this.monitor.terminateProcess() && !this.monitor.closeThreads()){
+			while (this.running-this.monitor.retiringThreads() < this.monitor.getThreadsNumber() && hasWork())
+				startWorker();
+			if (this.running==0 && !hasWork())
+				break;
+			try{
+				wait(interval);
+			}
+			catch (InterruptedException e){
+				logger.error("Interrupted while running the workers");
+				this.monitor.setCloseThreads(true);
+				break;
+			}
+			if (controller!=null)
+				controller.adjust();
+		}
+		//waits for the running workers, they stop at their next checkpoint
+		while (this.running>0){
+			try{
+				wait();
+			}
+			catch (InterruptedException e){
+				e.printStackTrace();
+			}
+		}
+		logger.debug(this.started+" workers started, "+this.abandoned+" part files abandoned");
+	}
+
+	private boolean hasWork(){
+		return this.pool.availableObjectsNumber()>0 || this.pool.isFeedOpen();
+	}
+
+	private void startWorker() throws PoolException{
+		String name = "worker "+(++this.started);
+		DblpParserThread worker = new DblpParserThread(name, this, this.monitor);
+		this.running++;
+		this.monitor.addThread(name);
+		ImportMetrics metrics = ImportMetrics.getInstance();
+		if (metrics!=null)
+			metrics.workerStarted();
+		logger.debug("Starting "+name);
+		worker.start();
+	}
+
+	/**
+	 * Gives the next part file to a worker, blocking while the pool feed is open and no part file is available.
+	 * @param worker the worker asking for a part file
+	 * @return the part file with the most bytes to be parsed, null if the worker has to end
+	 */
+	PartFile nextPartFile(DblpParserThread worker){
+		while (!this.monitor.closeThreads()){
+			if (retire(worker))
+				return null;
+			if (!this.pool.waitForPartFiles())
+				return null;
+			PartFile pf = this.pool.getPartFile();
+			if (pf!=null)
+				return pf;
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if the worker has to retire because the threads number has been lowered
+	 */
+	private boolean retire(DblpParserThread worker){
+		if (this.monitor.claimRetirement(worker.getName())){
+			logger.debug(worker.getName()+" retiring, "+this.monitor.getThreadsNumber()+" workers allowed");
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Called by a worker when the parse of a part file returns
+	 * @param pf the part file
+	 */
+	synchronized void partFinished(PartFile pf){
+		if (!pf.isComplete()){
+			partFailed(pf, null);
+			return;
+		}
+		this.failures.remove(pf);
+		this.pool.parseFinished(pf);
+	}
+
+	/**
+	 * Called by a worker when the parse of a part file is stopped by an exception.
+	 * The progress has been saved in the descriptor: the part file is given back to the pool,
+	 * unless it keeps failing without any progress.
+	 * @param pf the part file
+	 * @param e the exception, null if the parse returned before the end of the part file
+	 */
+	synchronized void partFailed(PartFile pf, Exception e){
+		if (isStop(e) || pf.hasBeenUpdated()){
+			//the worker has been stopped or retired, or the part file has progressed
+			this.failures.remove(pf);
+			this.pool.giveBack(pf);
+		}
+		else{
+			Integer n = this.failures.get(pf);
+			n = (n==null) ? 1 : n+1;
+			if (n>=MAX_ATTEMPTS){
+				logger.error("Part file "+pf.getFile().getName()+" abandoned after "+n+" failures without progress");
+				this.failures.remove(pf);
+				this.abandoned++;
+				//the part file is not complete: the parse exits with errors
+				this.pool.parseFinished(pf);
+			}
+			else{
+				this.failures.put(pf, n);
+				this.pool.giveBack(pf);
+				ImportMetrics metrics = ImportMetrics.getInstance();
+				if (metrics!=null)
+					metrics.partRestarted();
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * @return true if the exception has been thrown to stop or retire the worker
+	 */
+	private static boolean isStop(Exception e){
+		if (e instanceof ThreadException)
+			return true;
+		return e instanceof SAXException && ((SAXException)e).getException() instanceof ThreadException;
+	}
+
+	/**
+	 * Called by a worker when it ends
+	 * @param worker
+	 */
+	synchronized void workerEnded(DblpParserThread worker){
+		this.running--;
+		this.monitor.removeThread(worker.getName());
+		notifyAll();
+	}
+
+	/**
+	 * Getter
+	 * @return the number of part files abandoned after too many failures
+	 */
+	public synchronized int getAbandoned() {
+		return abandoned;
+	}
+}
@@ -0,0 +1,110 @@
+package dblp.social.importer;
+
+import java.io.File;
+
+import org.apache.log4j.Logger;
+
+import dblp.social.loader.PartFile;
+import dblp.social.loader.PartFilesPool;
+import dblp.social.preparser.PartFilesQueue;
+import dblp.social.preparser.PartInfo;
+import dblp.social.preparser.XMLPartsInfo;
+
+/**
+ * This class defines a thread which moves the _part files published by a running pre parser into the part files pool.
+ * Each _part file is appended to the descriptor before being added to the pool, so the parser threads can update it.
+ * The feeder stops taking _part files while the pool already holds enough available part files:
+ * this way the pre parser is blocked by the bounded queue and can not fill the disk.
+ *
+ * @author Staffiero
+ *
+ */
+public class PartFilesFeeder extends Thread {
+	private PartFilesQueue queue;
+	private PartFilesPool pool;
+	private ThreadMonitor monitor;
+	private String descriptor;
+	private String source;
+	private int checkpointsStep;
+	private int poolCapacity;
+	private static Logger logger = Logger.getLogger(PartFilesFeeder.class);
+
+	/**
+	 * The constructor to be used. The pool feed is opened by the constructor.
+	 *
+	 * @param queue: the queue in which the pre parser publishes the _part files
+	 * @param pool: the part files pool used by the parser threads
+	 * @param monitor: the thread monitor, used to lock the descriptor
+	 * @param descriptor: the absolute path of the _partsInfo file
+	 * @param source: the path of the source dblp xml file
+	 * @param checkpointsStep: the checkpoints step used by the pre parser
+	 * @param poolCapacity: the max number of available part files in the pool
+	 */
+	public PartFilesFeeder(PartFilesQueue queue, PartFilesPool pool, ThreadMonitor monitor,
+			String descriptor, String source, int checkpointsStep, int poolCapacity){
+		super("part files feeder");
+		this.queue = queue;
+		this.pool = pool;
+		this.monitor = monitor;
+		this.descriptor = descriptor;
+		this.source = source;
+		this.checkpointsStep = checkpointsStep;
+		this.poolCapacity = poolCapacity;
+		this.setDaemon(true);
+		this.pool.openFeed();
+	}
+
+	@Override
+	public void run() {
+		try{
+			PartInfo info;
+			boolean stopped = false;
+			while ((info = this.queue.take()) != null){
+				//backpressure: waits for the parser threads
+				this.pool.waitForSpace(this.poolCapacity);
+				if (this.monitor.terminateProcess()){
+					stopped = true;
+					break;
+				}
+				this.monitor.getLockOnDescriptor();
+				try{
+					XMLPartsInfo.appendPartFile(this.descriptor, info);
+				}
+				finally{
+					this.monitor.releaseLockOnDescriptor();
+				}
+				PartFile pf = new PartFile(this.source, info.getFilePath(),
+						info.getCheckpoints(), this.checkpointsStep);
+				pf.setPartFileDescriptor(this.descriptor);
+				if (info.isVirtual())
+					pf.setRange(info.getRangeStart(), info.getRangeEnd(), new File(info.getIndexPath()));
+				else
+					pf.setCheckpointOffsets(info.getCheckpointOffsets());
+				pf.setVenues(info.getVenues());
+				this.pool.addPartFile(pf);
+				ImportMetrics metrics = ImportMetrics.getInstance();
+				if (metrics!=null)
+					metrics.trackPart(pf);
+			}
+			if (!stopped && this.queue.isFinished()){
+				//every _part file of the source has been appended
+				this.monitor.getLockOnDescriptor();
+				try{
+					XMLPartsInfo.markComplete(this.descriptor);
+				}
+				finally{
+					this.monitor.releaseLockOnDescriptor();
+				}
+			}
+		}
+		catch (Exception e){
+			logger.error("Exception while feeding the part files pool: "+e.getMessage());
+			e.printStackTrace();
+		}
+		finally{
+			//if the loop has been interrupted the pre parser must not wait for the feeder
+			this.queue.close();
+			this.pool.closeFeed();
+		}
+	}
+}
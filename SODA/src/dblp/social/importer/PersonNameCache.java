@@ -0,0 +1,278 @@
+package dblp.social.importer;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Query;
+
+import dblp.social.exceptions.SodaHibernateException;
+import dblp.social.hibernate.ISodaHibernateSession;
+
+/**
+ * This class implements a cache which maps each author (or editor) name to the id of the corresponding Person.
+ * The cache is shared by all the parser threads: a name found in the cache does not need the findPersonByName query,
+ * only the cache misses reach the database.
+ * A name is added to the cache when it is read from the database or when the transaction saving a new Person is committed,
+ * so each cached id refers to a Person stored in the db.
+ * The cache can be bounded, when it is full the entries are evicted following the chosen policy.
+ * Lookups do not lock the cache: the names are kept in a ConcurrentHashMap and the eviction order in a separate queue,
+ * so a lookup never reorders the cache.
+ *
+ * Only one cache is allowed: use the static method initialize to create it and getInstance to get it.
+ *
+ * @author Staffiero
+ *
+ */
+public class PersonNameCache {
+	/**
+	 * The eviction policies
+	 * LRU: a name not used since it was last reached by the eviction is evicted (second chance approximation of the least recently used)
+	 * FIFO: the oldest cached name is evicted
+	 * NONE: names are never evicted, the cache is not bounded
+	 */
+	public enum EvictionPolicy {LRU, FIFO, NONE};
+
+	public static final int DEFAULT_CAPACITY = 500000;
+	//rows read by each warm up query
+	private static final int WARM_UP_PAGE = 10000;
+
+	private static PersonNameCache cache=null;
+	private static Logger logger = Logger.getLogger(PersonNameCache.class);
+
+	private ConcurrentHashMap<String, CachedName> names;
+	//the cached names in insertion order, null if the names are never evicted
+	private ConcurrentLinkedQueue<CachedName> order = null;
+	private AtomicInteger count = new AtomicInteger();
+	private int capacity;
+	private EvictionPolicy policy;
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+
+	/**
+	 * A private constructor.
+	 * Other classes should not access this constructor, use the static method initialize instead.
+	 *
+	 * @param capacity the max number of cached names, ignored if the policy is NONE
+	 * @param policy the eviction policy
+	 */
+	private PersonNameCache(int capacity, EvictionPolicy policy){
+		if (capacity < 1)
+			capacity = DEFAULT_CAPACITY;
+		this.capacity = capacity;
+		this.policy = policy;
+		this.names = new ConcurrentHashMap<String, CachedName>();
+		if (policy!=EvictionPolicy.NONE)
+			this.order = new ConcurrentLinkedQueue<CachedName>();
+	}
+
+	/**
+	 * Static method to initialize the cache.
+	 * Only one cache is allowed: if this method has already been called a second call will not affect the cache.
+	 * To create a new cache first you have to close the current one with the close method.
+	 *
+	 * @param capacity the max number of cached names, ignored if the policy is NONE
+	 * @param policy the eviction policy
+	 */
+	public static synchronized void initialize(int capacity, EvictionPolicy policy){
+		if (cache==null)
+			cache = new PersonNameCache(capacity, policy);
+	}
+
+	/**
+	 * Static method to get the existing cache.
+	 * @return the cache, null if the cache has not been initialized
+	 */
+	public static synchronized PersonNameCache getInstance(){
+		return cache;
+	}
+
+	/**
+	 * Closes the current cache
+	 */
+	public static synchronized void close(){
+		cache=null;
+	}
+
+	/**
+	 * Looks for a name in the cache, hits and misses are counted
+	 * @param name the person name
+	 * @return the person id, null if the name is not cached
+	 */
+	public Long get(String name){
+		CachedName entry = this.names.get(name);
+		if (entry==null){
+			this.misses.incrementAndGet();
+			return null;
+		}
+		this.hits.incrementAndGet();
+		//the reference bit is written only when it is clear, so the frequent names are read without writes
+		if (this.policy==EvictionPolicy.LRU && !entry.referenced)
+			entry.referenced = true;
+		return entry.id;
+	}
+
+	/**
+	 * Adds a name to the cache. The id has to refer to a Person already committed to the db
+	 * @param name the person name
+	 * @param id the person id
+	 */
+	public void put(String name, Long id){
+		if (name==null || id==null)
+			return;
+		CachedName entry = new CachedName(name, id);
+		if (this.names.put(name, entry)==null)
+			this.count.incrementAndGet();
+		if (this.order==null)
+			return;
+		this.order.offer(entry);
+		evict();
+	}
+
+	/**
+	 * Evicts the oldest names while the cache is over its capacity.
+	 * With the LRU policy a name used since it was queued is queued again, with its reference bit cleared.
+	 */
+	private void evict(){
+		while (this.count.get() > this.capacity){
+			CachedName entry = this.order.poll();
+			if (entry==null)
+				return;
+			if (this.policy==EvictionPolicy.LRU && entry.referenced){
+				entry.referenced = false;
+				this.order.offer(entry);
+				continue;
+			}
+			//entries replaced or removed after being queued are skipped
+			if (this.names.remove(entry.name, entry))
+				this.count.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes a name from the cache
+	 * @param name the person name
+	 */
+	public void remove(String name){
+		if (this.names.remove(name)!=null)
+			this.count.decrementAndGet();
+	}
+
+	/**
+	 * Fills the cache reading the Person table, used when an import is resumed or the db is updated.
+	 * The table is read in pages, the warm up stops when the cache is full.
+	 *
+	 * @param session an open ISodaHibernateSession
+	 * @return the number of cached names
+	 * @throws SodaHibernateException if the session is not open
+	 */
+	@SuppressWarnings("unchecked")
+	public int warmUp(ISodaHibernateSession session) throws SodaHibernateException{
+		if (!session.isOpen())
+			throw new SodaHibernateException("The Hibernate session is closed");
+		int limit = this.policy==EvictionPolicy.NONE ? Integer.MAX_VALUE : this.capacity;
+		int loaded = 0;
+		int first = 0;
+		while (loaded < limit){
+			Query query = session.createSQLQuery("SELECT name, personId FROM Person ORDER BY personId");
+			query.setFirstResult(first);
+			query.setMaxResults(Math.min(WARM_UP_PAGE, limit-loaded));
+			List<Object[]> rows = query.list();
+			if (rows.isEmpty())
+				break;
+			for (Object[] row : rows){
+				if (row[0]!=null && row[1]!=null)
+					put(row[0].toString(), toLong(row[1]));
+			}
+			loaded += rows.size();
+			first += rows.size();
+		}
+		logger.debug("Person name cache warmed up with "+loaded+" names");
+		return loaded;
+	}
+
+	private static Long toLong(Object value){
+		if (value instanceof BigInteger)
+			return ((BigInteger)value).longValue();
+		if (value instanceof Number)
+			return ((Number)value).longValue();
+		return Long.valueOf(value.toString());
+	}
+
+	/**
+	 * Getter
+	 * @return the number of names found in the cache
+	 */
+	public long getHits(){
+		return this.hits.get();
+	}
+
+	/**
+	 * Getter
+	 * @return the number of names not found in the cache
+	 */
+	public long getMisses(){
+		return this.misses.get();
+	}
+
+	/**
+	 * Getter
+	 * @return the fraction of lookups found in the cache
+	 */
+	public double getHitRatio(){
+		long h = this.hits.get();
+		long total = h + this.misses.get();
+		if (total==0)
+			return 0;
+		return (double)h/total;
+	}
+
+	/**
+	 * Getter
+	 * @return the number of cached names
+	 */
+	public int size(){
+		return this.count.get();
+	}
+
+	/**
+	 * Getter
+	 * @return the max number of cached names
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Getter
+	 * @return the eviction policy
+	 */
+	public EvictionPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * A cached name, the reference bit is set by the lookups and cleared by the LRU eviction
+	 */
+	private static class CachedName {
+		private final String name;
+		private final Long id;
+		private volatile boolean referenced = false;
+
+		private CachedName(String name, Long id){
+			this.name = name;
+			this.id = id;
+		}
+	}
+
+	@Override
+	public String toString(){
+		return "Person name cache ("+this.policy+", "+size()+" names): "+
+			getHits()+" hits, "+getMisses()+" misses, hit ratio "+
+			Math.round(getHitRatio()*100)+"%";
+	}
+}
@@ -1,22 +1,31 @@
 package dblp.social.importer;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 
 import dblp.social.exceptions.ThreadException;
 
 /**
- * This class defines a thread monitor, used to synchronize the various instances of DblpParserThread
+ * This class defines a thread monitor, used to synchronize the various instances of DblpParserThread.
+ * The locks on the descriptor, on the books and on the proceedings are kept in three KeyLockTables:
+ * threads locking different keys do not wait for each other.
  * 
  * @author Staffiero
  *
  */
 public class ThreadMonitor {
-	private ArrayList<String> threads, lockedBooks, lockedProceedings;
-	private boolean lock = false;
-	private boolean closeThreads = false;
-	private int threadsNumber = 4;
+	private static final String DESCRIPTOR = "descriptor";
+	private ArrayList<String> threads;
+	//running threads which have to stop because the threads number has been lowered
+	private HashSet<String> retiring = new HashSet<String>();
+	private ConcurrencyController controller = null;
+	private KeyLockTable descriptorLock, lockedBooks, lockedProceedings;
+	//max time (ms) a thread waits for a book or proceedings lock, 0 to wait until it is released
+	private long lockTimeout = 0;
+	private volatile boolean closeThreads = false;
+	private volatile int threadsNumber = 4;
 	private int maxThreads = 4;
-	private boolean terminateProcess = false;
+	private volatile boolean terminateProcess = false;
 	
 	
 	/**
@@ -24,12 +33,35 @@ public class ThreadMonitor {
 	 */
 	public ThreadMonitor(){
 		this.threads = new ArrayList<String>();
-		this.lockedBooks = new ArrayList<String>();
-		this.lockedProceedings = new ArrayList<String>();
+		this.descriptorLock = new KeyLockTable(DESCRIPTOR, 1);
+		this.lockedBooks = new KeyLockTable("books");
+		this.lockedProceedings = new KeyLockTable("proceedings");
 		this.closeThreads=false;
 		this.threadsNumber = 4;
 		this.terminateProcess =false;
-		this.lock = false;
+	}
+	
+	/**
+	 * Sets the max time a thread waits for a book or proceedings lock
+	 * @param millis the timeout in milliseconds, 0 to wait until the lock is released
+	 */
+	public void setLockTimeout(long millis){
+		this.lockTimeout = millis;
+	}
+	
+	/**
+	 * Gets the lock on a key of the given table, within the lock timeout
+	 * @throws ThreadException if the timeout expires or the thread is interrupted
+	 */
+	private void getLock(KeyLockTable table, String key) throws ThreadException{
+		try{
+			if (!table.lock(key, this.lockTimeout))
+				throw new ThreadException("Timeout waiting for the lock on "+key+" ("+table.getFamily()+")");
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new ThreadException("Interrupted while waiting for the lock on "+key+" ("+table.getFamily()+")");
+		}
 	}
 	/**
 	 * Getter
@@ -58,16 +90,20 @@ public class ThreadMonitor {
 	 * 		//edit the descriptor...
 	 * 		monitor.releaseLockOnDescriptor();
 	 */
-	public synchronized void getLockOnDescriptor(){
-		while (lock){
+	public void getLockOnDescriptor(){
+		boolean interrupted = false;
+		while (true){
 			try{
-				wait();
+				this.descriptorLock.lock(DESCRIPTOR, 0);
+				break;
 			}
 			catch (InterruptedException e){
-				e.printStackTrace();
+				//the descriptor has to be saved anyway
+				interrupted = true;
 			}
 		}
-		lock=true;
+		if (interrupted)
+			Thread.currentThread().interrupt();
 	}
 	
 	/**
@@ -81,9 +117,8 @@ public class ThreadMonitor {
 	 * 		//edit the descriptor...
 	 * 		monitor.releaseLockOnDescriptor();
 	 */
-	public synchronized void releaseLockOnDescriptor(){
-		lock=false;
-		notify();
+	public void releaseLockOnDescriptor(){
+		this.descriptorLock.unlock(DESCRIPTOR);
 	}
 	/**
 	 * Gets the lock on a book element. Each thread should call this method BEFORE editing a book element.
@@ -96,17 +131,18 @@ public class ThreadMonitor {
 	 * 		//edit the book...
 	 * 		monitor.releaseLockOnBook();
 	 * @param bookId the id of the book to be locked
+	 * @throws ThreadException if the lock timeout expires
 	 */
-	public  synchronized void getLockOnBook(String bookId){
-		while (this.lockedBooks.contains(bookId)){
-			try{
-				wait();
-			}
-			catch (InterruptedException e){
-				e.printStackTrace();
-			}
-		}
-		this.lockedBooks.add(bookId);
+	public void getLockOnBook(String bookId) throws ThreadException{
+		getLock(this.lockedBooks, bookId);
+	}
+	/**
+	 * Gets the lock on a book element only if no other thread holds it, it never blocks.
+	 * @param bookId the id of the book to be locked
+	 * @return true if the lock has been acquired
+	 */
+	public boolean tryLockOnBook(String bookId){
+		return this.lockedBooks.tryLock(bookId);
 	}
 	/**
 	 * Releases the lock on the book object. Each thread should call this method AFTER editing a book element and only AFTER the getLockOnBook() call.
@@ -119,10 +155,8 @@ public class ThreadMonitor {
 	 * 		//edit the book...
 	 * 		monitor.releaseLockOnBook();
 	 */
-	public synchronized void releaseLockOnBook(String bookId){
-		if (this.lockedBooks.contains(bookId))
-			this.lockedBooks.remove(bookId);
-		notify();
+	public void releaseLockOnBook(String bookId){
+		this.lockedBooks.unlock(bookId);
 	}
 	/**
 	 * Gets the lock on a proceedings, proceedings element. Each thread should call this method BEFORE editing a proceedings element.
@@ -135,17 +169,19 @@ public class ThreadMonitor {
 	 * 		//edit the proceedings...
 	 * 		monitor.releaseLockOnProceedings();
 	 * @param proceedingsId the id of the proceedings to be locked
+	 * @throws ThreadException if the lock timeout expires
 	 */
-	public  synchronized void getLockOnProceedings(String proceedingsId){
-		while (this.lockedProceedings.contains(proceedingsId)){
-			try{
-				wait();
-			}
-			catch (InterruptedException e){
-				e.printStackTrace();
-			}
-		}
-		this.lockedProceedings.add(proceedingsId);
+	public void getLockOnProceedings(String proceedingsId) throws ThreadException{
+		getLock(this.lockedProceedings, proceedingsId);
+	}
+	
+	/**
+	 * Gets the lock on a proceedings element only if no other thread holds it, it never blocks.
+	 * @param proceedingsId the id of the proceedings to be locked
+	 * @return true if the lock has been acquired
+	 */
+	public boolean tryLockOnProceedings(String proceedingsId){
+		return this.lockedProceedings.tryLock(proceedingsId);
 	}
 	
 	/**
@@ -159,20 +195,38 @@ public class ThreadMonitor {
 	 * 		//edit the proceedings...
 	 * 		monitor.releaseLockOnProceedings();
 	 */
-	public synchronized void releaseLockOnProceedings(String proceedingsId){
-		if (this.lockedProceedings.contains(proceedingsId))
-			this.lockedProceedings.remove(proceedingsId);
-		notify();
+	public void releaseLockOnProceedings(String proceedingsId){
+		this.lockedProceedings.unlock(proceedingsId);
 	}
 	
 	/**
 	 * Releases all locks. 
 	 */
-	public synchronized void releaseAllLocks(){
-		this.lockedBooks = new ArrayList<String>();
-		this.lockedProceedings = new ArrayList<String>();
-		this.lock = false;
-		notify();
+	public void releaseAllLocks(){
+		this.lockedBooks.unlockAll();
+		this.lockedProceedings.unlockAll();
+		this.descriptorLock.unlockAll();
+	}
+	
+	/**
+	 * @return the statistics of the descriptor, book and proceedings locks, one line each
+	 */
+	public String getLockStats(){
+		return this.descriptorLock+"\n"+this.lockedBooks+"\n"+this.lockedProceedings;
+	}
+	
+	/**
+	 * @return the time (ns) spent by the threads waiting for the descriptor, book and proceedings locks
+	 */
+	public long getLockWaitNanos(){
+		return this.descriptorLock.getWaitNanos()+this.lockedBooks.getWaitNanos()+this.lockedProceedings.getWaitNanos();
+	}
+	
+	/**
+	 * @return the number of lock requests which found the lock owned by another thread
+	 */
+	public long getLockContentions(){
+		return this.descriptorLock.getContentions()+this.lockedBooks.getContentions()+this.lockedProceedings.getContentions();
 	}
 	
 	/**
@@ -180,7 +234,7 @@ public class ThreadMonitor {
 	 * 
 	 * @param threadName
 	 */
-	public void addThread(String threadName){
+	public synchronized void addThread(String threadName){
 		threads.add(threadName);
 	}
 	/**
@@ -190,7 +244,8 @@ public class ThreadMonitor {
 	public synchronized void removeThread(String threadName){
 		if (threads.contains(threadName)){
 			threads.remove(threadName);
-			notify();
+			retiring.remove(threadName);
+			notifyAll();
 		}
 	}
 	/**
@@ -257,145 +312,52 @@ public class ThreadMonitor {
 		return threads.size();
 	}
 	/**
-	 * Set the number of threads to be started according to the amount of free memory. 
-	 * If this method is called from within a thread it may cause the thread itself to terminate (if the free memory is below a certain threshold).
-	 * @param inThreadFlag a boolean variable which indicates if this method is called from within a thread
-	 * @throws Exception
+	 * Called by a running thread at a checkpoint or before taking a new part file: 
+	 * if more threads are running than the threads number, the calling thread is marked as retiring and has to stop.
+	 * A thread already marked as retiring always gets true.
+	 * @param threadName the name of the calling thread
+	 * @return true if the calling thread has to stop
 	 */
-	public void calibrateThreads(boolean inThreadFlag) throws ThreadException{
-		Runtime r = Runtime.getRuntime();
-		long totalMemory =r.totalMemory();
-		long maxMemory = r.maxMemory();
-		long freeMemory =r.freeMemory();
-		int actualThreads = this.getThreadsNumber();
-		long maxFreeMemory = freeMemory+(maxMemory-totalMemory);
-		
-		switch (this.maxThreads) {
-			case 2: {
-				//Calibrates the number of threads over a max of 2:
-				//if max free mem < 20% max mem: 1 thread
-				//else 2 thread		
-				if (maxFreeMemory>=totalMemory*0.2){
-					//at next restart there will be 2 threads
-					if (actualThreads!=2){
-						this.setThreadsNumber(2);
-					}
-				}
-				else{ //max free mem <20%
-					if (actualThreads!=1){
-						this.setThreadsNumber(1);
-						if (inThreadFlag)
-							//if there are 2 threads running closes one of them
-							throw new ThreadException("Forcing thread termination: max free memory below 20% of total memory");
-					}
-				}
-				break;
-			}
-			case 3: {
-				//Calibrates the number of threads over a max of 3:
-				//if max free mem 		>= 50% max mem: 	3 thread
-				//else if max free mem 	>= 20% max mem: 	2 thread
-				//else		 								1 thread
-				if (maxFreeMemory>=totalMemory*0.5){
-					//at next restart there will be 2 threads
-					if (actualThreads!=3){
-						this.setThreadsNumber(3);
-					}
-				}
-				else if (maxFreeMemory>=totalMemory*0.2){
-					if (actualThreads!=2){
-						this.setThreadsNumber(2);
-						if (actualThreads == 3 && inThreadFlag) 
-							throw new ThreadException("Forcing thread termination: max free memory below 50% of total memory");
-					}
-				}
-				else {
-					if (actualThreads!=1){
-						this.setThreadsNumber(1);
-						if (inThreadFlag) 
-							throw new ThreadException("Forcing thread termination: max free memory below 20% of total memory");
-					}
-				}
-				break;
-			}
-			case 4: {
-				//Calibrates the number of threads over a max of 4:
-				//if max free mem 		>= 50% max mem: 	4 thread
-				//else if max free mem 	>= 30% max mem: 	3 thread
-				//else if max free mem	>= 10% max mem:		2 thread
-				//else 										1 thread
-				if (maxFreeMemory>=totalMemory*0.5){
-					//at next restart there will be 2 threads
-					if (actualThreads!=4){
-						this.setThreadsNumber(4);
-					}
-				}
-				else if (maxFreeMemory>=totalMemory*0.3){
-					if (actualThreads!=3){
-						this.setThreadsNumber(3);
-						if (actualThreads == 4 && inThreadFlag) 
-							throw new ThreadException("Forcing thread termination: max free memory below 50% of total memory");
-					}
-				}
-				else if (maxFreeMemory>=totalMemory*0.1){
-					if (actualThreads!=2){
-						this.setThreadsNumber(2);
-						if (actualThreads >= 3 && inThreadFlag) 
-							throw new ThreadException("Forcing thread termination: max free memory below 30% of total memory");
-					}
-				}
-				else {
-					if (actualThreads!=1){
-						this.setThreadsNumber(1);
-						if (inThreadFlag) 
-							throw new ThreadException("Forcing thread termination: max free memory below 10% of total memory");
-					}
-				}
-				break;
-			}
-			case 5: {
-				//Calibrates the number of threads over a max of 5:
-				//if max free mem 		>= 50% max mem: 	5 thread
-				//else if max free mem 	>= 35% max mem: 	4 thread
-				//else if max free mem	>= 15% max mem:		3 thread
-				//else if max free mem	>= 5%  max mem:		2 thread
-				//else										1 thread
-				if (maxFreeMemory>=totalMemory*0.5){
-					//at next restart there will be 2 threads
-					if (actualThreads!=5){
-						this.setThreadsNumber(5);
-					}
-				}
-				else if (maxFreeMemory>=totalMemory*0.35){
-					if (actualThreads!=4){
-						this.setThreadsNumber(4);
-						if (actualThreads == 5 && inThreadFlag) 
-							throw new ThreadException("Forcing thread termination: max free memory below 50% of total memory");
-					}
-				}
-				else if (maxFreeMemory>=totalMemory*0.15){
-					if (actualThreads!=3){
-						this.setThreadsNumber(3);
-						if (actualThreads >= 4 && inThreadFlag) 
-							throw new ThreadException("Forcing thread termination: max free memory below 35% of total memory");
-					}
-				}
-				else if (maxFreeMemory>=totalMemory*0.5){
-					if (actualThreads!=2){
-						this.setThreadsNumber(2);
-						if (actualThreads >= 3 && inThreadFlag) 
-							throw new ThreadException("Forcing thread termination: max free memory below 15% of total memory");
-					}
-				}
-				else {
-					if (actualThreads!=1){
-						this.setThreadsNumber(1);
-						if (inThreadFlag) 
-							throw new ThreadException("Forcing thread termination: max free memory below 5% of total memory");
-					}
-				}
-				break;
-			}
+	public synchronized boolean claimRetirement(String threadName){
+		if (this.retiring.contains(threadName))
+			return true;
+		if (this.threads.size()-this.retiring.size() > this.threadsNumber && this.threads.contains(threadName)){
+			this.retiring.add(threadName);
+			return true;
 		}
+		return false;
+	}
+	
+	/**
+	 * @return the number of running threads marked as retiring
+	 */
+	public synchronized int retiringThreads(){
+		return this.retiring.size();
+	}
+	
+	/**
+	 * Reports a commit of the calling thread to the concurrency controller, if any
+	 * @param records the number of committed records
+	 * @param nanos the time spent committing, in nanoseconds
+	 */
+	public void commitDone(int records, long nanos){
+		if (this.controller!=null)
+			this.controller.commitDone(records, nanos);
+	}
+	
+	/**
+	 * Getter
+	 * @return the controller setting the threads number, null if the threads number is fixed
+	 */
+	public ConcurrencyController getController() {
+		return controller;
+	}
+	
+	/**
+	 * Setter
+	 * @param controller the controller setting the threads number
+	 */
+	public void setController(ConcurrencyController controller) {
+		this.controller = controller;
 	}
 }
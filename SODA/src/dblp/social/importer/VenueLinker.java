@@ -0,0 +1,102 @@
+package dblp.social.importer;
+
+import org.apache.log4j.Logger;
+
+import dblp.social.exceptions.SodaHibernateException;
+import dblp.social.hibernate.ISodaHibernateSession;
+import dblp.social.hibernate.entities.PendingVenueLink;
+
+/**
+ * This class implements the deferred linking of the publications to their venues.
+ * When the deferred linking is enabled the importer handlers do not load the inproceedings, articles or chapters
+ * collection of the venue of each publication (which costs more and more as the venue grows): the publication is saved
+ * with a PendingVenueLink and the links are written afterwards by the link method, with a few set-based statements.
+ * The pending links are committed with their records, so the links of a stopped import are written by the next link call.
+ *
+ * The deferred linking is configured by the static method configure, by default the venue collections are updated.
+ *
+ * @author Staffiero
+ *
+ */
+public class VenueLinker {
+	private static Logger logger = Logger.getLogger(VenueLinker.class);
+	private static boolean deferred = false;
+
+	//the inproceedings whose id is a journal are articles of the journal, see DblpImporterHandler.writeArticle
+	private static final String LINK_JOURNAL_ARTICLES =
+		"INSERT INTO Journal_Articles (journalId, articleId) " +
+		"SELECT DISTINCT l.venueId, l.publicationId FROM PendingVenueLink l, Journal j " +
+		"WHERE j.journalId=l.venueId AND l.kind IN ('"+PendingVenueLink.ARTICLE+"','"+PendingVenueLink.INPROCEEDINGS+"') " +
+		"AND NOT EXISTS (SELECT * FROM Journal_Articles a WHERE a.articleId=l.publicationId)";
+	private static final String LINK_PROCEEDINGS_INPROCEEDINGS =
+		"INSERT INTO Proceedings_InProceedings (proceedingsId, inproceedingsId) " +
+		"SELECT DISTINCT l.venueId, l.publicationId FROM PendingVenueLink l, Proceedings p " +
+		"WHERE p.proceedingsId=l.venueId AND l.kind='"+PendingVenueLink.INPROCEEDINGS+"' " +
+		"AND NOT EXISTS (SELECT * FROM Journal j WHERE j.journalId=l.venueId) " +
+		"AND NOT EXISTS (SELECT * FROM Proceedings_InProceedings i WHERE i.inproceedingsId=l.publicationId)";
+	private static final String LINK_BOOK_CHAPTERS =
+		"INSERT INTO Book_Chapters (bookId, chapterId) " +
+		"SELECT DISTINCT l.venueId, l.publicationId FROM PendingVenueLink l, Book b " +
+		"WHERE b.bookId=l.venueId AND l.kind='"+PendingVenueLink.INCOLLECTION+"' " +
+		"AND NOT EXISTS (SELECT * FROM Book_Chapters c WHERE c.chapterId=l.publicationId)";
+	//the links whose venue does not exist are kept
+	private static final String DELETE_LINKED =
+		"DELETE FROM PendingVenueLink WHERE " +
+		"EXISTS (SELECT * FROM Journal j WHERE j.journalId=venueId) OR " +
+		"(kind='"+PendingVenueLink.INPROCEEDINGS+"' AND EXISTS (SELECT * FROM Proceedings p WHERE p.proceedingsId=venueId)) OR " +
+		"(kind='"+PendingVenueLink.INCOLLECTION+"' AND EXISTS (SELECT * FROM Book b WHERE b.bookId=venueId))";
+
+	private int journalArticles = 0;
+	private int proceedingsInProceedings = 0;
+	private int bookChapters = 0;
+	private int pending = 0;
+
+	/**
+	 * Configures the importer handlers created after this call
+	 * @param deferredLinking true to save the publications with a pending link instead of updating the venue collections
+	 */
+	public static void configure(boolean deferredLinking){
+		deferred = deferredLinking;
+	}
+
+	/**
+	 * @return true if the publications are linked to their venues by the link method
+	 */
+	public static boolean isEnabled(){
+		return deferred;
+	}
+
+	/**
+	 * Writes the pending links into the join tables of the venues and deletes them, in a single transaction.
+	 * To be called when no importer handler is running.
+	 * @param session an open ISodaHibernateSession
+	 * @return the number of written links
+	 * @throws SodaHibernateException if the links cannot be written, the transaction is rolled back
+	 */
+	public int link(ISodaHibernateSession session) throws SodaHibernateException{
+		if (!session.isOpen())
+			throw new SodaHibernateException("The Hibernate session is closed");
+		session.startTransaction();
+		try{
+			this.journalArticles = session.createSQLQuery(LINK_JOURNAL_ARTICLES).executeUpdate();
+			this.proceedingsInProceedings = session.createSQLQuery(LINK_PROCEEDINGS_INPROCEEDINGS).executeUpdate();
+			this.bookChapters = session.createSQLQuery(LINK_BOOK_CHAPTERS).executeUpdate();
+			session.createSQLQuery(DELETE_LINKED).executeUpdate();
+			this.pending = ((Number)session.createSQLQuery("SELECT COUNT(*) FROM PendingVenueLink").uniqueResult()).intValue();
+			session.endTransaction();
+		}
+		catch (RuntimeException e){
+			session.rollbackTransaction();
+			throw new SodaHibernateException(e);
+		}
+		if (this.pending>0)
+			logger.error(this.pending+" pending venue links have no venue, they are kept");
+		return this.journalArticles+this.proceedingsInProceedings+this.bookChapters;
+	}
+
+	@Override
+	public String toString(){
+		return "Venue links written: "+this.proceedingsInProceedings+" inproceedings, "+this.journalArticles+
+			" articles, "+this.bookChapters+" chapters ("+this.pending+" left without venue)";
+	}
+}
@@ -0,0 +1,108 @@
+package dblp.social.importer;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dblp.social.utility.Glitterizer;
+
+/**
+ * This class defines the metrics of a single parser thread: the records parsed and committed
+ * and the bytes allocated by the thread. The counters are written by their thread only,
+ * the rates are computed when they are read (e.g. by a JMX client).
+ *
+ * @author Staffiero
+ *
+ */
+public class WorkerMetrics implements WorkerMetricsMBean {
+	private Thread thread;
+	private long startTime = System.nanoTime();
+	private AtomicLong parsed = new AtomicLong();
+	private AtomicLong committed = new AtomicLong();
+	//the allocated bytes sampled at the last checkpoint, read when the thread has ended
+	private volatile long allocated = -1;
+
+	/**
+	 * The constructor to be used
+	 * @param thread the measured thread
+	 */
+	WorkerMetrics(Thread thread){
+		this.thread = thread;
+	}
+
+	/**
+	 * Called by the thread when a record has been parsed
+	 */
+	void recordParsed(){
+		this.parsed.incrementAndGet();
+	}
+
+	/**
+	 * Called by the thread when records have been committed
+	 * @param records the number of committed records
+	 */
+	void recordsCommitted(int records){
+		this.committed.addAndGet(records);
+	}
+
+	/**
+	 * Called by the thread at each checkpoint: the allocated bytes are sampled here rather than at each commit,
+	 * reading them is not free and a commit may be a single record
+	 */
+	void checkpointReached(){
+		this.allocated = allocatedBytes();
+	}
+
+	public String getThreadName(){
+		return this.thread.getName();
+	}
+
+	public long getRecordsParsed(){
+		return this.parsed.get();
+	}
+
+	public long getRecordsCommitted(){
+		return this.committed.get();
+	}
+
+	public double getParsedPerSecond(){
+		return this.parsed.get()/seconds();
+	}
+
+	public double getCommittedPerSecond(){
+		return this.committed.get()/seconds();
+	}
+
+	private double seconds(){
+		return Math.max(1e-3, (System.nanoTime()-this.startTime)/1e9);
+	}
+
+	/**
+	 * @return the bytes allocated by the thread (until its last checkpoint if it has ended), -1 if the JVM does not measure them
+	 */
+	public long getAllocatedBytes(){
+		if (!this.thread.isAlive())
+			return this.allocated;
+		long bytes = allocatedBytes();
+		return bytes>=0 ? bytes : this.allocated;
+	}
+
+	private long allocatedBytes(){
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return threads.getThreadAllocatedBytes(this.thread.getId());
+	}
+
+	public boolean isAlive(){
+		return this.thread.isAlive();
+	}
+
+	@Override
+	public String toString(){
+		return getThreadName()+": "+getRecordsParsed()+" parsed, "+getRecordsCommitted()+" committed ("+
+			Math.round(getCommittedPerSecond())+" records/s), "+Glitterizer.clearFormatLenght(Math.max(0, getAllocatedBytes()))+" allocated";
+	}
+}
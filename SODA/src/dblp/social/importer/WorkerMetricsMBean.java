@@ -0,0 +1,23 @@
+package dblp.social.importer;
+
+/**
+ * The JMX interface of the metrics of a parser thread, see WorkerMetrics
+ * @author Staffiero
+ *
+ */
+public interface WorkerMetricsMBean {
+
+	public String getThreadName();
+
+	public long getRecordsParsed();
+
+	public long getRecordsCommitted();
+
+	public double getParsedPerSecond();
+
+	public double getCommittedPerSecond();
+
+	public long getAllocatedBytes();
+
+	public boolean isAlive();
+}
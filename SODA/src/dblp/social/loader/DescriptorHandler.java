@@ -23,6 +23,11 @@ public class DescriptorHandler extends DefaultHandler{
 	private static final String LAST_CHECKPOINT = "last-checkpoint";
 	private static final String LAST_OFFSET = "last-offset";
 	private static final String COMPLETE = "complete";
+	private static final String RANGE_START = "range-start";
+	private static final String RANGE_END = "range-end";
+	private static final String CHECKPOINT_INDEX = "checkpoint-index";
+	private static final String CHECKPOINT_OFFSETS = "checkpoint-offsets";
+	private static final String VENUES = "venues";
 	
 	private String currElement;
 	private int checkpointStep;
@@ -30,6 +35,7 @@ public class DescriptorHandler extends DefaultHandler{
 	private ArrayList<String> currElementValue = new ArrayList<String>();
 	private ArrayList<PartFile> partFiles=null;
 	private PartFile currPart =null;
+	private long currRangeStart, currRangeEnd;
 	
 	/**
 	 * The constructor to be used. 
@@ -68,6 +74,8 @@ public class DescriptorHandler extends DefaultHandler{
 		if (localName.compareTo(PART)==0){
 			this.currElement = PART;
 			this.currPart = new PartFile();
+			this.currRangeStart = -1;
+			this.currRangeEnd = -1;
 		}
 		if (localName.compareTo(TOTAL_CHECKPOINTS)==0){
 			this.currElement = TOTAL_CHECKPOINTS;
@@ -124,6 +132,38 @@ public class DescriptorHandler extends DefaultHandler{
 				this.currPart.setComplete(false);
 			else 
 				this.currPart.setComplete(true);
+		}else if(localName.compareTo(RANGE_START)==0){
+			String rangeStart="";
+			for(String frag : this.currElementValue)
+				rangeStart = rangeStart + frag;
+			this.currRangeStart = Long.parseLong(cleanString(rangeStart));
+		}else if(localName.compareTo(RANGE_END)==0){
+			String rangeEnd="";
+			for(String frag : this.currElementValue)
+				rangeEnd = rangeEnd + frag;
+			this.currRangeEnd = Long.parseLong(cleanString(rangeEnd));
+		}else if(localName.compareTo(CHECKPOINT_INDEX)==0){
+			String indexPath="";
+			for(String frag : this.currElementValue)
+				indexPath = indexPath + frag;
+			this.currPart.setRange(this.currRangeStart, this.currRangeEnd, 
+					new File(cleanString(indexPath)));
+		}else if(localName.compareTo(CHECKPOINT_OFFSETS)==0){
+			//the offsets list can be long, it is received in many fragments
+			StringBuffer offsets = new StringBuffer();
+			for(String frag : this.currElementValue)
+				offsets.append(frag);
+			String[] values = cleanString(offsets.toString()).trim().split(" +");
+			long[] checkpointOffsets = new long[values.length];
+			for (int i=0; i<values.length; i++)
+				checkpointOffsets[i] = Long.parseLong(values[i]);
+			this.currPart.setCheckpointOffsets(checkpointOffsets);
+		}else if(localName.compareTo(VENUES)==0){
+			StringBuffer venues = new StringBuffer();
+			for(String frag : this.currElementValue)
+				venues.append(frag);
+			String list = cleanString(venues.toString()).trim();
+			this.currPart.setVenues(list.length()==0 ? new String[0] : list.split(" +"));
 		}else if(localName.compareTo(PART)==0 && !this.currPart.isComplete()){
 			this.partFiles.add(this.currPart);
 		}
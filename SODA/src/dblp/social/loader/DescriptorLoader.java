@@ -31,7 +31,8 @@ public class DescriptorLoader {
 	
 	/**
 	 * Parses the XML _partsInfo file and stores the informations in
-	 * the partFiles array.
+	 * the partFiles array. The progress saved in the journals of the part files, if any, 
+	 * replaces the one stored in the _partsInfo file (see ProgressJournal).
 	 * 
 	 * @return result of the parse activity: true if the _partsInfo file has been correctly loaded, false otherwise
 	 * @throws SAXException
@@ -50,6 +51,14 @@ public class DescriptorLoader {
 		xmlData.close();
 		for (PartFile p : partFiles){
 			p.setPartFileDescriptor(this.xmlDescriptor.getAbsolutePath());
+			int[] progress = ProgressJournal.readLast(
+					ProgressJournal.journalOf(this.xmlDescriptor.getAbsolutePath(), p.getFile()));
+			if (progress!=null){
+				p.setLastCheckpoint(progress[0]);
+				p.setLastOffset(progress[1]);
+				p.setComplete(progress[2]==1);
+			}
+			p.markStored();
 			p.setUpdated(true);
 		}
 		return result;
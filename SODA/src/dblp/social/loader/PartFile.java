@@ -1,11 +1,13 @@
 package dblp.social.loader;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
 
 /**
  * This class is an in-memory structure which contains informations on a single _partFile.
@@ -23,6 +25,19 @@ public class PartFile {
 	private int lastOffset;
 	private boolean complete;
 	private boolean updated=true;
+	//the progress saved in the journal
+	private int storedCheckpoint = 0;
+	private int storedOffset = 0;
+	private ProgressJournal journal = null;
+	//virtual parts only: the byte range of the source file and its checkpoint index
+	private long rangeStart=-1;
+	private long rangeEnd=-1;
+	private File checkpointIndex=null;
+	//_part files only: the byte offset of each checkpoint, null if unknown
+	private long[] checkpointOffsets=null;
+	//the venues of the records (see VenueSet), null if unknown
+	private String[] venues=null;
+	private static final byte[] CHECKPOINT_TAG = "<checkpoint".getBytes();
 	
 	/**
 	 * Empty constructor
@@ -160,7 +175,7 @@ public class PartFile {
 		this.partFileDescriptor = partFileDescriptor;
 	}
 	/**
-	 * Getter. When the current parse status is saved the part file is considered updated if and only if the saved status (last checkpoint, last offset) is greater than the previous stored status
+	 * Getter. When the current parse status is saved the part file is considered updated if the saved status (last checkpoint, last offset) is greater than the previous stored status
 	 * @return true if the partFile has been updated, false otherwise
 	 */
 	public boolean hasBeenUpdated(){
@@ -176,70 +191,190 @@ public class PartFile {
 	
 	
 	/**
-	 * Updates the xml _partsInfo file with the informations stored in this object.
+	 * Getter
+	 * @return true if this part is a byte range of the source file and has not been written to disk
+	 */
+	public boolean isVirtual(){
+		return this.checkpointIndex!=null;
+	}
+	/**
+	 * Getter
+	 * @return the source offset of the first byte of a virtual part
+	 */
+	public long getRangeStart() {
+		return rangeStart;
+	}
+	/**
+	 * Getter
+	 * @return the source offset following the last byte of a virtual part
+	 */
+	public long getRangeEnd() {
+		return rangeEnd;
+	}
+	/**
+	 * Getter
+	 * @return the checkpoint index of a virtual part, null if the part has been written to disk
+	 */
+	public File getCheckpointIndex() {
+		return checkpointIndex;
+	}
+	/**
+	 * Setter, makes this part a virtual part: a byte range of the source file whose checkpoints are stored in a checkpoint index.
+	 * @param rangeStart
+	 * @param rangeEnd
+	 * @param checkpointIndex
+	 */
+	public void setRange(long rangeStart, long rangeEnd, File checkpointIndex) {
+		this.rangeStart = rangeStart;
+		this.rangeEnd = rangeEnd;
+		this.checkpointIndex = checkpointIndex;
+	}
+	
+	/**
+	 * Estimates the bytes still to be parsed: the part size scaled by the checkpoints not yet reached
+	 * @return the estimated number of bytes to be parsed, 0 if the part is complete
+	 */
+	public long getRemainingSize(){
+		if (this.complete)
+			return 0;
+		long size = isVirtual() ? this.rangeEnd-this.rangeStart : this.file.length();
+		if (this.checkpoints<=0 || this.lastCheckpoint<=0)
+			return size;
+		return size*Math.max(0, this.checkpoints-this.lastCheckpoint)/this.checkpoints;
+	}
+	
+	/**
+	 * Getter
+	 * @return the byte offset of each checkpoint of the _part file, null if unknown
+	 */
+	public long[] getCheckpointOffsets() {
+		return checkpointOffsets;
+	}
+	/**
+	 * Setter, sets the byte offset of each checkpoint of the _part file, checkpoint 0 included
+	 * @param checkpointOffsets
+	 */
+	public void setCheckpointOffsets(long[] checkpointOffsets) {
+		this.checkpointOffsets = checkpointOffsets;
+	}
+	
+	/**
+	 * Getter
+	 * @return the venues of the records of the part file (e.g. conf/vldb), null if unknown
+	 */
+	public String[] getVenues() {
+		return venues;
+	}
+	/**
+	 * Setter, sets the venues of the records of the part file, see VenueSet
+	 * @param venues
+	 */
+	public void setVenues(String[] venues) {
+		this.venues = venues;
+	}
+	
+	/**
+	 * Opens the part content: the _part file or, for a virtual part, the source byte range
+	 * with the checkpoints and the dblp wrapper added synthetically.
+	 * If the parse is resumed and the checkpoint offsets are known, the records preceding the last 
+	 * checkpoint are skipped: the stream contains the xml prolog followed by the last checkpoint.
+	 * @return an input stream over the part content
+	 * @throws IOException
+	 */
+	public InputStream openInputStream() throws IOException{
+		return openInputStream(this.lastCheckpoint);
+	}
+	
+	/**
+	 * Opens the part content starting from the given checkpoint, the descriptor is not changed.
+	 * @param firstCheckpoint: the first checkpoint, 0 to read the whole part
+	 * @return an input stream over the part content
+	 * @throws IOException
+	 */
+	public InputStream openInputStream(int firstCheckpoint) throws IOException{
+		if (this.isVirtual())
+			return new VirtualPartInputStream(this, firstCheckpoint);
+		if (firstCheckpoint>0 && this.checkpointOffsets!=null && 
+				firstCheckpoint<this.checkpointOffsets.length){
+			InputStream resumed = openFromCheckpoint(firstCheckpoint);
+			if (resumed!=null)
+				return resumed;
+		}
+		return new FileInputStream(this.file);
+	}
+	
+	/**
+	 * Opens the _part file starting from the given checkpoint
+	 * @param checkpoint: the checkpoint number
+	 * @return the _part file prolog followed by the content starting from the checkpoint, 
+	 * null if the stored offset does not point to a checkpoint
+	 * @throws IOException
+	 */
+	private InputStream openFromCheckpoint(int checkpoint) throws IOException{
+		long offset = this.checkpointOffsets[checkpoint];
+		byte[] prolog = new byte[(int)this.checkpointOffsets[0]];
+		byte[] tag = new byte[CHECKPOINT_TAG.length];
+		RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+		try{
+			if (offset+tag.length > raf.length())
+				return null;
+			raf.readFully(prolog);
+			raf.seek(offset);
+			raf.readFully(tag);
+		}
+		finally{
+			raf.close();
+		}
+		for (int i=0; i<tag.length; i++){
+			if (tag[i]!=CHECKPOINT_TAG[i])
+				return null;
+		}
+		FileInputStream fis = new FileInputStream(this.file);
+		fis.getChannel().position(offset);
+		return new SequenceInputStream(new ByteArrayInputStream(prolog), fis);
+	}
+	
+	/**
+	 * Saves the progress stored in this object (last checkpoint, last offset, complete) in the journal of this part file,
+	 * see ProgressJournal. The _partsInfo file is not changed until the journals are compacted.
+	 * The part file is considered updated if the saved progress is greater than the previous saved one.
 	 * @throws IOException
-	 * @throws FileNotFoundException
+	 * @throws FileNotFoundException if the descriptor does not exist
 	 */
 	public void updateDescriptor() throws IOException, FileNotFoundException{
-		/*
-		 * Reads the previous state of the part file progress (last checkpoint && last offset), 
-		 * if the current state is > of the previous
-		 * 	updates the part file descriptor and sets this.updated=true
-		 * else
-		 * 	doesn't update the part file descriptor and sets this.updated=false
-		 */
-		File descriptor = new File(this.partFileDescriptor);
-		//reads the whole descriptor file
-		BufferedReader input = 
-			new BufferedReader(new FileReader(descriptor));
-		StringBuffer buffer = new StringBuffer();
-		String text;
-		int previousLastCheckpoint=0;
-		int previousLastOffset=0;
-		if (descriptor.exists()){
-			while ((text = input.readLine() ) != null){
-				if (text.contains("<path>"+file.getAbsolutePath()+"</path>")){
-					buffer.append(text+"\n");
-					text = input.readLine(); //string containing the number of checkpoints
-					buffer.append(text+"\n");
-					text = input.readLine(); //string containing last checkpoint
-					previousLastCheckpoint = Integer.parseInt(cleanString(text));
-					buffer.append("\t\t<last-checkpoint>"+this.lastCheckpoint+"</last-checkpoint>\n");
-					text = input.readLine(); //string containing last offset
-					previousLastOffset = Integer.parseInt(cleanString(text));
-					buffer.append("\t\t<last-offset>"+this.lastOffset+"</last-offset>\n");
-					text = input.readLine(); //string containing complete tag
-					String complete = "";
-					if (this.complete)
-						complete="true";
-					else		
-						complete="false";
-					buffer.append("\t\t<complete>"+complete+"</complete>\n");
-					//end of mods
-				}	
-				else
-					buffer.append(text+"\n");
-			}		
-			if (previousLastCheckpoint< this.lastCheckpoint || 
-					(previousLastCheckpoint== this.lastCheckpoint &&
-							previousLastOffset<this.lastOffset)){
-				this.updated=true;
-			}
-			else{
-				this.updated=false;
-			}
-			input.close();
-			descriptor.delete();
-			FileWriter output = 
-				new FileWriter(descriptor);
-			//rewrites the whole descriptor file
-			output.write(buffer.toString());
-			output.close();
+		if (this.journal==null){
+			if (!new File(this.partFileDescriptor).exists())
+				throw new FileNotFoundException();
+			this.journal = new ProgressJournal(ProgressJournal.journalOf(this.partFileDescriptor, this.file));
 		}
-		else
-			throw new FileNotFoundException();
-		
-		
+		if (this.storedCheckpoint< this.lastCheckpoint || 
+				(this.storedCheckpoint== this.lastCheckpoint &&
+						this.storedOffset<this.lastOffset)){
+			//the flag is reset when the part file is taken from the pool
+			this.updated=true;
+		}
+		this.journal.append(this.lastCheckpoint, this.lastOffset, this.complete);
+		if (this.complete)
+			this.journal.close();
+		this.storedCheckpoint = this.lastCheckpoint;
+		this.storedOffset = this.lastOffset;
+	}
+	
+	/**
+	 * Marks the current progress as the saved one, called when the progress is loaded from the descriptor
+	 */
+	public void markStored(){
+		this.storedCheckpoint = this.lastCheckpoint;
+		this.storedOffset = this.lastOffset;
+	}
+	
+	/**
+	 * Closes the journal of this part file, if open
+	 * @throws IOException
+	 */
+	public void closeJournal() throws IOException{
+		if (this.journal!=null)
+			this.journal.close();
 	}
 	
 	/**
@@ -5,6 +5,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
 import org.apache.log4j.Logger;
 import org.xml.sax.SAXException;
@@ -13,6 +16,9 @@ import dblp.social.exceptions.PoolException;
 
 /**
  * This class defines a pool of PartFiles object. 
+ * When the venues of the part files are known (see VenueSet) a part file is given preferably to a thread
+ * if none of its venues is in a part file being parsed by another thread: the proceedings and the books of a venue
+ * are then written by one thread at a time and the threads rarely wait for their locks (see ThreadMonitor).
  * 
  * @author staffiero
  *
@@ -24,6 +30,15 @@ public class PartFilesPool {
 	
 	private static Logger logger = Logger.getLogger(PartFilesPool.class);
 	private boolean accessAllowed;
+	//true while new part files can be added to the pool (the pre parser is still running)
+	private boolean feedOpen = false;
+	private boolean deleteParsedFiles = false;
+	private boolean largestFirst = false;
+	//the part files being parsed and, for each venue of theirs, the number of part files being parsed containing it
+	private HashSet<PartFile> parsingFiles = new HashSet<PartFile>();
+	private HashMap<String, Integer> parsingVenues = new HashMap<String, Integer>();
+	//the part files given while sharing a venue with a part file being parsed
+	private int venueConflicts = 0;
 	
 	/**
 	 * Private constructor used by the static method initialize
@@ -90,13 +105,106 @@ public class PartFilesPool {
 			this.accessAllowed=true;
 			return null;
 		}
-		int index= indexGenerator();
+		int index= this.largestFirst ? largestIndex() : indexGenerator();
+		index = affinityIndex(index);
 		PartFile pf = this.availableFiles.get(index);
 		this.availableFiles.remove(index);
+		acquireVenues(pf);
 		pf.setUpdated(false);
 		this.accessAllowed=true;
+		notifyAll();
 		return pf;
 	}
+	
+	/**
+	 * Opens the pool feed: part files can be added to the pool while it is in use.
+	 * Used when the part files are imported while the pre parser is still running.
+	 */
+	public synchronized void openFeed(){
+		this.feedOpen = true;
+		notifyAll();
+	}
+	
+	/**
+	 * Closes the pool feed: no more part files will be added.
+	 */
+	public synchronized void closeFeed(){
+		this.feedOpen = false;
+		notifyAll();
+	}
+	
+	/**
+	 * Getter
+	 * @return true if part files can still be added to the pool
+	 */
+	public synchronized boolean isFeedOpen(){
+		return this.feedOpen;
+	}
+	
+	/**
+	 * Adds a new part file to the pool. The pool feed has to be open.
+	 * 
+	 * @param partFile
+	 * @throws PoolException if the feed is closed
+	 */
+	public synchronized void addPartFile(PartFile partFile) throws PoolException{
+		if (!this.feedOpen)
+			throw new PoolException("Pool feed closed");
+		this.availableFiles.add(partFile);
+		logger.debug("Part File "+partFile.getFile().getName()+" added to the pool");
+		notifyAll();
+	}
+	
+	/**
+	 * Blocks until at least one part file is available or the pool feed is closed.
+	 * 
+	 * @return true if a part file is available
+	 */
+	public synchronized boolean waitForPartFiles(){
+		while (this.availableFiles.size()==0 && this.feedOpen){
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				break;
+			}
+		}
+		return this.availableFiles.size()>0;
+	}
+	
+	/**
+	 * Blocks while the pool contains at least the given number of available part files and the feed is open.
+	 * Used to stop the feeder (and therefore the pre parser) when the parsers can not keep up.
+	 * 
+	 * @param capacity: the max number of available part files
+	 */
+	public synchronized void waitForSpace(int capacity){
+		while (this.availableFiles.size()>=capacity && this.feedOpen){
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Setter, if true getPartFile returns the part file with the most bytes still to be parsed, 
+	 * so the last part files to be parsed are the smallest ones.
+	 * @param largestFirst
+	 */
+	public void setLargestFirst(boolean largestFirst){
+		this.largestFirst = largestFirst;
+	}
+	
+	/**
+	 * Setter, if true the file of a part file is deleted as soon as the part file is completely parsed.
+	 * @param deleteParsedFiles
+	 */
+	public void setDeleteParsedFiles(boolean deleteParsedFiles){
+		this.deleteParsedFiles = deleteParsedFiles;
+	}
 	/**
 	 * A custom comparator to order partFiles objects within a pool.
 	 * Part files will be ordered according to their sequence number, thus sorting a collection of PartFiles with this comparator the partFile whose filename is xxx_part1.xml will be positioned before the partFile whose filename is xxx_part2.xml.
@@ -142,11 +250,50 @@ public class PartFilesPool {
 			}
 		}
 		this.accessAllowed=false;
+		closeJournal(partFile);
+		releaseVenues(partFile);
 		this.availableFiles.add(0, partFile);
 		if (this.availableFiles.size()>1)
 			Collections.sort(this.availableFiles,new MyComparator());
 		logger.debug("Part File "+partFile.getFile().getName()+" sent back to its pool");
 		this.accessAllowed=true;
+		notifyAll();
+	}
+	
+	/**
+	 * Syncs and closes the progress journal of a part file which is not being parsed
+	 */
+	private void closeJournal(PartFile partFile){
+		try{
+			partFile.closeJournal();
+		}
+		catch (IOException e){
+			logger.error("Could not close the progress journal of "+partFile.getFile().getName()+": "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * Writes the progress of every part file of the pool into the descriptor and deletes the progress journals,
+	 * see ProgressJournal. To be called when no part file is being parsed, holding the lock on the descriptor.
+	 * @param descriptorPath the path of the _partsInfo file
+	 * @throws IOException
+	 */
+	public synchronized void compactProgress(String descriptorPath) throws IOException{
+		ArrayList<PartFile> all = new ArrayList<PartFile>(this.partFiles);
+		for (PartFile p : this.parsedFiles){
+			if (!all.contains(p))
+				all.add(p);
+		}
+		ProgressJournal.compact(descriptorPath, all);
+	}
+	
+	/**
+	 * @return the part files available and the part files already parsed, the ones being parsed are not included
+	 */
+	public synchronized List<PartFile> getPartFiles(){
+		ArrayList<PartFile> all = new ArrayList<PartFile>(this.availableFiles);
+		all.addAll(this.parsedFiles);
+		return all;
 	}
 	
 	/**
@@ -192,9 +339,18 @@ public class PartFilesPool {
 			}
 		}
 		this.accessAllowed=false;
+		closeJournal(partFile);
+		releaseVenues(partFile);
 		this.partFiles.remove(partFile);
 		this.parsedFiles.add(partFile);
+		if (this.deleteParsedFiles && partFile.isComplete()){
+			if (partFile.getFile().exists())
+				partFile.getFile().delete();
+			if (partFile.isVirtual() && partFile.getCheckpointIndex().exists())
+				partFile.getCheckpointIndex().delete();
+		}
 		this.accessAllowed=true;
+		notifyAll();
 	}
 	
 	/**
@@ -202,7 +358,7 @@ public class PartFilesPool {
 	 * 
 	 * @return true if exists at least one part file in the pool which has been updated, false otherwise
 	 */
-	public boolean hasBeenUpdated(){
+	public synchronized boolean hasBeenUpdated(){
 		boolean result=false;
 		for (PartFile p : this.availableFiles){
 			result = result || p.hasBeenUpdated();
@@ -236,11 +392,106 @@ public class PartFilesPool {
 		
 		return idx;
 	}
+	/**
+	 * Chooses the available part file sharing the fewest venues with the part files being parsed.
+	 * Among the part files sharing the same number of venues the preferred one is chosen, or, if the 
+	 * largest part files are given first, the one with the most bytes still to be parsed.
+	 * @param preferred the index chosen by the default order
+	 * @return the index of the part file to be given
+	 */
+	private int affinityIndex(int preferred){
+		if (this.parsingVenues.isEmpty())
+			return preferred;
+		int size = this.availableFiles.size();
+		int best = preferred;
+		int bestShared = Integer.MAX_VALUE;
+		long bestRemaining = -1;
+		for (int k=0; k<size; k++){
+			//the part files are scanned from the preferred one
+			int i = (preferred+k)%size;
+			PartFile pf = this.availableFiles.get(i);
+			int shared = sharedVenues(pf, bestShared<Integer.MAX_VALUE ? bestShared+1 : bestShared);
+			long remaining = this.largestFirst ? pf.getRemainingSize() : 0;
+			if (shared<bestShared || (shared==bestShared && remaining>bestRemaining)){
+				best = i;
+				bestShared = shared;
+				bestRemaining = remaining;
+			}
+			if (bestShared==0 && (!this.largestFirst || best==preferred))
+				break;
+		}
+		if (bestShared>0){
+			this.venueConflicts++;
+			logger.debug("Part file "+this.availableFiles.get(best).getFile().getName()+" given sharing "+
+					bestShared+" venues with the part files being parsed");
+		}
+		return best;
+	}
+	
+	/**
+	 * @return the number of venues of the part file which are in a part file being parsed, at most limit
+	 */
+	private int sharedVenues(PartFile pf, int limit){
+		if (pf.getVenues()==null)
+			return 0;
+		int shared = 0;
+		for (String v : pf.getVenues()){
+			if (this.parsingVenues.containsKey(v) && ++shared>=limit)
+				break;
+		}
+		return shared;
+	}
+	
+	private void acquireVenues(PartFile pf){
+		if (!this.parsingFiles.add(pf) || pf.getVenues()==null)
+			return;
+		for (String v : pf.getVenues()){
+			Integer n = this.parsingVenues.get(v);
+			this.parsingVenues.put(v, n==null ? 1 : n+1);
+		}
+	}
+	
+	private void releaseVenues(PartFile pf){
+		if (!this.parsingFiles.remove(pf) || pf.getVenues()==null)
+			return;
+		for (String v : pf.getVenues()){
+			Integer n = this.parsingVenues.get(v);
+			if (n==null || n<=1)
+				this.parsingVenues.remove(v);
+			else
+				this.parsingVenues.put(v, n-1);
+		}
+	}
+	
+	/**
+	 * Getter
+	 * @return the number of part files given while sharing a venue with a part file being parsed
+	 */
+	public synchronized int getVenueConflicts(){
+		return this.venueConflicts;
+	}
+	
+	/**
+	 * @return the index of the available part file with the most bytes still to be parsed
+	 */
+	private int largestIndex(){
+		int idx=0;
+		long max=-1;
+		for (int i=0; i<this.availableFiles.size(); i++){
+			long size = this.availableFiles.get(i).getRemainingSize();
+			if (size>max){
+				max=size;
+				idx=i;
+			}
+		}
+		return idx;
+	}
+	
 	/**
 	 * To call to know if all the part files in the pool have been completely parsed.
 	 * @return true if all the part files in the pool have been completely parsed.
 	 */
-	public boolean isComplete(){
+	public synchronized boolean isComplete(){
 		boolean complete = true;
 		for (PartFile p : this.availableFiles)
 			complete = complete && p.isComplete();
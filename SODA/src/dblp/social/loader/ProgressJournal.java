@@ -0,0 +1,253 @@
+package dblp.social.loader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class defines the progress log of a single part file: an append-only binary file of fixed size records
+ * (last checkpoint, last offset, complete flag, CRC32 of the previous fields), the last valid record is the part file progress.
+ * The parser threads write the progress of their own part files only, so the journals need no lock
+ * and saving the progress does not depend on the number of part files.
+ *
+ * The journals of a descriptor are kept in a folder next to it (see directory), the records are synced to the disk
+ * every syncRecords records or syncMillis milliseconds and when the part file is complete.
+ * A truncated or corrupted record (e.g. after a crash) ends the log: the previous record is the progress.
+ * At the end of the parse compact writes the progress of every part file into the _partsInfo file and deletes the journals;
+ * when the descriptor is loaded (see DescriptorLoader) the progress stored in the journals replaces the one in the _partsInfo file.
+ *
+ * @author Staffiero
+ *
+ */
+public class ProgressJournal {
+	public static final String JOURNAL_SUFFIX = "_journal";
+	private static final String LOG_EXTENSION = ".progress";
+	//checkpoint, offset, flags, crc
+	private static final int RECORD_SIZE = 16;
+	private static final int COMPLETE = 1;
+	private static int syncRecords = 32;
+	private static long syncMillis = 1000;
+	private static Logger logger = Logger.getLogger(ProgressJournal.class);
+
+	private File file;
+	private RandomAccessFile log = null;
+	private ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+	private int unsynced = 0;
+	private long lastSync = 0;
+
+	/**
+	 * Sets when the records are synced to the disk
+	 * @param records the max number of records not yet synced
+	 * @param millis the max time (ms) a record is left not synced, 0 to sync on the records number only
+	 */
+	public static void configure(int records, long millis){
+		syncRecords = Math.max(1, records);
+		syncMillis = millis;
+	}
+
+	/**
+	 * @param descriptorPath the path of the _partsInfo file
+	 * @return the folder containing the journals of the part files listed in the descriptor
+	 */
+	public static File directory(String descriptorPath){
+		String path = descriptorPath;
+		if (path.lastIndexOf(".")>path.lastIndexOf(File.separator))
+			path = path.substring(0, path.lastIndexOf("."));
+		return new File(path+JOURNAL_SUFFIX);
+	}
+
+	/**
+	 * @param descriptorPath the path of the _partsInfo file
+	 * @param partFile the _part file (or the name of a virtual part)
+	 * @return the journal file of the part file
+	 */
+	public static File journalOf(String descriptorPath, File partFile){
+		return new File(directory(descriptorPath), partFile.getName()+LOG_EXTENSION);
+	}
+
+	/**
+	 * The constructor to be used, the file is created by the first append
+	 * @param file the journal file
+	 */
+	public ProgressJournal(File file){
+		this.file = file;
+	}
+
+	/**
+	 * Appends a progress record
+	 * @param checkpoint the last reached checkpoint
+	 * @param offset the last reached offset
+	 * @param complete true if the part file has been completely parsed, the record is synced at once
+	 * @throws IOException
+	 */
+	public synchronized void append(int checkpoint, int offset, boolean complete) throws IOException{
+		if (this.log==null){
+			this.file.getParentFile().mkdirs();
+			this.log = new RandomAccessFile(this.file, "rw");
+			//a truncated or corrupted record and the following ones are overwritten
+			this.log.setLength(validRecords(this.log)*RECORD_SIZE);
+			this.log.seek(this.log.length());
+			this.lastSync = System.currentTimeMillis();
+		}
+		this.record.clear();
+		this.record.putInt(checkpoint);
+		this.record.putInt(offset);
+		this.record.putInt(complete ? COMPLETE : 0);
+		this.record.putInt(crc(this.record.array()));
+		this.log.write(this.record.array());
+		this.unsynced++;
+		if (complete || this.unsynced>=syncRecords ||
+				(syncMillis>0 && System.currentTimeMillis()-this.lastSync>=syncMillis))
+			sync();
+	}
+
+	/**
+	 * Forces the appended records to the disk
+	 * @throws IOException
+	 */
+	public synchronized void sync() throws IOException{
+		if (this.log==null || this.unsynced==0)
+			return;
+		this.log.getChannel().force(false);
+		this.unsynced = 0;
+		this.lastSync = System.currentTimeMillis();
+	}
+
+	/**
+	 * Syncs and closes the journal, a following append opens it again
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException{
+		if (this.log==null)
+			return;
+		sync();
+		this.log.close();
+		this.log = null;
+	}
+
+	private static int crc(byte[] record){
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, RECORD_SIZE-4);
+		return (int)crc.getValue();
+	}
+
+	/**
+	 * @return the number of valid records at the beginning of the log
+	 */
+	private static long validRecords(RandomAccessFile in) throws IOException{
+		byte[] buffer = new byte[RECORD_SIZE];
+		long records = in.length()/RECORD_SIZE;
+		in.seek(0);
+		for (long i=0; i<records; i++){
+			in.readFully(buffer);
+			if (ByteBuffer.wrap(buffer, RECORD_SIZE-4, 4).getInt()!=crc(buffer))
+				return i;
+		}
+		return records;
+	}
+
+	/**
+	 * Reads the last valid record of a journal
+	 * @param journal the journal file
+	 * @return the last checkpoint, the last offset and 1 if complete (0 otherwise), null if the journal has no valid record
+	 * @throws IOException
+	 */
+	public static int[] readLast(File journal) throws IOException{
+		if (!journal.exists())
+			return null;
+		int[] last = null;
+		byte[] buffer = new byte[RECORD_SIZE];
+		RandomAccessFile in = new RandomAccessFile(journal, "r");
+		try{
+			long records = in.length()/RECORD_SIZE;
+			for (long i=0; i<records; i++){
+				in.readFully(buffer);
+				ByteBuffer r = ByteBuffer.wrap(buffer);
+				int checkpoint = r.getInt();
+				int offset = r.getInt();
+				int flags = r.getInt();
+				if (r.getInt()!=crc(buffer)){
+					logger.warn("Corrupted record "+i+" in "+journal.getName()+", the following records are ignored");
+					break;
+				}
+				last = new int[]{checkpoint, offset, flags & COMPLETE};
+			}
+		}
+		finally{
+			in.close();
+		}
+		return last;
+	}
+
+	/**
+	 * Writes the progress of the part files into the _partsInfo file, then deletes the journals.
+	 * The caller has to hold the lock on the descriptor.
+	 * @param descriptorPath the path of the _partsInfo file
+	 * @param partFiles the part files listed in the descriptor, with their current progress
+	 * @throws IOException
+	 */
+	public static void compact(String descriptorPath, List<PartFile> partFiles) throws IOException{
+		HashMap<String, PartFile> byPath = new HashMap<String, PartFile>();
+		for (PartFile p : partFiles){
+			p.closeJournal();
+			byPath.put("<path>"+p.getFile().getAbsolutePath()+"</path>", p);
+		}
+		File descriptor = new File(descriptorPath);
+		BufferedReader input = new BufferedReader(new FileReader(descriptor));
+		StringBuffer buffer = new StringBuffer();
+		String text;
+		try{
+			while ((text = input.readLine()) != null){
+				buffer.append(text+"\n");
+				PartFile p = byPath.get(text.trim());
+				if (p==null)
+					continue;
+				//checkpoints, last checkpoint, last offset and complete follow the path
+				buffer.append(input.readLine()+"\n");
+				input.readLine();
+				input.readLine();
+				input.readLine();
+				buffer.append("\t\t<last-checkpoint>"+p.getLastCheckpoint()+"</last-checkpoint>\n");
+				buffer.append("\t\t<last-offset>"+p.getLastOffset()+"</last-offset>\n");
+				buffer.append("\t\t<complete>"+p.isComplete()+"</complete>\n");
+			}
+		}
+		finally{
+			input.close();
+		}
+		File tmp = new File(descriptorPath+".tmp");
+		FileWriter output = new FileWriter(tmp);
+		output.write(buffer.toString());
+		output.close();
+		//the journals are deleted only once the new descriptor has replaced the old one
+		Files.move(tmp.toPath(), descriptor.toPath(), 
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		delete(descriptorPath);
+	}
+
+	/**
+	 * Deletes the journals of a descriptor, called when a new descriptor is created
+	 * @param descriptorPath the path of the _partsInfo file
+	 */
+	public static void delete(String descriptorPath){
+		File dir = directory(descriptorPath);
+		if (!dir.isDirectory())
+			return;
+		for (File f : dir.listFiles()){
+			if (f.getName().endsWith(LOG_EXTENSION))
+				f.delete();
+		}
+		dir.delete();
+	}
+}
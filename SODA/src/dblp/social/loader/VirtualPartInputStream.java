@@ -0,0 +1,150 @@
+package dblp.social.loader;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An input stream over a virtual part file, that is a byte range of the source dblp xml file.
+ * The stream looks like a _part file written by the pre parser: the xml prolog, the <dblp> tag,
+ * the checkpoints and the closing </dblp> tag are added synthetically, while the records are read
+ * from the source file. Checkpoints are inserted at the offsets stored in the part checkpoint index.
+ *
+ * @author Staffiero
+ *
+ */
+public class VirtualPartInputStream extends InputStream {
+	private static final byte[] PROLOG = ("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n" +
+			"<!DOCTYPE dblp SYSTEM \"dblp.dtd\">\n" +
+			"<dblp>\n").getBytes();
+	private static final byte[] EPILOG = "</dblp>\n".getBytes();
+
+	private RandomAccessFile sourceFile;
+	private FileChannel source;
+	private long[] checkpointOffsets;
+	private long rangeEnd;
+	//the next checkpoint to be inserted
+	private int nextCheckpoint;
+	//synthetic bytes to be returned before reading the source again
+	private ByteBuffer pending;
+	//the source segment being read
+	private long position, segmentEnd;
+	private boolean epilogDone = false;
+
+	/**
+	 * The constructor to be used
+	 * @param partFile: a virtual PartFile
+	 * @throws IOException
+	 */
+	public VirtualPartInputStream(PartFile partFile) throws IOException{
+		this(partFile, 0);
+	}
+
+	/**
+	 * The constructor to be used to resume a parse: the records preceding the first checkpoint are skipped.
+	 * @param partFile: a virtual PartFile
+	 * @param firstCheckpoint: the first checkpoint returned by the stream, if it is not a valid checkpoint the whole part is returned
+	 * @throws IOException
+	 */
+	public VirtualPartInputStream(PartFile partFile, int firstCheckpoint) throws IOException{
+		if (!partFile.isVirtual())
+			throw new IOException("The part file "+partFile.getFile().getName()+" is not virtual");
+		this.checkpointOffsets = readCheckpointIndex(partFile.getCheckpointIndex());
+		this.rangeEnd = partFile.getRangeEnd();
+		this.sourceFile = new RandomAccessFile(partFile.getSource(), "r");
+		this.source = this.sourceFile.getChannel();
+		if (firstCheckpoint<0 || firstCheckpoint>=this.checkpointOffsets.length)
+			firstCheckpoint = 0;
+		this.nextCheckpoint = firstCheckpoint;
+		this.pending = ByteBuffer.wrap(PROLOG);
+		this.position = partFile.getRangeStart();
+		this.segmentEnd = this.position;
+	}
+
+	/**
+	 * Reads the checkpoint index written by the pre parser: the source offset of each checkpoint, checkpoint 0 included.
+	 * @param index: the checkpoint index file
+	 * @return the checkpoint offsets
+	 * @throws IOException
+	 */
+	public static long[] readCheckpointIndex(File index) throws IOException{
+		int size = (int)(index.length()/8);
+		long[] offsets = new long[size];
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+		try{
+			for (int i=0; i<size; i++)
+				offsets[i] = input.readLong();
+		}
+		finally{
+			input.close();
+		}
+		return offsets;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int n = read(b, 0, 1);
+		if (n<=0)
+			return -1;
+		return b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len==0)
+			return 0;
+		while (true){
+			if (this.pending!=null && this.pending.hasRemaining()){
+				int n = Math.min(len, this.pending.remaining());
+				this.pending.get(b, off, n);
+				return n;
+			}
+			if (this.position < this.segmentEnd){
+				int n = (int) Math.min(len, this.segmentEnd-this.position);
+				int read = this.source.read(ByteBuffer.wrap(b, off, n), this.position);
+				if (read < 0)
+					throw new IOException("Unexpected end of the source file");
+				this.position += read;
+				return read;
+			}
+			if (!nextSegment())
+				return -1;
+		}
+	}
+
+	/**
+	 * Moves to the next checkpoint and source segment, or to the epilog.
+	 * @return false if the stream is over
+	 */
+	private boolean nextSegment(){
+		if (this.nextCheckpoint < this.checkpointOffsets.length){
+			int k = this.nextCheckpoint++;
+			this.pending = ByteBuffer.wrap(("<checkpoint number=\""+k+"\" />\n").getBytes());
+			this.position = this.checkpointOffsets[k];
+			if (this.nextCheckpoint < this.checkpointOffsets.length)
+				this.segmentEnd = this.checkpointOffsets[this.nextCheckpoint];
+			else
+				this.segmentEnd = this.rangeEnd;
+			return true;
+		}
+		if (!this.epilogDone){
+			this.epilogDone = true;
+			this.pending = ByteBuffer.wrap(EPILOG);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.source.close();
+		this.sourceFile.close();
+	}
+}
@@ -0,0 +1,531 @@
+package dblp.social.preparser;
+
+import java.awt.Frame;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import dblp.social.exceptions.FileExistsException;
+
+/**
+ * A pre-parser which memory-maps the source XML file instead of reading it line by line.
+ * The source is divided in byte ranges whose boundaries are moved forward to the end of the next
+ * closing "main" tag, then every range is scanned by a separate worker and written as a _part file.
+ * Record bytes are copied from the mapped source straight to the _part file channel, no intermediate String is created.
+ * The generated _part files and the descriptor are the same produced by the PreParser, therefore
+ * the rest of the import pipeline does not change.
+ * In virtual parts mode no _part file is written: each range is described in the descriptor by its offsets
+ * and by a checkpoint index file which stores the source offset of every checkpoint (see VirtualPartInputStream).
+ *
+ * @author Staffiero
+ *
+ */
+public class MappedPreParser extends PreParser {
+	static Logger logger = Logger.getLogger(MappedPreParser.class.getName());
+
+	//dblp main tags, the order is the same used to print the debug informations
+	private static final byte[][] MAIN_TAGS = {"article".getBytes(), "inproceedings".getBytes(),
+		"proceedings".getBytes(), "book".getBytes(), "incollection".getBytes(),
+		"phdthesis".getBytes(), "mastersthesis".getBytes(), "www".getBytes()};
+	private static final int MAX_TAG_LENGTH = 17; // "</mastersthesis>\n"
+	private static final byte[] DBLP_OPEN = "<dblp>".getBytes();
+	private static final byte[] DBLP_CLOSE = "</dblp>".getBytes();
+	private static final byte[] DBLP_CLOSE_LINE = "</dblp>\n".getBytes();
+	private static final byte[] CHECKPOINT_OPEN = "<checkpoint number=\"".getBytes();
+	private static final byte[] CHECKPOINT_CLOSE = "\" />\n".getBytes();
+	public static final String INDEX_EXTENSION = ".idx";
+	//size of the windows mapped while looking for the head, the tail and the range boundaries
+	private static final int BOUNDARY_WINDOW = 64*1024;
+	//a single range is mapped at once, so it can not exceed the MappedByteBuffer limits
+	private static final long MAX_RANGE_LENGTH = 512*1024*1024;
+
+	private int workers = Runtime.getRuntime().availableProcessors();
+	private boolean virtualParts = false;
+
+	/**
+	 * The constructor to be used to call the preParse method, this will block the execution until the pre-parser finishes .
+	 *
+	 * @param inputFile: the XML file to be pre-parsed
+	 */
+	public MappedPreParser(File inputFile){
+		super(inputFile);
+	}
+
+	/**
+	 * The constructor to be used to call the preParse into a separate thread.
+	 *
+	 * @param inputFile: the XML file to be pre-parsed
+	 * @param buffer: a synchronized SharedBuffer used to show the current progress, it can be null
+	 * @param partNumber: the number of "_part" files to be generated, it has to be greater than 1
+	 * @param chkptStep: the number of dblp "main" tags between checkpoints, it has to be greater than 0
+	 * @param parent: the parent Frame, used to display errors, if parent==null errors are displayed trough logger
+	 */
+	public MappedPreParser(File inputFile, SharedBuffer buffer, int partNumber,
+			int chkptStep, Frame parent){
+		super(inputFile, buffer, partNumber, chkptStep, parent);
+	}
+
+	/**
+	 * Getter
+	 * @return the number of workers scanning the byte ranges
+	 */
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Setter, sets the number of workers scanning the byte ranges. By default one worker per available processor is used.
+	 * @param workers
+	 */
+	public void setWorkers(int workers) {
+		if (workers > 0)
+			this.workers = workers;
+	}
+
+	/**
+	 * Getter
+	 * @return true if the ranges are not written to disk
+	 */
+	public boolean isVirtualParts() {
+		return virtualParts;
+	}
+
+	/**
+	 * Setter, if true the ranges are not written to disk: the parser reads them from the source file.
+	 * Only the checkpoint index of each range is written.
+	 * @param virtualParts
+	 */
+	public void setVirtualParts(boolean virtualParts) {
+		this.virtualParts = virtualParts;
+	}
+
+	/**
+	 * This method pre parses the given XML file using a memory-mapped view of it.
+	 * The output (_part files and descriptor) is the same of PreParser.preParse(int, int).
+	 *
+	 * @param partNumber: the number of "_part" files to be generated, it has to be not null and greater than 0
+	 * @param chkptStep: the number of dblp "main" tags between checkpoints, it has to be greater than 0
+	 *
+	 * @return a string containing the path of the generated descriptor xml file if the operation succeeds, null if the operation fails
+	 */
+	@Override
+	public String preParse(int partNumber, int chkptStep) throws Exception, IOException, FileExistsException{
+		File inputFile = this.getInputFile();
+		if (inputFile==null)
+			return null;
+		if (partNumber < 2 || chkptStep <1)
+			throw new Exception("Parts number or checkpoint step contain invalid value. At least parts number = 2 and checkpoint step = 1");
+		if (!inputFile.isFile())
+			return null;
+
+		String parentDir = inputFile.getParent();
+		if (parentDir==null){
+			parentDir="";
+		}
+		else{
+			parentDir=parentDir+"/";
+		}
+		String inputFileName = inputFile.getName().substring(0,inputFile.getName().lastIndexOf("."));
+
+		//Check if SUBDIRECTORY exists and if it is a directory, if not create it
+		File subDir = new File(parentDir+SUBFOLDER);
+		if (!subDir.exists() || !subDir.isDirectory())
+			subDir.mkdirs();
+
+		File firstPart = new File(parentDir+SUBFOLDER+inputFileName+"_part1.xml");
+		if (firstPart.exists())
+			throw new FileExistsException("The _part file "+firstPart.getName()+" already exists");
+		File firstIndex = new File(parentDir+SUBFOLDER+inputFileName+"_part1"+INDEX_EXTENSION);
+		if (firstIndex.exists())
+			throw new FileExistsException("The checkpoint index "+firstIndex.getName()+" already exists");
+
+		FileInputStream fis = new FileInputStream(inputFile);
+		FileChannel source = fis.getChannel();
+		ExecutorService executor = null;
+		try{
+			long sourceLength = source.size();
+			long bodyStart = findBodyStart(source);
+			long bodyEnd = findBodyEnd(source, bodyStart);
+
+			//a range is mapped at once, if it is too big more ranges are used
+			long bodyLength = bodyEnd - bodyStart;
+			if (bodyLength/partNumber > MAX_RANGE_LENGTH)
+				partNumber = (int)(bodyLength/MAX_RANGE_LENGTH)+1;
+			long avgPartLength = bodyLength/partNumber;
+
+			//moves the nominal boundaries to the end of the next closing main tag,
+			//empty ranges (a single record bigger than the average length) are dropped
+			ArrayList<Long> boundaries = new ArrayList<Long>();
+			boundaries.add(bodyStart);
+			for (int i=1; i<partNumber; i++){
+				long boundary = findRecordEnd(source, bodyStart+i*avgPartLength, bodyEnd);
+				if (boundary > boundaries.get(boundaries.size()-1) && boundary < bodyEnd)
+					boundaries.add(boundary);
+			}
+			boundaries.add(bodyEnd);
+
+			logger.debug("Starting pre parser (memory mapped, "+workers+" workers, "+
+					(boundaries.size()-1)+(virtualParts ? " virtual" : "")+" parts)");
+
+			//the source prolog (xml declaration, doctype and <dblp> tag) is copied in every _part file
+			MappedByteBuffer prolog = source.map(FileChannel.MapMode.READ_ONLY, 0, bodyStart);
+
+			//Initialize the XMLPartsInfo, parts are appended following the source order
+			XMLPartsInfo info = new XMLPartsInfo(inputFile,SUBFOLDER,chkptStep);
+			String openedDescriptor = openDescriptor(info);
+
+			executor = Executors.newFixedThreadPool(workers);
+			ArrayList<Future<PartResult>> results = new ArrayList<Future<PartResult>>();
+			for (int i=1; i<boundaries.size(); i++){
+				File partFile = new File(parentDir+SUBFOLDER+inputFileName+"_part"+i+".xml");
+				File indexFile = null;
+				if (virtualParts)
+					indexFile = new File(parentDir+SUBFOLDER+inputFileName+"_part"+i+INDEX_EXTENSION);
+				results.add(executor.submit(new RangeWriter(source, prolog, boundaries.get(i-1),
+						boundaries.get(i), partFile, indexFile, chkptStep)));
+			}
+
+			long[] counts = new long[MAIN_TAGS.length];
+			for (Future<PartResult> f : results){
+				PartResult r = waitFor(f);
+				info.appendPartFile(r.info);
+				for (int i=0; i<counts.length; i++)
+					counts[i] += r.counts[i];
+			}
+
+			//Write "DONE" in the shared buffer
+			if (sharedBuffer!=null)
+				sharedBuffer.set(SharedBuffer.DONE);
+
+			String descriptorPath = closeDescriptor(info, openedDescriptor);
+			if (logger.isDebugEnabled()){
+				StringBuffer tags = new StringBuffer("Source length "+sourceLength+", parts "+results.size()+", tags:");
+				for (int i=0; i<counts.length; i++)
+					tags.append(" "+new String(MAIN_TAGS[i])+"="+counts[i]);
+				logger.debug(tags.toString());
+			}
+			return descriptorPath;
+		}
+		finally{
+			if (executor!=null)
+				executor.shutdownNow();
+			source.close();
+			fis.close();
+		}
+	}
+
+	/**
+	 * Waits for a range writer and unwraps its failure cause.
+	 */
+	private PartResult waitFor(Future<PartResult> f) throws Exception{
+		try{
+			return f.get();
+		}
+		catch (ExecutionException e){
+			if (e.getCause() instanceof Exception)
+				throw (Exception)e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Finds the first byte after the line containing the <dblp> tag
+	 * @param source
+	 * @return the position where the first record can start
+	 * @throws IOException if the <dblp> tag is not found in the first bytes of the file
+	 */
+	private static long findBodyStart(FileChannel source) throws IOException{
+		int size = (int) Math.min(BOUNDARY_WINDOW, source.size());
+		MappedByteBuffer head = source.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		int pos = indexOf(head, DBLP_OPEN, 0, size);
+		if (pos < 0)
+			throw new IOException("The source file does not contain the <dblp> tag");
+		pos = pos + DBLP_OPEN.length;
+		while (pos < size && head.get(pos)!='\n')
+			pos++;
+		if (pos < size)
+			pos++;
+		return pos;
+	}
+
+	/**
+	 * Finds the position of the closing </dblp> tag
+	 * @param source
+	 * @param bodyStart
+	 * @return the position of the closing </dblp> tag, or the source length if it is missing
+	 * @throws IOException
+	 */
+	private static long findBodyEnd(FileChannel source, long bodyStart) throws IOException{
+		long length = source.size();
+		long from = Math.max(bodyStart, length-BOUNDARY_WINDOW);
+		int size = (int)(length-from);
+		MappedByteBuffer tail = source.map(FileChannel.MapMode.READ_ONLY, from, size);
+		for (int i=size-DBLP_CLOSE.length; i>=0; i--){
+			if (matches(tail, i, DBLP_CLOSE))
+				return from+i;
+		}
+		return length;
+	}
+
+	/**
+	 * Looks for the first closing main tag found after the given position.
+	 * The returned position follows the tag and its line terminator, so it can be used as a range boundary.
+	 *
+	 * @param source
+	 * @param from the nominal boundary
+	 * @param limit the end of the records section
+	 * @return the boundary, limit if no closing main tag is found
+	 * @throws IOException
+	 */
+	private static long findRecordEnd(FileChannel source, long from, long limit) throws IOException{
+		long pos = from;
+		while (pos < limit){
+			int size = (int) Math.min(BOUNDARY_WINDOW, limit-pos);
+			MappedByteBuffer window = source.map(FileChannel.MapMode.READ_ONLY, pos, size);
+			for (int i=0; i<size; i++){
+				if (window.get(i)=='<'){
+					int tag = matchClosingTag(window, i, size);
+					if (tag>=0)
+						return pos+closingTagEnd(window, i, tag, size);
+				}
+			}
+			if (pos+size >= limit)
+				break;
+			//windows overlap, so a tag cut by the window end is found by the next one
+			pos = pos+size-MAX_TAG_LENGTH;
+		}
+		return limit;
+	}
+
+	/**
+	 * Checks whether a closing main tag starts at the given position
+	 * @return the index of the tag in MAIN_TAGS, -1 if no closing main tag starts at pos
+	 */
+	private static int matchClosingTag(ByteBuffer buffer, int pos, int limit){
+		if (pos+3 >= limit || buffer.get(pos+1)!='/')
+			return -1;
+		for (int t=0; t<MAIN_TAGS.length; t++){
+			byte[] tag = MAIN_TAGS[t];
+			int close = pos+2+tag.length;
+			if (close < limit && buffer.get(close)=='>' && matches(buffer, pos+2, tag))
+				return t;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the position following the closing tag starting at pos and its line terminator
+	 */
+	private static int closingTagEnd(ByteBuffer buffer, int pos, int tag, int limit){
+		int end = pos+MAIN_TAGS[tag].length+3;
+		if (end < limit && buffer.get(end)=='\n')
+			end++;
+		return end;
+	}
+
+	private static boolean matches(ByteBuffer buffer, int pos, byte[] value){
+		if (pos+value.length > buffer.limit())
+			return false;
+		for (int i=0; i<value.length; i++){
+			if (buffer.get(pos+i)!=value[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static int indexOf(ByteBuffer buffer, byte[] value, int from, int limit){
+		for (int i=from; i<=limit-value.length; i++){
+			if (matches(buffer, i, value))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * The output of a single range writer
+	 */
+	private static class PartResult{
+		private PartInfo info;
+		private long[] counts;
+	}
+
+	/**
+	 * Scans a single byte range of the source and writes it to a _part file,
+	 * adding the source prolog, the checkpoints and the closing </dblp> tag.
+	 * For a virtual part only the checkpoint index is written.
+	 */
+	private class RangeWriter implements Callable<PartResult>{
+		private FileChannel source;
+		private ByteBuffer prolog;
+		private long start, end;
+		private File partFile;
+		private File indexFile;
+		private int chkptStep;
+		private ByteBuffer checkpoint = ByteBuffer.allocate(64);
+		private byte[] digits = new byte[20];
+
+		public RangeWriter(FileChannel source, ByteBuffer prolog, long start, long end,
+				File partFile, File indexFile, int chkptStep){
+			this.source = source;
+			this.prolog = prolog;
+			this.start = start;
+			this.end = end;
+			this.partFile = partFile;
+			this.indexFile = indexFile;
+			this.chkptStep = chkptStep;
+		}
+
+		@Override
+		public PartResult call() throws Exception {
+			PartResult result = new PartResult();
+			result.counts = new long[MAIN_TAGS.length];
+			int size = (int)(end-start);
+			MappedByteBuffer range = source.map(FileChannel.MapMode.READ_ONLY, start, size);
+			if (indexFile!=null){
+				result.info = writeIndex(range, size, result.counts);
+				publish(result.info);
+				return result;
+			}
+
+			FileOutputStream fos = new FileOutputStream(partFile);
+			FileChannel output = fos.getChannel();
+			try{
+				long cpn = 0;
+				//the byte offset of each checkpoint, used to resume the parse
+				ArrayList<Long> offsets = new ArrayList<Long>();
+				write(output, prolog.duplicate());
+				offsets.add(output.position());
+				writeCheckpoint(output, cpn++);
+
+				int tagsSoFar = 0;
+				int segmentStart = 0;
+				VenueSet venues = new VenueSet();
+				for (int i=0; i<size; i++){
+					if (range.get(i)!='<')
+						continue;
+					if (i+1<size && range.get(i+1)!='/'){
+						venues.addStartTag(range, i, size);
+						continue;
+					}
+					int tag = matchClosingTag(range, i, size);
+					if (tag < 0)
+						continue;
+					result.counts[tag]++;
+					int recordEnd = closingTagEnd(range, i, tag, size);
+					tagsSoFar++;
+					//Check if a checkpoint should be added
+					if (tagsSoFar >= chkptStep){
+						writeSlice(output, range, segmentStart, recordEnd);
+						offsets.add(output.position());
+						writeCheckpoint(output, cpn++);
+						segmentStart = recordEnd;
+						tagsSoFar = 0;
+					}
+					i = recordEnd-1;
+				}
+				writeSlice(output, range, segmentStart, size);
+				write(output, ByteBuffer.wrap(DBLP_CLOSE_LINE));
+				output.force(false);
+
+				result.info = new PartInfo(partFile.getAbsolutePath(), cpn, output.size());
+				result.info.setCheckpointOffsets(toArray(offsets));
+				result.info.setVenues(venues.toArray());
+			}
+			finally{
+				output.close();
+				fos.close();
+			}
+			//Write the name of the completed _part file in the shared buffer
+			if (sharedBuffer!=null)
+				sharedBuffer.set(partFile.getName());
+			publish(result.info);
+			return result;
+		}
+
+		/**
+		 * Scans the range and writes the source offset of each checkpoint, checkpoint 0 included, to the index file.
+		 * @return the virtual part informations
+		 */
+		private PartInfo writeIndex(ByteBuffer range, int size, long[] counts) throws IOException{
+			DataOutputStream index = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(indexFile)));
+			long cpn = 0;
+			VenueSet venues = new VenueSet();
+			try{
+				index.writeLong(start);
+				cpn++;
+				int tagsSoFar = 0;
+				for (int i=0; i<size; i++){
+					if (range.get(i)!='<')
+						continue;
+					if (i+1<size && range.get(i+1)!='/'){
+						venues.addStartTag(range, i, size);
+						continue;
+					}
+					int tag = matchClosingTag(range, i, size);
+					if (tag < 0)
+						continue;
+					counts[tag]++;
+					int recordEnd = closingTagEnd(range, i, tag, size);
+					tagsSoFar++;
+					if (tagsSoFar >= chkptStep){
+						index.writeLong(start+recordEnd);
+						cpn++;
+						tagsSoFar = 0;
+					}
+					i = recordEnd-1;
+				}
+			}
+			finally{
+				index.close();
+			}
+			PartInfo info = new PartInfo(partFile.getAbsolutePath(), cpn, end-start,
+					start, end, indexFile.getAbsolutePath());
+			info.setVenues(venues.toArray());
+			return info;
+		}
+
+		private void writeSlice(FileChannel output, ByteBuffer range, int from, int to) throws IOException{
+			if (to <= from)
+				return;
+			ByteBuffer slice = range.duplicate();
+			slice.limit(to);
+			slice.position(from);
+			write(output, slice);
+		}
+
+		private void writeCheckpoint(FileChannel output, long number) throws IOException{
+			checkpoint.clear();
+			checkpoint.put(CHECKPOINT_OPEN);
+			int n = 0;
+			do{
+				digits[n++] = (byte)('0'+(number%10));
+				number = number/10;
+			}while (number > 0);
+			while (n > 0)
+				checkpoint.put(digits[--n]);
+			checkpoint.put(CHECKPOINT_CLOSE);
+			checkpoint.flip();
+			write(output, checkpoint);
+		}
+
+		private void write(FileChannel output, ByteBuffer buffer) throws IOException{
+			while (buffer.hasRemaining())
+				output.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package dblp.social.preparser;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * A synchronized bounded queue in which a pre parser publishes every _part file as soon as it is closed.
+ * Consumers take the published _part files while the pre parser is still running.
+ * When the queue is full the pre parser is blocked, so it can not write more _part files than the consumers can handle.
+ *
+ * @author Staffiero
+ *
+ */
+public class PartFilesQueue {
+	private LinkedList<PartInfo> parts = new LinkedList<PartInfo>();
+	private int capacity;
+	private boolean closed = false;
+	private boolean finished = false;
+	private String descriptor = null;
+	private boolean descriptorSet = false;
+
+	/**
+	 * The constructor to be used
+	 * @param capacity: the max number of published _part files not yet taken by a consumer
+	 */
+	public PartFilesQueue(int capacity){
+		if (capacity < 1)
+			capacity = 1;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Called by the pre parser once the (empty) descriptor file has been created
+	 * @param descriptorPath: the absolute path of the _partsInfo file
+	 */
+	public synchronized void setDescriptor(String descriptorPath){
+		this.descriptor = descriptorPath;
+		this.descriptorSet = true;
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the pre parser creates the descriptor file
+	 * @return the absolute path of the _partsInfo file, null if the pre parser failed before creating it
+	 * @throws InterruptedException
+	 */
+	public synchronized String getDescriptor() throws InterruptedException{
+		while (!this.descriptorSet && !this.closed)
+			wait();
+		return this.descriptor;
+	}
+
+	/**
+	 * Publishes a _part file, blocks while the queue is full
+	 * @param part: the informations of a closed _part file
+	 * @throws InterruptedException
+	 * @throws IOException if the queue has been closed by the consumer
+	 */
+	public synchronized void put(PartInfo part) throws InterruptedException, IOException{
+		while (this.parts.size() >= this.capacity && !this.closed)
+			wait();
+		if (this.closed)
+			throw new IOException("The part files queue has been closed");
+		this.parts.addLast(part);
+		notifyAll();
+	}
+
+	/**
+	 * Takes the oldest published _part file, blocks while the queue is empty and still open
+	 * @return a _part file informations, null if the queue is closed and empty
+	 * @throws InterruptedException
+	 */
+	public synchronized PartInfo take() throws InterruptedException{
+		while (this.parts.isEmpty() && !this.closed)
+			wait();
+		if (this.parts.isEmpty())
+			return null;
+		PartInfo part = this.parts.removeFirst();
+		notifyAll();
+		return part;
+	}
+
+	/**
+	 * Closes the queue. Called by a consumer which stops taking _part files.
+	 */
+	public synchronized void close(){
+		this.closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Closes the queue. Called by the pre parser when the last _part file has been published.
+	 */
+	public synchronized void finish(){
+		this.finished = true;
+		this.closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Getter
+	 * @return true if the queue has been closed by the pre parser after publishing all the _part files
+	 */
+	public synchronized boolean isFinished(){
+		return this.finished;
+	}
+
+	/**
+	 * Getter
+	 * @return true if the queue has been closed
+	 */
+	public synchronized boolean isClosed(){
+		return this.closed;
+	}
+}
@@ -10,6 +10,14 @@ public class PartInfo {
 	private String filePath; 
 	private long checkpoints; 
 	private long length;
+	//virtual parts only: the byte range of the source and the checkpoint index
+	private long rangeStart = -1;
+	private long rangeEnd = -1;
+	private String indexPath = null;
+	//_part files only: the byte offset of each checkpoint element, checkpoint 0 included
+	private long[] checkpointOffsets = null;
+	//the venues of the records (see VenueSet), null if unknown
+	private String[] venues = null;
 	
 	/**
 	 * The constructor to be used
@@ -24,6 +32,23 @@ public class PartInfo {
 		this.length = length;
 	}
 	
+	/**
+	 * The constructor to be used for a virtual part, which is not written to disk
+	 * @param filePath: the _part file absolute path, the file does not exist but the path identifies the part
+	 * @param checkpoints: the number of checkpoints of the part
+	 * @param length: the part length
+	 * @param rangeStart: the source offset of the first byte of the part
+	 * @param rangeEnd: the source offset following the last byte of the part
+	 * @param indexPath: the absolute path of the checkpoint index
+	 */
+	public PartInfo(String filePath, long checkpoints, long length, 
+			long rangeStart, long rangeEnd, String indexPath) {
+		this(filePath, checkpoints, length);
+		this.rangeStart = rangeStart;
+		this.rangeEnd = rangeEnd;
+		this.indexPath = indexPath;
+	}
+	
 	public String getFilePath() {
 		return filePath;
 	}
@@ -42,5 +67,29 @@ public class PartInfo {
 	public void setLength(long length) {
 		this.length = length;
 	}
+	public boolean isVirtual() {
+		return indexPath!=null;
+	}
+	public long getRangeStart() {
+		return rangeStart;
+	}
+	public long getRangeEnd() {
+		return rangeEnd;
+	}
+	public String getIndexPath() {
+		return indexPath;
+	}
+	public long[] getCheckpointOffsets() {
+		return checkpointOffsets;
+	}
+	public void setCheckpointOffsets(long[] checkpointOffsets) {
+		this.checkpointOffsets = checkpointOffsets;
+	}
+	public String[] getVenues() {
+		return venues;
+	}
+	public void setVenues(String[] venues) {
+		this.venues = venues;
+	}
 	
 }
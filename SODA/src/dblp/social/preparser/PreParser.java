@@ -25,10 +25,11 @@ public class PreParser extends Thread{
 	static Logger logger = Logger.getLogger(PreParser.class.getName());
 	private File inputFile;
 	private ArrayList<File> partFiles;
-	private SharedBuffer sharedBuffer=null;
+	protected SharedBuffer sharedBuffer=null;
 	private int partNumber=0;
 	private int chkptStep=0;
 	private Frame parent;
+	protected PartFilesQueue queue=null;
 	public static final String SUBFOLDER = "XMLPartFiles/";
 	
 	/**
@@ -108,6 +109,107 @@ public class PreParser extends Thread{
 		this.partFiles = partFiles;
 	}
 
+	/**
+	 * Getter
+	 * @return the queue in which the _part files are published, null if the _part files are not published
+	 */
+	public PartFilesQueue getQueue() {
+		return queue;
+	}
+
+	/**
+	 * Setter, sets the queue in which every _part file is published as soon as it is closed.
+	 * When a queue is set the descriptor is saved before the first _part file is written and the _part files
+	 * are not listed in it: the consumer of the queue has to append them (see XMLPartsInfo.appendPartFile(String, PartInfo)).
+	 * The queue is closed when the pre parser terminates.
+	 * @param queue
+	 */
+	public void setQueue(PartFilesQueue queue) {
+		this.queue = queue;
+	}
+
+	/**
+	 * If the _part files are published saves the empty descriptor, so the consumers can find it before the first _part file is closed.
+	 * @param info: the XMLPartsInfo of the current pre parse, no _part file has to be appended yet
+	 * @return the descriptor path, null if the _part files are not published
+	 */
+	protected String openDescriptor(XMLPartsInfo info) throws FileExistsException, IOException{
+		if (this.queue==null)
+			return null;
+		//the feeder marks the descriptor as complete once the last _part file has been appended
+		info.setComplete(false);
+		String descriptorPath = info.savePartFileInfo();
+		this.queue.setDescriptor(descriptorPath);
+		return descriptorPath;
+	}
+
+	/**
+	 * Publishes a closed _part file, if a queue has been set. Blocks while the queue is full.
+	 * @param filePath: the _part file absolute path
+	 * @param checkpoints: the number of checkpoints inserted into the _part file
+	 * @param length: the _part file length
+	 * @throws IOException
+	 */
+	protected void publish(String filePath, long checkpoints, long length) throws IOException{
+		publish(new PartInfo(filePath, checkpoints, length));
+	}
+
+	/**
+	 * Publishes a closed _part file or a virtual part, if a queue has been set. Blocks while the queue is full.
+	 * @param part: the part informations
+	 * @throws IOException
+	 */
+	protected void publish(PartInfo part) throws IOException{
+		if (this.queue==null)
+			return;
+		try{
+			this.queue.put(part);
+		}
+		catch (InterruptedException e){
+			throw new IOException("Interrupted while publishing "+part.getFilePath());
+		}
+	}
+
+	/**
+	 * Saves the descriptor or, if the _part files are published, finishes the queue:
+	 * the consumer writes the completion marker after appending the last published _part file.
+	 * @param info: the XMLPartsInfo of the current pre parse
+	 * @param openedDescriptor: the value returned by openDescriptor(XMLPartsInfo)
+	 * @return the descriptor path
+	 */
+	protected String closeDescriptor(XMLPartsInfo info, String openedDescriptor) throws FileExistsException, IOException{
+		if (this.queue==null)
+			return info.savePartFileInfo();
+		this.queue.finish();
+		return openedDescriptor;
+	}
+
+	/**
+	 * Writes the buffered text to the _part file, the next checkpoint is written at the returned offset
+	 * @param output: the _part file writer
+	 * @param buffer: the text preceding the checkpoint
+	 * @param partFile: the _part file
+	 * @return the byte offset of the next checkpoint
+	 * @throws IOException
+	 */
+	private static long checkpointOffset(FileWriter output, StringBuffer buffer, File partFile) throws IOException{
+		output.write(buffer.toString());
+		output.flush();
+		return partFile.length();
+	}
+
+	/**
+	 * Converts a list of checkpoint offsets
+	 * @param offsets
+	 * @return the offsets array
+	 */
+	protected static long[] toArray(ArrayList<Long> offsets){
+		long[] result = new long[offsets.size()];
+		for (int i=0; i<result.length; i++)
+			result[i] = offsets.get(i);
+		return result;
+	}
+
 	/**
 	 * This method checks the given inputFile. If the file is a valid DBLP XML it returns true, false otherwise
 	 * 
@@ -168,6 +270,10 @@ public class PreParser extends Thread{
 			int cont = 1;
 			int tagsSoFar = 0;
 			int cpn=0;
+			//the byte offsets of the checkpoints of the current _part file
+			ArrayList<Long> offsets = new ArrayList<Long>();
+			//the venues of the records of the current _part file
+			VenueSet venues = new VenueSet();
 			float avgPartLenght = this.inputFile.length()/partNumber;			
 			String parentDir = this.inputFile.getParent();
 			if (parentDir==null){
@@ -180,6 +286,7 @@ public class PreParser extends Thread{
 			
 			//Initialize the XMLPartsInfo
 			XMLPartsInfo info = new XMLPartsInfo(this.getInputFile(),SUBFOLDER,chkptStep);
+			String openedDescriptor = null;
 			
 			//Check if SUBDIRECTORY exists and if it is a directory, if not create it
 			File subDir = new File(parentDir+SUBFOLDER);
@@ -194,6 +301,8 @@ public class PreParser extends Thread{
 			else
 				partFile.createNewFile();
 			
+			openedDescriptor = openDescriptor(info);
+			
 			System.out.println("Starting pre parser");
 			
 			//Create the first _part file
@@ -218,6 +327,8 @@ public class PreParser extends Thread{
 				text = input.readLine();
 				buffer.append(text+"\n");
 			}
+			offsets.add(checkpointOffset(output, buffer, partFile));
+			buffer = new StringBuffer();
 			buffer.append("<checkpoint number=\""+cpn+"\" />\n");
 			cpn++;
 			
@@ -256,6 +367,7 @@ public class PreParser extends Thread{
 				//<book>, <incollection>
                 //<phdthesis>, <mastersthesis>, <www>
 				buffer.append(text+"\n");
+				venues.addStartTag(text);
 				if (text.compareTo("</article>")==0 ||
 						text.compareTo("</inproceedings>")==0 ||
 						text.compareTo("</proceedings>")==0 ||
@@ -269,6 +381,8 @@ public class PreParser extends Thread{
 										
 					//Check if a checkpoint should be added
 					if (tagsSoFar>=chkptStep){
+						offsets.add(checkpointOffset(output, buffer, partFile));
+						buffer = new StringBuffer();
 						buffer.append("<checkpoint number=\""+cpn+"\" />\n");
 						cpn++;
 						tagsSoFar=0;
@@ -284,7 +398,11 @@ public class PreParser extends Thread{
 							output.close();
 							
 							//append the _part file informations to the XMLPartsInfo
-							info.appendPartFile(partFile.getAbsolutePath(), cpn, partFile.length());
+							PartInfo part = new PartInfo(partFile.getAbsolutePath(), cpn, partFile.length());
+							part.setCheckpointOffsets(toArray(offsets));
+							part.setVenues(venues.toArray());
+							info.appendPartFile(part);
+							publish(part);
 							
 							//Point the new _part file
 							partFile = new File(parentDir+SUBFOLDER+inputFileName+"_part"+cont+".xml");
@@ -302,6 +420,10 @@ public class PreParser extends Thread{
 							buffer.append("<dblp>\n");
 							cpn=0;
 							tagsSoFar = 0;
+							offsets = new ArrayList<Long>();
+							venues = new VenueSet();
+							offsets.add(checkpointOffset(output, buffer, partFile));
+							buffer = new StringBuffer();
 							buffer.append("<checkpoint number=\""+cpn+"\" />\n");
 							cpn++;
 						}
@@ -318,10 +440,14 @@ public class PreParser extends Thread{
 				sharedBuffer.set(SharedBuffer.DONE);
 			
 			//append the _part file informations to the XMLPartsInfo
-			info.appendPartFile(partFile.getAbsolutePath(), cpn, partFile.length());
+			PartInfo part = new PartInfo(partFile.getAbsolutePath(), cpn, partFile.length());
+			part.setCheckpointOffsets(toArray(offsets));
+			part.setVenues(venues.toArray());
+			info.appendPartFile(part);
+			publish(part);
 			
 			//save the XMLPartsInfo
-			String descriptorPath = info.savePartFileInfo();
+			String descriptorPath = closeDescriptor(info, openedDescriptor);
 			
 			input.close();
 			
@@ -390,7 +516,8 @@ public class PreParser extends Thread{
 		catch (FileExistsException fe){
 			fe.printStackTrace();
 			//Release resources to prevent deadlocks
-			sharedBuffer.releaseMonitor();
+			if (sharedBuffer!=null)
+				sharedBuffer.releaseMonitor();
 			if (this.parent!=null){
 				JOptionPane.showMessageDialog(parent,"FileExistsException thrown:\n" +
 						fe.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -404,7 +531,8 @@ public class PreParser extends Thread{
 		catch (Exception ex){
 			ex.printStackTrace();
 			//Release resources to prevent deadlocks
-			sharedBuffer.releaseMonitor();
+			if (sharedBuffer!=null)
+				sharedBuffer.releaseMonitor();
 			if (this.parent!=null){
 				JOptionPane.showMessageDialog(parent,"Exception thrown:\n"+
 						ex.getMessage(),"Error", JOptionPane.ERROR_MESSAGE);
@@ -415,6 +543,11 @@ public class PreParser extends Thread{
 			}
 			
 		}
+		finally{
+			//consumers waiting for _part files must not be blocked
+			if (this.queue!=null)
+				this.queue.close();
+		}
 	}
 	
 	
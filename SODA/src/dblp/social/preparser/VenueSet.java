@@ -0,0 +1,150 @@
+package dblp.social.preparser;
+
+import java.nio.ByteBuffer;
+import java.util.TreeSet;
+
+/**
+ * This class collects the venues of the records of a _part file while the pre parser writes it.
+ * The venue of a record is the prefix of its dblp key made of the first two segments (e.g. conf/vldb, journals/tods),
+ * or of three segments for the books (e.g. books/sp/kim95): the proceedings and the inproceedings of a conference,
+ * the articles of a journal and a book and its incollections share it.
+ * The venues are stored in the descriptor and used to give the _part files to the parser threads
+ * so that the records of a venue are imported by one thread at a time (see PartFilesPool).
+ *
+ * @author Staffiero
+ *
+ */
+public class VenueSet {
+	private static final String KEY_ATTRIBUTE = "key=\"";
+	private static final byte[] KEY_BYTES = KEY_ATTRIBUTE.getBytes();
+	private static final String BOOKS = "books/";
+	private static final byte[] BOOKS_BYTES = BOOKS.getBytes();
+
+	private TreeSet<String> venues = new TreeSet<String>();
+	//the venue of the previous record, consecutive records usually share it
+	private byte[] last = new byte[64];
+	private int lastLength = -1;
+
+	/**
+	 * @param key a dblp key
+	 * @return the venue of the key, null if the key has less than three segments (e.g. persons/Codd71a)
+	 */
+	public static String venueOf(String key){
+		int first = key.indexOf('/');
+		int second = first<0 ? -1 : key.indexOf('/', first+1);
+		if (second<0)
+			return null;
+		if (!key.startsWith(BOOKS))
+			return key.substring(0, second);
+		//the key of a book is its venue
+		int third = key.indexOf('/', second+1);
+		return third<0 ? key : key.substring(0, third);
+	}
+
+	/**
+	 * Adds the venue of the record starting at the given line, the lines which do not start a record are ignored
+	 * @param line a line of the dblp xml
+	 */
+	public void addStartTag(String line){
+		if (!line.startsWith("<") || line.startsWith("</"))
+			return;
+		int start = line.indexOf(KEY_ATTRIBUTE);
+		if (start<0)
+			return;
+		start += KEY_ATTRIBUTE.length();
+		int end = line.indexOf('"', start);
+		if (end<0)
+			return;
+		String venue = venueOf(line.substring(start, end));
+		if (venue!=null)
+			this.venues.add(venue);
+	}
+
+	/**
+	 * Adds the venue of a record key
+	 * @param key a dblp key
+	 */
+	public void addKey(String key){
+		String venue = venueOf(key);
+		if (venue!=null)
+			this.venues.add(venue);
+	}
+
+	/**
+	 * Adds the venue of the record whose start tag begins at the given position, the other tags are ignored
+	 * @param buffer the dblp xml
+	 * @param pos the position of the '<' of a start tag
+	 * @param limit the end of the buffer
+	 */
+	public void addStartTag(ByteBuffer buffer, int pos, int limit){
+		//the key attribute is looked for within the start tag only
+		int start = -1;
+		for (int i=pos+1; i<limit-KEY_BYTES.length; i++){
+			byte b = buffer.get(i);
+			if (b=='>')
+				return;
+			if (b=='k' && matches(buffer, i, KEY_BYTES)){
+				start = i+KEY_BYTES.length;
+				break;
+			}
+		}
+		if (start<0)
+			return;
+		int segments = (start+BOOKS_BYTES.length<limit && matches(buffer, start, BOOKS_BYTES)) ? 3 : 2;
+		int slashes = 0;
+		int end = start;
+		while (end<limit){
+			byte b = buffer.get(end);
+			if (b=='"' || b=='>')
+				break;
+			if (b=='/' && ++slashes==segments)
+				break;
+			end++;
+		}
+		//the key of a book is its venue
+		if (slashes<2)
+			return;
+		if (isLast(buffer, start, end))
+			return;
+		int length = end-start;
+		if (length>this.last.length)
+			this.last = new byte[length];
+		for (int i=0; i<length; i++)
+			this.last[i] = buffer.get(start+i);
+		this.lastLength = length;
+		//dblp keys are ascii
+		this.venues.add(new String(this.last, 0, length));
+	}
+
+	private boolean isLast(ByteBuffer buffer, int start, int end){
+		if (end-start!=this.lastLength)
+			return false;
+		for (int i=0; i<this.lastLength; i++){
+			if (buffer.get(start+i)!=this.last[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean matches(ByteBuffer buffer, int pos, byte[] value){
+		for (int i=0; i<value.length; i++){
+			if (buffer.get(pos+i)!=value[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of venues
+	 */
+	public int size(){
+		return this.venues.size();
+	}
+
+	/**
+	 * @return the venues, sorted
+	 */
+	public String[] toArray(){
+		return this.venues.toArray(new String[this.venues.size()]);
+	}
+}
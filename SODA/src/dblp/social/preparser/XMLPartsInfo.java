@@ -1,18 +1,24 @@
 package dblp.social.preparser;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 
 import dblp.social.exceptions.FileExistsException;
+import dblp.social.loader.ProgressJournal;
 import dblp.social.utility.Glitterizer;
 
 
 /**
  * This class defines a structure used to memorize the pre-parse execution output in an xml file.
  * It keeps track of: the source xml file and all the generated _part files. 
- * For each _part file its length and the number of inserted checkpoints is stored.
+ * For each _part file its length, the number of inserted checkpoints, the byte offset of each checkpoint and the venues of its records are stored.
  * The fields last-checkpoint and last-offset are also initialized.
  * 
  * @author Staffiero
@@ -24,8 +30,10 @@ public class XMLPartsInfo {
 	private ArrayList<PartInfo> partFiles = null;
 	private String subfolder = null;
 	private int chckptStep = 0;
+	private boolean complete = true;
 	public static final String INFO_FILENAME = "_partsInfo.xml";
 	public static final String INFO_FILESUBFOLDER = "partsInfo";
+	public static final String COMPLETE_ELEMENT = "pre-parse-complete";
 	
 	/**
 	 * The constructor to be used.
@@ -78,6 +86,22 @@ public class XMLPartsInfo {
 		this.getPartFiles().add(pi);
 	}
 	
+	/**
+	 * Adds the informations of a generated _part file, or of a virtual part, to the current list.
+	 * @param part: the part informations
+	 */
+	public void appendPartFile(PartInfo part){
+		this.getPartFiles().add(part);
+	}
+	
+	/**
+	 * Setter, a descriptor saved as not complete is still being filled by a running pre parser
+	 * @param complete
+	 */
+	public void setComplete(boolean complete){
+		this.complete = complete;
+	}
+	
 	/**
 	 * Saves the gathered informations to an xml file. 
 	 * This xml file should be used to know exactly which _part files are supposed to be sent to the parser, given a source xml file.
@@ -98,6 +122,8 @@ public class XMLPartsInfo {
 			throw new FileExistsException("The part file descriptor: " + file.getName() + " already exists");
 		else
 			file.createNewFile();
+		//the progress journals of a previous descriptor are stale
+		ProgressJournal.delete(file.getAbsolutePath());
 		FileWriter output = 
 			new FileWriter(file);
 		StringBuffer buffer = new StringBuffer();
@@ -111,24 +137,161 @@ public class XMLPartsInfo {
 		//scrive altra roba nel buffer
 		for(PartInfo i : this.partFiles){
 			totalChpts = totalChpts + i.getCheckpoints();
-			buffer.append("\t<part-file>\n");
-			buffer.append("\t\t<path>"+i.getFilePath()+"</path>\n");
-			buffer.append("\t\t<checkpoints>"+i.getCheckpoints()+"</checkpoints>\n");
-			buffer.append("\t\t<last-checkpoint>0</last-checkpoint>\n");
-			buffer.append("\t\t<last-offset>0</last-offset>\n");
-			buffer.append("\t\t<complete>false</complete>\n");
-			buffer.append("\t\t<length>"+Glitterizer.clearFormatLenght(i.getLength())+"</length>\n");
-			buffer.append("\t</part-file>\n");
+			appendPartBlock(buffer, i);
 		}
 		buffer.append("\t<total-checkpoints>"+totalChpts+
 				"</total-checkpoints>\n");
 		buffer.append("\t<checkpoints-step>"+this.chckptStep+
 		"</checkpoints-step>\n");
+		buffer.append("\t<"+COMPLETE_ELEMENT+">"+this.complete+"</"+COMPLETE_ELEMENT+">\n");
 		buffer.append("</xml-parts-info>");
 		//chiude i tag che deve chiudere
 		output.write(buffer.toString());
 		output.close();
 		return file.getAbsolutePath();
 	}
+	
+	/**
+	 * Appends the informations of a _part file to an already saved descriptor. 
+	 * Used when the _part files are imported while the pre parser is still running: the descriptor is saved before the first _part file is closed
+	 * and every _part file is appended as soon as it is published.
+	 * The caller has to hold the lock on the descriptor.
+	 * 
+	 * @param descriptorPath: the absolute path of the _partsInfo file
+	 * @param part: the _part file informations
+	 * @throws IOException
+	 */
+	public static void appendPartFile(String descriptorPath, PartInfo part) throws IOException{
+		File descriptor = new File(descriptorPath);
+		if (!descriptor.exists())
+			throw new FileNotFoundException("The part file descriptor: " + descriptor.getName() + " does not exist");
+		BufferedReader input = new BufferedReader(new FileReader(descriptor));
+		StringBuffer buffer = new StringBuffer();
+		String text;
+		while ((text = input.readLine()) != null){
+			if (text.contains("<total-checkpoints>")){
+				//the new part goes after the last one, the total is updated
+				appendPartBlock(buffer, part);
+				long totalChpts = Long.parseLong(text.replaceAll("<[^>]*>", "").trim());
+				totalChpts = totalChpts + part.getCheckpoints();
+				buffer.append("\t<total-checkpoints>"+totalChpts+
+						"</total-checkpoints>\n");
+			}
+			else
+				buffer.append(text+"\n");
+		}
+		input.close();
+		replace(descriptor, buffer.toString());
+	}
+	
+	/**
+	 * Marks a descriptor saved as not complete as complete, called once the last _part file has been appended.
+	 * The caller has to hold the lock on the descriptor.
+	 * 
+	 * @param descriptorPath: the absolute path of the _partsInfo file
+	 * @throws IOException
+	 */
+	public static void markComplete(String descriptorPath) throws IOException{
+		File descriptor = new File(descriptorPath);
+		BufferedReader input = new BufferedReader(new FileReader(descriptor));
+		StringBuffer buffer = new StringBuffer();
+		String text;
+		try{
+			while ((text = input.readLine()) != null){
+				if (text.contains("<"+COMPLETE_ELEMENT+">"))
+					buffer.append("\t<"+COMPLETE_ELEMENT+">true</"+COMPLETE_ELEMENT+">\n");
+				else
+					buffer.append(text+"\n");
+			}
+		}
+		finally{
+			input.close();
+		}
+		replace(descriptor, buffer.toString());
+	}
+	
+	/**
+	 * A descriptor is not complete while the pre parser is still appending its _part files,
+	 * or if the pre parser has been interrupted. Descriptors without the marker have been saved at the end of the pre parse.
+	 * 
+	 * @param descriptorPath: the path of the _partsInfo file
+	 * @return true if the descriptor exists and lists all the _part files of the source
+	 * @throws IOException
+	 */
+	public static boolean isComplete(String descriptorPath) throws IOException{
+		File descriptor = new File(descriptorPath);
+		if (!descriptor.exists())
+			return false;
+		BufferedReader input = new BufferedReader(new FileReader(descriptor));
+		String text;
+		try{
+			while ((text = input.readLine()) != null){
+				if (text.contains("<"+COMPLETE_ELEMENT+">"))
+					return text.contains(">true<");
+			}
+		}
+		finally{
+			input.close();
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes the new descriptor text to a temporary file which replaces the descriptor,
+	 * so an interrupted write never leaves a truncated descriptor
+	 */
+	private static void replace(File descriptor, String text) throws IOException{
+		File tmp = new File(descriptor.getAbsolutePath()+".tmp");
+		FileWriter output = new FileWriter(tmp);
+		try{
+			output.write(text);
+		}
+		finally{
+			output.close();
+		}
+		Files.move(tmp.toPath(), descriptor.toPath(), 
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Writes the block describing a single _part file
+	 */
+	private static void appendPartBlock(StringBuffer buffer, PartInfo i){
+		buffer.append("\t<part-file>\n");
+		buffer.append("\t\t<path>"+i.getFilePath()+"</path>\n");
+		buffer.append("\t\t<checkpoints>"+i.getCheckpoints()+"</checkpoints>\n");
+		buffer.append("\t\t<last-checkpoint>0</last-checkpoint>\n");
+		buffer.append("\t\t<last-offset>0</last-offset>\n");
+		buffer.append("\t\t<complete>false</complete>\n");
+		buffer.append("\t\t<length>"+Glitterizer.clearFormatLenght(i.getLength())+"</length>\n");
+		if (i.isVirtual()){
+			buffer.append("\t\t<range-start>"+i.getRangeStart()+"</range-start>\n");
+			buffer.append("\t\t<range-end>"+i.getRangeEnd()+"</range-end>\n");
+			buffer.append("\t\t<checkpoint-index>"+i.getIndexPath()+"</checkpoint-index>\n");
+		}
+		else if (i.getCheckpointOffsets()!=null){
+			//used to resume the parse from the last checkpoint without reading the previous records
+			buffer.append("\t\t<checkpoint-offsets>");
+			long[] offsets = i.getCheckpointOffsets();
+			for (int k=0; k<offsets.length; k++){
+				if (k>0)
+					buffer.append(" ");
+				buffer.append(offsets[k]);
+			}
+			buffer.append("</checkpoint-offsets>\n");
+		}
+		if (i.getVenues()!=null){
+			//used to give the _part files of different venues to the parser threads
+			buffer.append("\t\t<venues>");
+			String[] venues = i.getVenues();
+			for (int k=0; k<venues.length; k++){
+				if (k>0)
+					buffer.append(" ");
+				buffer.append(venues[k]);
+			}
+			buffer.append("</venues>\n");
+		}
+		buffer.append("\t</part-file>\n");
+	}
 
 }
\ No newline at end of file
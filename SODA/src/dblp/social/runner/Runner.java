@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Properties;
 
@@ -15,17 +17,36 @@ import dblp.social.exceptions.PoolException;
 import dblp.social.exceptions.SodaHibernateException;
 import dblp.social.exceptions.ThreadException;
 import dblp.social.hibernate.ISodaHibernateSession;
+import dblp.social.hibernate.SessionFactoryCache;
 import dblp.social.hibernate.SessionsPool;
 import dblp.social.hibernate.SodaHibernateSessionFactory;
 import dblp.social.hibernate.SodaModelProvider;
+import dblp.social.importer.BulkLoader;
+import dblp.social.importer.BulkStagingFile;
+import dblp.social.importer.ConcurrencyController;
+import dblp.social.importer.DblpBulkHandler;
+import dblp.social.importer.DblpDictionaries;
+import dblp.social.importer.DblpDictionaryThread;
 import dblp.social.importer.DblpParser;
-import dblp.social.importer.DblpParserThread;
+import dblp.social.importer.ParserWorkerPool;
+import dblp.social.importer.PartFilesFeeder;
+import dblp.social.importer.ImportBatch;
+import dblp.social.importer.ImportMetrics;
+import dblp.social.importer.PersonNameCache;
 import dblp.social.importer.ThreadMonitor;
+import dblp.social.importer.VenueLinker;
+import dblp.social.loader.DescriptorLoader;
 import dblp.social.loader.PartFile;
 import dblp.social.loader.PartFilesPool;
+import dblp.social.loader.ProgressJournal;
+import dblp.social.preparser.MappedPreParser;
+import dblp.social.preparser.PartFilesQueue;
 import dblp.social.preparser.PreParser;
 import dblp.social.preparser.XMLPartsInfo;
 import dblp.social.updater.DblpUpdater;
+import dblp.social.updater.StaleRecordRemover;
+import dblp.social.updater.StreamedPartsFeeder;
+import dblp.social.updater.StreamedPartsQueue;
 import dblp.social.utility.Glitterizer;
 
 /**
@@ -40,10 +61,66 @@ public class Runner {
 	private static final long AVG_PARTFILES_SIZE = 2*1024*1024; //2 MegaBytes
 	private static final int CHECKPOINT_STEP= 50; 	
 	private static final int MAX_THREADS = 4;
+	//max number of _part files written by the pre parser and not yet taken by the parser threads
+	private static final int PIPELINE_QUEUE_SIZE = 2*MAX_THREADS;
 	
 	private static Properties props;
 	private static Logger logger = Logger.getLogger(Runner.class);
 	private static String descriptor;
+	private static boolean mappedPreParser = false;
+	private static boolean pipelined = false;
+	private static boolean virtualParts = false;
+	private static boolean twoPass = false;
+	//the folder of the staging files written by the bulk importer, within the _part files folder
+	private static final String BULK_SUBFOLDER = "bulk";
+	//the folder of the staging files written by the first pass of a two-pass import
+	private static final String DICTIONARIES_SUBFOLDER = "dictionaries";
+	//written once the dictionaries of a two-pass import have been loaded into the db
+	private static final String DICTIONARIES_MARKER = "dictionaries.loaded";
+	
+	/**
+	 * Chooses the pre parser used to split the source file.
+	 * @param mapped true to use the memory-mapped parallel pre parser, false to use the line by line one
+	 */
+	public static void setMappedPreParser(boolean mapped){
+		mappedPreParser = mapped;
+	}
+	
+	/**
+	 * Chooses whether the source is split in virtual parts: byte ranges of the source which are
+	 * not written to disk. Virtual parts are produced by the memory-mapped pre parser.
+	 * @param virtual true to import directly from the source file
+	 */
+	public static void setVirtualParts(boolean virtual){
+		virtualParts = virtual;
+	}
+	
+	/**
+	 * Chooses whether the multi-thread importer parses the _part files while the pre parser is still writing them.
+	 * @param pipeline true to run pre parser and parser threads at the same time
+	 */
+	public static void setPipelined(boolean pipeline){
+		pipelined = pipeline;
+	}
+	
+	/**
+	 * Chooses whether the importer runs in two passes: the first pass loads the persons and the venues 
+	 * (see DblpDictionaries), the second one imports the publications linking them by id.
+	 * The first pass reads every part file, so a two-pass import is never pipelined.
+	 * @param twoPassImport true to run the importer in two passes
+	 */
+	public static void setTwoPass(boolean twoPassImport){
+		twoPass = twoPassImport;
+	}
+	
+	/**
+	 * Chooses the parser of the importer: the StAX pull parser, which reads each record as a whole,
+	 * or the SAX parser (default). See DblpPullParser.
+	 * @param pull true to import the _part files with the pull parser
+	 */
+	public static void setPullParser(boolean pull){
+		DblpParser.setPullParser(pull);
+	}
 	
 	/**
 	 * Runs the parser in multi-thread mode
@@ -63,6 +140,28 @@ public class Runner {
 			logger.error("No db config file found");
 			return;
 		}
+		try{
+			discardIncompletePreParse(dblpXMLfilePath);
+		}
+		catch (IOException e){
+			logger.error("Error while reading the part file descriptor: "+e.getMessage());
+			return;
+		}
+		if (pipelined && !twoPass && !new File(descriptorPath(dblpXMLfilePath)).exists()){
+			//the source has not been pre parsed yet: the pre parser and the parser threads run together
+			boolean parseDone=false;
+			try{
+				parseDone = runPipeline(dblpXMLfilePath);
+			}
+			catch (Exception e){
+				e.printStackTrace();
+			}
+			if (parseDone){
+				deletePartFiles();
+				storeFingerprints(dblpXMLfilePath);
+			}
+			return;
+		}
 		try{
 			runPreParser(dblpXMLfilePath);
 		}
@@ -78,8 +177,10 @@ public class Runner {
 		catch (Exception e){
 			e.printStackTrace();
 		}
-		if (parseDone)
+		if (parseDone){
 			deletePartFiles();
+			storeFingerprints(dblpXMLfilePath);
+		}
 	}
 	
 	/**
@@ -115,12 +216,56 @@ public class Runner {
 		catch (Exception e){
 			e.printStackTrace();
 		}
-		if (parseDone)
+		if (parseDone){
 			deletePartFiles();
+			storeFingerprints(dblpXMLfilePath);
+		}
 	}
 	
 	/**
-	 * Runs the updater in multi-thread mode
+	 * Runs the bulk importer: the part files are parsed into per-table staging files which are then 
+	 * loaded into the db with LOAD DATA (or multi-row INSERT statements). 
+	 * The bulk importer can only be used on an empty db, it does not support checkpoints: 
+	 * if it fails the db has to be cleared before running it again.
+	 * @param dblpXMLfilePath the dblp XML file path
+	 */
+	public static void runImporterBulk(String dblpXMLfilePath){
+		System.out.println("Running dblp importer (bulk load)");
+		try {
+			loadDbConfigurations();
+		} 
+		catch (IOException e) {
+			logger.error("Error while reading the db properties file");
+			return;
+		} 
+		
+		if (props==null){
+			logger.error("No db config file found");
+			return;
+		}
+		try{
+			runPreParser(dblpXMLfilePath);
+		}
+		catch (Exception e){
+			logger.error("Exception while running pre parser: ");
+			e.printStackTrace();
+		}
+		boolean parseDone=false;
+		try{
+			parseDone = runBulkLoader();
+		}
+		catch (Exception e){
+			e.printStackTrace();
+		}
+		if (parseDone){
+			deletePartFiles();
+			storeFingerprints(dblpXMLfilePath);
+		}
+	}
+	
+	/**
+	 * Runs the updater in multi-thread mode: the new entries are streamed into the parser threads, no update file is written.
+	 * An interrupted update is resumed by running the updater again.
 	 * @param dblpXMLfilePath the dblp XML file path needed to update the current informations on the db
 	 */
 	public static void runUpdaterMultiThread(String dblpXMLfilePath){
@@ -137,16 +282,16 @@ public class Runner {
 			logger.error("No db config file found");
 			return;
 		}
-		String xmlUpdateFile="";
-		//run updater (prepare a new xml file to be imported)
+		//run updater (stream the new entries into the parser threads)
 		try{
-			xmlUpdateFile = runUpdater(dblpXMLfilePath);
+			DblpUpdater updater = createUpdater();
 			deletePartFiles();
-			runPreParser(xmlUpdateFile);
 			boolean parseDone=false;
-			parseDone = runParserMultiThread();
-			if (parseDone)
+			parseDone = runUpdateStream(updater, dblpXMLfilePath, updaterThreads());
+			if (parseDone){
 				deletePartFiles();
+				storeUpdateFingerprints(updater);
+			}
 			clearUpdateInfo();
 			
 		}
@@ -176,13 +321,17 @@ public class Runner {
 		String xmlUpdateFile="";
 		//run updater (prepare a new xml file to be imported)
 		try{
-			xmlUpdateFile = runUpdater(dblpXMLfilePath);
+			DblpUpdater updater = createUpdater();
+			xmlUpdateFile = runUpdater(updater, dblpXMLfilePath, 1);
+			removeStaleRecords();
 			deletePartFiles();
 			runPreParser(xmlUpdateFile);
 			boolean parseDone=false;
 			parseDone = runParserSingleThread();
-			if (parseDone)
+			if (parseDone){
 				deletePartFiles();
+				storeUpdateFingerprints(updater);
+			}
 			clearUpdateInfo();
 		}
 		//TODO different exceptions can be handled in different ways
@@ -193,6 +342,14 @@ public class Runner {
 		
 	}
 	
+	/**
+	 * Closes the Hibernate session factories shared by the sessions and their pooled connections.
+	 * To be called once the importer, the updater or the cleaner has ended.
+	 */
+	public static void shutdown(){
+		SessionFactoryCache.close();
+	}
+	
 	/**
 	 * Runs the cleaner. It deletes every stored information.
 	 */
@@ -228,30 +385,200 @@ public class Runner {
 	 * @throws IOException 
 	 */
 	private static void runPreParser(String dblpXMLfilePath) throws IOException, Exception {
+		discardIncompletePreParse(dblpXMLfilePath);
+		String existing = descriptorPath(dblpXMLfilePath);
+		if (new File(existing).exists()){
+			//the source has already been pre parsed
+			System.out.println("Skipping pre parser");
+			descriptor = existing;
+			return;
+		}
+		//without a descriptor the _part files of an interrupted pre parse are stale
+		deletePartFiles();
 		try{
 			descriptor="";
 			logger.debug("Trying to pre parse source file");
 			File input = new File(dblpXMLfilePath);
-			PreParser preParser=new PreParser(input);
-			int partsNumber = Math.round(input.length()/AVG_PARTFILES_SIZE);
-			if (partsNumber < 2)
-				partsNumber=2;
-			descriptor = preParser.preParse(partsNumber,CHECKPOINT_STEP);
+			PreParser preParser = createPreParser(input);
+			descriptor = preParser.preParse(partsNumber(input),CHECKPOINT_STEP);
 			
 			logger.debug("Pre-parse finished");
 		}
 		catch( FileExistsException ex){
+			//only a complete descriptor can be reused
+			if (!XMLPartsInfo.isComplete(existing))
+				throw ex;
 			System.out.println("Skipping pre parser");
-			//If the source has already been pre parsed sets the descriptor
-			String descriptorName= dblpXMLfilePath.replaceAll("./", "");
-			descriptorName = descriptorName.substring(0,descriptorName.lastIndexOf("."));
-			descriptor =PreParser.SUBFOLDER+
-			XMLPartsInfo.INFO_FILESUBFOLDER+
-			"/"+descriptorName+XMLPartsInfo.INFO_FILENAME;
+			descriptor = existing;
 		}
 		
 	}
 	
+	/**
+	 * Discards the descriptor left by an interrupted pipelined pre parse, with its journals and its _part files:
+	 * it lists only the _part files published before the interruption, so the source has to be pre parsed again.
+	 * The records already imported from those _part files are imported again, like the records following the last checkpoint of a resumed _part file.
+	 * @param dblpXMLfilePath the path of the dblp XML file
+	 * @throws IOException
+	 */
+	private static void discardIncompletePreParse(String dblpXMLfilePath) throws IOException{
+		String existing = descriptorPath(dblpXMLfilePath);
+		if (!new File(existing).exists() || XMLPartsInfo.isComplete(existing))
+			return;
+		logger.warn("The pre parse of "+dblpXMLfilePath+" has been interrupted, its _part files are discarded");
+		ProgressJournal.delete(existing);
+		deletePartFiles();
+	}
+	
+	/**
+	 * Runs the pre parser in a separate thread and the parser threads on the _part files it publishes.
+	 * 
+	 * @param dblpXMLfilePath the path of the dblp XML file to be parsed
+	 * @return true if when the parser exits all the parts files have been completed, false otherwise.
+	 * @throws Exception
+	 */
+	private static boolean runPipeline(String dblpXMLfilePath) throws Exception{
+		File input = new File(dblpXMLfilePath);
+		PartFilesQueue queue = new PartFilesQueue(PIPELINE_QUEUE_SIZE);
+		PreParser preParser = createPreParser(input);
+		preParser.setQueue(queue);
+		
+		//Check time taken by pre parse and parse together
+		Calendar begin = Calendar.getInstance();
+		preParser.start();
+		descriptor = queue.getDescriptor();
+		if (descriptor==null){
+			logger.error("The pre parser did not create the descriptor");
+			preParser.join();
+			return false;
+		}
+		
+		PartFilesPool.initialize(descriptor);
+		PartFilesPool pool = PartFilesPool.getInstance();
+		//completed _part files are not needed anymore
+		pool.setDeleteParsedFiles(true);
+		ThreadMonitor monitor = new ThreadMonitor();
+		PartFilesFeeder feeder = new PartFilesFeeder(queue, pool, monitor, descriptor, 
+				input.getAbsolutePath(), CHECKPOINT_STEP, MAX_THREADS);
+		feeder.start();
+		
+		boolean result = runParserMultiThread(monitor);
+		//if the parser stopped before the end the pre parser must be released
+		queue.close();
+		pool.closeFeed();
+		preParser.join();
+		
+		Calendar end = Calendar.getInstance();
+		System.out.println("Pre parse and parse done. Time taken: "+
+				(end.getTimeInMillis() - begin.getTimeInMillis()));
+		return result;
+	}
+	
+	/**
+	 * Runs the updater in a separate thread and the parser threads on the streamed parts it publishes,
+	 * the changed and deleted records are removed by the feeder of the parts.
+	 * The streamed parts are not listed in the descriptor, which is created empty for the pool and the parser threads.
+	 * 
+	 * @param updater the updater
+	 * @param dblpXMLfilePath the path of the dblp XML file
+	 * @param threads the number of updater threads
+	 * @return true if the whole update has been imported, false otherwise.
+	 * @throws Exception
+	 */
+	private static boolean runUpdateStream(final DblpUpdater updater, final String dblpXMLfilePath, final int threads) throws Exception{
+		descriptor = new XMLPartsInfo(new File(DblpUpdater.XML_UPDATER_FILE), PreParser.SUBFOLDER, CHECKPOINT_STEP)
+			.savePartFileInfo();
+		PartFilesPool.initialize(descriptor);
+		PartFilesPool pool = PartFilesPool.getInstance();
+		ThreadMonitor monitor = new ThreadMonitor();
+		final StreamedPartsQueue queue = new StreamedPartsQueue(PIPELINE_QUEUE_SIZE);
+		ISodaHibernateSession session = 
+			SodaHibernateSessionFactory.getSession(props.getProperty("dbUrl"),
+					props.getProperty("dbDialect"),
+					props.getProperty("dbDriverName"), 
+					props.getProperty("dbUser"), 
+					props.getProperty("dbPasswd"), 
+					new SodaModelProvider());
+		if (!session.isOpen())
+			session.open();
+		
+		//Check time taken by update and parse together
+		Calendar begin = Calendar.getInstance();
+		Thread producer = new Thread("updater"){
+			@Override
+			public void run(){
+				updater.streamUpdate(dblpXMLfilePath, threads, queue, (int)AVG_PARTFILES_SIZE, CHECKPOINT_STEP);
+			}
+		};
+		producer.setDaemon(true);
+		producer.start();
+		StreamedPartsFeeder feeder = new StreamedPartsFeeder(queue, pool, monitor, session, 
+				new File(DblpUpdater.DELETED_KEYS_FILE), MAX_THREADS);
+		feeder.start();
+		
+		boolean result = false;
+		try{
+			result = runParserMultiThread(monitor);
+		}
+		finally{
+			//if the parser stopped before the end the updater and the feeder must be released
+			if (!result){
+				queue.abort();
+				pool.closeFeed();
+			}
+			feeder.join();
+			producer.join();
+			session.close();
+			updater.closeFingerprintStore();
+		}
+		result = result && feeder.isComplete();
+		System.out.println(feeder);
+		logger.debug(feeder);
+		
+		Calendar end = Calendar.getInstance();
+		System.out.println("Update and parse done. Time taken: "+
+				(end.getTimeInMillis() - begin.getTimeInMillis()));
+		return result;
+	}
+	
+	/**
+	 * Creates the pre parser chosen with setMappedPreParser(boolean) and setVirtualParts(boolean)
+	 * @param input the dblp XML file
+	 * @return a pre parser
+	 */
+	private static PreParser createPreParser(File input){
+		if (mappedPreParser || virtualParts){
+			MappedPreParser preParser = 
+				new MappedPreParser(input, null, partsNumber(input), CHECKPOINT_STEP, null);
+			preParser.setVirtualParts(virtualParts);
+			return preParser;
+		}
+		return new PreParser(input, null, partsNumber(input), CHECKPOINT_STEP, null);
+	}
+	
+	/**
+	 * @param input the dblp XML file
+	 * @return the number of _part files to be generated
+	 */
+	private static int partsNumber(File input){
+		int partsNumber = Math.round(input.length()/AVG_PARTFILES_SIZE);
+		if (partsNumber < 2)
+			partsNumber=2;
+		return partsNumber;
+	}
+	
+	/**
+	 * @param dblpXMLfilePath the dblp XML file path
+	 * @return the path of the descriptor written by the pre parser for the given source
+	 */
+	private static String descriptorPath(String dblpXMLfilePath){
+		String descriptorName= dblpXMLfilePath.replaceAll("./", "");
+		descriptorName = descriptorName.substring(0,descriptorName.lastIndexOf("."));
+		return PreParser.SUBFOLDER+
+		XMLPartsInfo.INFO_FILESUBFOLDER+
+		"/"+descriptorName+XMLPartsInfo.INFO_FILENAME;
+	}
+	
 	/**
 	 * Method reading the db configuration file, written following the java.util.Properties "standards".
 	 * These properties are needed to create an Hibernate session to save the data that will be parsed.
@@ -268,6 +595,15 @@ public class Runner {
 			props.load(propertiesInputStream);
 		}
 		propertiesInputStream.close();
+		//optional: the max number of idle connections pooled by the Hibernate session factory
+		if (props.getProperty("dbPoolSize")!=null){
+			try{
+				SessionFactoryCache.setPoolSize(Integer.parseInt(props.getProperty("dbPoolSize").trim()));
+			}
+			catch (NumberFormatException e){
+				logger.error("Invalid db pool size, using the default: "+e.getMessage());
+			}
+		}
 	}
 	
 	/**
@@ -281,34 +617,46 @@ public class Runner {
 	 * @throws ThreadException
 	 */
 	private static boolean runParserMultiThread() throws SAXException, IOException, PoolException, SodaHibernateException, ThreadException{
+		//creates a pool of part files
+		PartFilesPool.initialize(descriptor);
+		//Creates a threadMonitor which will take care of threads synchronization
+		return runParserMultiThread(new ThreadMonitor());
+	}
+	
+	/**
+	 * Runs the parser in multi-thread mode on the initialized part files pool. 
+	 * If the pool feed is open the parser waits for new part files until the feed is closed.
+	 * 
+	 * @param monitor the thread monitor
+	 * @return true if when the parser exits all the parts files have been completed, false otherwise.
+	 */
+	private static boolean runParserMultiThread(ThreadMonitor monitor) throws SAXException, IOException, PoolException, SodaHibernateException, ThreadException{
 		
 		System.out.println("Starting dblp parser (multithread)");
 		
 		boolean result=false;
-		//creates a pool of part files
-		PartFilesPool.initialize(descriptor);
 		PartFilesPool pool = PartFilesPool.getInstance();
-		PartFile pf;
 		
 		//TODO this code can be removed
 		//Checks time taken to parse - step 1: starting time
 		Calendar begin = Calendar.getInstance();
 		
-		//Creates a threadMonitor which will take care of threads synchronization
-		ThreadMonitor monitor = new ThreadMonitor();
-		
 		int max;
 		//sets max number of concurrent threads. Note, this number has to be
 		//lower or equal than the number of sessions in the pool. 
 		//The best number of concurrent threads depends on many different aspects, 
 		//anyway, according to experimental observations 3 is a reasonable choice.				
-		if (pool.availableObjectsNumber()<=MAX_THREADS){
+		if (pool.isFeedOpen()){
+			//the part files are still being written
+			max = MAX_THREADS;
+		}
+		else if (pool.availableObjectsNumber()<=MAX_THREADS){
 			max = pool.availableObjectsNumber();
 		}
 		else {
 			max=MAX_THREADS;
 		}
-		if (pool.availableObjectsNumber()==0){
+		if (pool.availableObjectsNumber()==0 && !pool.isFeedOpen()){
 			System.out.println("No part files available. This happens because:\n" +
 					"\tThere are no par files at all;\n" +
 					"\tAll part files are already completely parsed");
@@ -318,105 +666,87 @@ public class Runner {
 		monitor.setThreadsNumber(max);
 		monitor.setMaxThreads(max);
 		//Creates a pool of Hibernate sessions: each thread will use one of these sessions
-		//therefore the number of session has to be greater or equal than the number of
+		//therefore the max number of sessions has to be greater or equal than the number of
 		//max concurrent thread. Too many sessions will lead to a memory leak, the 
-		//chosen strategy is to create many sessions as the number of max 
+		//pool starts with one session and grows up to the number of max 
 		//concurrent thread
 		SessionsPool.initialize(props.getProperty("dbUrl"),
 				props.getProperty("dbDialect"),
 				props.getProperty("dbDriverName"), 
 				props.getProperty("dbUser"), 
 				props.getProperty("dbPasswd"), 
-				max);
+				1, max);
 		SessionsPool sessionPool = SessionsPool.getInstance();
+		configureSessions(sessionPool);
 		
 		//Takes a session from the pool to update the database scheme,
 		//then sends back the session to the pool	
 		ISodaHibernateSession session = sessionPool.getSession();
 		session.updateSchema();
-		sessionPool.sessionBackToPool(session);
-		session=null;
-		
-		
-		//vars used to control the while loop launching separate threads to parse
-		//different part files.
-		//cont: a simple counter, if all the file in the pool can not be updated the 
-		//threads will attempt to restart for 3 times 
-		//(some errors as duplicate author tags can be overcome this way)
-		int cont =0;
-		boolean blockParser = false;
-		
-		
-			
-		//main loop: here threads will be launched until the parse is finished
-		//or the application encounters an error that can not overcome by itself
-		while (pool.availableObjectsNumber()>0 && !blockParser && !monitor.terminateProcess()){
-			//if the previous iteration was stopped by the monitor (monitor.setCloseThreads(true)
-			//we need to reset it.
-			monitor.setCloseThreads(false);
-			//we try to launch as many threads as possible without exceeding 
-			//the max threads number
-			for (int i=1; i<=monitor.getThreadsNumber();i++){
-				pf = pool.getPartFile();
-				if (pf!=null){
-					//if a part file is already complete we don't need to parse it
-					if (!pf.isComplete()){
-						//initialize a new thread
-						String name = "thread "+i;
-						DblpParserThread thread = 
-							new DblpParserThread(pf, name, monitor);
-						monitor.addThread(name);
-						logger.debug("Starting the thread parsing "+pf.getFile().getName());
-						thread.start();
-					}
-				}
-			}
-			//waits for all threads to finish their tasks
-			monitor.waitForThreads();	
-			//If the parser finds an error that can not be overcome by restarting the threads 
-			//it must be stopped
-			//Note that the parser can recover form errors such as duplicated values 
-			//for authors tag by simply restarting the threads
-			//anyway it will attempt to auto recover 3 times
-			if (!pool.hasBeenUpdated())
-				cont++;
-			else
-				cont=0;
-			if (cont > 3)
-				blockParser = !pool.hasBeenUpdated();
-			
-			//to save some memory
-			System.runFinalization();
-			System.gc();
-			
-			//calibrates the threads number for the next restart, the false tag 
-			//indicates that this method
-			//is not called from within a running DblpParserThread
-			monitor.calibrateThreads(false);
-				
-			//TODO this code can be removed
-			//Debug code
-			Runtime r = Runtime.getRuntime();
-			logger.debug("Free memory: "+Glitterizer.clearFormatLenght(r.freeMemory()));
-			logger.debug("Total memory: "+Glitterizer.clearFormatLenght(r.totalMemory()));
-			logger.debug("Max memory: "+Glitterizer.clearFormatLenght(r.maxMemory()));
-			logger.debug("All threads closed\nPart files pool contains "+
-					pool.availableObjectsNumber()+" available objects");
-			logger.debug("block parser is "+blockParser);
+		if (twoPass)
+			runDictionaryPass(session);
+		else
+			initializePersonCache(session);
+		configureImportBatch();
+		configureJournal();
+		configureVenueLinks();
+		configureLocks(monitor);
+		ConcurrencyController controller = configureConcurrency(monitor);
+		ImportMetrics metrics;
+		ParserWorkerPool workers;
+		try{
+			metrics = configureMetrics(monitor, pool);
+			sessionPool.sessionBackToPool(session);
+			session=null;
 			
-			//TODO Debug code
-			System.out.println("Free memory: "+Glitterizer.clearFormatLenght(r.freeMemory()));
-			System.out.println("Total memory: "+Glitterizer.clearFormatLenght(r.totalMemory()));
-			System.out.println("Max memory: "+Glitterizer.clearFormatLenght(r.maxMemory()));
-			System.out.println("All threads closed\nPart files pool contains "+
-					pool.availableObjectsNumber()+" available objects");
-			System.out.println("block parser is "+blockParser);
 			
-			if (!blockParser&& !pool.totalParseFinished()){
-				System.out.println("Restarting all threads");
-				logger.debug("Restarting all threads");
-			}
+			//the workers take the part files with the most bytes to be parsed first, so the 
+			//smallest part files are the last ones and the workers end at about the same time
+			pool.setLargestFirst(true);
+			//each worker takes a new part file as soon as it finishes the previous one, 
+			//the number of workers follows the free memory
+			workers = new ParserWorkerPool(pool, monitor);
+			workers.run();
 		}
+		finally{
+			//the memory thresholds are reset even if the workers failed
+			controller.stop();
+		}
+		//the progress journals are written into the descriptor
+		monitor.getLockOnDescriptor();
+		try{
+			pool.compactProgress(descriptor);
+		}
+		finally{
+			monitor.releaseLockOnDescriptor();
+		}
+		session = sessionPool.getSession();
+		try{
+			linkVenues(session);
+		}
+		finally{
+			sessionPool.sessionBackToPool(session);
+			session = null;
+		}
+		System.out.println(controller);
+		logger.debug(controller);
+		
+		Runtime r = Runtime.getRuntime();
+		logger.debug("Free memory: "+Glitterizer.clearFormatLenght(r.freeMemory()));
+		logger.debug("Total memory: "+Glitterizer.clearFormatLenght(r.totalMemory()));
+		logger.debug("Max memory: "+Glitterizer.clearFormatLenght(r.maxMemory()));
+		System.out.println("All workers closed\nPart files pool contains "+
+				pool.availableObjectsNumber()+" available objects, "+
+				workers.getAbandoned()+" part files abandoned, "+
+				pool.getVenueConflicts()+" part files given sharing a venue with a running thread");
+		printPersonCacheStats();
+		System.out.println(monitor.getLockStats());
+		logger.debug(monitor.getLockStats());
+		System.out.println(sessionPool.getStats());
+		logger.debug(sessionPool.getStats());
+		System.out.println(metrics);
+		logger.debug(metrics);
+		ImportMetrics.close();
 		if (monitor.terminateProcess()){
 			System.out.println("Exit forced");
 			logger.error("Exit forced");
@@ -460,6 +790,13 @@ public class Runner {
 					new SodaModelProvider());
 		
 		session.updateSchema();
+		if (twoPass)
+			runDictionaryPass(session);
+		else
+			initializePersonCache(session);
+		configureImportBatch();
+		configureJournal();
+		configureVenueLinks();
 		
 		
 		//creates a pool of part files
@@ -484,6 +821,9 @@ public class Runner {
 			else
 				pool.giveBack(pf);
 		}
+		pool.compactProgress(descriptor);
+		linkVenues(session);
+		printPersonCacheStats();
 		if (pool.isComplete()){
 			result = true;
 			//TODO this code can be removed
@@ -501,25 +841,460 @@ public class Runner {
 	}
 	
 	
-	private static String runUpdater(String dblpXmlFile) throws SodaHibernateException, IOException, SAXException{
-		String fp=null;
-		if (props!=null){
-			DblpUpdater updater = new DblpUpdater(props.getProperty("dbUrl"),
+	/**
+	 * Parses every part file with a DblpBulkHandler and loads the staging files into the db
+	 * 
+	 * @return true if all the staging files have been loaded, false otherwise.
+	 * @throws Exception
+	 */
+	private static boolean runBulkLoader() throws Exception{
+		
+		System.out.println("Starting dblp parser (bulk load)");
+		Calendar begin = Calendar.getInstance();
+		
+		//creates the schema through Hibernate, so it is the same created by the importer
+		ISodaHibernateSession session = 
+			SodaHibernateSessionFactory.getSession(props.getProperty("dbUrl"),
 					props.getProperty("dbDialect"),
+					props.getProperty("dbDriverName"), 
+					props.getProperty("dbUser"), 
+					props.getProperty("dbPasswd"), 
+					new SodaModelProvider());
+		session.updateSchema();
+		if (!session.isOpen())
+			session.open();
+		Number persons = (Number)session.createSQLQuery("SELECT COUNT(*) FROM Person").uniqueResult();
+		session.close();
+		if (persons.longValue()>0){
+			System.out.println("The bulk importer needs an empty database, use the -c option to clear it");
+			return false;
+		}
+		
+		PartFilesPool.initialize(descriptor);
+		PartFilesPool pool = PartFilesPool.getInstance();
+		DblpBulkHandler handler = new DblpBulkHandler(new File(PreParser.SUBFOLDER+BULK_SUBFOLDER));
+		DblpParser parser = new DblpParser();
+		PartFile pf;
+		while ((pf = pool.getPartFile())!=null){
+			parser.parseRecords(pf, handler);
+			System.out.println("Part file "+pf.getFile().getName()+" parsed: "+
+					handler.getPublicationsNumber()+" publications, "+handler.getPersonsNumber()+" persons");
+		}
+		ArrayList<BulkStagingFile> files = handler.finish();
+		Calendar parsed = Calendar.getInstance();
+		System.out.println("Staging files written. Time taken:  "+(parsed.getTimeInMillis() - begin.getTimeInMillis()));
+		
+		BulkLoader loader = new BulkLoader(props.getProperty("dbUrl"),
+				props.getProperty("dbDriverName"), 
+				props.getProperty("dbUser"), 
+				props.getProperty("dbPasswd"));
+		try{
+			for (BulkStagingFile f : files){
+				long rows = loader.load(f);
+				System.out.println("Table "+f.getTable()+": "+rows+" rows loaded");
+			}
+		}
+		finally{
+			loader.close();
+		}
+		Calendar end = Calendar.getInstance();
+		System.out.println("Bulk load done. Time taken:  "+(end.getTimeInMillis() - begin.getTimeInMillis()));
+		return true;
+	}
+	
+	/**
+	 * Runs the first pass of a two-pass import: every part file is read by parallel DblpDictionaryThreads 
+	 * into the DblpDictionaries, which are resolved and loaded into the db with the BulkLoader.
+	 * Once the dictionaries have been loaded a marker file is written into the dictionaries folder: 
+	 * if it exists (a resumed import) the dictionaries are loaded from the db instead.
+	 * @param session a closed session, it is closed again before returning
+	 * @throws SAXException if a thread could not read its part files
+	 * @throws IOException
+	 * @throws SodaHibernateException if the dictionaries cannot be loaded, or the db contains persons not loaded by a first pass
+	 */
+	private static void runDictionaryPass(ISodaHibernateSession session) throws SAXException, IOException, SodaHibernateException{
+		DblpDictionaries.initialize();
+		DblpDictionaries dictionaries = DblpDictionaries.getInstance();
+		if (dictionaries.isResolved())
+			return;
+		if (!session.isOpen())
+			session.open();
+		File folder = new File(PreParser.SUBFOLDER+DICTIONARIES_SUBFOLDER);
+		File marker = new File(folder, DICTIONARIES_MARKER);
+		Number persons = (Number)session.createSQLQuery("SELECT COUNT(*) FROM Person").uniqueResult();
+		if (persons.longValue()>0){
+			if (!marker.exists()){
+				//the persons have been saved by another import, or by a first pass stopped while loading
+				session.close();
+				DblpDictionaries.close();
+				throw new SodaHibernateException("The db contains persons but the first pass has not been completed: "+
+						"a two-pass import needs an empty db");
+			}
+			dictionaries.load(session);
+			session.close();
+			System.out.println("Dictionaries loaded from the db: "+dictionaries.getPersonsNumber()+" persons, "+
+					dictionaries.getVenuesNumber()+" venues");
+			return;
+		}
+		session.close();
+		//the marker of a previous db
+		marker.delete();
+		
+		System.out.println("Reading the person and venue dictionaries");
+		Calendar begin = Calendar.getInstance();
+		DescriptorLoader dl = new DescriptorLoader(new File(descriptor));
+		dl.parseXmlDescriptor();
+		ArrayList<PartFile> partFiles = dl.getPartFiles();
+		int max = Math.max(1, Math.min(MAX_THREADS, partFiles.size()));
+		ArrayList<DblpDictionaryThread> threads = new ArrayList<DblpDictionaryThread>();
+		for (int i=0; i<max; i++){
+			DblpDictionaryThread t = new DblpDictionaryThread(partFiles, dictionaries, "dictionary-"+i);
+			threads.add(t);
+			t.start();
+		}
+		for (DblpDictionaryThread t : threads){
+			try{
+				t.join();
+			}
+			catch (InterruptedException e){
+				throw new IOException("Interrupted while reading the dictionaries");
+			}
+			if (t.getError()!=null){
+				DblpDictionaries.close();
+				throw new SAXException(t.getError());
+			}
+		}
+		dictionaries.resolve();
+		ArrayList<BulkStagingFile> files = dictionaries.writeStagingFiles(folder);
+		Calendar read = Calendar.getInstance();
+		System.out.println("Dictionaries read: "+dictionaries.getPersonsNumber()+" persons, "+
+				dictionaries.getVenuesNumber()+" venues. Time taken:  "+(read.getTimeInMillis() - begin.getTimeInMillis()));
+		
+		try{
+			BulkLoader loader = new BulkLoader(props.getProperty("dbUrl"),
 					props.getProperty("dbDriverName"), 
 					props.getProperty("dbUser"), 
 					props.getProperty("dbPasswd"));
-			fp = updater.writeUpdateFile(dblpXmlFile);
+			try{
+				for (BulkStagingFile f : files){
+					long rows = loader.load(f);
+					System.out.println("Table "+f.getTable()+": "+rows+" rows loaded");
+					f.getFile().delete();
+				}
+			}
+			finally{
+				loader.close();
+			}
+		}
+		catch (SQLException e){
+			DblpDictionaries.close();
+			throw new SodaHibernateException("Cannot load the dictionaries", e);
+		}
+		if (!marker.createNewFile() && !marker.exists())
+			throw new IOException("Cannot create "+marker.getAbsolutePath());
+		Calendar end = Calendar.getInstance();
+		System.out.println("Dictionaries loaded. Time taken:  "+(end.getTimeInMillis() - read.getTimeInMillis()));
+	}
+	
+	/**
+	 * Creates the person name cache shared by the parser threads and fills it with the persons already 
+	 * stored in the db, so a resumed import does not query the db for the authors saved before.
+	 * The cache is configured by the optional db properties personCacheSize (the max number of cached names) 
+	 * and personCachePolicy (LRU, FIFO or NONE).
+	 * @param session a closed session, it is closed again before returning
+	 * @throws SodaHibernateException
+	 */
+	private static void initializePersonCache(ISodaHibernateSession session) throws SodaHibernateException{
+		int size = PersonNameCache.DEFAULT_CAPACITY;
+		PersonNameCache.EvictionPolicy policy = PersonNameCache.EvictionPolicy.LRU;
+		try{
+			if (props.getProperty("personCacheSize")!=null)
+				size = Integer.parseInt(props.getProperty("personCacheSize").trim());
+			if (props.getProperty("personCachePolicy")!=null)
+				policy = PersonNameCache.EvictionPolicy.valueOf(
+						props.getProperty("personCachePolicy").trim().toUpperCase());
+		}
+		catch (IllegalArgumentException e){
+			logger.error("Invalid person cache configuration, using the default one: "+e.getMessage());
+		}
+		PersonNameCache.initialize(size, policy);
+		PersonNameCache cache = PersonNameCache.getInstance();
+		if (!session.isOpen())
+			session.open();
+		int loaded = cache.warmUp(session);
+		session.close();
+		System.out.println("Person name cache ("+policy+") warmed up with "+loaded+" names");
+	}
+	
+	/**
+	 * Configures the multi-record transactions of the importer handlers.
+	 * The batches are configured by the optional db properties importBatchRecords (the number of records 
+	 * committed together) and importBatchMillis (the max time a batch is left open), by default each record is committed.
+	 */
+	private static void configureImportBatch(){
+		int records = 1;
+		long millis = 0;
+		try{
+			if (props.getProperty("importBatchRecords")!=null)
+				records = Integer.parseInt(props.getProperty("importBatchRecords").trim());
+			if (props.getProperty("importBatchMillis")!=null)
+				millis = Long.parseLong(props.getProperty("importBatchMillis").trim());
+		}
+		catch (NumberFormatException e){
+			logger.error("Invalid import batch configuration, each record will be committed: "+e.getMessage());
+			records = 1;
+			millis = 0;
+		}
+		ImportBatch.configure(records, millis);
+		if (ImportBatch.isEnabled())
+			System.out.println("Records committed in batches of "+records+" records"+
+					(millis>0 ? " or "+millis+" ms" : ""));
+	}
+	
+	/**
+	 * Configures when the progress journals of the part files are synced to the disk, see ProgressJournal.
+	 * The optional db properties journalSyncRecords and journalSyncMillis set the max number of records 
+	 * and the max time (ms) a progress record is left not synced.
+	 */
+	private static void configureJournal(){
+		int records = 32;
+		long millis = 1000;
+		try{
+			if (props.getProperty("journalSyncRecords")!=null)
+				records = Integer.parseInt(props.getProperty("journalSyncRecords").trim());
+			if (props.getProperty("journalSyncMillis")!=null)
+				millis = Long.parseLong(props.getProperty("journalSyncMillis").trim());
+		}
+		catch (NumberFormatException e){
+			logger.error("Invalid progress journal configuration, using the defaults: "+e.getMessage());
+			records = 32;
+			millis = 1000;
+		}
+		ProgressJournal.configure(records, millis);
+	}
+	
+	/**
+	 * Configures how the publications are linked to their venues, see VenueLinker.
+	 * If the optional db property deferredVenueLinks is true the venue collections are not loaded by the importer,
+	 * the links are written when the parser threads are done.
+	 */
+	private static void configureVenueLinks(){
+		boolean deferred = Boolean.parseBoolean(props.getProperty("deferredVenueLinks", "false").trim());
+		VenueLinker.configure(deferred);
+		if (deferred)
+			System.out.println("Publications linked to their venues after the import");
+	}
+	
+	/**
+	 * Writes the pending venue links, also the ones left by a previous import which has been stopped
+	 * @param session the session writing the links
+	 * @throws SodaHibernateException if the links cannot be written, they are left pending
+	 */
+	private static void linkVenues(ISodaHibernateSession session) throws SodaHibernateException{
+		if (!session.isOpen())
+			session.open();
+		VenueLinker linker = new VenueLinker();
+		Calendar begin = Calendar.getInstance();
+		if (linker.link(session)>0){
+			System.out.println(linker+" in "+(Calendar.getInstance().getTimeInMillis()-begin.getTimeInMillis())+" ms");
+			logger.debug(linker);
+		}
+	}
+	
+	/**
+	 * Configures the book and proceedings locks of the parser threads.
+	 * The optional db property lockTimeoutMillis sets the max time a thread waits for a lock, 
+	 * when it expires the thread saves its progress and stops. By default a thread waits until the lock is released.
+	 * @param monitor the thread monitor
+	 */
+	private static void configureLocks(ThreadMonitor monitor){
+		long millis = 0;
+		try{
+			if (props.getProperty("lockTimeoutMillis")!=null)
+				millis = Long.parseLong(props.getProperty("lockTimeoutMillis").trim());
+		}
+		catch (NumberFormatException e){
+			logger.error("Invalid lock timeout, the threads will wait for the locks: "+e.getMessage());
+		}
+		monitor.setLockTimeout(millis);
+	}
+	
+	/**
+	 * Configures the sessions pool.
+	 * The optional db property sessionAcquireTimeoutMillis sets the max time a thread waits for a session,
+	 * sessionValidationMillis the idle time after which a session is validated before being handed out.
+	 * @param sessionPool the sessions pool
+	 */
+	private static void configureSessions(SessionsPool sessionPool){
+		try{
+			if (props.getProperty("sessionAcquireTimeoutMillis")!=null)
+				sessionPool.setAcquireTimeout(Long.parseLong(props.getProperty("sessionAcquireTimeoutMillis").trim()));
+			if (props.getProperty("sessionValidationMillis")!=null)
+				sessionPool.setValidationInterval(Long.parseLong(props.getProperty("sessionValidationMillis").trim()));
+		}
+		catch (NumberFormatException e){
+			logger.error("Invalid sessions pool setting, using the defaults: "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * Creates the controller setting the number of parser threads and sets it on the monitor.
+	 * The optional db properties heapPressureThreshold and heapCriticalThreshold are the fractions of the heap
+	 * above which the threads are halved and stopped, concurrencyIntervalMillis is the time between two adjustments.
+	 * @param monitor the thread monitor
+	 * @return the started controller
+	 */
+	private static ConcurrencyController configureConcurrency(ThreadMonitor monitor){
+		double pressure = ConcurrencyController.DEFAULT_PRESSURE_THRESHOLD;
+		double critical = ConcurrencyController.DEFAULT_CRITICAL_THRESHOLD;
+		ConcurrencyController controller = new ConcurrencyController(monitor);
+		try{
+			if (props.getProperty("heapPressureThreshold")!=null)
+				pressure = Double.parseDouble(props.getProperty("heapPressureThreshold").trim());
+			if (props.getProperty("heapCriticalThreshold")!=null)
+				critical = Double.parseDouble(props.getProperty("heapCriticalThreshold").trim());
+			if (props.getProperty("concurrencyIntervalMillis")!=null)
+				controller.setIntervalMillis(Long.parseLong(props.getProperty("concurrencyIntervalMillis").trim()));
+		}
+		catch (NumberFormatException e){
+			logger.error("Invalid concurrency setting, using the defaults: "+e.getMessage());
+		}
+		monitor.setController(controller);
+		controller.start(pressure, critical);
+		return controller;
+	}
+	
+	/**
+	 * Initializes the import metrics, published as MBeans, and tracks the progress of the part files of the pool.
+	 * The optional db property importMetricsMillis is the time between two metrics log lines, 0 to disable them.
+	 * @param monitor the thread monitor
+	 * @param pool the part files pool
+	 * @return the import metrics
+	 */
+	private static ImportMetrics configureMetrics(ThreadMonitor monitor, PartFilesPool pool){
+		long millis = ImportMetrics.DEFAULT_LOG_MILLIS;
+		try{
+			if (props.getProperty("importMetricsMillis")!=null)
+				millis = Long.parseLong(props.getProperty("importMetricsMillis").trim());
+		}
+		catch (NumberFormatException e){
+			logger.error("Invalid metrics interval, using the default: "+e.getMessage());
+		}
+		ImportMetrics.initialize(monitor, millis);
+		ImportMetrics metrics = ImportMetrics.getInstance();
+		//the part files added later by the pre parser are tracked by the feeder
+		metrics.trackParts(pool.getPartFiles());
+		return metrics;
+	}
+	
+	/**
+	 * Prints the person name cache hits and misses
+	 */
+	private static void printPersonCacheStats(){
+		PersonNameCache cache = PersonNameCache.getInstance();
+		if (cache!=null){
+			System.out.println(cache);
+			logger.debug(cache);
+		}
+	}
+	
+	private static DblpUpdater createUpdater(){
+		return new DblpUpdater(props.getProperty("dbUrl"),
+				props.getProperty("dbDialect"),
+				props.getProperty("dbDriverName"), 
+				props.getProperty("dbUser"), 
+				props.getProperty("dbPasswd"));
+	}
+	
+	private static String runUpdater(DblpUpdater updater, String dblpXmlFile, int threads) throws SodaHibernateException, IOException, SAXException{
+		String fp=null;
+		if (props!=null){
+			fp = updater.writeUpdateFile(dblpXmlFile, threads);
 			
 		}
 		return fp;
 	}
 	
+	/**
+	 * The optional db property updaterThreads sets the number of threads looking for the new entries,
+	 * by default one for each processor.
+	 * @return the number of updater threads
+	 */
+	private static int updaterThreads(){
+		int threads = Runtime.getRuntime().availableProcessors();
+		try{
+			if (props.getProperty("updaterThreads")!=null)
+				threads = Math.max(1, Integer.parseInt(props.getProperty("updaterThreads").trim()));
+		}
+		catch (NumberFormatException e){
+			logger.error("Invalid updater threads number, using "+threads+" threads: "+e.getMessage());
+		}
+		return threads;
+	}
+	
+	/**
+	 * Stores the content hashes of the imported records, used by the next update to find the changed records.
+	 * If they cannot be stored the next update finds only the new records.
+	 * @param dblpXMLfilePath the imported dblp XML file path
+	 */
+	private static void storeFingerprints(String dblpXMLfilePath){
+		try{
+			createUpdater().storeFingerprints(dblpXMLfilePath);
+		}
+		catch (Exception e){
+			logger.error("Cannot store the content hashes of the imported records: "+e.getMessage());
+			e.printStackTrace();
+		}
+	}
+	
+	private static void storeUpdateFingerprints(DblpUpdater updater){
+		try{
+			updater.storeUpdateFingerprints();
+		}
+		catch (Exception e){
+			logger.error("Cannot store the content hashes of the updated records: "+e.getMessage());
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Deletes the records found changed or deleted by the updater, so that the changed ones are imported again
+	 * @throws SodaHibernateException if the records cannot be deleted
+	 * @throws IOException
+	 */
+	private static void removeStaleRecords() throws SodaHibernateException, IOException{
+		File changed = new File(DblpUpdater.CHANGED_KEYS_FILE);
+		File deleted = new File(DblpUpdater.DELETED_KEYS_FILE);
+		if (changed.length()==0 && deleted.length()==0)
+			return;
+		ISodaHibernateSession session = 
+			SodaHibernateSessionFactory.getSession(props.getProperty("dbUrl"),
+					props.getProperty("dbDialect"),
+					props.getProperty("dbDriverName"), 
+					props.getProperty("dbUser"), 
+					props.getProperty("dbPasswd"), 
+					new SodaModelProvider());
+		if (!session.isOpen())
+			session.open();
+		StaleRecordRemover remover = new StaleRecordRemover();
+		Calendar begin = Calendar.getInstance();
+		try{
+			remover.remove(session, changed, deleted);
+		}
+		finally{
+			session.close();
+		}
+		System.out.println(remover+" in "+(Calendar.getInstance().getTimeInMillis()-begin.getTimeInMillis())+" ms");
+	}
+	
 	private static void clearUpdateInfo(){
 		File outputFile = new File(DblpUpdater.XML_UPDATER_FILE);
 		//if a file named XML_UPDATER_FILE already exists first of all deletes it
 		if (outputFile.exists())
 			outputFile.delete();
+		new File(DblpUpdater.CHANGED_KEYS_FILE).delete();
+		new File(DblpUpdater.DELETED_KEYS_FILE).delete();
+		new File(DblpUpdater.FINGERPRINTS_FOLDER).delete();
 	}
 	
 	private static void deletePartFiles(){
@@ -0,0 +1,397 @@
+package dblp.social.updater;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * This class scans the records of a dblp XML file through a large byte window.
+ * The records are found by their start and end tags, only the attributes and fields asked for are decoded:
+ * the other records and the text of the other fields are skipped without creating any String.
+ * The scanner also computes the content hash of a record, a 64 bit hash of its bytes which does not depend
+ * on the spaces and line breaks, used by the updater to find the records changed since the last import.
+ *
+ * A scanner can read a byte range of the file only: the split method gives ranges starting at a record start tag,
+ * so that each record is found by the scanner of exactly one range and the ranges can be scanned in parallel.
+ *
+ * @author Staffiero
+ *
+ */
+public class DblpRecordScanner {
+	public static final String ARTICLE = "article";
+	public static final String INPROCEEDINGS = "inproceedings";
+	public static final String PROCEEDINGS = "proceedings";
+	public static final String BOOK = "book";
+	public static final String INCOLLECTION = "incollection";
+	//the record elements, the first IMPORTED_TAGS are imported into the db, the others are skipped
+	public static final String[] RECORD_TAGS = {ARTICLE, INPROCEEDINGS, PROCEEDINGS, BOOK, INCOLLECTION,
+		"phdthesis", "mastersthesis", "www"};
+	public static final int IMPORTED_TAGS = 5;
+	private static final byte[][] RECORD_NAMES = new byte[RECORD_TAGS.length][];
+	private static final byte[][] RECORD_CLOSE = new byte[RECORD_TAGS.length][];
+	static{
+		for (int i=0; i<RECORD_TAGS.length; i++){
+			RECORD_NAMES[i] = RECORD_TAGS[i].getBytes();
+			RECORD_CLOSE[i] = ("</"+RECORD_TAGS[i]+">").getBytes();
+		}
+	}
+	private static final byte[] DBLP_OPEN = "<dblp>".getBytes();
+	private static final byte[] DBLP_CLOSE_NAME = "/dblp".getBytes();
+	private static final byte[] KEY_ATTRIBUTE = "key=\"".getBytes();
+	//the input window grows only for a record longer than the window
+	private static final int WINDOW_SIZE = 8*1024*1024;
+	//the window used to find the start of a range, which needs only the following record
+	private static final int SPLIT_WINDOW_SIZE = 64*1024;
+
+	private FileChannel input;
+	//the bytes of the range not read yet
+	private long remaining;
+	//the file offset of data[0]
+	private long base;
+	//the bytes read from the input are in data[0, limit), the scanner is at pos
+	private byte[] data;
+	private int limit = 0;
+	private int pos = 0;
+	private boolean eof = false;
+	private char[] chars = new char[256];
+	//the current record is in data[start, end), its start tag ends at startTagEnd
+	private int tag = -1;
+	private int start;
+	private int nameEnd;
+	private int startTagEnd;
+	private int end;
+
+	/**
+	 * The constructor to be used
+	 * @param input the dblp XML file
+	 * @throws IOException
+	 */
+	public DblpRecordScanner(File input) throws IOException{
+		this(input, 0, input.length());
+	}
+
+	/**
+	 * Creates a scanner of a byte range of the file, the records starting in the range are found.
+	 * Only the range starting at 0 has the dblp start tag (see readHeader).
+	 * @param input the dblp XML file
+	 * @param from the offset of the first byte of the range
+	 * @param to the offset following the last byte of the range
+	 * @throws IOException
+	 */
+	public DblpRecordScanner(File input, long from, long to) throws IOException{
+		this(input, from, to, WINDOW_SIZE);
+	}
+
+	private DblpRecordScanner(File input, long from, long to, int windowSize) throws IOException{
+		this.data = new byte[windowSize];
+		this.input = new FileInputStream(input).getChannel();
+		this.input.position(from);
+		this.base = from;
+		this.remaining = to-from;
+	}
+
+	/**
+	 * Splits a dblp XML file into byte ranges starting at a record start tag (the first one at 0)
+	 * @param input the dblp XML file
+	 * @param ranges the number of ranges
+	 * @return the offsets of the ranges: range i goes from offsets[i] to offsets[i+1]. The empty ranges are dropped
+	 * (e.g. a file with fewer records than ranges), so there may be fewer ranges than requested and only the last one
+	 * ends at the end of the file
+	 * @throws IOException
+	 */
+	public static long[] split(File input, int ranges) throws IOException{
+		long length = input.length();
+		long[] offsets = new long[ranges+1];
+		offsets[ranges] = length;
+		for (int i=1; i<ranges; i++){
+			long from = Math.max(offsets[i-1], length/ranges*i);
+			//the first record starting after the given offset, a start tag cannot be within another record
+			DblpRecordScanner scanner = new DblpRecordScanner(input, from, length, SPLIT_WINDOW_SIZE);
+			try{
+				offsets[i] = scanner.next() ? scanner.getOffset() : length;
+			}
+			finally{
+				scanner.close();
+			}
+		}
+		int distinct = 1;
+		for (int i=1; i<=ranges; i++){
+			if (offsets[i]>offsets[distinct-1])
+				offsets[distinct++] = offsets[i];
+		}
+		//an empty file is a single empty range
+		if (distinct==1)
+			offsets[distinct++] = length;
+		return distinct==offsets.length ? offsets : Arrays.copyOf(offsets, distinct);
+	}
+
+	/**
+	 * Moves the scanner after the dblp start tag
+	 * @throws IOException if the input has no dblp element
+	 */
+	public void readHeader() throws IOException{
+		int found;
+		while ((found = indexOf(DBLP_OPEN, 0, this.limit))<0){
+			//the start of the tag may be at the end of the window
+			this.pos = Math.max(0, this.limit-DBLP_OPEN.length);
+			if (!more())
+				throw new IOException("No <dblp> element found");
+		}
+		this.pos = found+DBLP_OPEN.length;
+	}
+
+	/**
+	 * Moves the scanner to the next record, whose content can be read until the following call
+	 * @return false when the end of the dblp element has been reached
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException{
+		this.tag = -1;
+		while (true){
+			int start = indexOf((byte)'<', this.pos, this.limit);
+			if (start<0){
+				this.pos = this.limit;
+				if (!more())
+					return false;
+				continue;
+			}
+			this.pos = start;
+			int nameEnd = nameEnd(start+1);
+			if (nameEnd<0){
+				if (!more())
+					return false;
+				continue;
+			}
+			if (matches(start+1, nameEnd, DBLP_CLOSE_NAME))
+				return false;
+			int tag = recordTag(start+1, nameEnd);
+			if (tag<0){
+				//not a record element, skipped
+				this.pos = nameEnd;
+				continue;
+			}
+			int end = indexOf(RECORD_CLOSE[tag], nameEnd, this.limit);
+			if (end<0){
+				//the record has to be read as a whole
+				if (!more())
+					throw new IOException("The "+RECORD_TAGS[tag]+" element at the end of the file is not closed");
+				continue;
+			}
+			this.tag = tag;
+			this.start = start;
+			this.nameEnd = nameEnd;
+			this.end = end+RECORD_CLOSE[tag].length;
+			int startTagEnd = indexOf((byte)'>', nameEnd, this.end);
+			this.startTagEnd = startTagEnd<0 ? nameEnd : startTagEnd;
+			//the record stays in the window until the next call
+			this.pos = this.end;
+			return true;
+		}
+	}
+
+	/**
+	 * @return the file offset of the current record
+	 */
+	public long getOffset(){
+		return this.base+this.start;
+	}
+
+	/**
+	 * @return the index of the current record element in RECORD_TAGS
+	 */
+	public int getTag(){
+		return this.tag;
+	}
+
+	/**
+	 * @return the name of the current record element
+	 */
+	public String getElement(){
+		return RECORD_TAGS[this.tag];
+	}
+
+	/**
+	 * @return true if the current record is of a kind imported into the db
+	 */
+	public boolean isImported(){
+		return this.tag>=0 && this.tag<IMPORTED_TAGS;
+	}
+
+	/**
+	 * @return the key of the current record without spaces, an empty string if it has no key
+	 */
+	public String getKey(){
+		return attribute(KEY_ATTRIBUTE);
+	}
+
+	/**
+	 * @param name the attribute name followed by ="
+	 * @return the value of an attribute of the current record start tag without spaces, an empty string if it is not found
+	 */
+	public String attribute(byte[] name){
+		int start = indexOf(name, this.nameEnd, this.startTagEnd);
+		if (start<0)
+			return "";
+		start += name.length;
+		int end = indexOf((byte)'"', start, this.startTagEnd);
+		return end<0 ? "" : text(start, end);
+	}
+
+	/**
+	 * @param open the start tag of the field
+	 * @param close the end tag of the field
+	 * @return the text of the first field of the current record with the given tags without spaces,
+	 * an empty string if it is not found
+	 */
+	public String field(byte[] open, byte[] close){
+		int start = indexOf(open, this.startTagEnd, this.end);
+		if (start<0)
+			return "";
+		start += open.length;
+		int end = indexOf(close, start, this.end);
+		return end<0 ? "" : text(start, end);
+	}
+
+	/**
+	 * @return the 64 bit hash of the bytes of the current record, spaces, tabs and line breaks excluded, never 0
+	 */
+	public long getContentHash(){
+		//FNV-1a followed by the murmur3 finalizer
+		long h = 0xcbf29ce484222325L;
+		for (int i=this.start; i<this.end; i++){
+			byte b = this.data[i];
+			if (b==' ' || b=='\t' || b=='\n' || b=='\r')
+				continue;
+			h ^= b & 0xff;
+			h *= 0x100000001b3L;
+		}
+		h ^= h>>>33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h>>>33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h>>>33;
+		return h==0 ? 1 : h;
+	}
+
+	/**
+	 * Writes the bytes of the current record, unchanged
+	 * @param out the output
+	 * @throws IOException
+	 */
+	public void writeRecord(OutputStream out) throws IOException{
+		out.write(this.data, this.start, this.end-this.start);
+	}
+
+	/**
+	 * Closes the input file
+	 * @throws IOException
+	 */
+	public void close() throws IOException{
+		this.input.close();
+	}
+
+	/**
+	 * Reads more bytes from the input, the bytes before pos are discarded
+	 * @return false if the end of the input has been reached
+	 * @throws IOException
+	 */
+	private boolean more() throws IOException{
+		if (this.eof)
+			return false;
+		if (this.pos>0){
+			System.arraycopy(this.data, this.pos, this.data, 0, this.limit-this.pos);
+			this.limit -= this.pos;
+			this.base += this.pos;
+			this.pos = 0;
+		}
+		else if (this.limit==this.data.length){
+			byte[] larger = new byte[this.data.length*2];
+			System.arraycopy(this.data, 0, larger, 0, this.limit);
+			this.data = larger;
+		}
+		int length = (int)Math.min(this.data.length-this.limit, this.remaining);
+		int read = length>0 ? this.input.read(ByteBuffer.wrap(this.data, this.limit, length)) : -1;
+		if (read<0){
+			this.eof = true;
+			return false;
+		}
+		this.limit += read;
+		this.remaining -= read;
+		return true;
+	}
+
+	/**
+	 * @return the end of the element name starting at the given position, -1 if it is not in the window
+	 */
+	private int nameEnd(int from){
+		for (int i=from; i<this.limit; i++){
+			byte b = this.data[i];
+			if (b==' ' || b=='>' || b=='\t' || b=='\n' || b=='\r')
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the index of the record element with the given name, -1 if it is not a record element
+	 */
+	private int recordTag(int from, int to){
+		for (int i=0; i<RECORD_NAMES.length; i++){
+			if (matches(from, to, RECORD_NAMES[i]))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Decodes the ISO-8859-1 bytes in the given range, skipping the spaces, tabs and line breaks
+	 */
+	private String text(int from, int to){
+		if (to-from>this.chars.length)
+			this.chars = new char[to-from];
+		int length = 0;
+		for (int i=from; i<to; i++){
+			char c = (char)(this.data[i] & 0xff);
+			if (c!=' ' && c!='\t' && c!='\n' && c!='\r')
+				this.chars[length++] = c;
+		}
+		return new String(this.chars, 0, length);
+	}
+
+	private boolean matches(int from, int to, byte[] value){
+		if (to-from!=value.length)
+			return false;
+		for (int i=0; i<value.length; i++){
+			if (this.data[from+i]!=value[i])
+				return false;
+		}
+		return true;
+	}
+
+	private int indexOf(byte value, int from, int to){
+		for (int i=from; i<to; i++){
+			if (this.data[i]==value)
+				return i;
+		}
+		return -1;
+	}
+
+	private int indexOf(byte[] value, int from, int to){
+		byte first = value[0];
+		int last = to-value.length;
+		for (int i=from; i<=last; i++){
+			if (this.data[i]!=first)
+				continue;
+			int j = 1;
+			while (j<value.length && this.data[i+j]==value[j])
+				j++;
+			if (j==value.length)
+				return i;
+		}
+		return -1;
+	}
+}
@@ -2,35 +2,65 @@ package dblp.social.updater;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.io.FileInputStream;
 
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 import org.apache.log4j.Logger;
 
+import dblp.social.importer.BulkLoader;
+import dblp.social.importer.BulkStagingFile;
+
 import java.sql.Connection;
 
 /**
  * This class provides methods to fetch a dblp XML file and to create another dblp XML file which contains only new entries (not already stored in the database).
  * 
+ * Once the content hashes of the imported records are stored (see storeFingerprints) the update file contains the changed
+ * entries too: the keys of the changed and of the deleted entries are written into the CHANGED_KEYS_FILE and the DELETED_KEYS_FILE,
+ * to be removed from the db by a StaleRecordRemover before the update file is imported, and the content hashes of the
+ * written entries into a staging file, to be loaded by storeUpdateFingerprints once the update file has been imported.
+ * 
+ * The new and changed entries can also be streamed into the importer without writing the update file (see streamUpdate):
+ * they are published as in-memory part files while the XML file is still being read, the changed entries are removed
+ * part by part by a StreamedPartsFeeder and the content hashes are stored as the parts are imported.
+ * 
  * @author Staffiero
  *
  */
 public class DblpUpdater {
 	
 	public static final String XML_UPDATER_FILE = "database_update_file.xml";
+	public static final String FINGERPRINTS_FOLDER = "fingerprints/";
+	public static final String CHANGED_KEYS_FILE = FINGERPRINTS_FOLDER+"changed_records.txt";
+	public static final String DELETED_KEYS_FILE = FINGERPRINTS_FOLDER+"deleted_records.txt";
+	private static final String FINGERPRINT_TABLE = "RecordFingerprint";
+	private static final String[] FINGERPRINT_COLUMNS = {"dblpKey", "contentHash"};
 	static Logger logger = Logger.getLogger(DblpUpdater.class.getName());
 	private String dbUrl, dbDriverName, dbUser, dbPasswd; 
 	private Connection con;
+	//the content hashes of the entries of the last update file written
+	private BulkStagingFile updateFingerprints = null;
+	//stores the content hashes of the streamed entries as they are imported
+	private FingerprintStore fingerprintStore = null;
 	
 	/**
 	 * The constructor to be used.
@@ -74,6 +104,137 @@ public class DblpUpdater {
 		outputFile.createNewFile();
 		return outputFile;
 	}
+	/**
+	 * Loads the ids of the records stored in the db, so that the records of the XML file are not looked up one by one
+	 * @return the loaded ids, null if they cannot be loaded
+	 */
+	private RecordIdSet loadRecordIds(){
+		Calendar begin = Calendar.getInstance();
+		System.out.println("Loading the ids of the stored records");
+		RecordIdSet ids = new RecordIdSet();
+		try{
+			ids.load("jdbc:"+this.dbUrl, this.dbUser, this.dbPasswd);
+		}
+		catch (SQLException e){
+			logger.error("Cannot load the ids of the stored records, each record will be looked up in the database: "+e.getMessage());
+			return null;
+		}
+		long timeTaken = Calendar.getInstance().getTimeInMillis() - begin.getTimeInMillis();
+		System.out.println("Loaded "+ids.size()+" ids in "+timeTaken+" ms");
+		logger.debug("Loaded "+ids.size()+" ids in "+timeTaken+" ms");
+		return ids;
+	}
+	
+	/**
+	 * Loads the content hashes of the records stored in the db
+	 * @return the loaded content hashes, null if there are none (e.g. the db has been imported by a previous version)
+	 */
+	private RecordFingerprints loadFingerprints(){
+		Calendar begin = Calendar.getInstance();
+		System.out.println("Loading the content hashes of the stored records");
+		RecordFingerprints fingerprints = new RecordFingerprints();
+		try{
+			fingerprints.load("jdbc:"+this.dbUrl, this.dbUser, this.dbPasswd);
+		}
+		catch (SQLException e){
+			logger.error("Cannot load the content hashes of the stored records: "+e.getMessage());
+			return null;
+		}
+		if (fingerprints.size()==0){
+			System.out.println("No content hashes stored, only the new entries will be found");
+			return null;
+		}
+		long timeTaken = Calendar.getInstance().getTimeInMillis() - begin.getTimeInMillis();
+		System.out.println("Loaded "+fingerprints.size()+" content hashes in "+timeTaken+" ms");
+		logger.debug("Loaded "+fingerprints.size()+" content hashes in "+timeTaken+" ms");
+		return fingerprints;
+	}
+	
+	/**
+	 * @return the staging file of the content hashes, an existing file is overwritten
+	 */
+	private static BulkStagingFile createFingerprintStaging() throws IOException{
+		File folder = new File(FINGERPRINTS_FOLDER);
+		folder.mkdirs();
+		return new BulkStagingFile(folder, FINGERPRINT_TABLE, FINGERPRINT_COLUMNS);
+	}
+	
+	/**
+	 * Computes the content hashes of the imported records of the given XML file and stores them in the db,
+	 * to be called once the file has been imported
+	 * @param dblpXmlFile the imported dblp XML file
+	 * @return the number of stored content hashes
+	 * @throws IOException
+	 * @throws SQLException
+	 */
+	public long storeFingerprints(String dblpXmlFile) throws IOException, SQLException{
+		Calendar begin = Calendar.getInstance();
+		System.out.println("Computing the content hashes of the imported records");
+		BulkStagingFile staging = createFingerprintStaging();
+		DblpRecordScanner scanner = new DblpRecordScanner(new File(dblpXmlFile));
+		try{
+			scanner.readHeader();
+			while (scanner.next()){
+				if (!scanner.isImported())
+					continue;
+				String key = scanner.getKey();
+				if (key.length()>0)
+					staging.writeRow(key, Long.valueOf(scanner.getContentHash()));
+			}
+		}
+		finally{
+			scanner.close();
+			staging.close();
+		}
+		long stored = loadFingerprints(staging);
+		long timeTaken = Calendar.getInstance().getTimeInMillis() - begin.getTimeInMillis();
+		System.out.println("Stored "+stored+" content hashes in "+timeTaken+" ms");
+		logger.debug("Stored "+stored+" content hashes in "+timeTaken+" ms");
+		return stored;
+	}
+	
+	/**
+	 * Stores the content hashes of the entries of the update file written by writeUpdateFile, to be called once it has been imported
+	 * @return the number of stored content hashes
+	 * @throws IOException
+	 * @throws SQLException
+	 */
+	public long storeUpdateFingerprints() throws IOException, SQLException{
+		if (this.updateFingerprints==null)
+			return 0;
+		long stored = loadFingerprints(this.updateFingerprints);
+		this.updateFingerprints = null;
+		System.out.println("Stored "+stored+" content hashes");
+		logger.debug("Stored "+stored+" content hashes");
+		return stored;
+	}
+	
+	/**
+	 * Closes the connection storing the content hashes of the streamed entries, to be called once the import has ended
+	 * @return the number of content hashes stored while the streamed entries were imported
+	 */
+	public long closeFingerprintStore(){
+		if (this.fingerprintStore==null)
+			return 0;
+		long stored = this.fingerprintStore.getStored();
+		this.fingerprintStore.close();
+		this.fingerprintStore = null;
+		System.out.println("Stored "+stored+" content hashes of the streamed entries");
+		logger.debug("Stored "+stored+" content hashes of the streamed entries");
+		return stored;
+	}
+	
+	private long loadFingerprints(BulkStagingFile staging) throws IOException, SQLException{
+		BulkLoader loader = new BulkLoader(this.dbUrl, this.dbDriverName, this.dbUser, this.dbPasswd);
+		try{
+			return loader.load(staging);
+		}
+		finally{
+			loader.close();
+			staging.getFile().delete();
+		}
+	}
+	
 	/**
 	 * Fetches the given XML file and writes the XML_UPDATER_FILE, an XML file containing all the entries found in the given XML file but not in the database.
 	 * 
@@ -83,6 +244,19 @@ public class DblpUpdater {
 	 * @throws SAXException
 	 */
 	public String writeUpdateFile(String dblpXmlFile) throws IOException{
+		return writeUpdateFile(dblpXmlFile, 1);
+	}
+	
+	/**
+	 * Fetches the given XML file and writes the XML_UPDATER_FILE, the XML file is split into byte ranges
+	 * parsed in parallel, each one by its own thread and connection.
+	 * 
+	 * @param dblpXmlFile
+	 * @param threads the number of ranges and threads
+	 * @return the absolute path of the xml update file
+	 * @throws IOException
+	 */
+	public String writeUpdateFile(String dblpXmlFile, int threads) throws IOException{
 		
 		String updateFilePath="";
 		//checks if the source file exists
@@ -91,15 +265,11 @@ public class DblpUpdater {
 		if (!input.exists())
 			throw new FileNotFoundException("File "+dblpXmlFile+" not found");
 		
-
-		String databaseUrl = "jdbc:"+this.dbUrl;	
 		try{
 			Class.forName(this.dbDriverName);
-			this.con = 
-				DriverManager.getConnection(databaseUrl, this.dbUser,this.dbPasswd);
 		}
 		catch (Exception e){
-			logger.error("Cannot open a connection to the database: "+e.getMessage());
+			logger.error("Cannot load the database driver: "+e.getMessage());
 			e.printStackTrace();
 		}
 
@@ -115,17 +285,26 @@ public class DblpUpdater {
 			//ad hoc parser			
 			try {
 				Calendar begin = Calendar.getInstance();
-				System.out.println("Looking for new entries");
+				System.out.println("Looking for new entries"+(threads>1 ? " ("+threads+" threads)" : ""));
 				
 				//parses the given XML file		
-				DblpUpdaterParser parser = new DblpUpdaterParser(this.con, input, output);
-				parser.parse();
-				try {
-					this.con.close();
-				} catch (SQLException e) {
-					logger.error("Cannot close connection: "+e.getMessage());
-					e.printStackTrace();
+				RecordFingerprints fingerprints = loadFingerprints();
+				RecordIdSet recordIds = fingerprints==null ? loadRecordIds() : null;
+				BulkStagingFile staging = createFingerprintStaging();
+				Writer changed = new FileWriter(CHANGED_KEYS_FILE);
+				int[] entries;
+				try{
+					entries = parseRanges(input, output, null, threads, recordIds, fingerprints, staging, changed);
+					this.updateFingerprints = staging;
 				}
+				finally{
+					changed.close();
+					staging.close();
+				}
+				System.out.println("Found "+entries[0]+" new entries"+
+						(fingerprints!=null ? " and "+entries[1]+" changed entries" : ""));
+				if (fingerprints!=null)
+					writeDeletedKeys(fingerprints);
 				Calendar end = Calendar.getInstance();
 				long timeTaken = end.getTimeInMillis() - begin.getTimeInMillis();
 				System.out.println("All new entries stored in "+XML_UPDATER_FILE+
@@ -140,6 +319,205 @@ public class DblpUpdater {
 		return updateFilePath;
 	}
 	
+	/**
+	 * Fetches the given XML file and publishes the new and changed entries in the given queue, as streamed parts
+	 * imported while the file is still being read. The XML file is split into byte ranges parsed in parallel.
+	 * The keys of the deleted entries are written into the DELETED_KEYS_FILE before the queue is closed;
+	 * if the entries cannot be fetched the queue is aborted.
+	 * The content hashes are stored as the parts are imported (or by storeUpdateFingerprints if none is stored yet),
+	 * so that running the updater again resumes an interrupted update: closeFingerprintStore has to be called once the import has ended.
+	 * 
+	 * @param dblpXmlFile
+	 * @param threads the number of ranges and threads
+	 * @param queue the queue of the streamed parts
+	 * @param partSize the size (bytes) of a streamed part
+	 * @param checkpointsStep the number of entries between two checkpoints of a streamed part
+	 */
+	public void streamUpdate(String dblpXmlFile, int threads, StreamedPartsQueue queue, int partSize, int checkpointsStep){
+		try{
+			File input = new File(dblpXmlFile);
+			if (!input.exists())
+				throw new FileNotFoundException("File "+dblpXmlFile+" not found");
+			Class.forName(this.dbDriverName);
+			Calendar begin = Calendar.getInstance();
+			System.out.println("Streaming new entries into the importer"+(threads>1 ? " ("+threads+" threads)" : ""));
+			
+			RecordFingerprints fingerprints = loadFingerprints();
+			RecordIdSet recordIds = fingerprints==null ? loadRecordIds() : null;
+			BulkStagingFile staging = null;
+			StreamSettings stream = new StreamSettings(queue, input.getAbsolutePath(), partSize, checkpointsStep);
+			//without stored content hashes the ones of all the records are stored once the import is complete
+			if (fingerprints==null)
+				staging = createFingerprintStaging();
+			else{
+				this.fingerprintStore = new FingerprintStore("jdbc:"+this.dbUrl, this.dbUser, this.dbPasswd);
+				stream.fingerprintStore = this.fingerprintStore;
+			}
+			int[] entries;
+			try{
+				entries = parseRanges(input, null, stream, threads, recordIds, fingerprints, staging, null);
+				this.updateFingerprints = staging;
+			}
+			finally{
+				if (staging!=null)
+					staging.close();
+			}
+			System.out.println("Found "+entries[0]+" new entries"+
+					(fingerprints!=null ? " and "+entries[1]+" changed entries" : ""));
+			if (fingerprints!=null)
+				writeDeletedKeys(fingerprints);
+			long timeTaken = Calendar.getInstance().getTimeInMillis() - begin.getTimeInMillis();
+			System.out.println("All new entries streamed\nTime taken:  "+timeTaken);
+			logger.debug("All new entries streamed in "+timeTaken+" ms");
+			queue.close();
+		}
+		catch (Exception e){
+			logger.error("Error while streaming the new entries: "+e.getMessage());
+			e.printStackTrace();
+			queue.abort();
+		}
+	}
+	
+	/**
+	 * The queue and the layout of the streamed parts, shared by the parsers of the ranges
+	 */
+	private static class StreamSettings {
+		StreamedPartsQueue queue;
+		String source;
+		int partSize;
+		int checkpointsStep;
+		FingerprintStore fingerprintStore = null;
+		
+		StreamSettings(StreamedPartsQueue queue, String source, int partSize, int checkpointsStep){
+			this.queue = queue;
+			this.source = source;
+			this.partSize = partSize;
+			this.checkpointsStep = checkpointsStep;
+		}
+	}
+	
+	/**
+	 * Parses the byte ranges of the input in parallel and concatenates their output files in order,
+	 * or publishes their streamed parts if the stream settings are given
+	 * @return the number of new and of changed entries
+	 */
+	private int[] parseRanges(final File input, File output, final StreamSettings stream, int threads, final RecordIdSet recordIds, 
+			final RecordFingerprints fingerprints, final BulkStagingFile staging, final Writer changed) throws IOException{
+		final long[] offsets = DblpRecordScanner.split(input, Math.max(1, threads));
+		int ranges = offsets.length-1;
+		final File[] outputs = new File[ranges];
+		if (stream==null){
+			for (int i=0; i<ranges; i++)
+				outputs[i] = ranges==1 ? output : new File(output.getPath()+".part"+i);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(ranges);
+		ArrayList<Future<DblpUpdaterParser>> results = new ArrayList<Future<DblpUpdaterParser>>();
+		int[] entries = new int[2];
+		try{
+			for (int i=0; i<ranges; i++){
+				final int range = i;
+				results.add(executor.submit(new Callable<DblpUpdaterParser>(){
+					public DblpUpdaterParser call() throws IOException, SQLException{
+						return parseRange(input, outputs[range], stream, offsets[range], offsets[range+1], 
+								recordIds, fingerprints, staging, changed);
+					}
+				}));
+			}
+			for (Future<DblpUpdaterParser> f : results){
+				DblpUpdaterParser parser = waitFor(f);
+				entries[0] += parser.getNewEntries();
+				entries[1] += parser.getChangedEntries();
+			}
+		}
+		finally{
+			executor.shutdownNow();
+		}
+		if (ranges>1 && stream==null)
+			concatenate(outputs, output);
+		return entries;
+	}
+	
+	private DblpUpdaterParser parseRange(File input, File output, StreamSettings stream, long from, long to, RecordIdSet recordIds, 
+			RecordFingerprints fingerprints, BulkStagingFile staging, Writer changed) throws IOException, SQLException{
+		Connection con = DriverManager.getConnection("jdbc:"+this.dbUrl, this.dbUser, this.dbPasswd);
+		try{
+			DblpUpdaterParser parser;
+			if (stream!=null){
+				StreamedPartWriter writer = 
+					new StreamedPartWriter(stream.queue, stream.source, stream.partSize, stream.checkpointsStep);
+				writer.setFingerprintStore(stream.fingerprintStore);
+				parser = new DblpUpdaterParser(con, input, writer, from, to);
+			}
+			else
+				parser = new DblpUpdaterParser(con, input, output, from, to);
+			parser.setRecordIds(recordIds);
+			if (fingerprints!=null)
+				parser.setFingerprints(fingerprints, changed);
+			parser.setFingerprintOutput(staging);
+			parser.parse();
+			return parser;
+		}
+		finally{
+			con.close();
+		}
+	}
+	
+	private static DblpUpdaterParser waitFor(Future<DblpUpdaterParser> f) throws IOException{
+		try{
+			return f.get();
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while looking for new entries");
+		}
+		catch (ExecutionException e){
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Writes the given files into the output, in order, and deletes them
+	 */
+	private static void concatenate(File[] parts, File output) throws IOException{
+		FileChannel out = new FileOutputStream(output).getChannel();
+		try{
+			for (File part : parts){
+				FileChannel in = new FileInputStream(part).getChannel();
+				try{
+					long position = 0;
+					long size = in.size();
+					while (position<size)
+						position += in.transferTo(position, size-position, out);
+				}
+				finally{
+					in.close();
+				}
+				part.delete();
+			}
+		}
+		finally{
+			out.close();
+		}
+	}
+	
+	/**
+	 * Writes the keys of the stored records not found by the parser into the DELETED_KEYS_FILE
+	 */
+	private void writeDeletedKeys(RecordFingerprints fingerprints) throws IOException, SQLException{
+		Writer deleted = new FileWriter(DELETED_KEYS_FILE);
+		long written;
+		try{
+			written = fingerprints.writeDeleted("jdbc:"+this.dbUrl, this.dbUser, this.dbPasswd, deleted);
+		}
+		finally{
+			deleted.close();
+		}
+		System.out.println("Found "+written+" deleted entries");
+		logger.debug("Found "+written+" deleted entries");
+	}
+	
 	/**
 	 * Test method to check new entries using SAX. Due to a SAX bug, in order to run this method with a large XML file (around 20MB or larger) jre1.6.0_14 or higher is required
 	 * 
@@ -177,7 +555,8 @@ public class DblpUpdater {
 			updateFilePath=output.getAbsolutePath();
 				
 			//creates an updater content handler
-			DefaultHandler handl = new TestHandler(this.con, output);
+			TestHandler handl = new TestHandler(this.con, output);
+			handl.setRecordIds(loadRecordIds());
 			xmlReader.setContentHandler(handl);
 			
 			try {
@@ -1,22 +1,38 @@
 package dblp.social.updater;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.sql.SQLException;
 
 import org.apache.log4j.Logger;
 
+import dblp.social.importer.BulkStagingFile;
 import dblp.social.importer.DblpIdUtility;
 
 /**
  * This class provides a simple parser. 
  * This parser only recognizes some dblp tags needed to execute the stored queries.
+ * The input file is read by a DblpRecordScanner: only the key, url, year and volume of the imported records are decoded,
+ * the other records and the text of the other fields are skipped without creating any String.
+ * The new records are copied unchanged into the output file.
  * The stored queries are written knowing the result of the database mapping executed by Hibernate.
  * 
+ * When the content hashes of the stored records are given (see setFingerprints) the records are not looked up
+ * by their ids: the content hash of each record is compared with the stored one, so that the changed records
+ * are written into the output file too and their keys into the stale keys output.
+ * 
+ * A parser can read a byte range of the input only (see DblpRecordScanner.split), so that the ranges are parsed
+ * in parallel: the stored ids, the content hashes and the stale keys and fingerprint outputs can be shared
+ * by the parsers of the ranges, each one with its own connection and output file.
+ * Instead of an output file a parser can be given a StreamedPartWriter: the records are then published
+ * as streamed parts, imported while the input is still being read, and carry the keys of the changed records.
+ * 
  * If the mapping changes also the static strings defined in this class need to be changed.
  * 
  * 
@@ -25,11 +41,11 @@ import dblp.social.importer.DblpIdUtility;
  */
 public class DblpUpdaterParser {
 	static Logger logger = Logger.getLogger(DblpUpdaterParser.class.getName());
-	private static final String INCOLLECTION = "incollection";
-	private static final String INPROCEEDINGS = "inproceedings";
-	private static final String PROCEEDINGS = "proceedings";
-	private static final String ARTICLE = "article";
-	private static final String BOOK = "book";
+	private static final String INCOLLECTION = DblpRecordScanner.INCOLLECTION;
+	private static final String INPROCEEDINGS = DblpRecordScanner.INPROCEEDINGS;
+	private static final String PROCEEDINGS = DblpRecordScanner.PROCEEDINGS;
+	private static final String ARTICLE = DblpRecordScanner.ARTICLE;
+	private static final String BOOK = DblpRecordScanner.BOOK;
 	
 	private static final String ARTICLE_TABLE ="Article";
 	private static final String ARTICLE_ID ="publicationId";
@@ -45,12 +61,26 @@ public class DblpUpdaterParser {
 	private static final String PROCEEDINGS_ID ="proceedingsId";
 	private static final String DBLP_KEY = "dblpKey";
 	
+	private static final byte[] URL_OPEN = "<url>".getBytes();
+	private static final byte[] URL_CLOSE = "</url>".getBytes();
+	private static final byte[] YEAR_OPEN = "<year>".getBytes();
+	private static final byte[] YEAR_CLOSE = "</year>".getBytes();
+	private static final byte[] VOLUME_OPEN = "<volume>".getBytes();
+	private static final byte[] VOLUME_CLOSE = "</volume>".getBytes();
+	private static final byte[] HEADER = ("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>" +
+			"\n<!DOCTYPE dblp SYSTEM \"dblp.dtd\">" +
+			"\n<dblp>\n").getBytes();
+	private static final byte[] FOOTER = "</dblp>\n".getBytes();
+	private static final int OUTPUT_BUFFER_SIZE = 1024*1024;
+	
 	private Connection con;
 	private String currElement="";
-	private FileWriter output;
-
-	private FileReader input;
-	private StringBuffer buffer;
+	private DblpRecordScanner scanner;
+	private OutputStream output = null;
+	private StreamedPartWriter stream = null;
+	//the header is written by the parser of the first range, the footer by the parser of the last one
+	private boolean header;
+	private boolean footer;
 	private String dblpKey="";
 	private String url="";
 	private String year="";
@@ -62,6 +92,13 @@ public class DblpUpdaterParser {
 	private PreparedStatement findProceedings;
 	private PreparedStatement findJournal;
 	private int newEntries = 0;
+	private int changedEntries = 0;
+	//the ids of the stored records, null if each record is looked up in the db
+	private RecordIdSet recordIds = null;
+	//the content hashes of the stored records, null if the records are looked up by their ids
+	private RecordFingerprints fingerprints = null;
+	private BulkStagingFile fingerprintOutput = null;
+	private Writer staleKeysOutput = null;
 	
 	/**
 	 * The constructor to be used.
@@ -71,12 +108,47 @@ public class DblpUpdaterParser {
 	 * @throws IOException
 	 */
 	public DblpUpdaterParser(Connection con, File input, File output) throws IOException{
+		this(con, input, output, 0, input.length());
+	}
+	
+	/**
+	 * Creates a parser of a byte range of the input, starting at a record start tag.
+	 * The output file of the range starts with the XML prolog only if the range starts at 0
+	 * and ends with the dblp end tag only if the range ends at the end of the input,
+	 * so the output files of the ranges can be concatenated.
+	 * @param con a connection trough the database
+	 * @param input the input XML file
+	 * @param output the output file of the range
+	 * @param from the offset of the first byte of the range
+	 * @param to the offset following the last byte of the range
+	 * @throws IOException
+	 */
+	public DblpUpdaterParser(Connection con, File input, File output, long from, long to) throws IOException{
+		this(con, input, from, to);
+		this.output = new BufferedOutputStream(new FileOutputStream(output), OUTPUT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Creates a parser of a byte range of the input which publishes the records through the given writer
+	 * @param con a connection trough the database
+	 * @param input the input XML file
+	 * @param stream the writer of the streamed parts of the range
+	 * @param from the offset of the first byte of the range
+	 * @param to the offset following the last byte of the range
+	 * @throws IOException
+	 */
+	public DblpUpdaterParser(Connection con, File input, StreamedPartWriter stream, long from, long to) throws IOException{
+		this(con, input, from, to);
+		this.stream = stream;
+	}
+	
+	private DblpUpdaterParser(Connection con, File input, long from, long to) throws IOException{
 		this.con = con;
-		this.output = new FileWriter(output);
-		this.input = new FileReader(input);
 		if (this.con==null)
 			throw new IOException("null connection in DblpUpdaterHandler constructor");
-		this.buffer = new StringBuffer();
+		this.scanner = new DblpRecordScanner(input, from, to);
+		this.header = from==0;
+		this.footer = to==input.length();
 		//note that we cannot look for a Book, Journal or Proceedings only trough its
 		//key (the url) because the book|Journal|Proceedings entry could have been 
 		//created after finding a incollection|article|proccedings.
@@ -124,106 +196,170 @@ public class DblpUpdaterParser {
 	
 	
 	/**
-	 * Reads a stream of chars from the input XML file.
+	 * Sets the preloaded ids of the stored records, used instead of the queries
+	 * @param recordIds the loaded ids
+	 */
+	public void setRecordIds(RecordIdSet recordIds){
+		this.recordIds = recordIds;
+	}
+	
+	/**
+	 * Sets the content hashes of the stored records: the records are compared with them instead of being looked up by their ids
+	 * @param fingerprints the loaded content hashes
+	 * @param staleKeysOutput receives the keys of the changed records, one for each line, null if they are streamed with the records
+	 */
+	public void setFingerprints(RecordFingerprints fingerprints, Writer staleKeysOutput){
+		this.fingerprints = fingerprints;
+		this.staleKeysOutput = staleKeysOutput;
+	}
+	
+	/**
+	 * Sets the staging file of the RecordFingerprint table, which receives the key and the content hash
+	 * of the records written into the output file (of all the imported records if no content hashes are set)
+	 * @param fingerprintOutput a staging file with the dblpKey and contentHash columns
+	 */
+	public void setFingerprintOutput(BulkStagingFile fingerprintOutput){
+		this.fingerprintOutput = fingerprintOutput;
+	}
+	
+	/**
+	 * Reads the input XML file and writes the records which are not in the db, or have changed, into the output file
+	 * or the streamed parts.
 	 * 
 	 * @throws IOException
 	 */
 	public void parse() throws IOException{
-		char c;
-		String text="";
-		String tagname="";
-		
-		//the first 3 lines of the dblp xml are supposed to be:
-		//<?xml version="1.0" encoding="ISO-8859-1"?>
-		//<!DOCTYPE dblp SYSTEM "dblp.dtd">
-		//<dblp>
-		boolean read=true;
-		while (read){
-			c = (char)input.read();
-			text = text+c;
-			if (c=='>'){
-				if (text.contains("<dblp>")){
-					read = false;
-				}
+		try{
+			//the prolog of the input is replaced by the standard one:
+			//<?xml version="1.0" encoding="ISO-8859-1"?>
+			//<!DOCTYPE dblp SYSTEM "dblp.dtd">
+			//<dblp>
+			if (this.header){
+				this.scanner.readHeader();
+				if (this.output!=null)
+					this.output.write(HEADER);
+			}
+			//read the document body
+			while (this.scanner.next()){
+				if (this.scanner.isImported())
+					readRecord();
 			}
+			if (this.footer && this.output!=null)
+				this.output.write(FOOTER);
+			if (this.stream!=null)
+				this.stream.flush();
 		}
-		buffer.append("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>" +
-				"\n<!DOCTYPE dblp SYSTEM \"dblp.dtd\">" +
-				"\n<dblp>\n");
-		flushBuffer();
-		text="";
-		boolean skip=true;
-		boolean closingTag=false;
-		int a;
-		//read the document body
-		while ((a =input.read()) != -1){
-			c = (char)a;
-			//read an xml tag
-			if(c=='<'){
-				text = text+c;
-				c = (char)input.read();
-				if (c=='/'){
-					closingTag=true;
-				}
-				else{
-					tagname = tagname+c;
-					closingTag=false;
-				}
-				text = text+c;
-				//read the whole tag name
-				boolean readName=true;
-				while (c!='>'){
-					c = (char)input.read();
-					if (c==' ' || c=='>')
-						readName = false;
-					if (readName){
-						tagname = tagname+c;
-					}
-					text = text+c;
-				}
-				tagname.toLowerCase();
-				//here in text we have an XML tag: <...>, it can be an opening tag
-				//or a closing tag (to know it evaluate the boolean variable closingTag
-				if (tagname.compareTo("article")==0 ||
-						tagname.compareTo("inproceedings")==0 ||
-						tagname.compareTo("proceedings")==0 ||
-						tagname.compareTo("book")==0 ||
-						tagname.compareTo("incollection")==0 ||
-						tagname.compareTo("phdthesis")==0 ||
-						tagname.compareTo("mastersthesis")==0 ||
-						tagname.compareTo("www")==0||
-						tagname.compareTo("dblp")==0){
-					//if text contains a "main" tag it is sent to parseString
-					buffer.append(text+"\n");
-					parseString(text);
-					text="";
-					tagname="";
-				}
-				else{
-					//if the tag is an opening tag set the boolean variable 
-					//skip to false
-					if (!closingTag)
-						skip=false;
-					else{
-						//the tag is a closing tag: send the string to parseString
-						//set skip=true
-						buffer.append(text+"\n");
-						parseString(text);
-						text="";
-						skip=true;
+		finally{
+			this.scanner.close();
+			if (this.output!=null)
+				this.output.close();
+		}
+		logger.debug("Found "+newEntries+" new entries and "+changedEntries+" changed entries");
+	}
+	
+	/**
+	 * @return the number of new records written into the output file or the streamed parts
+	 */
+	public int getNewEntries(){
+		return this.newEntries;
+	}
+	
+	/**
+	 * @return the number of changed records written into the output file or the streamed parts
+	 */
+	public int getChangedEntries(){
+		return this.changedEntries;
+	}
+	
+	/**
+	 * Looks up the current record and, if it is a new or changed entry, writes it into the output
+	 * @throws IOException
+	 */
+	private void readRecord() throws IOException{
+		this.currElement = this.scanner.getElement();
+		this.dblpKey = this.scanner.getKey();
+		//the records without key cannot be compared, they are looked up by their ids
+		if (this.fingerprints!=null && this.dblpKey.length()>0){
+			long contentHash = this.scanner.getContentHash();
+			int state = this.fingerprints.compare(this.dblpKey, contentHash);
+			if (state!=RecordFingerprints.UNCHANGED){
+				boolean changed = state==RecordFingerprints.CHANGED;
+				if (changed){
+					if (this.staleKeysOutput!=null){
+						synchronized (this.staleKeysOutput){
+							this.staleKeysOutput.write(this.dblpKey);
+							this.staleKeysOutput.write('\n');
+						}
 					}
-					tagname="";
+					changedEntries++;
 				}
-			}else{
-				if (!skip)
-					text = text+c;
-			}	
+				else
+					newEntries++;
+				writeRecord(contentHash, changed);
+			}
+			this.dblpKey="";
+			return;
+		}
+		this.url = this.scanner.field(URL_OPEN, URL_CLOSE);
+		this.year = this.scanner.field(YEAR_OPEN, YEAR_CLOSE);
+		this.volume = this.scanner.field(VOLUME_OPEN, VOLUME_CLOSE);
+		if (findExistingElements()==0){
+			//if the element is not in the db it is written into the output
+			newEntries++;
+			writeRecord(this.scanner.getContentHash(), false);
 		}
-		this.input.close();
-		this.output.close();
-		System.out.println("Found "+newEntries+" new entries");
+		else
+			writeFingerprint(this.scanner.getContentHash());
+		//clear temporary informations
+		this.volume="";
+		this.year="";
+		this.url="";
+		this.dblpKey="";
 	}
 	
+	/**
+	 * Writes the current record into the output, or the streamed parts, and its content hash into the fingerprint output
+	 */
+	private void writeRecord(long contentHash, boolean changed) throws IOException{
+		if (this.stream!=null)
+			this.stream.write(this.scanner, this.dblpKey, contentHash, changed);
+		else{
+			this.scanner.writeRecord(this.output);
+			this.output.write('\n');
+		}
+		writeFingerprint(contentHash);
+	}
+	
+	private void writeFingerprint(long contentHash) throws IOException{
+		if (this.fingerprintOutput==null || this.dblpKey.length()==0)
+			return;
+		synchronized (this.fingerprintOutput){
+			this.fingerprintOutput.writeRow(this.dblpKey, Long.valueOf(contentHash));
+		}
+	}
+	
+	/**
+	 * @return the id of the current record, its url or its key if it has no url
+	 */
+	private String recordId(){
+		if(this.url.compareTo("")!=0)
+			return this.url;
+		if (this.dblpKey.compareTo("")==0)
+			logger.error("Both url and key are empty");
+		return this.dblpKey;
+	}
+	
+	/**
+	 * Counts the records with the given id in a table, in the preloaded ids if available
+	 * @param table the table, see RecordIdSet
+	 * @param statement the prepared statement counting the records of the table
+	 * @param id the record id
+	 */
+	private int count(int table, PreparedStatement statement, String id) throws SQLException{
+		if (this.recordIds!=null)
+			return this.recordIds.count(table, id, statement);
+		return RecordIdSet.query(statement, id);
+	}
 	
 	private int findExistingElements() throws IOException{
 		int existingElements=0;
@@ -237,19 +373,7 @@ public class DblpUpdaterParser {
 			try{
 				
 				//lookup if the current in-collection already exists
-				if(this.url.compareTo("")==0){
-					if (this.dblpKey.compareTo("")==0)
-						logger.error("Both url and key are empty");
-					else
-						this.findInCollection.setString(1, this.dblpKey);
-				}
-				else
-					this.findInCollection.setString(1, this.url);
-				ResultSet rs = this.findInCollection.executeQuery();
-				if (rs.next()){
-					existingElements = rs.getInt("elements");
-				}
-				rs.close();
+				existingElements = count(RecordIdSet.INCOLLECTION, this.findInCollection, recordId());
 				
 			}
 			catch(Exception e){
@@ -313,28 +437,10 @@ public class DblpUpdaterParser {
 						this.dblpKey, 
 						this.year.substring(2),
 						INPROCEEDINGS);
-				this.findInProceedings.setString(1, id);
-				ResultSet rs = this.findInProceedings.executeQuery();
-				if (rs.next()){
-					existingElements = rs.getInt("elements");
-				}
-				rs.close();
+				existingElements = count(RecordIdSet.INPROCEEDINGS, this.findInProceedings, id);
 				if (existingElements==0){
 					//If no InProceedings are found, look for an Article
-					if(this.url.compareTo("")==0){
-						if (this.dblpKey.compareTo("")==0)
-							logger.error("Both url and key are empty");
-						else
-							this.findArticle.setString(1, this.dblpKey);
-					}
-					else
-						this.findArticle.setString(1, this.url);
-					
-					rs = this.findArticle.executeQuery();
-					if (rs.next()){
-						existingElements = rs.getInt("elements");
-					}
-					rs.close();
+					existingElements = count(RecordIdSet.ARTICLE, this.findArticle, recordId());
 				}
 				
 			}
@@ -392,12 +498,7 @@ public class DblpUpdaterParser {
 						this.dblpKey, 
 						this.volume,
 						ARTICLE);
-				this.findArticle.setString(1, id);
-				ResultSet rs = this.findArticle.executeQuery();
-				if (rs.next()){
-					existingElements = rs.getInt("elements");
-				}
-				rs.close();
+				existingElements = count(RecordIdSet.ARTICLE, this.findArticle, id);
 				
 			}
 			catch(Exception e){
@@ -407,20 +508,7 @@ public class DblpUpdaterParser {
 		}else if(this.currElement.equalsIgnoreCase(BOOK)){
 			try{
 				//lookup if the current book already exists
-				if(this.url.compareTo("")==0){
-					if (this.dblpKey.compareTo("")==0)
-						logger.error("Both url and key are empty");
-					else
-						this.findBook.setString(1, this.dblpKey);
-				}
-				else
-					this.findBook.setString(1, this.url);
-				
-				ResultSet rs = this.findBook.executeQuery();
-				if (rs.next()){
-					existingElements = rs.getInt("elements");
-				}
-				rs.close();
+				existingElements = count(RecordIdSet.BOOK, this.findBook, recordId());
 				
 			}catch(Exception e){
 				logger.error("Error accessing the database "+e.getMessage());
@@ -449,30 +537,10 @@ public class DblpUpdaterParser {
 				String id = DblpIdUtility.createProceedingsId(this.url, 
 						this.dblpKey);
 				
-				this.findProceedings.setString(1, id);
-				ResultSet rs = this.findProceedings.executeQuery();
-				if (rs.next()){
-					existingElements = rs.getInt("elements");
-				}
-				rs.close();
+				existingElements = count(RecordIdSet.PROCEEDINGS, this.findProceedings, id);
 				if (existingElements==0){
 					//If no Proceedings are found, look for a Journal
-					
-					if(this.url.compareTo("")==0){
-						if (this.dblpKey.compareTo("")==0)
-							logger.error("Both url and key are empty");
-						else
-							findJournal.setString(1, this.dblpKey);
-					}
-					else
-						findJournal.setString(1, this.url);
-					
-					
-					rs = findJournal.executeQuery();
-					if (rs.next()){
-						existingElements = rs.getInt("elements");
-					}
-					rs.close();
+					existingElements = count(RecordIdSet.JOURNAL, this.findJournal, recordId());
 				}
 				
 			}
@@ -484,108 +552,4 @@ public class DblpUpdaterParser {
 		}
 		return existingElements;
 	}
-	
-	
-	private void flushBuffer() throws IOException{
-		this.output.write(this.buffer.toString());
-		this.buffer=new StringBuffer();
-	}
-	
-	private void parseString(String text) throws IOException{
-		if(text.contains("<url>") && text.contains("</url>") ){
-			//read an url tag
-			String url = text;
-			url = url.replaceAll(" ", "");
-			url = url.substring(url.indexOf("<url>"), url.indexOf("</url>"));
-			url = url.replaceAll("<url>", "");
-			url = url.replaceAll("\t", "");
-			url = url.replaceAll("\n", "");
-			this.url = url;
-		}else if(text.contains("<year>") && text.contains("</year>")){
-			//read a year tag
-			String year = text;
-			year = year.substring(year.indexOf("<year>"), year.indexOf("</year>"));
-			year = year.replaceAll("<year>", "");
-			year = year.replaceAll("\t", "");
-			year = year.replaceAll("\n", "");	
-			year = year.replaceAll(" ", "");	
-			this.year=year;
-		}else if(text.contains("<volume>") && text.contains("</volume>")){
-			//read a volume tag
-			String volume = text;
-			volume = volume.substring(volume.indexOf("<volume>"), volume.indexOf("</volume>"));
-			volume = volume.replaceAll("<volume>", "");
-			volume = volume.replaceAll("\t", "");
-			volume = volume.replaceAll("\n", "");	
-			volume = volume.replaceAll(" ", "");	
-			this.volume = volume;
-		}else if (text.contains("</article>") ||
-				text.contains("</inproceedings>") ||
-				text.contains("</proceedings>") ||
-				text.contains("</book>") ||
-				text.contains("</incollection>") ||
-				text.contains("</phdthesis>") ||
-				text.contains("</mastersthesis>") ||
-				text.contains("</www>")){
-			if(text.contains("</phdthesis>") ||
-					text.contains("</mastersthesis>") ||
-					text.contains("</www>")){
-				this.buffer=new StringBuffer();
-			}else {
-			//when the end of a main tag is reached
-				if (findExistingElements()==0){
-					//if the element is not in the db the buffer is written 
-					//into the output
-					//else the buffer is deleted
-					flushBuffer();
-					newEntries++;
-				}else
-					this.buffer=new StringBuffer();
-			}
-			//clear temporary informations
-			this.volume="";
-			this.year="";
-			this.url="";
-			this.dblpKey="";
-			
-		}else if (text.contains("</dblp>")){
-			//end of document: flush the buffer
-			flushBuffer();
-		}else if (text.contains("<article ") ||
-				text.contains("<inproceedings ") ||
-				text.contains("<proceedings ") ||
-				text.contains("<book ") ||
-				text.contains("<incollection ") ||
-				text.contains("<phdthesis ") ||
-				text.contains("<mastersthesis ") ||
-				text.contains("<www ")){
-			//check if a "main" tag is opened
-			//Set the current entity
-			if (text.contains("<article "))
-				this.currElement = "article";
-			else if (text.contains("<proceedings " ))
-				this.currElement = "proceedings";
-			else if (text.contains("<book "))
-				this.currElement = "book";
-			else if (text.contains("<incollection "))
-				this.currElement = "incollection";
-			else if (text.contains("<inproceedings "))
-				this.currElement = "inproceedings";
-			else if (text.contains("<phdthesis "))
-				this.currElement = "phdthesis";
-			else if (text.contains("<mastersthesis "))
-				this.currElement = "mastersthesis";
-			else if (text.contains("<www "))
-				this.currElement = "www";
-			
-			//Set the dblp Key
-			String key = text;
-			key=key.substring(key.indexOf("key"));
-			key=key.substring(key.indexOf("\"")+1);
-			key=key.substring(0,key.indexOf("\""));
-			key=key.replaceAll(" ", "");
-			this.dblpKey = key;
-		}
-		
-	}
 }
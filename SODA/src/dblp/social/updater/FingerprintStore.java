@@ -0,0 +1,97 @@
+package dblp.social.updater;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class inserts the content hashes of the imported records into the RecordFingerprint table while
+ * the records of an update are streamed into the importer (see StreamedPart), through a single connection
+ * shared by the parser threads. Each call is a batch of inserts committed at once.
+ *
+ * @author Staffiero
+ *
+ */
+public class FingerprintStore {
+	static Logger logger = Logger.getLogger(FingerprintStore.class.getName());
+	private static final String INSERT = "INSERT INTO RecordFingerprint (dblpKey, contentHash) VALUES (?, ?)";
+
+	private String databaseUrl, dbUser, dbPasswd;
+	private Connection con = null;
+	private PreparedStatement insert = null;
+	private long stored = 0;
+
+	/**
+	 * The constructor to be used, the connection is opened by the first store call
+	 * @param databaseUrl the jdbc url (e.g. jdbc:mysql://127.0.0.1:3306/dblp)
+	 * @param dbUser the db user
+	 * @param dbPasswd the db user password
+	 */
+	public FingerprintStore(String databaseUrl, String dbUser, String dbPasswd){
+		this.databaseUrl = databaseUrl;
+		this.dbUser = dbUser;
+		this.dbPasswd = dbPasswd;
+	}
+
+	/**
+	 * Stores the content hashes of the records in the given range, the records without key are skipped
+	 * @param keys the record keys
+	 * @param hashes the record content hashes
+	 * @param from the first record
+	 * @param to the record following the last one
+	 * @throws SQLException if the content hashes cannot be stored, none of them is stored
+	 */
+	public synchronized void store(String[] keys, long[] hashes, int from, int to) throws SQLException{
+		if (this.con==null){
+			this.con = DriverManager.getConnection(this.databaseUrl, this.dbUser, this.dbPasswd);
+			this.con.setAutoCommit(false);
+			this.insert = this.con.prepareStatement(INSERT);
+		}
+		int rows = 0;
+		try{
+			for (int i=from; i<to; i++){
+				if (keys[i].length()==0)
+					continue;
+				this.insert.setString(1, keys[i]);
+				this.insert.setLong(2, hashes[i]);
+				this.insert.addBatch();
+				rows++;
+			}
+			if (rows>0)
+				this.insert.executeBatch();
+			this.con.commit();
+		}
+		catch (SQLException e){
+			this.insert.clearBatch();
+			this.con.rollback();
+			throw e;
+		}
+		this.stored += rows;
+	}
+
+	/**
+	 * @return the number of stored content hashes
+	 */
+	public synchronized long getStored(){
+		return this.stored;
+	}
+
+	/**
+	 * Closes the connection
+	 */
+	public synchronized void close(){
+		if (this.con==null)
+			return;
+		try{
+			this.con.close();
+		}
+		catch (SQLException e){
+			logger.error("Cannot close connection: "+e.getMessage());
+		}
+		this.con = null;
+		this.insert = null;
+	}
+}
@@ -0,0 +1,191 @@
+package dblp.social.updater;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class holds the content hashes of the records stored in the db (the RecordFingerprint table),
+ * loaded once before the updater compares them with the records of a new dblp XML file.
+ * Each dblp key is stored as a 64 bit fingerprint in an open addressing table of longs, next to its content hash:
+ * a record is new if its key is not found, changed if its content hash differs from the stored one.
+ * The keys found in the new file are marked, the stored keys left unmarked are the deleted records.
+ *
+ * Once loaded, compare can be called by several threads.
+ *
+ * Two stored keys with the same fingerprint are found while loading: the records with that fingerprint
+ * are reported as changed, so that they are imported again, and are never reported as deleted.
+ *
+ * @author Staffiero
+ *
+ */
+public class RecordFingerprints {
+	static Logger logger = Logger.getLogger(RecordFingerprints.class.getName());
+	public static final int NEW = 0;
+	public static final int CHANGED = 1;
+	public static final int UNCHANGED = 2;
+	private static final String QUERY = "SELECT dblpKey, contentHash FROM RecordFingerprint";
+	private static final int INITIAL_SIZE = 1<<16;
+
+	private long[] keys = new long[INITIAL_SIZE];
+	private long[] hashes = new long[INITIAL_SIZE];
+	//a bit for each slot, set when the key is found in the new file
+	private AtomicLongArray seen;
+	private int used = 0;
+	private HashSet<Long> ambiguous = new HashSet<Long>();
+
+	/**
+	 * Loads the stored content hashes
+	 * @param databaseUrl the jdbc url (e.g. jdbc:mysql://127.0.0.1:3306/dblp)
+	 * @param dbUser the db user
+	 * @param dbPasswd the db user password
+	 * @throws SQLException if the table cannot be read (e.g. it has not been created yet)
+	 */
+	public void load(String databaseUrl, String dbUser, String dbPasswd) throws SQLException{
+		Connection con = DriverManager.getConnection(databaseUrl, dbUser, dbPasswd);
+		try{
+			ResultSet rs = stream(con, databaseUrl, QUERY);
+			while (rs.next()){
+				String key = rs.getString(1);
+				if (key==null)
+					continue;
+				add(RecordIdSet.fingerprint(0, key), rs.getLong(2));
+			}
+			rs.close();
+		}
+		finally{
+			con.close();
+		}
+		this.seen = new AtomicLongArray((this.keys.length+63)/64);
+		logger.debug("Loaded "+this.used+" content hashes, "+this.ambiguous.size()+" ambiguous fingerprints");
+	}
+
+	/**
+	 * @return a forward only result set, streamed by the mysql driver instead of being read into memory
+	 */
+	private static ResultSet stream(Connection con, String databaseUrl, String query) throws SQLException{
+		Statement st = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		st.setFetchSize(databaseUrl.startsWith("jdbc:mysql:") ? Integer.MIN_VALUE : 10000);
+		return st.executeQuery(query);
+	}
+
+	/**
+	 * Compares a record of the new file with the stored one and marks its key as found
+	 * @param key the dblp key of the record
+	 * @param contentHash the content hash of the record, see DblpRecordScanner
+	 * @return NEW, CHANGED or UNCHANGED
+	 */
+	public int compare(String key, long contentHash){
+		long fingerprint = RecordIdSet.fingerprint(0, key);
+		int slot = find(this.keys, fingerprint);
+		if (this.keys[slot]==0)
+			return NEW;
+		markSeen(slot);
+		if (this.ambiguous.contains(fingerprint))
+			return CHANGED;
+		return this.hashes[slot]==contentHash ? UNCHANGED : CHANGED;
+	}
+
+	/**
+	 * Writes the keys of the stored records which have not been found in the new file, one for each line.
+	 * The keys are streamed from the db again, so they do not have to be kept in memory: the keys stored since
+	 * the content hashes have been loaded (e.g. by the streamed parts already imported) are not in the table and are skipped.
+	 * @param databaseUrl the jdbc url
+	 * @param dbUser the db user
+	 * @param dbPasswd the db user password
+	 * @param out the output
+	 * @return the number of written keys
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public long writeDeleted(String databaseUrl, String dbUser, String dbPasswd, Writer out) throws SQLException, IOException{
+		long deleted = 0;
+		Connection con = DriverManager.getConnection(databaseUrl, dbUser, dbPasswd);
+		try{
+			ResultSet rs = stream(con, databaseUrl, QUERY);
+			while (rs.next()){
+				String key = rs.getString(1);
+				if (key==null)
+					continue;
+				long fingerprint = RecordIdSet.fingerprint(0, key);
+				int slot = find(this.keys, fingerprint);
+				//a key not loaded is not a deleted record
+				if (this.keys[slot]!=fingerprint)
+					continue;
+				if ((this.seen.get(slot>>>6) & (1L<<slot))!=0 || this.ambiguous.contains(fingerprint))
+					continue;
+				out.write(key);
+				out.write('\n');
+				deleted++;
+			}
+			rs.close();
+		}
+		finally{
+			con.close();
+		}
+		return deleted;
+	}
+
+	private void markSeen(int slot){
+		int i = slot>>>6;
+		long bit = 1L<<slot;
+		long word;
+		do{
+			word = this.seen.get(i);
+		}
+		while ((word & bit)==0 && !this.seen.compareAndSet(i, word, word | bit));
+	}
+
+	/**
+	 * @return the number of loaded content hashes
+	 */
+	public int size(){
+		return this.used;
+	}
+
+	private void add(long fingerprint, long contentHash){
+		if (this.used*4>=this.keys.length*3)
+			rehash();
+		int slot = find(this.keys, fingerprint);
+		if (this.keys[slot]==fingerprint){
+			this.ambiguous.add(fingerprint);
+			return;
+		}
+		this.keys[slot] = fingerprint;
+		this.hashes[slot] = contentHash;
+		this.used++;
+	}
+
+	/**
+	 * @return the slot of the fingerprint, or the empty slot where it would be inserted (linear probing)
+	 */
+	private static int find(long[] keys, long fingerprint){
+		int mask = keys.length-1;
+		int i = (int)fingerprint & mask;
+		while (keys[i]!=0 && keys[i]!=fingerprint)
+			i = (i+1) & mask;
+		return i;
+	}
+
+	private void rehash(){
+		long[] largerKeys = new long[this.keys.length*2];
+		long[] largerHashes = new long[this.keys.length*2];
+		for (int i=0; i<this.keys.length; i++){
+			if (this.keys[i]==0)
+				continue;
+			int slot = find(largerKeys, this.keys[i]);
+			largerKeys[slot] = this.keys[i];
+			largerHashes[slot] = this.hashes[i];
+		}
+		this.keys = largerKeys;
+		this.hashes = largerHashes;
+	}
+}
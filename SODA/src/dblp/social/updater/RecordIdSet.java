@@ -0,0 +1,285 @@
+package dblp.social.updater;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import dblp.social.importer.DblpDictionaries;
+
+/**
+ * This class holds the ids of the records stored in the db, loaded once before the updater looks for the new entries,
+ * so that checking whether a record exists does not need a query.
+ * Each id is stored as a 64 bit fingerprint of the table and the id in an open addressing table of longs.
+ * The fingerprint is computed on the collation key of the id (see DblpDictionaries.collationKey): the id columns
+ * are compared by the db ignoring case and trailing spaces, so an id found by the updater exists if the db would find it.
+ * The fingerprints are split in shards, one for each processor, and the tables are loaded in parallel,
+ * each one through its own connection.
+ *
+ * Two ids of the same table with the same fingerprint are found while loading: their fingerprint is marked
+ * as ambiguous and the ids with that fingerprint are looked up in the db (see count).
+ * A new id may have the fingerprint of a stored one and be taken as existing, with a probability
+ * of about stored ids / 2^64 for each lookup.
+ *
+ * @author Staffiero
+ *
+ */
+public class RecordIdSet {
+	static Logger logger = Logger.getLogger(RecordIdSet.class.getName());
+	public static final int ARTICLE = 0;
+	public static final int BOOK = 1;
+	public static final int INCOLLECTION = 2;
+	public static final int INPROCEEDINGS = 3;
+	public static final int JOURNAL = 4;
+	public static final int PROCEEDINGS = 5;
+	//the queries loading the ids of each table, the same rows counted by the updater prepared statements
+	private static final String[] QUERIES = {
+		"SELECT publicationId FROM Article",
+		"SELECT bookId FROM Book WHERE dblpKey<>''",
+		"SELECT publicationId FROM InCollection",
+		"SELECT publicationId FROM InProceedings",
+		"SELECT journalId FROM Journal WHERE dblpKey<>''",
+		"SELECT proceedingsId FROM Proceedings WHERE dblpKey<>''"};
+	private static final int INITIAL_SHARD_SIZE = 1<<12;
+
+	private Shard[] shards;
+	private int shardShift;
+	private HashSet<Long> ambiguous = new HashSet<Long>();
+	private long size = 0;
+
+	/**
+	 * The constructor to be used, the set is empty until load is called
+	 */
+	public RecordIdSet(){
+		int bits = 0;
+		while ((1<<bits)<Runtime.getRuntime().availableProcessors())
+			bits++;
+		this.shards = new Shard[1<<bits];
+		for (int i=0; i<this.shards.length; i++)
+			this.shards[i] = new Shard();
+		//the shard is chosen by the high bits, the slot within the shard by the low bits
+		this.shardShift = 64-bits;
+	}
+
+	/**
+	 * Loads the ids of all the tables, each table is read through its own connection
+	 * @param databaseUrl the jdbc url (e.g. jdbc:mysql://127.0.0.1:3306/dblp)
+	 * @param dbUser the db user
+	 * @param dbPasswd the db user password
+	 * @throws SQLException if a table cannot be read
+	 */
+	public void load(final String databaseUrl, final String dbUser, final String dbPasswd) throws SQLException{
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(QUERIES.length, this.shards.length));
+		ArrayList<Future<Long>> results = new ArrayList<Future<Long>>();
+		try{
+			for (int i=0; i<QUERIES.length; i++){
+				final int table = i;
+				results.add(executor.submit(new Callable<Long>(){
+					public Long call() throws SQLException{
+						return loadTable(table, databaseUrl, dbUser, dbPasswd);
+					}
+				}));
+			}
+			for (Future<Long> f : results)
+				this.size += waitFor(f);
+		}
+		finally{
+			executor.shutdownNow();
+		}
+		logger.debug("Loaded "+this.size+" record ids, "+this.ambiguous.size()+" ambiguous fingerprints");
+	}
+
+	private long waitFor(Future<Long> f) throws SQLException{
+		try{
+			return f.get();
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while loading the record ids");
+		}
+		catch (ExecutionException e){
+			if (e.getCause() instanceof SQLException)
+				throw (SQLException)e.getCause();
+			throw new SQLException("Error while loading the record ids: "+e.getCause());
+		}
+	}
+
+	/**
+	 * Streams the ids of a table into the shards
+	 * @return the number of loaded ids
+	 */
+	private long loadTable(int table, String databaseUrl, String dbUser, String dbPasswd) throws SQLException{
+		Connection con = DriverManager.getConnection(databaseUrl, dbUser, dbPasswd);
+		long loaded = 0;
+		try{
+			Statement st = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			//the mysql driver streams the rows only with this fetch size, otherwise the whole table is read into memory
+			st.setFetchSize(databaseUrl.startsWith("jdbc:mysql:") ? Integer.MIN_VALUE : 10000);
+			ResultSet rs = st.executeQuery(QUERIES[table]);
+			while (rs.next()){
+				String id = rs.getString(1);
+				if (id==null)
+					continue;
+				add(fingerprint(table, id));
+				loaded++;
+			}
+			rs.close();
+			st.close();
+		}
+		finally{
+			con.close();
+		}
+		return loaded;
+	}
+
+	private void add(long fingerprint){
+		Shard shard = shard(fingerprint);
+		boolean added;
+		synchronized (shard){
+			added = shard.add(fingerprint);
+		}
+		if (!added){
+			synchronized (this.ambiguous){
+				this.ambiguous.add(fingerprint);
+			}
+		}
+	}
+
+	/**
+	 * Looks up an id, to be called once the set has been loaded
+	 * @param table the table of the id (ARTICLE, BOOK, etc.)
+	 * @param id the record id
+	 * @return 1 if the id is stored in the table, 0 if it is not, -1 if it has to be looked up in the db
+	 */
+	public int count(int table, String id){
+		long fingerprint = fingerprint(table, id);
+		if (this.ambiguous.contains(fingerprint))
+			return -1;
+		return shard(fingerprint).contains(fingerprint) ? 1 : 0;
+	}
+
+	private Shard shard(long fingerprint){
+		//a shift by 64 bits would not change the fingerprint
+		return this.shards.length==1 ? this.shards[0] : this.shards[(int)(fingerprint>>>this.shardShift)];
+	}
+
+	/**
+	 * Looks up an id, in the db if its fingerprint is ambiguous
+	 * @param table the table of the id (ARTICLE, BOOK, etc.)
+	 * @param id the record id
+	 * @param statement the prepared statement counting the rows with the given id in the table
+	 * @return the number of rows with the given id
+	 * @throws SQLException
+	 */
+	public int count(int table, String id, PreparedStatement statement) throws SQLException{
+		int count = count(table, id);
+		return count>=0 ? count : query(statement, id);
+	}
+
+	/**
+	 * Looks up an id in the db
+	 * @param statement the prepared statement counting the rows with the given id
+	 * @param id the record id
+	 * @return the number of rows with the given id
+	 * @throws SQLException
+	 */
+	public static int query(PreparedStatement statement, String id) throws SQLException{
+		int count = 0;
+		statement.setString(1, id);
+		ResultSet rs = statement.executeQuery();
+		if (rs.next())
+			count = rs.getInt(1);
+		rs.close();
+		return count;
+	}
+
+	/**
+	 * @return the number of loaded ids
+	 */
+	public long size(){
+		return this.size;
+	}
+
+	/**
+	 * @return a 64 bit hash of the table and the collation key of the id, never 0 (the empty slot)
+	 */
+	static long fingerprint(int table, String id){
+		id = DblpDictionaries.collationKey(id);
+		//FNV-1a followed by the murmur3 finalizer
+		long h = 0xcbf29ce484222325L ^ table;
+		for (int i=0; i<id.length(); i++){
+			h ^= id.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h>>>33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h>>>33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h>>>33;
+		return h==0 ? 1 : h;
+	}
+
+	/**
+	 * An open addressing table of fingerprints with linear probing, rehashed when three quarters full
+	 */
+	private static class Shard {
+		private long[] slots = new long[INITIAL_SHARD_SIZE];
+		private int used = 0;
+
+		/**
+		 * @return false if the fingerprint was already in the shard
+		 */
+		boolean add(long fingerprint){
+			if (this.used*4>=this.slots.length*3)
+				rehash();
+			if (!insert(this.slots, fingerprint))
+				return false;
+			this.used++;
+			return true;
+		}
+
+		boolean contains(long fingerprint){
+			int mask = this.slots.length-1;
+			for (int i=(int)fingerprint & mask; ; i=(i+1) & mask){
+				long slot = this.slots[i];
+				if (slot==fingerprint)
+					return true;
+				if (slot==0)
+					return false;
+			}
+		}
+
+		private static boolean insert(long[] slots, long fingerprint){
+			int mask = slots.length-1;
+			for (int i=(int)fingerprint & mask; ; i=(i+1) & mask){
+				long slot = slots[i];
+				if (slot==fingerprint)
+					return false;
+				if (slot==0){
+					slots[i] = fingerprint;
+					return true;
+				}
+			}
+		}
+
+		private void rehash(){
+			long[] larger = new long[this.slots.length*2];
+			for (long slot : this.slots){
+				if (slot!=0)
+					insert(larger, slot);
+			}
+			this.slots = larger;
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package dblp.social.updater;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Collection;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Query;
+
+import dblp.social.exceptions.SodaHibernateException;
+import dblp.social.hibernate.ISodaHibernateSession;
+
+/**
+ * This class removes from the db the records found changed or deleted by the updater, before the update file is imported.
+ * The stored content hashes of the given keys are marked as stale (contentHash=0, a value never computed by the
+ * DblpRecordScanner) one key at a time, then the publications with a stale key are deleted with their authors and
+ * venue links by a few set-based statements, so that the changed ones are imported again as new publications.
+ * The stale keys and the ids of their publications are first copied into two keyed temporary tables, so each
+ * delete is a join on an indexed column instead of a subquery evaluated against every row of the table
+ * (MySQL multi-table DELETE syntax).
+ * The proceedings and books are not deleted, the changed ones are updated in place by the importer:
+ * only their content hashes are removed.
+ * When the update is streamed into the importer the keys are removed part by part, before each part is imported:
+ * the statistics of a remover sum up all its calls.
+ *
+ * @author Staffiero
+ *
+ */
+public class StaleRecordRemover {
+	private static Logger logger = Logger.getLogger(StaleRecordRemover.class);
+
+	private static final String MARK_STALE = "UPDATE RecordFingerprint SET contentHash=0 WHERE dblpKey=?";
+	private static final String[] PUBLICATION_TABLES = {"Article", "InProceedings", "InCollection"};
+	//the temporary tables of the stale keys and of the ids of their publications
+	private static final String[] TEMPORARY_TABLES = {
+		"CREATE TEMPORARY TABLE StaleKey (dblpKey varchar(255) NOT NULL PRIMARY KEY)",
+		"CREATE TEMPORARY TABLE StalePublication (publicationId varchar(255) NOT NULL PRIMARY KEY)"};
+	private static final String DROP_TEMPORARY_TABLES = "DROP TEMPORARY TABLE IF EXISTS StaleKey, StalePublication";
+	private static final String STALE_KEYS = "INSERT INTO StaleKey SELECT dblpKey FROM RecordFingerprint WHERE contentHash=0";
+	//the join tables holding the publication ids: the authors, the venue collections and the pending venue links
+	private static final String[][] PUBLICATION_LINKS = {
+		{"DblpPublication_Authors", "publicationId"},
+		{"Journal_Articles", "articleId"},
+		{"Proceedings_InProceedings", "inproceedingsId"},
+		{"Book_Chapters", "chapterId"},
+		{"PendingVenueLink", "publicationId"}};
+
+	private int stale = 0;
+	private int publications = 0;
+
+	/**
+	 * Removes the records with the given keys, in a single transaction
+	 * @param session an open ISodaHibernateSession
+	 * @param keyFiles the files of the keys, one for each line
+	 * @return the number of deleted publications
+	 * @throws SodaHibernateException if the records cannot be removed, the transaction is rolled back
+	 * @throws IOException if a file of keys cannot be read
+	 */
+	public int remove(ISodaHibernateSession session, File... keyFiles) throws SodaHibernateException, IOException{
+		if (!session.isOpen())
+			throw new SodaHibernateException("The Hibernate session is closed");
+		session.startTransaction();
+		int deleted;
+		try{
+			int stale = 0;
+			for (File f : keyFiles)
+				stale += markStale(session, f);
+			deleted = deleteStale(session, stale);
+			session.endTransaction();
+		}
+		catch (RuntimeException e){
+			session.rollbackTransaction();
+			throw new SodaHibernateException(e);
+		}
+		catch (IOException e){
+			session.rollbackTransaction();
+			throw e;
+		}
+		logger.debug(this);
+		return deleted;
+	}
+	
+	/**
+	 * Removes the records with the given keys, in a single transaction
+	 * @param session an open ISodaHibernateSession
+	 * @param keys the record keys
+	 * @return the number of deleted publications
+	 * @throws SodaHibernateException if the records cannot be removed, the transaction is rolled back
+	 */
+	public int remove(ISodaHibernateSession session, Collection<String> keys) throws SodaHibernateException{
+		if (!session.isOpen())
+			throw new SodaHibernateException("The Hibernate session is closed");
+		session.startTransaction();
+		int deleted;
+		try{
+			int stale = 0;
+			Query mark = session.createSQLQuery(MARK_STALE);
+			for (String key : keys)
+				stale += markStale(mark, key);
+			deleted = deleteStale(session, stale);
+			session.endTransaction();
+		}
+		catch (RuntimeException e){
+			session.rollbackTransaction();
+			throw new SodaHibernateException(e);
+		}
+		return deleted;
+	}
+	
+	/**
+	 * Deletes the publications marked as stale and the stale content hashes
+	 * @param stale the number of content hashes marked as stale
+	 * @return the number of deleted publications
+	 */
+	private int deleteStale(ISodaHibernateSession session, int stale){
+		int deleted = 0;
+		if (stale>0){
+			//the tables may be left on the pooled connection by a rolled back removal
+			session.createSQLQuery(DROP_TEMPORARY_TABLES).executeUpdate();
+			for (String create : TEMPORARY_TABLES)
+				session.createSQLQuery(create).executeUpdate();
+			session.createSQLQuery(STALE_KEYS).executeUpdate();
+			//each publication table is read once, the keys are looked up by the primary key of StaleKey
+			for (String table : PUBLICATION_TABLES)
+				session.createSQLQuery("INSERT IGNORE INTO StalePublication SELECT p.publicationId FROM "+table+
+						" p JOIN StaleKey k ON p.dblpKey=k.dblpKey").executeUpdate();
+			for (String[] link : PUBLICATION_LINKS){
+				session.createSQLQuery("DELETE l FROM "+link[0]+" l JOIN StalePublication s ON l."+link[1]+
+						"=s.publicationId").executeUpdate();
+			}
+			//a publication id found in another table does not delete a publication whose key is not stale
+			for (String table : PUBLICATION_TABLES)
+				deleted += session.createSQLQuery("DELETE p FROM "+table+" p JOIN StalePublication s "+
+						"ON p.publicationId=s.publicationId JOIN StaleKey k ON p.dblpKey=k.dblpKey").executeUpdate();
+			session.createSQLQuery("DELETE f FROM RecordFingerprint f JOIN StaleKey k ON f.dblpKey=k.dblpKey")
+				.executeUpdate();
+			session.createSQLQuery(DROP_TEMPORARY_TABLES).executeUpdate();
+		}
+		this.stale += stale;
+		this.publications += deleted;
+		return deleted;
+	}
+
+	private static int markStale(ISodaHibernateSession session, File keyFile) throws IOException{
+		if (!keyFile.exists())
+			return 0;
+		int marked = 0;
+		Query mark = session.createSQLQuery(MARK_STALE);
+		BufferedReader reader = new BufferedReader(new FileReader(keyFile));
+		try{
+			String key;
+			while ((key = reader.readLine())!=null)
+				marked += markStale(mark, key);
+		}
+		finally{
+			reader.close();
+		}
+		return marked;
+	}
+	
+	private static int markStale(Query mark, String key){
+		if (key.length()==0)
+			return 0;
+		mark.setString(0, key);
+		return mark.executeUpdate();
+	}
+
+	@Override
+	public String toString(){
+		return "Stale records removed: "+this.publications+" publications deleted, "+
+			(this.stale-this.publications)+" proceedings, books or unknown records kept";
+	}
+}
@@ -0,0 +1,149 @@
+package dblp.social.updater;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.sql.SQLException;
+
+import dblp.social.loader.PartFile;
+
+/**
+ * This class defines a part file held in memory: a block of new or changed records found by the updater,
+ * written by a StreamedPartWriter with the xml prolog, the checkpoints and the dblp wrapper of a _part file,
+ * so that it is imported by the parser threads as any other part file but is never written to disk.
+ *
+ * A streamed part has no progress journal: the progress of a parse stopped by an error is kept in memory,
+ * so the part can be given back to the pool and resumed from its last checkpoint. The progress which has to
+ * survive the process is the content hash of each committed record, stored in the RecordFingerprint table
+ * at each checkpoint (see FingerprintStore): an interrupted update is resumed by running the updater again,
+ * the records already imported are then found unchanged and are not streamed again.
+ *
+ * @author Staffiero
+ *
+ */
+public class StreamedPart extends PartFile {
+	private byte[] content;
+	//the key and the content hash of each record, in order
+	private String[] keys;
+	private long[] hashes;
+	//the keys of the records changed since the last import, to be removed from the db before the part is imported
+	private String[] staleKeys;
+	private FingerprintStore fingerprintStore = null;
+	//the records whose content hash has been stored
+	private int storedRecords = 0;
+	private int savedCheckpoint = 0;
+	private int savedOffset = 0;
+	private long length;
+
+	/**
+	 * The constructor to be used
+	 * @param sourcePath the path of the source dblp xml file
+	 * @param name the name of the part, a _part file name which is never created
+	 * @param content the part content, a complete dblp xml document
+	 * @param checkpointOffsets the byte offset of each checkpoint of the content, checkpoint 0 included
+	 * @param checkpointsStep the number of records between two checkpoints
+	 * @param keys the key of each record, empty for the records without key
+	 * @param hashes the content hash of each record
+	 * @param staleKeys the keys of the changed records
+	 */
+	public StreamedPart(String sourcePath, File name, byte[] content, long[] checkpointOffsets, int checkpointsStep,
+			String[] keys, long[] hashes, String[] staleKeys){
+		super(sourcePath, name.getPath(), checkpointOffsets.length, checkpointsStep);
+		this.content = content;
+		this.length = content.length;
+		this.keys = keys;
+		this.hashes = hashes;
+		this.staleKeys = staleKeys;
+		setCheckpointOffsets(checkpointOffsets);
+	}
+
+	/**
+	 * Setter, sets where the content hashes of the committed records are stored, null not to store them
+	 * @param fingerprintStore
+	 */
+	public void setFingerprintStore(FingerprintStore fingerprintStore){
+		this.fingerprintStore = fingerprintStore;
+	}
+
+	/**
+	 * Getter
+	 * @return the keys of the records changed since the last import
+	 */
+	public String[] getStaleKeys(){
+		return this.staleKeys;
+	}
+
+	/**
+	 * Getter
+	 * @return the number of records of the part
+	 */
+	public int getRecords(){
+		return this.keys.length;
+	}
+
+	/**
+	 * Opens the part content from the given checkpoint: the prolog followed by the records starting at the checkpoint
+	 * @param firstCheckpoint: the first checkpoint, 0 to read the whole part
+	 * @return an input stream over the part content
+	 * @throws IOException if the part has already been imported
+	 */
+	@Override
+	public InputStream openInputStream(int firstCheckpoint) throws IOException{
+		if (this.content==null)
+			throw new IOException("The streamed part "+getFile().getName()+" has already been imported");
+		long[] offsets = getCheckpointOffsets();
+		if (firstCheckpoint<=0 || firstCheckpoint>=offsets.length)
+			return new ByteArrayInputStream(this.content);
+		int prolog = (int)offsets[0];
+		int offset = (int)offsets[firstCheckpoint];
+		return new SequenceInputStream(new ByteArrayInputStream(this.content, 0, prolog),
+				new ByteArrayInputStream(this.content, offset, this.content.length-offset));
+	}
+
+	/**
+	 * Saves the progress: the content hashes of the records preceding the last checkpoint, or of all the records
+	 * if the part is complete, are stored. Once complete the content is released.
+	 * @throws IOException if the content hashes cannot be stored
+	 */
+	@Override
+	public void updateDescriptor() throws IOException{
+		if (this.savedCheckpoint<getLastCheckpoint() ||
+				(this.savedCheckpoint==getLastCheckpoint() && this.savedOffset<getLastOffset())){
+			//the flag is reset when the part file is taken from the pool
+			setUpdated(true);
+		}
+		this.savedCheckpoint = getLastCheckpoint();
+		this.savedOffset = getLastOffset();
+		int committed = isComplete() ? this.keys.length :
+			(int)Math.min(this.keys.length, (long)getLastCheckpoint()*getCheckpointsStep());
+		if (this.fingerprintStore!=null && committed>this.storedRecords){
+			try{
+				this.fingerprintStore.store(this.keys, this.hashes, this.storedRecords, committed);
+			}
+			catch (SQLException e){
+				throw new IOException("Cannot store the content hashes of "+getFile().getName()+": "+e.getMessage());
+			}
+			this.storedRecords = committed;
+		}
+		if (isComplete()){
+			this.content = null;
+			this.keys = new String[0];
+			this.hashes = new long[0];
+		}
+	}
+
+	/**
+	 * Estimates the bytes still to be parsed: the content size scaled by the checkpoints not yet reached
+	 * @return the estimated number of bytes to be parsed, 0 if the part is complete
+	 */
+	@Override
+	public long getRemainingSize(){
+		if (isComplete())
+			return 0;
+		if (getCheckpoints()<=0 || getLastCheckpoint()<=0)
+			return this.length;
+		return this.length*Math.max(0, getCheckpoints()-getLastCheckpoint())/getCheckpoints();
+	}
+}
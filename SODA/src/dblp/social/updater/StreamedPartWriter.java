@@ -0,0 +1,136 @@
+package dblp.social.updater;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import dblp.social.preparser.PreParser;
+import dblp.social.preparser.VenueSet;
+
+/**
+ * This class groups the records found by an updater parser into streamed parts and publishes them
+ * in a StreamedPartsQueue. Each part is laid out as a _part file written by the pre parser: the xml prolog,
+ * a checkpoint every checkpointsStep records (checkpoint 0 first) and the dblp end tag.
+ * A part is published as soon as its size reaches the given part size, the last one by flush.
+ *
+ * Each updater parser has its own writer, the parts of the writers share the queue.
+ *
+ * @author Staffiero
+ *
+ */
+public class StreamedPartWriter {
+	private static final byte[] PROLOG = ("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n" +
+			"<!DOCTYPE dblp SYSTEM \"dblp.dtd\">\n" +
+			"<dblp>\n").getBytes();
+	private static final byte[] EPILOG = "</dblp>\n".getBytes();
+	private static final String PART_NAME = "database_update_part";
+
+	private StreamedPartsQueue queue;
+	private String source;
+	private int partSize;
+	private int checkpointsStep;
+	private FingerprintStore fingerprintStore = null;
+	//the part being written, null if no record has been written since the last publish
+	private ByteArrayOutputStream content = null;
+	private ArrayList<Long> offsets = new ArrayList<Long>();
+	private ArrayList<String> keys = new ArrayList<String>();
+	private long[] hashes = new long[1024];
+	private ArrayList<String> staleKeys = new ArrayList<String>();
+	private VenueSet venues;
+
+	/**
+	 * The constructor to be used
+	 * @param queue the queue in which the parts are published
+	 * @param source the path of the dblp xml file read by the updater
+	 * @param partSize the size (bytes) of a part
+	 * @param checkpointsStep the number of records between two checkpoints
+	 */
+	public StreamedPartWriter(StreamedPartsQueue queue, String source, int partSize, int checkpointsStep){
+		this.queue = queue;
+		this.source = source;
+		this.partSize = partSize;
+		this.checkpointsStep = Math.max(1, checkpointsStep);
+	}
+
+	/**
+	 * Setter, sets where the parts store the content hashes of their committed records, null not to store them
+	 * @param fingerprintStore
+	 */
+	public void setFingerprintStore(FingerprintStore fingerprintStore){
+		this.fingerprintStore = fingerprintStore;
+	}
+
+	/**
+	 * Writes the current record of the scanner into the part, the part is published if it is full
+	 * @param scanner the scanner positioned on the record
+	 * @param key the record key, empty if it has no key
+	 * @param contentHash the record content hash
+	 * @param changed true if the record has changed since the last import
+	 * @throws IOException if the queue has been closed
+	 */
+	public void write(DblpRecordScanner scanner, String key, long contentHash, boolean changed) throws IOException{
+		if (this.content==null){
+			this.content = new ByteArrayOutputStream(this.partSize+this.partSize/4);
+			this.content.write(PROLOG);
+			this.venues = new VenueSet();
+		}
+		int records = this.keys.size();
+		if (records%this.checkpointsStep==0)
+			checkpoint(records/this.checkpointsStep);
+		scanner.writeRecord(this.content);
+		this.content.write('\n');
+		if (records==this.hashes.length){
+			long[] larger = new long[this.hashes.length*2];
+			System.arraycopy(this.hashes, 0, larger, 0, records);
+			this.hashes = larger;
+		}
+		this.hashes[records] = contentHash;
+		this.keys.add(key);
+		if (changed)
+			this.staleKeys.add(key);
+		this.venues.addKey(key);
+		if (this.content.size()>=this.partSize)
+			publish();
+	}
+
+	/**
+	 * Publishes the part being written, if any
+	 * @throws IOException if the queue has been closed
+	 */
+	public void flush() throws IOException{
+		if (this.content!=null)
+			publish();
+	}
+
+	private void checkpoint(int number) throws IOException{
+		this.offsets.add(Long.valueOf(this.content.size()));
+		this.content.write(("<checkpoint number=\""+number+"\" />\n").getBytes());
+	}
+
+	private void publish() throws IOException{
+		this.content.write(EPILOG);
+		long[] checkpointOffsets = new long[this.offsets.size()];
+		for (int i=0; i<checkpointOffsets.length; i++)
+			checkpointOffsets[i] = this.offsets.get(i).longValue();
+		int records = this.keys.size();
+		long[] partHashes = new long[records];
+		System.arraycopy(this.hashes, 0, partHashes, 0, records);
+		File name = new File(PreParser.SUBFOLDER+PART_NAME+this.queue.nextPartNumber()+".xml");
+		StreamedPart part = new StreamedPart(this.source, name, this.content.toByteArray(), checkpointOffsets,
+				this.checkpointsStep, this.keys.toArray(new String[records]), partHashes,
+				this.staleKeys.toArray(new String[this.staleKeys.size()]));
+		part.setVenues(this.venues.toArray());
+		part.setFingerprintStore(this.fingerprintStore);
+		this.content = null;
+		this.offsets.clear();
+		this.keys.clear();
+		this.staleKeys.clear();
+		try{
+			this.queue.put(part);
+		}
+		catch (InterruptedException e){
+			throw new IOException("Interrupted while publishing "+name.getName());
+		}
+	}
+}
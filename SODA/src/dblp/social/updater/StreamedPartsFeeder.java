@@ -0,0 +1,104 @@
+package dblp.social.updater;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+import dblp.social.hibernate.ISodaHibernateSession;
+import dblp.social.importer.ImportMetrics;
+import dblp.social.importer.ThreadMonitor;
+import dblp.social.loader.PartFilesPool;
+
+/**
+ * This class defines a thread which moves the streamed parts published by the updater into the part files pool.
+ * The changed records of a part are removed from the db (see StaleRecordRemover) before the part is added to the pool,
+ * so they are imported again as new records; once the updater has read the whole input the deleted records are removed.
+ * As the PartFilesFeeder, the feeder stops taking parts while the pool already holds enough available part files,
+ * so the updater is blocked by the bounded queue.
+ *
+ * @author Staffiero
+ *
+ */
+public class StreamedPartsFeeder extends Thread {
+	private static Logger logger = Logger.getLogger(StreamedPartsFeeder.class);
+	private StreamedPartsQueue queue;
+	private PartFilesPool pool;
+	private ThreadMonitor monitor;
+	private ISodaHibernateSession session;
+	private File deletedKeys;
+	private int poolCapacity;
+	private StaleRecordRemover remover = new StaleRecordRemover();
+	private boolean complete = false;
+
+	/**
+	 * The constructor to be used. The pool feed is opened by the constructor.
+	 *
+	 * @param queue: the queue in which the updater publishes the streamed parts
+	 * @param pool: the part files pool used by the parser threads
+	 * @param monitor: the thread monitor
+	 * @param session: an open session used to remove the changed and the deleted records
+	 * @param deletedKeys: the file of the keys of the deleted records, written by the updater before the queue is closed
+	 * @param poolCapacity: the max number of available part files in the pool
+	 */
+	public StreamedPartsFeeder(StreamedPartsQueue queue, PartFilesPool pool, ThreadMonitor monitor,
+			ISodaHibernateSession session, File deletedKeys, int poolCapacity){
+		super("streamed parts feeder");
+		this.queue = queue;
+		this.pool = pool;
+		this.monitor = monitor;
+		this.session = session;
+		this.deletedKeys = deletedKeys;
+		this.poolCapacity = poolCapacity;
+		this.setDaemon(true);
+		this.pool.openFeed();
+	}
+
+	@Override
+	public void run() {
+		try{
+			StreamedPart part;
+			while ((part = this.queue.take()) != null){
+				//backpressure: waits for the parser threads
+				this.pool.waitForSpace(this.poolCapacity);
+				if (this.monitor.terminateProcess()){
+					this.queue.abort();
+					break;
+				}
+				if (part.getStaleKeys().length>0)
+					this.remover.remove(this.session, Arrays.asList(part.getStaleKeys()));
+				this.pool.addPartFile(part);
+				ImportMetrics metrics = ImportMetrics.getInstance();
+				if (metrics!=null)
+					metrics.trackPart(part);
+			}
+			if (!this.queue.isFailed()){
+				if (this.deletedKeys.exists())
+					this.remover.remove(this.session, this.deletedKeys);
+				this.complete = true;
+			}
+		}
+		catch (Exception e){
+			logger.error("Exception while feeding the part files pool: "+e.getMessage());
+			e.printStackTrace();
+			//the updater must not wait for the feeder
+			this.queue.abort();
+		}
+		finally{
+			this.pool.closeFeed();
+		}
+	}
+
+	/**
+	 * Getter, to be called once the feeder has ended
+	 * @return true if every part published by the updater has been added to the pool and the deleted records have been removed
+	 */
+	public boolean isComplete(){
+		return this.complete;
+	}
+
+	@Override
+	public String toString(){
+		return this.remover.toString();
+	}
+}
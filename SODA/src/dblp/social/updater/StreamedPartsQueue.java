@@ -0,0 +1,93 @@
+package dblp.social.updater;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * A synchronized bounded queue in which the updater publishes the streamed parts of new and changed records.
+ * When the queue is full the updater threads are blocked, so the parts held in memory are bounded
+ * by the speed of the importer.
+ * The queue is closed by the updater once the whole input has been read, or by a consumer which stops taking parts.
+ *
+ * @author Staffiero
+ *
+ */
+public class StreamedPartsQueue {
+	private LinkedList<StreamedPart> parts = new LinkedList<StreamedPart>();
+	private int capacity;
+	private boolean closed = false;
+	private boolean failed = false;
+	private int published = 0;
+
+	/**
+	 * The constructor to be used
+	 * @param capacity: the max number of published parts not yet taken by a consumer
+	 */
+	public StreamedPartsQueue(int capacity){
+		if (capacity < 1)
+			capacity = 1;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Publishes a part, blocks while the queue is full
+	 * @param part: a streamed part
+	 * @throws InterruptedException
+	 * @throws IOException if the queue has been closed by the consumer
+	 */
+	public synchronized void put(StreamedPart part) throws InterruptedException, IOException{
+		while (this.parts.size() >= this.capacity && !this.closed)
+			wait();
+		if (this.closed)
+			throw new IOException("The streamed parts queue has been closed");
+		this.parts.addLast(part);
+		notifyAll();
+	}
+
+	/**
+	 * @return the number of the next part, used to name it
+	 */
+	public synchronized int nextPartNumber(){
+		return this.published++;
+	}
+
+	/**
+	 * Takes the oldest published part, blocks while the queue is empty and still open
+	 * @return a streamed part, null if the queue is closed and empty
+	 * @throws InterruptedException
+	 */
+	public synchronized StreamedPart take() throws InterruptedException{
+		while (this.parts.isEmpty() && !this.closed)
+			wait();
+		if (this.parts.isEmpty())
+			return null;
+		StreamedPart part = this.parts.removeFirst();
+		notifyAll();
+		return part;
+	}
+
+	/**
+	 * Closes the queue
+	 */
+	public synchronized void close(){
+		this.closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Closes the queue because the updater or the consumer failed: the parts left in the queue are dropped
+	 */
+	public synchronized void abort(){
+		this.failed = true;
+		this.parts.clear();
+		close();
+	}
+
+	/**
+	 * Getter
+	 * @return true if the queue has been aborted, the update is not complete
+	 */
+	public synchronized boolean isFailed(){
+		return this.failed;
+	}
+}
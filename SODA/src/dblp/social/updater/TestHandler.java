@@ -5,7 +5,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 
 import org.apache.log4j.Logger;
@@ -60,6 +60,8 @@ public class TestHandler extends DefaultHandler{
 	private PreparedStatement findBook;
 	private PreparedStatement findProceedings;
 	private PreparedStatement findJournal;
+	//the ids of the stored records, null if each record is looked up in the db
+	private RecordIdSet recordIds = null;
 	
 	public TestHandler(Connection con, File out) throws IOException {
 		super();
@@ -278,19 +280,7 @@ public class TestHandler extends DefaultHandler{
 			try{
 				
 				//lookup if the current in-collection already exists
-				if(this.url.compareTo("")==0){
-					if (this.dblpKey.compareTo("")==0)
-						logger.error("Both url and key are empty");
-					else
-						this.findInCollection.setString(1, this.dblpKey);
-				}
-				else
-					this.findInCollection.setString(1, this.url);
-				ResultSet rs = this.findInCollection.executeQuery();
-				if (rs.next()){
-					existingElements = rs.getInt("elements");
-				}
-				rs.close();
+				existingElements = count(RecordIdSet.INCOLLECTION, this.findInCollection, recordId());
 				
 			}
 			catch(Exception e){
@@ -337,36 +327,10 @@ public class TestHandler extends DefaultHandler{
 				
 				//lookup if the current in-proceedings already exists
 				
-				if(this.url.compareTo("")==0){
-					if (this.dblpKey.compareTo("")==0)
-						logger.error("Both url and key are empty");
-					else
-						this.findInProceedings.setString(1, this.dblpKey);
-				}
-				else
-					this.findInProceedings.setString(1, this.url);
-				
-				ResultSet rs = this.findInProceedings.executeQuery();
-				if (rs.next()){
-					existingElements = rs.getInt("elements");
-				}
-				rs.close();
+				existingElements = count(RecordIdSet.INPROCEEDINGS, this.findInProceedings, recordId());
 				if (existingElements==0){
 					//If no InProceedings are found, look for an Article
-					if(this.url.compareTo("")==0){
-						if (this.dblpKey.compareTo("")==0)
-							logger.error("Both url and key are empty");
-						else
-							this.findArticle.setString(1, this.dblpKey);
-					}
-					else
-						this.findArticle.setString(1, this.url);
-					
-					rs = this.findArticle.executeQuery();
-					if (rs.next()){
-						existingElements = rs.getInt("elements");
-					}
-					rs.close();
+					existingElements = count(RecordIdSet.ARTICLE, this.findArticle, recordId());
 				}
 				
 			}
@@ -408,20 +372,7 @@ public class TestHandler extends DefaultHandler{
 			
 			try{
 				//lookup if the current article already exists
-				if(this.url.compareTo("")==0){
-					if (this.dblpKey.compareTo("")==0)
-						logger.error("Both url and key are empty");
-					else
-						this.findArticle.setString(1, this.dblpKey);
-				}
-				else
-					this.findArticle.setString(1, this.url);
-				
-				ResultSet rs = this.findArticle.executeQuery();
-				if (rs.next()){
-					existingElements = rs.getInt("elements");
-				}
-				rs.close();
+				existingElements = count(RecordIdSet.ARTICLE, this.findArticle, recordId());
 				
 			}
 			catch(Exception e){
@@ -431,20 +382,7 @@ public class TestHandler extends DefaultHandler{
 		}else if(this.currElement.equalsIgnoreCase(BOOK)){
 			try{
 				//lookup if the current book already exists
-				if(this.url.compareTo("")==0){
-					if (this.dblpKey.compareTo("")==0)
-						logger.error("Both url and key are empty");
-					else
-						this.findBook.setString(1, this.dblpKey);
-				}
-				else
-					this.findBook.setString(1, this.url);
-				
-				ResultSet rs = this.findBook.executeQuery();
-				if (rs.next()){
-					existingElements = rs.getInt("elements");
-				}
-				rs.close();
+				existingElements = count(RecordIdSet.BOOK, this.findBook, recordId());
 				
 			}catch(Exception e){
 				logger.error("Error accessing the database "+e.getMessage());
@@ -458,38 +396,11 @@ public class TestHandler extends DefaultHandler{
 				
 				//lookup if the current proceedings already exists
 				
-				if(this.url.compareTo("")==0){
-					if (this.dblpKey.compareTo("")==0)
-						logger.error("Both url and key are empty");
-					else
-						this.findProceedings.setString(1, this.dblpKey);;
-				}
-				else
-					this.findProceedings.setString(1, this.url);
-
-				ResultSet rs = this.findProceedings.executeQuery();
-				if (rs.next()){
-					existingElements = rs.getInt("elements");
-				}
-				rs.close();
+				existingElements = count(RecordIdSet.PROCEEDINGS, this.findProceedings, recordId());
 				if (existingElements==0){
 					//If no Proceedings are found, look for a Journal
 					
-					if(this.url.compareTo("")==0){
-						if (this.dblpKey.compareTo("")==0)
-							logger.error("Both url and key are empty");
-						else
-							findJournal.setString(1, this.dblpKey);
-					}
-					else
-						findJournal.setString(1, this.url);
-					
-					
-					rs = findJournal.executeQuery();
-					if (rs.next()){
-						existingElements = rs.getInt("elements");
-					}
-					rs.close();
+					existingElements = count(RecordIdSet.JOURNAL, this.findJournal, recordId());
 				}
 				
 			}
@@ -503,6 +414,37 @@ public class TestHandler extends DefaultHandler{
 	}
 	
 	
+	/**
+	 * @return the id of the current record, its url or its key if it has no url
+	 */
+	private String recordId(){
+		if(this.url.compareTo("")!=0)
+			return this.url;
+		if (this.dblpKey.compareTo("")==0)
+			logger.error("Both url and key are empty");
+		return this.dblpKey;
+	}
+	
+	/**
+	 * Counts the records with the given id in a table, in the preloaded ids if available
+	 * @param table the table, see RecordIdSet
+	 * @param statement the prepared statement counting the records of the table
+	 * @param id the record id
+	 */
+	private int count(int table, PreparedStatement statement, String id) throws SQLException{
+		if (this.recordIds!=null)
+			return this.recordIds.count(table, id, statement);
+		return RecordIdSet.query(statement, id);
+	}
+	
+	/**
+	 * Sets the preloaded ids of the stored records, used instead of the queries
+	 * @param recordIds the loaded ids
+	 */
+	public void setRecordIds(RecordIdSet recordIds){
+		this.recordIds = recordIds;
+	}
+	
 	private String cleanStringFormat(String input){
 		//need to convert each symbol (like &) back to their code. See DTD for more info.
 		return input;